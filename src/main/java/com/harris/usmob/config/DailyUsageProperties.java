@@ -0,0 +1,65 @@
+package com.harris.usmob.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration properties for Daily Usage
+ */
+@Data
+@ConfigurationProperties(prefix = "usmob.daily-usage")
+public class DailyUsageProperties {
+    /**
+     * Write-behind buffering of usage increments
+     */
+    private WriteBehind writeBehind = new WriteBehind();
+    /**
+     * How usage history is read
+     */
+    private HistoryMode historyMode = HistoryMode.AGGREGATION;
+    /**
+     * Milliseconds a streamed ingestion request may run, other async requests keep the default timeout
+     */
+    private long ingestTimeoutMs = 3600000;
+    /**
+     * ID the usage event bytes carried by this instance are saved under, the host name if blank
+     */
+    private String nodeId = "";
+    /**
+     * Days after a UTC day ends before the usage event bytes still carried for it are settled
+     */
+    private int carryOpenDays = 2;
+
+    /**
+     * Ways of reading usage history
+     */
+    public enum HistoryMode {
+        /**
+         * One aggregation finding the latest cycle and its usage
+         */
+        AGGREGATION,
+        /**
+         * A cycle query followed by a usage range query
+         */
+        TWO_QUERY
+    }
+
+    /**
+     * Configuration properties for write-behind buffering
+     */
+    @Data
+    public static class WriteBehind {
+        /**
+         * Whether increments are buffered in memory instead of written immediately
+         */
+        private boolean enabled = false;
+        /**
+         * Milliseconds between scheduled flushes
+         */
+        private long flushIntervalMs = 1000;
+        /**
+         * Number of buffered entries that triggers a flush before the next scheduled one
+         */
+        private int maxEntries = 10000;
+    }
+}
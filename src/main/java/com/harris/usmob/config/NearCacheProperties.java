@@ -0,0 +1,35 @@
+package com.harris.usmob.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration properties for the near caches of users and cycles
+ */
+@Data
+@ConfigurationProperties(prefix = "usmob.near-cache")
+public class NearCacheProperties {
+    /**
+     * Invalidation of the near caches through Mongo change streams
+     */
+    private ChangeStreams changeStreams = new ChangeStreams();
+
+    /**
+     * Configuration properties for change stream invalidation
+     */
+    @Data
+    public static class ChangeStreams {
+        /**
+         * Whether writes from every instance invalidate the near caches, needs a replica set
+         */
+        private boolean enabled = false;
+        /**
+         * ID the resume token of this instance is saved under, the host name if blank
+         */
+        private String nodeId = "";
+        /**
+         * Milliseconds between saves of the resume token
+         */
+        private long tokenSaveIntervalMs = 1000;
+    }
+}
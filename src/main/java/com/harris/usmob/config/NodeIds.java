@@ -0,0 +1,31 @@
+package com.harris.usmob.config;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Resolves the ID an instance saves its own state under
+ */
+public final class NodeIds {
+
+    private NodeIds() {
+    }
+
+    /**
+     * Gets the ID of this instance
+     *
+     * @param nodeId Configured node ID, may be blank
+     * @return Configured node ID, or the host name if blank
+     */
+    public static String resolve(String nodeId) {
+        if (nodeId != null && !nodeId.isBlank()) {
+            return nodeId;
+        }
+
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.harris.usmob.config;
+
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Server configuration for the reactive profile
+ * <p>
+ * Tomcat is on the classpath for the servlet stack and would otherwise be picked for WebFlux too,
+ * so Netty is selected explicitly to serve requests from its event loop.
+ */
+@Configuration(proxyBeanMethods = false)
+@Profile("reactive")
+public class ReactiveServerConfig {
+
+    /**
+     * Netty server factory
+     *
+     * @return NettyReactiveWebServerFactory object
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
@@ -1,37 +1,62 @@
 package com.harris.usmob.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.harris.usmob.dto.CycleDTO;
+import com.harris.usmob.dto.PageDTO;
+import com.harris.usmob.dto.UsageSummaryDTO;
 import com.harris.usmob.entity.Cycle;
 import com.harris.usmob.service.CycleService;
+import com.harris.usmob.service.IdempotencyService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import lombok.AllArgsConstructor;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
 @AllArgsConstructor
+@Profile("!reactive")
 @RestController
 @RequestMapping("api/cycle")
 public class CycleController {
 
     private final CycleService cycleService;
 
+    private final IdempotencyService idempotencyService;
+
+    private final ObjectMapper objectMapper;
+
     @Operation(summary = "Add a new cycle")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "Cycle added successfully",
                     content = {@Content(mediaType = "application/json",
                             schema = @Schema(implementation = CycleDTO.class))}),
             @ApiResponse(responseCode = "409", description = "Error adding cycle",
+                    content = @Content),
+            @ApiResponse(responseCode = "422", description = "Idempotency key was used with a different request",
                     content = @Content)
     })
     @PostMapping("/add")
-    public ResponseEntity<Object> addCycle(@RequestBody Cycle cycle) {
+    public ResponseEntity<Object> addCycle(@RequestBody Cycle cycle,
+                                           @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        if (idempotencyKey != null) {
+            return idempotencyService.execute("cycle/add", idempotencyKey, cycle, () -> addCycle(cycle));
+        }
+
+        return addCycle(cycle);
+    }
+
+    private ResponseEntity<Object> addCycle(Cycle cycle) {
         CycleDTO c = cycleService.addCycle(cycle);
 
         if (c == null) {
@@ -52,35 +77,107 @@ public class CycleController {
         return new ResponseEntity<>("Cycle deleted successfully.", HttpStatus.OK);
     }
 
-    @Operation(summary = "Get all cycles stored in the collection")
+    @Operation(summary = "Rebuild the current cycle of every user and MDN from the cycle collection")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Current cycles rebuilt",
+                    content = @Content)
+    })
+    @PostMapping("/current/rebuild")
+    public ResponseEntity<Object> rebuildCurrentCycles() {
+        long rebuilt = cycleService.rebuildCurrentCycles();
+
+        return new ResponseEntity<>("Rebuilt " + rebuilt + " current cycles.", HttpStatus.OK);
+    }
+
+    @Operation(summary = "Rebuild the usage rollup of every cycle from the daily usage collection")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Usage rollups rebuilt",
+                    content = @Content)
+    })
+    @PostMapping("/usage-rollup/rebuild")
+    public ResponseEntity<Object> rebuildUsageRollups() {
+        long rebuilt = cycleService.rebuildUsageRollups();
+
+        return new ResponseEntity<>("Rebuilt " + rebuilt + " usage rollups.", HttpStatus.OK);
+    }
+
+    @Operation(summary = "Get a page of the cycles stored in the collection, pass next as after for the following page")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Cycles found",
                     content = {@Content(mediaType = "application/json",
-                            schema = @Schema(implementation = CycleDTO.class))}),
+                            schema = @Schema(implementation = PageDTO.class))}),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor",
+                    content = @Content),
             @ApiResponse(responseCode = "404", description = "No cycles found",
                     content = @Content)
     })
     @GetMapping("/all")
-    public ResponseEntity<Object> getAllCycles() {
-        List<CycleDTO> cycles = cycleService.getAllCycles();
+    public ResponseEntity<Object> getAllCycles(@RequestParam(required = false) String after,
+                                               @RequestParam(defaultValue = "100") int limit) {
+        PageDTO<CycleDTO> cycles = cycleService.getAllCycles(after, limit);
+
+        if (cycles == null) {
+            return new ResponseEntity<>("Invalid cursor.", HttpStatus.BAD_REQUEST);
+        }
 
-        if (cycles.isEmpty()) {
+        if (cycles.getItems().isEmpty()) {
             return new ResponseEntity<>("No cycles found.", HttpStatus.NOT_FOUND);
         }
 
         return new ResponseEntity<>(cycles, HttpStatus.OK);
     }
 
+    @Operation(summary = "Stream all cycles stored in the collection as one JSON array")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Cycles streamed, an empty array if there are none",
+                    content = {@Content(mediaType = "application/json",
+                            array = @ArraySchema(schema = @Schema(implementation = CycleDTO.class)))})
+    })
+    @GetMapping(value = "/all/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllCycles() {
+        StreamingResponseBody body = JsonArrayStreams.of(objectMapper, CycleDTO.class, cycleService::streamAllCycles);
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    @Operation(summary = "Get the total, average and peak daily usage of a cycle")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Usage summary found",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = UsageSummaryDTO.class))}),
+            @ApiResponse(responseCode = "404", description = "Cycle does not exist",
+                    content = @Content)
+    })
+    @GetMapping("/{cycleId}/usage-summary")
+    public ResponseEntity<Object> getUsageSummary(@PathVariable String cycleId) {
+        UsageSummaryDTO summary = cycleService.getUsageSummary(cycleId);
+
+        if (summary == null) {
+            return new ResponseEntity<>("Cycle does not exist.", HttpStatus.NOT_FOUND);
+        }
+
+        return new ResponseEntity<>(summary, HttpStatus.OK);
+    }
+
     @Operation(summary = "Get cycle history for a user and MDN")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Cycle created successfully",
                     content = {@Content(mediaType = "application/json",
                             schema = @Schema(implementation = CycleDTO.class))}),
+            @ApiResponse(responseCode = "304", description = "Cycle history matches If-None-Match",
+                    content = @Content),
             @ApiResponse(responseCode = "404", description = "Error adding cycle",
                     content = @Content)
     })
     @GetMapping("/history/{userId}/{mdn}")
-    public ResponseEntity<Object> getCycleHistory(@PathVariable String userId, @PathVariable String mdn) {
+    public ResponseEntity<Object> getCycleHistory(@PathVariable String userId, @PathVariable String mdn, WebRequest request) {
+        String eTag = cycleService.getHistoryETag(userId, mdn);
+
+        // Sets the ETag header, and the 304 status when it matches If-None-Match
+        if (eTag != null && request.checkNotModified(eTag)) {
+            return null;
+        }
+
         List<CycleDTO> cycleHistory = cycleService.getCycleHistory(userId, mdn);
 
         if (cycleHistory.isEmpty()) {
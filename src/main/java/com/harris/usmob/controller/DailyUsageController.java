@@ -1,38 +1,87 @@
 package com.harris.usmob.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.harris.usmob.config.DailyUsageProperties;
+import com.harris.usmob.dto.BulkRowResultDTO;
 import com.harris.usmob.dto.DailyUsageDTO;
+import com.harris.usmob.dto.IngestProgressDTO;
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.dto.LineHistoryDTO;
+import com.harris.usmob.dto.PageDTO;
+import com.harris.usmob.dto.UsageBucketDTO;
+import com.harris.usmob.dto.UsageEventDTO;
+import com.harris.usmob.dto.UsageEventResultDTO;
 import com.harris.usmob.entity.DailyUsage;
+import com.harris.usmob.service.DailyUsageIngestService;
 import com.harris.usmob.service.DailyUsageService;
+import com.harris.usmob.service.IdempotencyService;
+import com.harris.usmob.service.UsageEventRollupService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.AllArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 @AllArgsConstructor
+@Profile("!reactive")
 @RestController
 @RequestMapping("api/daily-usage")
 public class DailyUsageController {
 
     private final DailyUsageService dailyUsageService;
 
+    private final DailyUsageIngestService dailyUsageIngestService;
+
+    private final UsageEventRollupService usageEventRollupService;
+
+    private final ObjectMapper objectMapper;
+
+    private final IdempotencyService idempotencyService;
+
+    private final DailyUsageProperties dailyUsageProperties;
+
     @Operation(summary = "Add a new daily usage")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "Daily usage added successfully",
                     content = {@Content(mediaType = "application/json",
                             schema = @Schema(implementation = DailyUsageDTO.class))}),
             @ApiResponse(responseCode = "409", description = "Error adding daily usage",
+                    content = @Content),
+            @ApiResponse(responseCode = "422", description = "Idempotency key was used with a different request",
                     content = @Content)
 
     })
     @PostMapping("/add")
-    public ResponseEntity<Object> addDailyUsage(@RequestBody DailyUsage dailyUsage) {
+    public ResponseEntity<Object> addDailyUsage(@RequestBody DailyUsage dailyUsage,
+                                                @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        if (idempotencyKey != null) {
+            return idempotencyService.execute("daily-usage/add", idempotencyKey, dailyUsage, () -> addDailyUsage(dailyUsage));
+        }
+
+        return addDailyUsage(dailyUsage);
+    }
+
+    private ResponseEntity<Object> addDailyUsage(DailyUsage dailyUsage) {
         DailyUsageDTO d = dailyUsageService.addDailyUsage(dailyUsage);
 
         if (d == null) {
@@ -42,6 +91,81 @@ public class DailyUsageController {
         return new ResponseEntity<>(d, HttpStatus.CREATED);
     }
 
+    @Operation(summary = "Add a batch of daily usages")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Batch processed, see per-row results",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = BulkRowResultDTO.class))}),
+            @ApiResponse(responseCode = "400", description = "No daily usages provided",
+                    content = @Content)
+    })
+    @PostMapping("/bulk")
+    public ResponseEntity<Object> addDailyUsages(@RequestBody List<DailyUsage> dailyUsages) {
+        if (dailyUsages.isEmpty()) {
+            return new ResponseEntity<>("No daily usages provided.", HttpStatus.BAD_REQUEST);
+        }
+
+        List<BulkRowResultDTO> results = dailyUsageService.addDailyUsages(dailyUsages);
+
+        return new ResponseEntity<>(results, HttpStatus.OK);
+    }
+
+    @Operation(summary = "Roll raw usage session records up into daily usage")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Usage events processed",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = UsageEventResultDTO.class))}),
+            @ApiResponse(responseCode = "400", description = "No usage events provided",
+                    content = @Content)
+    })
+    @PostMapping("/events")
+    public ResponseEntity<Object> ingestUsageEvents(@RequestBody List<UsageEventDTO> events) {
+        if (events.isEmpty()) {
+            return new ResponseEntity<>("No usage events provided.", HttpStatus.BAD_REQUEST);
+        }
+
+        UsageEventResultDTO result = usageEventRollupService.ingestEvents(events);
+
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    @Operation(summary = "Stream newline delimited JSON daily usages of any size into the collection")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Progress lines, the last one has done set to true",
+                    content = {@Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                            schema = @Schema(implementation = IngestProgressDTO.class))})
+    })
+    @PostMapping(value = "/ingest", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public WebAsyncTask<Void> ingestDailyUsages(HttpServletRequest request, HttpServletResponse response) {
+        // Written from the task rather than a StreamingResponseBody, so only this request gets the long timeout
+        Callable<Void> ingest = () -> {
+            response.setStatus(HttpStatus.OK.value());
+            response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+            OutputStream outputStream = response.getOutputStream();
+
+            dailyUsageIngestService.ingestNdjson(request.getInputStream(), progress -> writeLine(outputStream, progress));
+            return null;
+        };
+
+        return new WebAsyncTask<>(dailyUsageProperties.getIngestTimeoutMs(), ingest);
+    }
+
+    /**
+     * Writes a value as one JSON line and flushes it to the client
+     *
+     * @param outputStream Response output
+     * @param value        Value to write
+     */
+    private void writeLine(OutputStream outputStream, Object value) {
+        try {
+            outputStream.write(objectMapper.writeValueAsBytes(value));
+            outputStream.write('\n');
+            outputStream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     @Operation(summary = "Delete a daily usage")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Daily usage deleted successfully",
@@ -59,37 +183,66 @@ public class DailyUsageController {
         return new ResponseEntity<>("Daily usage deleted successfully.", HttpStatus.OK);
     }
 
-    @Operation(summary = "Get all daily usage stored in the collection")
+    @Operation(summary = "Get a page of the daily usage stored in the collection, pass next as after for the following page")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Daily usage found successfully",
                     content = {@Content(mediaType = "application/json",
-                            schema = @Schema(implementation = DailyUsageDTO.class))}),
+                            schema = @Schema(implementation = PageDTO.class))}),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor",
+                    content = @Content),
             @ApiResponse(responseCode = "404", description = "No daily usages found",
                     content = @Content)
 
     })
     @GetMapping("/all")
-    public ResponseEntity<Object> getAllDailyUsages() {
-        List<DailyUsageDTO> d = dailyUsageService.getAllDailyUsages();
+    public ResponseEntity<Object> getAllDailyUsages(@RequestParam(required = false) String after,
+                                                    @RequestParam(defaultValue = "100") int limit) {
+        PageDTO<DailyUsageDTO> d = dailyUsageService.getAllDailyUsages(after, limit);
+
+        if (d == null) {
+            return new ResponseEntity<>("Invalid cursor.", HttpStatus.BAD_REQUEST);
+        }
 
-        if (d.isEmpty()) {
+        if (d.getItems().isEmpty()) {
             return new ResponseEntity<>("No daily usages found.", HttpStatus.NOT_FOUND);
         }
 
         return new ResponseEntity<>(d, HttpStatus.OK);
     }
 
+    @Operation(summary = "Stream all daily usage stored in the collection as one JSON array")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Daily usage streamed, an empty array if there are none",
+                    content = {@Content(mediaType = "application/json",
+                            array = @ArraySchema(schema = @Schema(implementation = DailyUsageDTO.class)))})
+    })
+    @GetMapping(value = "/all/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllDailyUsages() {
+        StreamingResponseBody body = JsonArrayStreams.of(objectMapper, DailyUsageDTO.class, dailyUsageService::streamAllDailyUsages);
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
     @Operation(summary = "Get daily usage history for a user and MDN")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Daily usage history found successfully",
                     content = {@Content(mediaType = "application/json",
                             schema = @Schema(implementation = DailyUsageDTO.class))}),
+            @ApiResponse(responseCode = "304", description = "Daily usage history matches If-None-Match",
+                    content = @Content),
             @ApiResponse(responseCode = "404", description = "No daily usage history found",
                     content = @Content)
 
     })
     @GetMapping("/history/{userId}/{mdn}")
-    public ResponseEntity<Object> getDailyUsageHistory(@PathVariable String userId, @PathVariable String mdn) {
+    public ResponseEntity<Object> getDailyUsageHistory(@PathVariable String userId, @PathVariable String mdn, WebRequest request) {
+        String eTag = dailyUsageService.getHistoryETag(userId, mdn);
+
+        // Sets the ETag header, and the 304 status when it matches If-None-Match
+        if (eTag != null && request.checkNotModified(eTag)) {
+            return null;
+        }
+
         List<DailyUsageDTO> dailyUsageHistory = dailyUsageService.getDailyUsageHistory(userId, mdn);
 
         if (dailyUsageHistory.isEmpty()) {
@@ -99,6 +252,63 @@ public class DailyUsageController {
         return new ResponseEntity<>(dailyUsageHistory, HttpStatus.OK);
     }
 
+    @Operation(summary = "Get daily usage history in the most recent cycle of many lines at once")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Daily usage history of each line, usages is null for a line without a cycle",
+                    content = {@Content(mediaType = "application/json",
+                            array = @ArraySchema(schema = @Schema(implementation = LineHistoryDTO.class)))}),
+            @ApiResponse(responseCode = "400", description = "No lines or too many lines provided",
+                    content = @Content)
+    })
+    @PostMapping("/history/batch")
+    public ResponseEntity<Object> getDailyUsageHistories(@RequestBody List<LineDTO> lines) {
+        if (lines.isEmpty()) {
+            return new ResponseEntity<>("No lines provided.", HttpStatus.BAD_REQUEST);
+        }
+
+        if (lines.size() > DailyUsageService.MAX_HISTORY_LINES) {
+            return new ResponseEntity<>("At most " + DailyUsageService.MAX_HISTORY_LINES + " lines per request.", HttpStatus.BAD_REQUEST);
+        }
+
+        List<LineHistoryDTO> histories = dailyUsageService.getDailyUsageHistories(lines);
+
+        return new ResponseEntity<>(histories, HttpStatus.OK);
+    }
+
+    @Operation(summary = "Get daily usage for a user and MDN between two days, summed per day, week or month")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Usage buckets found, only buckets with usage",
+                    content = {@Content(mediaType = "application/json",
+                            array = @ArraySchema(schema = @Schema(implementation = UsageBucketDTO.class)))}),
+            @ApiResponse(responseCode = "400", description = "Invalid bucket or from after to",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "No daily usage found in range",
+                    content = @Content)
+    })
+    @GetMapping("/range/{userId}/{mdn}")
+    public ResponseEntity<Object> getUsageRange(@PathVariable String userId, @PathVariable String mdn,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "day") String bucket) {
+        DailyUsageService.UsageBucket usageBucket = DailyUsageService.UsageBucket.parse(bucket);
+
+        if (usageBucket == null) {
+            return new ResponseEntity<>("Invalid bucket, use day, week or month.", HttpStatus.BAD_REQUEST);
+        }
+
+        List<UsageBucketDTO> buckets = dailyUsageService.getUsageRange(userId, mdn, from, to, usageBucket);
+
+        if (buckets == null) {
+            return new ResponseEntity<>("From must not be after to.", HttpStatus.BAD_REQUEST);
+        }
+
+        if (buckets.isEmpty()) {
+            return new ResponseEntity<>("No daily usage found in range.", HttpStatus.NOT_FOUND);
+        }
+
+        return new ResponseEntity<>(buckets, HttpStatus.OK);
+    }
+
     @Operation(summary = "Update the daily usage in MB")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Daily usage updated successfully",
@@ -118,4 +328,33 @@ public class DailyUsageController {
         return new ResponseEntity<>(d, HttpStatus.OK);
     }
 
+    @Operation(summary = "Add to the daily usage in MB, creating the daily usage if needed")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Daily usage incremented successfully",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = DailyUsageDTO.class))}),
+            @ApiResponse(responseCode = "202", description = "Daily usage increment queued for write-behind",
+                    content = @Content),
+            @ApiResponse(responseCode = "400", description = "Error incrementing daily usage",
+                    content = @Content)
+    })
+    @PatchMapping("/increment")
+    public ResponseEntity<Object> incrementUsedInMb(@RequestBody DailyUsage dailyUsage) {
+        if (dailyUsage.getUsedInMb() == null) {
+            return new ResponseEntity<>("Error incrementing daily usage", HttpStatus.BAD_REQUEST);
+        }
+
+        if (dailyUsageService.queueIncrement(dailyUsage.getUsageDate(), dailyUsage.getMdn(), dailyUsage.getUserId(), dailyUsage.getUsedInMb())) {
+            return new ResponseEntity<>("Daily usage increment queued.", HttpStatus.ACCEPTED);
+        }
+
+        DailyUsageDTO d = dailyUsageService.incrementUsedInMb(dailyUsage.getUsageDate(), dailyUsage.getMdn(), dailyUsage.getUserId(), dailyUsage.getUsedInMb());
+
+        if (d == null) {
+            return new ResponseEntity<>("Error incrementing daily usage", HttpStatus.BAD_REQUEST);
+        }
+
+        return new ResponseEntity<>(d, HttpStatus.OK);
+    }
+
 }
\ No newline at end of file
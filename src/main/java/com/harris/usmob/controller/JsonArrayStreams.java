@@ -0,0 +1,48 @@
+package com.harris.usmob.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Writes a stream of items to the response as one JSON array, item by item
+ * <p>
+ * Only the generator buffer is held in memory, it is flushed to the client whenever it fills
+ * rather than after every item.
+ */
+final class JsonArrayStreams {
+
+    private JsonArrayStreams() {
+    }
+
+    /**
+     * Builds a response body writing the items as a JSON array
+     *
+     * @param objectMapper Object Mapper configured for the API
+     * @param type         Type of the items
+     * @param items        Opens the stream of items, called once the response is being written and closed afterwards
+     * @param <T>          Type of the items
+     * @return StreamingResponseBody object
+     */
+    static <T> StreamingResponseBody of(ObjectMapper objectMapper, Class<T> type, Supplier<Stream<T>> items) {
+        ObjectWriter writer = objectMapper.writerFor(type).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        return outputStream -> {
+            try (Stream<T> stream = items.get(); JsonGenerator generator = objectMapper.createGenerator(outputStream)
+                    // Spring flushes and closes the response itself
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+                generator.writeStartArray();
+                for (Iterator<T> it = stream.iterator(); it.hasNext(); ) {
+                    writer.writeValue(generator, it.next());
+                }
+                generator.writeEndArray();
+            }
+        };
+    }
+}
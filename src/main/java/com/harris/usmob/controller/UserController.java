@@ -1,5 +1,6 @@
 package com.harris.usmob.controller;
 
+import com.harris.usmob.dto.PageDTO;
 import com.harris.usmob.dto.UserDTO;
 import com.harris.usmob.entity.User;
 import com.harris.usmob.service.UserService;
@@ -9,6 +10,7 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import lombok.AllArgsConstructor;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -16,6 +18,7 @@ import org.springframework.web.bind.annotation.*;
 import java.util.List;
 import java.util.Optional;
 
+@Profile("!reactive")
 @RestController
 @RequestMapping("api/user")
 @AllArgsConstructor
@@ -75,19 +78,26 @@ public class UserController {
         return u.<ResponseEntity<Object>>map(userDTO -> new ResponseEntity<>(userDTO, HttpStatus.OK)).orElseGet(() -> new ResponseEntity<>("User does not exist.", HttpStatus.NOT_FOUND));
     }
 
-    @Operation(summary = "Get all users")
+    @Operation(summary = "Get a page of users sorted by ID, pass next as after for the following page")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Users found successfully",
                     content = {@Content(mediaType = "application/json",
-                            schema = @Schema(implementation = UserDTO.class))}),
+                            schema = @Schema(implementation = PageDTO.class))}),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor",
+                    content = @Content),
             @ApiResponse(responseCode = "404", description = "No users found",
                     content = @Content)
     })
     @GetMapping("/all")
-    public ResponseEntity<Object> getUsers() {
-        List<UserDTO> u = userService.getAllUsers();
+    public ResponseEntity<Object> getUsers(@RequestParam(required = false) String after,
+                                           @RequestParam(defaultValue = "100") int limit) {
+        PageDTO<UserDTO> u = userService.getAllUsers(after, limit);
+
+        if (u == null) {
+            return new ResponseEntity<>("Invalid cursor.", HttpStatus.BAD_REQUEST);
+        }
 
-        if (u.isEmpty()) {
+        if (u.getItems().isEmpty()) {
             return new ResponseEntity<>("No users found.", HttpStatus.NOT_FOUND);
         }
         return new ResponseEntity<>(u, HttpStatus.OK);
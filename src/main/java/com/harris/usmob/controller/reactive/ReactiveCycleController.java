@@ -0,0 +1,110 @@
+package com.harris.usmob.controller.reactive;
+
+import com.harris.usmob.dto.CycleDTO;
+import com.harris.usmob.dto.PageDTO;
+import com.harris.usmob.dto.UsageSummaryDTO;
+import com.harris.usmob.entity.Cycle;
+import com.harris.usmob.service.reactive.ReactiveCycleService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import lombok.AllArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+@AllArgsConstructor
+@Profile("reactive")
+@RestController
+@RequestMapping("api/cycle")
+public class ReactiveCycleController {
+
+    private final ReactiveCycleService cycleService;
+
+    @Operation(summary = "Add a new cycle")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Cycle added successfully",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = CycleDTO.class))}),
+            @ApiResponse(responseCode = "409", description = "Error adding cycle",
+                    content = @Content)
+    })
+    @PostMapping("/add")
+    public Mono<ResponseEntity<Object>> addCycle(@RequestBody Cycle cycle) {
+        return cycleService.addCycle(cycle)
+                .map(c -> new ResponseEntity<Object>(c, HttpStatus.CREATED))
+                .defaultIfEmpty(new ResponseEntity<>("Error adding cycle", HttpStatus.CONFLICT));
+    }
+
+    @PostMapping("/delete/{cycleId}")
+    public Mono<ResponseEntity<Object>> deleteCycle(@PathVariable String cycleId) {
+        return cycleService.deleteCycle(cycleId)
+                .map(b -> b
+                        ? new ResponseEntity<>("Cycle deleted successfully.", HttpStatus.OK)
+                        : new ResponseEntity<>("Cycle does not exist.", HttpStatus.NOT_FOUND));
+    }
+
+    @Operation(summary = "Get a page of the cycles stored in the collection, pass next as after for the following page")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Cycles found",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = PageDTO.class))}),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "No cycles found",
+                    content = @Content)
+    })
+    @GetMapping("/all")
+    public Mono<ResponseEntity<Object>> getAllCycles(@RequestParam(required = false) String after,
+                                                     @RequestParam(defaultValue = "100") int limit) {
+        return cycleService.getAllCycles(after, limit)
+                .map(cycles -> cycles.getItems().isEmpty()
+                        ? new ResponseEntity<Object>("No cycles found.", HttpStatus.NOT_FOUND)
+                        : new ResponseEntity<Object>(cycles, HttpStatus.OK))
+                .defaultIfEmpty(new ResponseEntity<>("Invalid cursor.", HttpStatus.BAD_REQUEST));
+    }
+
+    @Operation(summary = "Get the total, average and peak daily usage of a cycle")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Usage summary found",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = UsageSummaryDTO.class))}),
+            @ApiResponse(responseCode = "404", description = "Cycle does not exist",
+                    content = @Content)
+    })
+    @GetMapping("/{cycleId}/usage-summary")
+    public Mono<ResponseEntity<Object>> getUsageSummary(@PathVariable String cycleId) {
+        return cycleService.getUsageSummary(cycleId)
+                .map(summary -> new ResponseEntity<Object>(summary, HttpStatus.OK))
+                .defaultIfEmpty(new ResponseEntity<>("Cycle does not exist.", HttpStatus.NOT_FOUND));
+    }
+
+    @Operation(summary = "Get cycle history for a user and MDN")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Cycle history found",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = CycleDTO.class))}),
+            @ApiResponse(responseCode = "304", description = "Cycle history matches If-None-Match",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "No cycle history found",
+                    content = @Content)
+    })
+    @GetMapping("/history/{userId}/{mdn}")
+    public Mono<ResponseEntity<Object>> getCycleHistory(@PathVariable String userId, @PathVariable String mdn, ServerWebExchange exchange) {
+        return cycleService.getHistoryETag(userId, mdn)
+                // Sets the ETag header, and the 304 status when it matches If-None-Match
+                .map(exchange::checkNotModified)
+                .defaultIfEmpty(false)
+                .filter(notModified -> !notModified)
+                .flatMap(modified -> cycleService.getCycleHistory(userId, mdn)
+                        .collectList()
+                        .map(cycleHistory -> cycleHistory.isEmpty()
+                                ? new ResponseEntity<>("No cycle history found.", HttpStatus.NOT_FOUND)
+                                : new ResponseEntity<>(cycleHistory, HttpStatus.OK)));
+    }
+}
@@ -0,0 +1,193 @@
+package com.harris.usmob.controller.reactive;
+
+import com.harris.usmob.dto.DailyUsageDTO;
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.dto.LineHistoryDTO;
+import com.harris.usmob.dto.PageDTO;
+import com.harris.usmob.dto.UsageBucketDTO;
+import com.harris.usmob.entity.DailyUsage;
+import com.harris.usmob.service.DailyUsageService;
+import com.harris.usmob.service.reactive.ReactiveDailyUsageService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import lombok.AllArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@AllArgsConstructor
+@Profile("reactive")
+@RestController
+@RequestMapping("api/daily-usage")
+public class ReactiveDailyUsageController {
+
+    private final ReactiveDailyUsageService dailyUsageService;
+
+    @Operation(summary = "Add a new daily usage")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Daily usage added successfully",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = DailyUsageDTO.class))}),
+            @ApiResponse(responseCode = "409", description = "Error adding daily usage",
+                    content = @Content)
+    })
+    @PostMapping("/add")
+    public Mono<ResponseEntity<Object>> addDailyUsage(@RequestBody DailyUsage dailyUsage) {
+        return dailyUsageService.addDailyUsage(dailyUsage)
+                .map(d -> new ResponseEntity<Object>(d, HttpStatus.CREATED))
+                .defaultIfEmpty(new ResponseEntity<>("Error adding daily usage", HttpStatus.CONFLICT));
+    }
+
+    @Operation(summary = "Delete a daily usage")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Daily usage deleted successfully",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "Error deleting daily usage",
+                    content = @Content)
+    })
+    @DeleteMapping("/delete/{usageId}")
+    public Mono<ResponseEntity<Object>> deleteDailyUsage(@PathVariable String usageId) {
+        return dailyUsageService.deleteDailyUsage(usageId)
+                .map(b -> b
+                        ? new ResponseEntity<>("Daily usage deleted successfully.", HttpStatus.OK)
+                        : new ResponseEntity<>("Daily usage does not exist.", HttpStatus.NOT_FOUND));
+    }
+
+    @Operation(summary = "Get a page of the daily usage stored in the collection, pass next as after for the following page")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Daily usage found successfully",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = PageDTO.class))}),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "No daily usages found",
+                    content = @Content)
+    })
+    @GetMapping("/all")
+    public Mono<ResponseEntity<Object>> getAllDailyUsages(@RequestParam(required = false) String after,
+                                                          @RequestParam(defaultValue = "100") int limit) {
+        return dailyUsageService.getAllDailyUsages(after, limit)
+                .map(d -> d.getItems().isEmpty()
+                        ? new ResponseEntity<Object>("No daily usages found.", HttpStatus.NOT_FOUND)
+                        : new ResponseEntity<Object>(d, HttpStatus.OK))
+                .defaultIfEmpty(new ResponseEntity<>("Invalid cursor.", HttpStatus.BAD_REQUEST));
+    }
+
+    @Operation(summary = "Get daily usage history for a user and MDN")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Daily usage history found successfully",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = DailyUsageDTO.class))}),
+            @ApiResponse(responseCode = "304", description = "Daily usage history matches If-None-Match",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "No daily usage history found",
+                    content = @Content)
+    })
+    @GetMapping("/history/{userId}/{mdn}")
+    public Mono<ResponseEntity<Object>> getDailyUsageHistory(@PathVariable String userId, @PathVariable String mdn, ServerWebExchange exchange) {
+        return dailyUsageService.getHistoryETag(userId, mdn)
+                // Sets the ETag header, and the 304 status when it matches If-None-Match
+                .map(exchange::checkNotModified)
+                .defaultIfEmpty(false)
+                .filter(notModified -> !notModified)
+                .flatMap(modified -> dailyUsageService.getDailyUsageHistory(userId, mdn)
+                        .filter(dailyUsageHistory -> !dailyUsageHistory.isEmpty())
+                        .map(dailyUsageHistory -> new ResponseEntity<Object>(dailyUsageHistory, HttpStatus.OK))
+                        .defaultIfEmpty(new ResponseEntity<>("No daily usage history found.", HttpStatus.NOT_FOUND)));
+    }
+
+    @Operation(summary = "Get daily usage history in the most recent cycle of many lines at once")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Daily usage history of each line, usages is null for a line without a cycle",
+                    content = {@Content(mediaType = "application/json",
+                            array = @ArraySchema(schema = @Schema(implementation = LineHistoryDTO.class)))}),
+            @ApiResponse(responseCode = "400", description = "No lines or too many lines provided",
+                    content = @Content)
+    })
+    @PostMapping("/history/batch")
+    public Mono<ResponseEntity<Object>> getDailyUsageHistories(@RequestBody List<LineDTO> lines) {
+        if (lines.isEmpty()) {
+            return Mono.just(new ResponseEntity<>("No lines provided.", HttpStatus.BAD_REQUEST));
+        }
+
+        if (lines.size() > DailyUsageService.MAX_HISTORY_LINES) {
+            return Mono.just(new ResponseEntity<>("At most " + DailyUsageService.MAX_HISTORY_LINES + " lines per request.", HttpStatus.BAD_REQUEST));
+        }
+
+        return dailyUsageService.getDailyUsageHistories(lines)
+                .map(histories -> new ResponseEntity<Object>(histories, HttpStatus.OK));
+    }
+
+    @Operation(summary = "Get daily usage for a user and MDN between two days, summed per day, week or month")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Usage buckets found, only buckets with usage",
+                    content = {@Content(mediaType = "application/json",
+                            array = @ArraySchema(schema = @Schema(implementation = UsageBucketDTO.class)))}),
+            @ApiResponse(responseCode = "400", description = "Invalid bucket or from after to",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "No daily usage found in range",
+                    content = @Content)
+    })
+    @GetMapping("/range/{userId}/{mdn}")
+    public Mono<ResponseEntity<Object>> getUsageRange(@PathVariable String userId, @PathVariable String mdn,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "day") String bucket) {
+        DailyUsageService.UsageBucket usageBucket = DailyUsageService.UsageBucket.parse(bucket);
+
+        if (usageBucket == null) {
+            return Mono.just(new ResponseEntity<>("Invalid bucket, use day, week or month.", HttpStatus.BAD_REQUEST));
+        }
+
+        return dailyUsageService.getUsageRange(userId, mdn, from, to, usageBucket)
+                .map(buckets -> buckets.isEmpty()
+                        ? new ResponseEntity<Object>("No daily usage found in range.", HttpStatus.NOT_FOUND)
+                        : new ResponseEntity<Object>(buckets, HttpStatus.OK))
+                .defaultIfEmpty(new ResponseEntity<>("From must not be after to.", HttpStatus.BAD_REQUEST));
+    }
+
+    @Operation(summary = "Update the daily usage in MB")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Daily usage updated successfully",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = DailyUsageDTO.class))}),
+            @ApiResponse(responseCode = "404", description = "Error updating daily usage",
+                    content = @Content)
+    })
+    @PatchMapping("/update/{usedInMb}")
+    public Mono<ResponseEntity<Object>> updateUsedInMb(@RequestBody DailyUsage dailyUsage, @PathVariable int usedInMb) {
+        return dailyUsageService.updateUsedInMb(dailyUsage.getUsageDate(), dailyUsage.getMdn(), usedInMb)
+                .map(d -> new ResponseEntity<Object>(d, HttpStatus.OK))
+                .defaultIfEmpty(new ResponseEntity<>("Error updating daily usage", HttpStatus.NOT_FOUND));
+    }
+
+    @Operation(summary = "Add to the daily usage in MB, creating the daily usage if needed")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Daily usage incremented successfully",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = DailyUsageDTO.class))}),
+            @ApiResponse(responseCode = "400", description = "Error incrementing daily usage",
+                    content = @Content)
+    })
+    @PatchMapping("/increment")
+    public Mono<ResponseEntity<Object>> incrementUsedInMb(@RequestBody DailyUsage dailyUsage) {
+        if (dailyUsage.getUsedInMb() == null) {
+            return Mono.just(new ResponseEntity<>("Error incrementing daily usage", HttpStatus.BAD_REQUEST));
+        }
+
+        return dailyUsageService.incrementUsedInMb(dailyUsage.getUsageDate(), dailyUsage.getMdn(), dailyUsage.getUserId(), dailyUsage.getUsedInMb())
+                .map(d -> new ResponseEntity<Object>(d, HttpStatus.OK))
+                .defaultIfEmpty(new ResponseEntity<>("Error incrementing daily usage", HttpStatus.BAD_REQUEST));
+    }
+}
@@ -0,0 +1,121 @@
+package com.harris.usmob.controller.reactive;
+
+import com.harris.usmob.dto.PageDTO;
+import com.harris.usmob.dto.UserDTO;
+import com.harris.usmob.entity.User;
+import com.harris.usmob.service.reactive.ReactiveUserService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import lombok.AllArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+@Profile("reactive")
+@RestController
+@RequestMapping("api/user")
+@AllArgsConstructor
+public class ReactiveUserController {
+
+    private final ReactiveUserService userService;
+
+    @Operation(summary = "Create a new user")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "User created successfully",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = UserDTO.class))}),
+            @ApiResponse(responseCode = "409", description = "Error creating user",
+                    content = @Content)
+    })
+    @PostMapping("/create")
+    public Mono<ResponseEntity<Object>> createNewUser(@RequestBody User user) {
+        return userService.createUser(user)
+                .map(u -> new ResponseEntity<Object>(u, HttpStatus.CREATED))
+                .defaultIfEmpty(new ResponseEntity<>("Email is already in use.", HttpStatus.CONFLICT));
+    }
+
+    @Operation(summary = "Delete an existing user")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "User deleted successfully",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "Error deleting user",
+                    content = @Content)
+    })
+    @DeleteMapping("/delete/{id}")
+    public Mono<ResponseEntity<Object>> deleteUser(@PathVariable String id) {
+        return userService.deleteUser(id)
+                .map(b -> b
+                        ? new ResponseEntity<>("User deleted successfully.", HttpStatus.OK)
+                        : new ResponseEntity<>("User does not exist.", HttpStatus.NOT_FOUND));
+    }
+
+    @Operation(summary = "Get a user by email")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "User found successfully",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = UserDTO.class))}),
+            @ApiResponse(responseCode = "404", description = "No user found",
+                    content = @Content)
+    })
+    @GetMapping("/search/{email}")
+    public Mono<ResponseEntity<Object>> fetchUserByEmail(@PathVariable String email) {
+        return userService.getUserByEmail(email)
+                .map(u -> new ResponseEntity<Object>(u, HttpStatus.OK))
+                .defaultIfEmpty(new ResponseEntity<>("User does not exist.", HttpStatus.NOT_FOUND));
+    }
+
+    @Operation(summary = "Get a page of users sorted by ID, pass next as after for the following page")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Users found successfully",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = PageDTO.class))}),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "No users found",
+                    content = @Content)
+    })
+    @GetMapping("/all")
+    public Mono<ResponseEntity<Object>> getUsers(@RequestParam(required = false) String after,
+                                                 @RequestParam(defaultValue = "100") int limit) {
+        return userService.getAllUsers(after, limit)
+                .map(u -> u.getItems().isEmpty()
+                        ? new ResponseEntity<Object>("No users found.", HttpStatus.NOT_FOUND)
+                        : new ResponseEntity<Object>(u, HttpStatus.OK))
+                .defaultIfEmpty(new ResponseEntity<>("Invalid cursor.", HttpStatus.BAD_REQUEST));
+    }
+
+    @Operation(summary = "Transfer MDN from one user to another")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "MDN transferred successfully",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = UserDTO.class))}),
+            @ApiResponse(responseCode = "409", description = "Error transferring MDN",
+                    content = @Content)
+    })
+    @PostMapping("/transfer/{userIdA}/{userIdB}")
+    public Mono<ResponseEntity<Object>> transferMDN(@PathVariable String userIdA, @PathVariable String userIdB) {
+        return userService.transferMDN(userIdA, userIdB)
+                .map(u -> new ResponseEntity<Object>(u, HttpStatus.OK))
+                .defaultIfEmpty(new ResponseEntity<>("Error transferring MDN.", HttpStatus.CONFLICT));
+    }
+
+    @Operation(summary = "Update an existing user")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "User updated successfully",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = UserDTO.class))}),
+            @ApiResponse(responseCode = "409", description = "Error updating user",
+                    content = @Content)
+    })
+    @PostMapping("/update/{userId}")
+    public Mono<ResponseEntity<Object>> updateUser(@PathVariable String userId, @RequestBody User user) {
+        return userService.updateUser(userId, user)
+                .map(u -> new ResponseEntity<Object>(u, HttpStatus.OK))
+                .defaultIfEmpty(new ResponseEntity<>("User does not exist or new email is already in use.", HttpStatus.CONFLICT));
+    }
+}
@@ -0,0 +1,24 @@
+package com.harris.usmob.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Data Transfer Object for the result of a single row in a bulk write
+ */
+@AllArgsConstructor
+@Data
+public class BulkRowResultDTO {
+    /**
+     * Position of the row in the submitted batch
+     */
+    private int index;
+    /**
+     * Whether the row was written
+     */
+    private boolean accepted;
+    /**
+     * Reason the row was rejected, null if accepted
+     */
+    private String reason;
+}
@@ -0,0 +1,27 @@
+package com.harris.usmob.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Data Transfer Object for a Cycle and the Daily Usage inside it
+ */
+@AllArgsConstructor
+@Data
+public class CycleUsageDTO {
+    /**
+     * Start Date of the cycle
+     */
+    private Date startDate;
+    /**
+     * End Date of the cycle
+     */
+    private Date endDate;
+    /**
+     * Daily Usage inside the cycle, sorted by usage date
+     */
+    private List<DailyUsageDTO> usages;
+}
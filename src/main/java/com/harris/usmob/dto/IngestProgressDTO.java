@@ -0,0 +1,32 @@
+package com.harris.usmob.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Data Transfer Object for the progress of a streamed ingestion
+ */
+@AllArgsConstructor
+@Data
+public class IngestProgressDTO {
+    /**
+     * Number of rows read so far
+     */
+    private long rowsRead;
+    /**
+     * Number of rows written so far
+     */
+    private long accepted;
+    /**
+     * Number of rows rejected so far
+     */
+    private long rejected;
+    /**
+     * Error that stopped the ingestion, null if none
+     */
+    private String error;
+    /**
+     * Whether the ingestion has finished
+     */
+    private boolean done;
+}
@@ -0,0 +1,20 @@
+package com.harris.usmob.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Data Transfer Object for a line, a user and one of their MDNs
+ */
+@AllArgsConstructor
+@Data
+public class LineDTO {
+    /**
+     * User ID
+     */
+    private String userId;
+    /**
+     * MDN (Phone number)
+     */
+    private String mdn;
+}
@@ -0,0 +1,26 @@
+package com.harris.usmob.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Data Transfer Object for the Daily Usage History of a line
+ */
+@AllArgsConstructor
+@Data
+public class LineHistoryDTO {
+    /**
+     * User ID
+     */
+    private String userId;
+    /**
+     * MDN (Phone number)
+     */
+    private String mdn;
+    /**
+     * Daily Usage in the most recent cycle sorted by usage date, null if the line has no cycle
+     */
+    private List<DailyUsageDTO> usages;
+}
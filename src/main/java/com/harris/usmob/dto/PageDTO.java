@@ -0,0 +1,24 @@
+package com.harris.usmob.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Data Transfer Object for one page of a listing
+ *
+ * @param <T> Type of the items
+ */
+@AllArgsConstructor
+@Data
+public class PageDTO<T> {
+    /**
+     * Items of the page, in key order
+     */
+    private List<T> items;
+    /**
+     * Cursor to pass as after for the next page, null on the last page
+     */
+    private String next;
+}
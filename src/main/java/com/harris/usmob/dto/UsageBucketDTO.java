@@ -0,0 +1,26 @@
+package com.harris.usmob.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * Data Transfer Object for the Daily Usage summed over a day, week or month
+ */
+@AllArgsConstructor
+@Data
+public class UsageBucketDTO {
+    /**
+     * Start of the bucket, midnight UTC, weeks start on Monday
+     */
+    private Date bucketStart;
+    /**
+     * Total used in Mb in the bucket
+     */
+    private long totalInMb;
+    /**
+     * Number of days with usage in the bucket
+     */
+    private int days;
+}
@@ -0,0 +1,30 @@
+package com.harris.usmob.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * Data Transfer Object for a raw usage session record
+ */
+@AllArgsConstructor
+@Data
+public class UsageEventDTO {
+    /**
+     * Event ID, unique per session record so retries can be dropped
+     */
+    private String eventId;
+    /**
+     * MDN (Phone number)
+     */
+    private String mdn;
+    /**
+     * Time of the session
+     */
+    private Date timestamp;
+    /**
+     * Bytes used in the session
+     */
+    private Long bytes;
+}
@@ -0,0 +1,24 @@
+package com.harris.usmob.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Data Transfer Object for the result of ingesting raw usage events
+ */
+@AllArgsConstructor
+@Data
+public class UsageEventResultDTO {
+    /**
+     * Number of events rolled up into daily usage
+     */
+    private int accepted;
+    /**
+     * Number of events dropped as already processed
+     */
+    private int duplicates;
+    /**
+     * Number of events rejected as invalid, for an unknown MDN, or because their daily usage failed to write
+     */
+    private int rejected;
+}
@@ -0,0 +1,34 @@
+package com.harris.usmob.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * Data Transfer Object for the total Daily Usage of a Cycle
+ */
+@AllArgsConstructor
+@Data
+public class UsageSummaryDTO {
+    /**
+     * Total used in Mb over the cycle
+     */
+    private long totalInMb;
+    /**
+     * Average used in Mb per day with usage
+     */
+    private double averageInMb;
+    /**
+     * Usage Date with the highest used in Mb, the latest on a tie
+     */
+    private Date peakDate;
+    /**
+     * Used in Mb on the peak date
+     */
+    private int peakInMb;
+    /**
+     * Number of days with usage
+     */
+    private int days;
+}
@@ -0,0 +1,30 @@
+package com.harris.usmob.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.util.Date;
+
+/**
+ * Entity holding the position of an instance in the change stream of the database
+ */
+@AllArgsConstructor
+@Data
+@Document(collection = "change_stream_token")
+public class ChangeStreamToken {
+    /**
+     * Node ID of the instance - Primary Key
+     */
+    @MongoId
+    private String id;
+    /**
+     * Resume token of the last change seen, as extended JSON
+     */
+    private String resumeToken;
+    /**
+     * When the resume token was saved
+     */
+    private Date savedAt;
+}
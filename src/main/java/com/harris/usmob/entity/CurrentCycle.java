@@ -0,0 +1,55 @@
+package com.harris.usmob.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.util.Date;
+
+/**
+ * Entity pointing at the most recent Cycle of a user and MDN
+ */
+@AllArgsConstructor
+@Data
+@Document(collection = "current_cycle")
+public class CurrentCycle {
+    /**
+     * User ID and MDN - Primary Key
+     */
+    @MongoId
+    private String id;
+    /**
+     * User ID
+     */
+    @Indexed // removed with the user
+    private String userId;
+    /**
+     * MDN (Phone number)
+     */
+    private String mdn;
+    /**
+     * Cycle ID of the most recent cycle
+     */
+    private String cycleId;
+    /**
+     * Start Date of the most recent cycle
+     */
+    private Date startDate;
+    /**
+     * End Date of the most recent cycle
+     */
+    private Date endDate;
+
+    /**
+     * Builds the ID of the current cycle of a user and MDN
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return Current Cycle ID
+     */
+    public static String idOf(String userId, String mdn) {
+        return userId + ":" + mdn;
+    }
+}
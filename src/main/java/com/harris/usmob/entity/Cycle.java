@@ -15,7 +15,7 @@ import java.util.Date;
 @Data
 @AllArgsConstructor
 @Document(collection = "cycle")
-@CompoundIndex(name = "userIdMdnIndex", def = "{'userId': 1, 'mdn': 1}") // compound index as frequent queries on userId and mdn
+@CompoundIndex(name = "userIdMdnEndDateIndex", def = "{'userId': 1, 'mdn': 1, 'endDate': -1}") // frequent queries on userId and mdn, endDate finds the latest cycle
 public class Cycle {
     /**
      * Cycle ID - Primary Key
@@ -0,0 +1,74 @@
+package com.harris.usmob.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.util.Date;
+
+/**
+ * Entity holding the running Daily Usage totals of a Cycle
+ */
+@AllArgsConstructor
+@Data
+@Document(collection = "cycle_usage_rollup")
+@CompoundIndex(name = "userIdMdnStartDateIndex", def = "{'userId': 1, 'mdn': 1, 'startDate': 1}") // daily usage changes find the rollups whose window holds the usage date, prefix also serves userId deletes
+public class CycleUsageRollup {
+    /**
+     * Cycle ID - Primary Key
+     */
+    @MongoId
+    private String id;
+    /**
+     * User ID
+     */
+    private String userId;
+    /**
+     * MDN (Phone number)
+     */
+    private String mdn;
+    /**
+     * Start Date of the cycle
+     */
+    private Date startDate;
+    /**
+     * End Date of the cycle
+     */
+    private Date endDate;
+    /**
+     * Total used in Mb over the cycle
+     */
+    private long totalInMb;
+    /**
+     * Number of days with usage
+     */
+    private int days;
+    /**
+     * Day with the highest used in Mb, null if there is no usage
+     */
+    private Peak peak;
+    /**
+     * Number of changes applied, a rebuild only replaces the totals if it is unchanged
+     */
+    private long version;
+
+    /**
+     * Highest Daily Usage of a cycle
+     * <p>
+     * Used in Mb comes first so $max compares it before the usage date, the latest day wins a tie
+     */
+    @AllArgsConstructor
+    @Data
+    public static class Peak {
+        /**
+         * Used in Mb
+         */
+        private Integer usedInMb;
+        /**
+         * Usage Date
+         */
+        private Date usageDate;
+    }
+}
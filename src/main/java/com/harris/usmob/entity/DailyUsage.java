@@ -16,8 +16,8 @@ import java.util.Date;
 @Data
 @Document(collection = "daily_usage")
 @CompoundIndexes({
-        @CompoundIndex(name = "userIdMdnIndex", def = "{'userId': 1, 'mdn': 1}"), // compound index as frequent queries on userId and mdn
-        @CompoundIndex(name = "mdnUsageDateIndex", def = "{'mdn': 1, 'usageDate': 1}")} // compound index for quicker writes for updateUsedInMb
+        @CompoundIndex(name = "userIdMdnUsageDateIndex", def = "{'userId': 1, 'mdn': 1, 'usageDate': 1}"), // history reads a usageDate range per userId and mdn, prefix also serves userId and mdn lookups
+        @CompoundIndex(name = "mdnUsageDateIndex", def = "{'mdn': 1, 'usageDate': 1}", unique = true)} // unique as one usage per mdn per day, also speeds up updateUsedInMb
 )
 
 public class DailyUsage {
@@ -0,0 +1,52 @@
+package com.harris.usmob.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.util.Date;
+
+/**
+ * Entity for the stored response of a request made with an idempotency key
+ */
+@AllArgsConstructor
+@Data
+@Document(collection = "idempotency_record")
+public class IdempotencyRecord {
+    /**
+     * Endpoint scope and idempotency key - Primary Key
+     */
+    @MongoId
+    private String id;
+    /**
+     * HTTP status code of the original response
+     */
+    private int status;
+    /**
+     * Body of the original response
+     */
+    private String body;
+    /**
+     * Whether the body is JSON rather than plain text
+     */
+    private boolean json;
+    /**
+     * Hash of the request body the key was first used with
+     */
+    private String fingerprint;
+    /**
+     * Whether the original request is still running and has no response yet
+     */
+    private boolean pending;
+    /**
+     * Time until which the pending original request holds the key, a retry may take it over afterwards
+     */
+    private Date leaseUntil;
+    /**
+     * Time the original request was received
+     */
+    @Indexed(expireAfter = "24h") // clients stop retrying long before a day has passed
+    private Date createdAt;
+}
@@ -0,0 +1,57 @@
+package com.harris.usmob.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+/**
+ * Entity counting the cycle and daily usage writes of a user and MDN
+ * <p>
+ * Never deleted, so a version is never handed out twice for the same line.
+ */
+@AllArgsConstructor
+@Data
+@Document(collection = "line_version")
+public class LineVersion {
+    /**
+     * User ID and MDN - Primary Key
+     */
+    @MongoId
+    private String id;
+    /**
+     * User ID
+     */
+    @Indexed // bumped with the user
+    private String userId;
+    /**
+     * MDN (Phone number)
+     */
+    private String mdn;
+    /**
+     * Number of writes to the cycles and daily usages of the line
+     */
+    private long version;
+
+    /**
+     * Builds the ID of the version of a user and MDN
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return Line Version ID
+     */
+    public static String idOf(String userId, String mdn) {
+        return userId + ":" + mdn;
+    }
+
+    /**
+     * Builds the strong ETag of a version
+     *
+     * @param version Version
+     * @return Quoted ETag
+     */
+    public static String eTagOf(long version) {
+        return "\"" + version + "\"";
+    }
+}
@@ -0,0 +1,28 @@
+package com.harris.usmob.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.util.Date;
+
+/**
+ * Entity for a raw usage event that has already been rolled up
+ */
+@AllArgsConstructor
+@Data
+@Document(collection = "processed_usage_event")
+public class ProcessedUsageEvent {
+    /**
+     * Event ID - Primary Key
+     */
+    @MongoId
+    private String id;
+    /**
+     * Time the event was processed
+     */
+    @Indexed(expireAfter = "30d") // retries arrive well within 30 days, so older ids can expire
+    private Date processedAt;
+}
@@ -0,0 +1,59 @@
+package com.harris.usmob.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.util.Date;
+
+/**
+ * Entity holding usage event bytes below one Mb that an instance has not written as daily usage yet
+ * <p>
+ * Kept per instance, so only the instance that carries the bytes ever changes them.
+ */
+@AllArgsConstructor
+@Data
+@Document(collection = "usage_carry")
+public class UsageCarry {
+    /**
+     * Node ID, MDN, usage date and user ID - Primary Key
+     */
+    @MongoId
+    private String id;
+    /**
+     * ID of the instance carrying the bytes
+     */
+    @Indexed // loaded when the instance starts
+    private String nodeId;
+    /**
+     * MDN (Phone number)
+     */
+    private String mdn;
+    /**
+     * Usage Date
+     */
+    private Date usageDate;
+    /**
+     * User ID owning the MDN
+     */
+    private String userId;
+    /**
+     * Bytes carried, below one Mb
+     */
+    private long bytes;
+
+    /**
+     * Builds the ID of the bytes an instance carries for a daily usage
+     *
+     * @param nodeId    Node ID
+     * @param mdn       MDN
+     * @param usageDate Usage Date
+     * @param userId    User ID
+     * @return Usage Carry ID
+     */
+    public static String idOf(String nodeId, String mdn, Date usageDate, String userId) {
+        return nodeId + ":" + mdn + ":" + usageDate.getTime() + ":" + userId;
+    }
+}
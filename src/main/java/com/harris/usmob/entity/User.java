@@ -13,6 +13,11 @@ import org.springframework.data.mongodb.core.mapping.MongoId;
 @Data
 @Document(collection = "user")
 public class User {
+    /**
+     * Collation comparing emails without case, shared by the email index and the email queries so they use it
+     */
+    public static final String EMAIL_COLLATION = "{ 'locale': 'en', 'strength': 2 }";
+
     /**
      * User ID - Primary Key
      */
@@ -21,6 +26,7 @@ public class User {
     /**
      * MDN (Phone number)
      */
+    @Indexed // indexed as usage events are resolved to users by mdn
     private String mdn;
     /**
      * First Name of user
@@ -33,7 +39,7 @@ public class User {
     /**
      * Email of user
      */
-    @Indexed(unique = true) // indexed as query email frequently
+    @Indexed(name = "emailCaseInsensitiveIndex", unique = true, collation = EMAIL_COLLATION) // indexed as query email frequently, unique without case so emails stored before normalizing still clash
     private String email;
     /**
      * Password of user
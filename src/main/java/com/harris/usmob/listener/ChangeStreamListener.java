@@ -0,0 +1,298 @@
+package com.harris.usmob.listener;
+
+import com.harris.usmob.config.NearCacheProperties;
+import com.harris.usmob.config.NodeIds;
+import com.harris.usmob.entity.ChangeStreamToken;
+import com.harris.usmob.entity.Cycle;
+import com.harris.usmob.entity.User;
+import com.harris.usmob.repository.ChangeStreamTokenRepository;
+import com.harris.usmob.service.NearCache;
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listener invalidating the near caches on every write to the user and cycle collections
+ * <p>
+ * Watches the database from a single thread once the application is ready, when enabled. The
+ * position in the stream is saved under the node ID of the instance so a restart resumes where
+ * it stopped. When the stream fails, writes made until it resumes would be missed, so every near
+ * cache is cleared before reconnecting. Needs a replica set.
+ */
+@Component
+public class ChangeStreamListener implements ApplicationListener<ApplicationReadyEvent> {
+
+    /**
+     * Longest wait for a change before checking whether to stop
+     */
+    static final Duration MAX_AWAIT = Duration.ofSeconds(1);
+    /**
+     * Wait before reconnecting after the stream fails
+     */
+    static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+    /**
+     * MongoDB error codes for a resume token that is no longer in the oplog
+     */
+    static final Set<Integer> HISTORY_LOST_CODES = Set.of(280, 286);
+
+    /**
+     * Mongo Template
+     */
+    private final MongoTemplate mongoTemplate;
+    /**
+     * Change Stream Token Repository
+     */
+    private final ChangeStreamTokenRepository changeStreamTokenRepository;
+    /**
+     * Near caches told about every write
+     */
+    private final List<NearCache> nearCaches;
+    /**
+     * Change stream configuration
+     */
+    private final NearCacheProperties.ChangeStreams properties;
+    /**
+     * Counts reconnects after the stream failed
+     */
+    private final Counter restarts;
+    /**
+     * Name of the user collection
+     */
+    private final String userCollection;
+    /**
+     * Name of the cycle collection
+     */
+    private final String cycleCollection;
+
+    /**
+     * Whether the watching thread should keep running
+     */
+    private volatile boolean running;
+    /**
+     * Thread watching the stream, null until started
+     */
+    private Thread thread;
+    /**
+     * Resume token of the last change seen, null to start from now
+     */
+    private volatile BsonDocument position;
+    /**
+     * Resume token last saved
+     */
+    private BsonDocument savedPosition;
+    /**
+     * Time in epoch milliseconds the resume token was last saved
+     */
+    private long savedAt;
+
+    /**
+     * Creates the listener and registers its metrics
+     *
+     * @param mongoTemplate               Mongo Template
+     * @param changeStreamTokenRepository Change Stream Token Repository
+     * @param nearCaches                  Near caches
+     * @param nearCacheProperties         Near cache configuration
+     * @param meterRegistry               Meter Registry
+     */
+    public ChangeStreamListener(MongoTemplate mongoTemplate, ChangeStreamTokenRepository changeStreamTokenRepository,
+                                List<NearCache> nearCaches, NearCacheProperties nearCacheProperties, MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.changeStreamTokenRepository = changeStreamTokenRepository;
+        this.nearCaches = nearCaches;
+        this.properties = nearCacheProperties.getChangeStreams();
+        this.userCollection = mongoTemplate.getCollectionName(User.class);
+        this.cycleCollection = mongoTemplate.getCollectionName(Cycle.class);
+
+        restarts = Counter.builder("usmob.near_cache.change_stream.restarts")
+                .description("Number of times the near cache change stream failed and was reopened")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts watching the stream from the saved resume token, if enabled
+     *
+     * @param applicationReadyEvent Application Ready Event
+     */
+    @Override
+    public synchronized void onApplicationEvent(@NonNull ApplicationReadyEvent applicationReadyEvent) {
+        if (!properties.isEnabled() || thread != null) {
+            return;
+        }
+
+        position = changeStreamTokenRepository.findById(nodeId())
+                .map(token -> BsonDocument.parse(token.getResumeToken()))
+                .orElse(null);
+        savedPosition = position;
+
+        running = true;
+        thread = Thread.ofPlatform().name("near-cache-change-stream").daemon().start(this::watch);
+    }
+
+    /**
+     * Stops watching and saves the resume token before the application stops
+     *
+     * @throws InterruptedException if interrupted while waiting for the watching thread
+     */
+    @PreDestroy
+    public synchronized void stop() throws InterruptedException {
+        if (thread == null) {
+            return;
+        }
+
+        running = false;
+        thread.join(MAX_AWAIT.multipliedBy(5).toMillis());
+        saveToken(true);
+    }
+
+    /**
+     * Watches the stream until stopped, reopening it after failures
+     */
+    private void watch() {
+        while (running) {
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = open()) {
+                while (running) {
+                    ChangeStreamDocument<Document> change = cursor.tryNext();
+                    if (change != null) {
+                        apply(change);
+                    }
+
+                    // Also moves past changes to other collections
+                    BsonDocument token = cursor.getResumeToken();
+                    if (token != null) {
+                        position = token;
+                    }
+                    saveToken(false);
+                }
+            } catch (RuntimeException e) {
+                // Also token saves translated by Spring and failing near caches, the thread must not die
+                if (!running) {
+                    return;
+                }
+                restarts.increment();
+                if (e instanceof MongoException mongoException && HISTORY_LOST_CODES.contains(mongoException.getCode())) {
+                    position = null;
+                }
+                nearCaches.forEach(NearCache::invalidateAll);
+
+                try {
+                    Thread.sleep(RETRY_DELAY);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens the stream of the user and cycle collections after the current position
+     *
+     * @return Change stream cursor
+     */
+    private MongoChangeStreamCursor<ChangeStreamDocument<Document>> open() {
+        ChangeStreamIterable<Document> stream = mongoTemplate.getDb()
+                .watch(List.of(Aggregates.match(Filters.in("ns.coll", userCollection, cycleCollection))))
+                .fullDocument(FullDocument.UPDATE_LOOKUP)
+                .maxAwaitTime(MAX_AWAIT.toMillis(), TimeUnit.MILLISECONDS);
+
+        BsonDocument startAfter = position;
+        return (startAfter == null ? stream : stream.startAfter(startAfter)).cursor();
+    }
+
+    /**
+     * Tells every near cache about a change
+     *
+     * @param change Change
+     */
+    void apply(ChangeStreamDocument<Document> change) {
+        String collection = change.getNamespace() == null ? null : change.getNamespace().getCollectionName();
+        String id = idOf(change.getDocumentKey());
+
+        // Drops, renames and invalidations have no document
+        if (id == null) {
+            nearCaches.forEach(NearCache::invalidateAll);
+            return;
+        }
+
+        Document document = change.getFullDocument();
+
+        if (userCollection.equals(collection)) {
+            String email = document == null ? null : document.getString("email");
+            nearCaches.forEach(nearCache -> nearCache.userChanged(id, email));
+        } else if (cycleCollection.equals(collection)) {
+            // Updates may move a cycle to another line, so drop the line it was on too
+            if (document == null || change.getOperationType() != OperationType.INSERT) {
+                nearCaches.forEach(nearCache -> nearCache.cycleDeleted(id));
+            }
+            if (document != null) {
+                nearCaches.forEach(nearCache -> nearCache.cycleChanged(document.getString("userId"), document.getString("mdn")));
+            }
+        }
+    }
+
+    /**
+     * Saves the resume token if it moved and the save interval passed
+     *
+     * @param force Whether to save regardless of the interval
+     */
+    private void saveToken(boolean force) {
+        BsonDocument token = position;
+        long now = System.currentTimeMillis();
+
+        if (token == null || token.equals(savedPosition) || (!force && now - savedAt < properties.getTokenSaveIntervalMs())) {
+            return;
+        }
+
+        changeStreamTokenRepository.save(new ChangeStreamToken(nodeId(), token.toJson(), new Date(now)));
+        savedPosition = token;
+        savedAt = now;
+    }
+
+    /**
+     * Gets the ID the resume token of this instance is saved under
+     *
+     * @return Configured node ID, or the host name if blank
+     */
+    private String nodeId() {
+        return NodeIds.resolve(properties.getNodeId());
+    }
+
+    /**
+     * Gets the ID of the changed document as stored by the repositories
+     *
+     * @param documentKey Document key of the change
+     * @return Document ID, or null if the change has no document
+     */
+    static String idOf(BsonDocument documentKey) {
+        BsonValue id = documentKey == null ? null : documentKey.get("_id");
+
+        if (id == null) {
+            return null;
+        }
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        return id.isString() ? id.asString().getValue() : id.toString();
+    }
+}
@@ -0,0 +1,88 @@
+package com.harris.usmob.repository;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Helpers shared by the custom repository implementations for unordered bulk writes
+ */
+final class BulkWrites {
+
+    /**
+     * MongoDB error code for a unique index violation
+     */
+    static final int DUPLICATE_KEY_ERROR_CODE = 11000;
+
+    private BulkWrites() {
+    }
+
+    /**
+     * Inserts all documents in a single unordered bulk write
+     *
+     * @param mongoTemplate   Mongo Template
+     * @param entityClass     Entity class of the documents
+     * @param documents       Documents to insert
+     * @param duplicateReason Reason reported for documents rejected by a unique index
+     * @return Map of failed positions in documents to the error message
+     */
+    static Map<Integer, String> insertUnordered(MongoTemplate mongoTemplate, Class<?> entityClass, List<?> documents, String duplicateReason) {
+        if (documents.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, entityClass);
+        bulkOperations.insert(documents);
+
+        return execute(bulkOperations, duplicateReason);
+    }
+
+    /**
+     * Executes a bulk write and collects the failed positions
+     *
+     * @param bulkOperations  Bulk Operations to execute
+     * @param duplicateReason Reason reported for documents rejected by a unique index
+     * @return Map of failed positions to the error message
+     */
+    static Map<Integer, String> execute(BulkOperations bulkOperations, String duplicateReason) {
+        return execute(bulkOperations, duplicateReason, upsert -> {
+        });
+    }
+
+    /**
+     * Executes a bulk write, collects the failed positions and reports the upserted positions
+     *
+     * @param bulkOperations  Bulk Operations to execute
+     * @param duplicateReason Reason reported for documents rejected by a unique index
+     * @param upserted        Called with the position and ID of every document the bulk write inserted by upsert
+     * @return Map of failed positions to the error message
+     */
+    static Map<Integer, String> execute(BulkOperations bulkOperations, String duplicateReason, Consumer<BulkWriteUpsert> upserted) {
+        Map<Integer, String> failures = new HashMap<>();
+        BulkWriteResult result;
+
+        try {
+            result = bulkOperations.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                String reason = error.getCode() == DUPLICATE_KEY_ERROR_CODE ? duplicateReason : error.getMessage();
+                failures.put(error.getIndex(), reason);
+            }
+            result = e.getResult();
+        }
+
+        if (result.wasAcknowledged()) {
+            result.getUpserts().forEach(upserted);
+        }
+
+        return failures;
+    }
+}
@@ -0,0 +1,10 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.entity.ChangeStreamToken;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+/**
+ * Repository for Change Stream Token
+ */
+public interface ChangeStreamTokenRepository extends MongoRepository<ChangeStreamToken, String> {
+}
@@ -0,0 +1,15 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.entity.CurrentCycle;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+/**
+ * Repository for Current Cycle
+ */
+public interface CurrentCycleRepository extends MongoRepository<CurrentCycle, String>, CurrentCycleRepositoryCustom {
+    /**
+     * Delete by User ID
+     * @param userId User ID
+     */
+    void deleteByUserId(String userId);
+}
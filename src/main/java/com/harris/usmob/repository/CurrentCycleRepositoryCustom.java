@@ -0,0 +1,57 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.entity.CurrentCycle;
+import com.harris.usmob.entity.Cycle;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Custom Current Cycle repository operations that derived queries cannot express
+ */
+public interface CurrentCycleRepositoryCustom {
+    /**
+     * Atomically points the current cycle of the cycle's user and MDN at the cycle if it ends later
+     *
+     * @param cycle Added cycle
+     */
+    void advance(Cycle cycle);
+
+    /**
+     * Finds the current cycles of many lines, checked against the cycle collection
+     * <p>
+     * A cycle saved by a request that stopped before advancing the pointer ends after the pointer,
+     * so every line is checked for a later cycle in one query on the (userId, mdn, endDate) index.
+     * Lines with one are answered with it and their pointer is advanced.
+     *
+     * @param lines Lines
+     * @return List of CurrentCycle objects, one per line with a cycle
+     */
+    List<CurrentCycle> findCurrent(Collection<LineDTO> lines);
+
+    /**
+     * Advances the current cycles for many added cycles in a single unordered bulk write
+     *
+     * @param cycles Added cycles
+     */
+    void advanceAll(List<Cycle> cycles);
+
+    /**
+     * Moves the current cycle back to the latest remaining cycle if it pointed at a deleted cycle
+     * <p>
+     * The pointer is replaced in place, or removed when no cycle remains, so readers never miss it
+     *
+     * @param cycle Deleted cycle
+     */
+    void retreat(Cycle cycle);
+
+    /**
+     * Rebuilds every current cycle from the cycle collection
+     * <p>
+     * Merged into the live collection, keeping pointers that concurrently advanced further
+     *
+     * @return Number of current cycles
+     */
+    long rebuild();
+}
@@ -0,0 +1,315 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.entity.CurrentCycle;
+import com.harris.usmob.entity.Cycle;
+import lombok.AllArgsConstructor;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.MergeOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementation of the custom Current Cycle repository operations
+ * <p>
+ * Pointers only move forward: the upsert matches the pointer only while it ends before the cycle,
+ * so when it already ends later the upsert tries to insert a second document with the same ID
+ * and the duplicate key error is the expected "no change" outcome.
+ */
+@AllArgsConstructor
+public class CurrentCycleRepositoryCustomImpl implements CurrentCycleRepositoryCustom {
+
+    /**
+     * Mongo Template
+     */
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void advance(Cycle cycle) {
+        try {
+            mongoTemplate.upsert(endsBefore(cycle), pointAt(cycle), CurrentCycle.class);
+        } catch (DuplicateKeyException e) {
+            // Current cycle already ends at or after this cycle
+        }
+    }
+
+    @Override
+    public List<CurrentCycle> findCurrent(Collection<LineDTO> lines) {
+        if (lines.isEmpty()) {
+            return List.of();
+        }
+
+        Map<String, CurrentCycle> current = new HashMap<>();
+        mongoTemplate.find(new Query(Criteria.where("_id").in(idsOf(lines))), CurrentCycle.class)
+                .forEach(pointer -> current.put(pointer.getId(), pointer));
+
+        List<Cycle> later = new ArrayList<>();
+        for (Cycle cycle : mongoTemplate.find(laterThan(lines, current), Cycle.class)) {
+            if (later(current, cycle)) {
+                current.put(CurrentCycle.idOf(cycle.getUserId(), cycle.getMdn()), toCurrent(cycle));
+                later.add(cycle);
+            }
+        }
+        advanceAll(later);
+
+        return new ArrayList<>(current.values());
+    }
+
+    @Override
+    public void advanceAll(List<Cycle> cycles) {
+        // Only the latest cycle of each user and MDN can move its pointer
+        Map<String, Cycle> latest = new LinkedHashMap<>();
+        for (Cycle cycle : cycles) {
+            latest.merge(CurrentCycle.idOf(cycle.getUserId(), cycle.getMdn()), cycle,
+                    (a, b) -> b.getEndDate().after(a.getEndDate()) ? b : a);
+        }
+
+        if (latest.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CurrentCycle.class);
+        for (Cycle cycle : latest.values()) {
+            bulkOperations.upsert(endsBefore(cycle), pointAt(cycle));
+        }
+
+        // Duplicate key failures are pointers that already end later
+        BulkWrites.execute(bulkOperations, "Current cycle ends later");
+    }
+
+    @Override
+    public void retreat(Cycle cycle) {
+        repoint(cycle.getUserId(), cycle.getMdn(), cycle.getId());
+    }
+
+    @Override
+    public long rebuild() {
+        String currentCycleCollection = mongoTemplate.getCollectionName(CurrentCycle.class);
+
+        // Pointers advanced while the rebuild runs end later than the ones it computed, so they are kept
+        MergeOperation merge = Aggregation.merge()
+                .intoCollection(currentCycleCollection)
+                .whenDocumentsMatch(MergeOperation.WhenDocumentsMatch.updateWith(List.of(keepLater())))
+                .whenDocumentsDontMatch(MergeOperation.WhenDocumentsDontMatch.insertNewDocument())
+                .build();
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.sort(Sort.by(Sort.Order.asc("userId"), Sort.Order.asc("mdn"), Sort.Order.desc("endDate"))),
+                context -> new Document("$group", new Document("_id", new Document("userId", "$userId").append("mdn", "$mdn"))
+                        .append("cycleId", new Document("$first", "$_id"))
+                        .append("startDate", new Document("$first", "$startDate"))
+                        .append("endDate", new Document("$first", "$endDate"))),
+                context -> new Document("$project", new Document("_id", new Document("$concat", List.of("$_id.userId", ":", "$_id.mdn")))
+                        .append("userId", "$_id.userId")
+                        .append("mdn", "$_id.mdn")
+                        .append("cycleId", new Document("$toString", "$cycleId"))
+                        .append("startDate", 1)
+                        .append("endDate", 1)),
+                merge);
+
+        mongoTemplate.aggregate(aggregation, mongoTemplate.getCollectionName(Cycle.class), Document.class);
+
+        // Pointers no cycle ends at or after point at deleted cycles, or at lines without cycles
+        for (Document stale : mongoTemplate.aggregate(stale(mongoTemplate.getCollectionName(Cycle.class)), currentCycleCollection, Document.class)) {
+            repoint(stale.getString("userId"), stale.getString("mdn"), stale.getString("cycleId"));
+        }
+
+        return mongoTemplate.count(new Query(), CurrentCycle.class);
+    }
+
+    /**
+     * Points the current cycle of a user and MDN at its latest cycle if it still points at a cycle
+     * <p>
+     * The pointer is replaced or removed in one conditional write, so it never goes missing while
+     * the line has cycles. A cycle added meanwhile may have failed to advance past the old pointer,
+     * so the latest cycle is advanced once more after the write.
+     *
+     * @param userId  User ID
+     * @param mdn     MDN
+     * @param cycleId Cycle ID the pointer should still point at
+     */
+    private void repoint(String userId, String mdn, String cycleId) {
+        Query pointsAtCycle = pointsAt(userId, mdn, cycleId);
+        Cycle latest = mongoTemplate.findOne(latestOf(userId, mdn), Cycle.class);
+
+        long changed = latest == null
+                ? mongoTemplate.remove(pointsAtCycle, CurrentCycle.class).getDeletedCount()
+                : mongoTemplate.updateFirst(pointsAtCycle, pointAt(latest), CurrentCycle.class).getMatchedCount();
+        if (changed == 0) {
+            return;
+        }
+
+        Cycle latestNow = mongoTemplate.findOne(latestOf(userId, mdn), Cycle.class);
+        if (latestNow != null) {
+            advance(latestNow);
+        }
+    }
+
+    /**
+     * Builds the query matching the current cycle of the cycle's user and MDN while it ends before the cycle
+     * <p>
+     * Shared with the reactive repository
+     *
+     * @param cycle Cycle
+     * @return Query object
+     */
+    public static Query endsBefore(Cycle cycle) {
+        return new Query(Criteria.where("_id").is(CurrentCycle.idOf(cycle.getUserId(), cycle.getMdn()))
+                .and("endDate").lt(cycle.getEndDate()));
+    }
+
+    /**
+     * Builds the query matching the current cycle of a user and MDN while it points at a cycle
+     * <p>
+     * Shared with the reactive repository
+     *
+     * @param userId  User ID
+     * @param mdn     MDN
+     * @param cycleId Cycle ID
+     * @return Query object
+     */
+    public static Query pointsAt(String userId, String mdn, String cycleId) {
+        return new Query(Criteria.where("_id").is(CurrentCycle.idOf(userId, mdn)).and("cycleId").is(cycleId));
+    }
+
+    /**
+     * Builds the query finding the latest cycle of a user and MDN, served by the (userId, mdn, endDate) index
+     * <p>
+     * Shared with the reactive repository
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return Query object
+     */
+    public static Query latestOf(String userId, String mdn) {
+        return new Query(Criteria.where("userId").is(userId).and("mdn").is(mdn))
+                .with(Sort.by(Sort.Direction.DESC, "endDate"))
+                .limit(1);
+    }
+
+    /**
+     * Gets the current cycle IDs of lines
+     * <p>
+     * Shared with the reactive repository
+     *
+     * @param lines Lines
+     * @return List of Current Cycle IDs
+     */
+    public static List<String> idsOf(Collection<LineDTO> lines) {
+        return lines.stream().map(line -> CurrentCycle.idOf(line.getUserId(), line.getMdn())).distinct().toList();
+    }
+
+    /**
+     * Builds the query finding the cycles of lines that end after their current cycle, or any cycle of lines without one
+     * <p>
+     * Shared with the reactive repository
+     *
+     * @param lines    Lines, not empty
+     * @param pointers Current cycles by ID
+     * @return Query object
+     */
+    public static Query laterThan(Collection<LineDTO> lines, Map<String, CurrentCycle> pointers) {
+        List<Criteria> perLine = lines.stream().distinct()
+                .map(line -> {
+                    Criteria criteria = Criteria.where("userId").is(line.getUserId()).and("mdn").is(line.getMdn());
+                    CurrentCycle pointer = pointers.get(CurrentCycle.idOf(line.getUserId(), line.getMdn()));
+                    return pointer == null ? criteria : criteria.and("endDate").gt(pointer.getEndDate());
+                })
+                .toList();
+
+        return new Query(new Criteria().orOperator(perLine));
+    }
+
+    /**
+     * Checks whether a cycle ends after the current cycle of its line
+     * <p>
+     * Shared with the reactive repository
+     *
+     * @param pointers Current cycles by ID
+     * @param cycle    Cycle
+     * @return Boolean
+     */
+    public static boolean later(Map<String, CurrentCycle> pointers, Cycle cycle) {
+        CurrentCycle pointer = pointers.get(CurrentCycle.idOf(cycle.getUserId(), cycle.getMdn()));
+        return pointer == null || cycle.getEndDate().after(pointer.getEndDate());
+    }
+
+    /**
+     * Builds the current cycle pointing at a cycle
+     * <p>
+     * Shared with the reactive repository
+     *
+     * @param cycle Cycle
+     * @return CurrentCycle object
+     */
+    public static CurrentCycle toCurrent(Cycle cycle) {
+        return new CurrentCycle(CurrentCycle.idOf(cycle.getUserId(), cycle.getMdn()), cycle.getUserId(), cycle.getMdn(),
+                cycle.getId(), cycle.getStartDate(), cycle.getEndDate());
+    }
+
+    /**
+     * Builds the update pointing a current cycle at the cycle
+     * <p>
+     * Shared with the reactive repository
+     *
+     * @param cycle Cycle
+     * @return Update object
+     */
+    public static Update pointAt(Cycle cycle) {
+        return new Update()
+                .set("userId", cycle.getUserId())
+                .set("mdn", cycle.getMdn())
+                .set("cycleId", cycle.getId())
+                .set("startDate", cycle.getStartDate())
+                .set("endDate", cycle.getEndDate());
+    }
+
+    /**
+     * Builds the $merge update keeping whichever of the stored and rebuilt pointers ends later
+     *
+     * @return Aggregation stage
+     */
+    private static AggregationOperation keepLater() {
+        return context -> new Document("$replaceWith", new Document("$cond", List.of(
+                new Document("$gt", List.of("$endDate", "$$new.endDate")), "$$ROOT", "$$new")));
+    }
+
+    /**
+     * Builds the aggregation finding the current cycles that no cycle of their line ends at or after
+     *
+     * @param cycleCollection Name of the cycle collection
+     * @return Aggregation on the current cycle collection
+     */
+    private static Aggregation stale(String cycleCollection) {
+        // Served by the (userId, mdn, endDate) index
+        List<Document> laterCycle = List.of(
+                new Document("$match", new Document("$expr", new Document("$and", List.of(
+                        new Document("$eq", List.of("$userId", "$$userId")),
+                        new Document("$eq", List.of("$mdn", "$$mdn")),
+                        new Document("$gte", List.of("$endDate", "$$endDate")))))),
+                new Document("$limit", 1),
+                new Document("$project", new Document("_id", 1)));
+
+        return Aggregation.newAggregation(
+                context -> new Document("$lookup", new Document("from", cycleCollection)
+                        .append("let", new Document("userId", "$userId").append("mdn", "$mdn").append("endDate", "$endDate"))
+                        .append("pipeline", laterCycle)
+                        .append("as", "laterCycle")),
+                context -> new Document("$match", new Document("laterCycle", new Document("$size", 0))),
+                context -> new Document("$project", new Document("userId", 1).append("mdn", 1).append("cycleId", 1)));
+    }
+}
@@ -1,14 +1,18 @@
 package com.harris.usmob.repository;
 
 import com.harris.usmob.entity.Cycle;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 /**
  * Repository for Cycle
  */
-public interface CycleRepository extends MongoRepository<Cycle, String> {
+public interface CycleRepository extends MongoRepository<Cycle, String>, CycleRepositoryCustom {
     /**
      * Delete by User ID
      * @param userId User ID
@@ -16,11 +20,48 @@ public interface CycleRepository extends MongoRepository<Cycle, String> {
     void deleteByUserId(String userId);
 
     /**
-     * Find by User ID and MDN
+     * Find by User ID and MDN, reading only the ID, start date and end date
      * @param userId User ID
      * @param mdn MDN
      * @return List of Cycle objects
      */
+    @Query(fields = "{ 'startDate': 1, 'endDate': 1 }")
     List<Cycle> findByUserIdAndMdn(String userId, String mdn);
 
+    /**
+     * Exists a cycle of a User ID and MDN holding a date, start and end date included
+     * <p>
+     * Served by the (userId, mdn, endDate) index, only cycles ending on or after the date are read.
+     * @param userId User ID
+     * @param mdn MDN
+     * @param date Date
+     * @return Boolean
+     */
+    @Query(value = "{ 'userId': ?0, 'mdn': ?1, 'startDate': { '$lte': ?2 }, 'endDate': { '$gte': ?2 } }", exists = true)
+    boolean existsHolding(String userId, String mdn, Date date);
+
+    /**
+     * Find by User ID in
+     * @param userIds User IDs
+     * @return List of Cycle objects
+     */
+    List<Cycle> findByUserIdIn(Collection<String> userIds);
+
+    /**
+     * Find the first cycles sorted by ID, reading only the ID, start date and end date
+     * @param limit Maximum number of cycles
+     * @return List of Cycle objects
+     */
+    @Query(fields = "{ 'startDate': 1, 'endDate': 1 }")
+    List<Cycle> findAllByOrderByIdAsc(Limit limit);
+
+    /**
+     * Find the cycles after an ID sorted by ID, reading only the ID, start date and end date
+     * @param id ID of the last cycle of the previous page
+     * @param limit Maximum number of cycles
+     * @return List of Cycle objects
+     */
+    @Query(fields = "{ 'startDate': 1, 'endDate': 1 }")
+    List<Cycle> findByIdGreaterThanOrderByIdAsc(String id, Limit limit);
+
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.entity.Cycle;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Custom repository operations for Cycle that are not expressible as derived queries
+ */
+public interface CycleRepositoryCustom {
+    /**
+     * Inserts all cycles in a single unordered bulk write
+     * <p>
+     * A failing document does not stop the remaining documents from being written.
+     *
+     * @param cycles Cycles to insert
+     * @return Map of failed positions in cycles to the error message
+     */
+    Map<Integer, String> insertUnordered(List<Cycle> cycles);
+
+    /**
+     * Streams every cycle from a database cursor, reading only the fields of a CycleDTO
+     * <p>
+     * The stream holds the cursor open and must be closed.
+     *
+     * @return Stream of Cycle objects
+     */
+    Stream<Cycle> streamAll();
+}
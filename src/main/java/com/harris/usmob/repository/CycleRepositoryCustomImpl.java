@@ -0,0 +1,35 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.entity.Cycle;
+import lombok.AllArgsConstructor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Implementation of the custom Cycle repository operations
+ */
+@AllArgsConstructor
+public class CycleRepositoryCustomImpl implements CycleRepositoryCustom {
+
+    /**
+     * Mongo Template
+     */
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public Map<Integer, String> insertUnordered(List<Cycle> cycles) {
+        return BulkWrites.insertUnordered(mongoTemplate, Cycle.class, cycles, "Cycle already exists");
+    }
+
+    @Override
+    public Stream<Cycle> streamAll() {
+        Query query = new Query();
+        query.fields().include("startDate", "endDate");
+
+        return mongoTemplate.stream(query, Cycle.class);
+    }
+}
@@ -0,0 +1,15 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.entity.CycleUsageRollup;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+/**
+ * Repository for Cycle Usage Rollup
+ */
+public interface CycleUsageRollupRepository extends MongoRepository<CycleUsageRollup, String>, CycleUsageRollupRepositoryCustom {
+    /**
+     * Delete by User ID
+     * @param userId User ID
+     */
+    void deleteByUserId(String userId);
+}
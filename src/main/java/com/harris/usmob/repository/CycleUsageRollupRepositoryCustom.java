@@ -0,0 +1,64 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.entity.DailyUsage;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Custom Cycle Usage Rollup repository operations that derived queries cannot express
+ */
+public interface CycleUsageRollupRepositoryCustom {
+    /**
+     * Atomically applies a change of one daily usage to the rollups of the cycles holding its usage date
+     * <p>
+     * A lowered or deleted peak day cannot be taken back with $max, so those rollups are recomputed.
+     *
+     * @param userId    User ID
+     * @param mdn       MDN
+     * @param usageDate Usage Date
+     * @param deltaInMb Change in used in Mb
+     * @param deltaDays 1 if the daily usage was created, -1 if it was deleted, otherwise 0
+     * @param usedInMb  Used in Mb after the change, or null if the daily usage was deleted
+     */
+    void apply(String userId, String mdn, Date usageDate, long deltaInMb, int deltaDays, Integer usedInMb);
+
+    /**
+     * Applies many created daily usages to the rollups in a single unordered bulk write
+     *
+     * @param dailyUsages Created daily usages
+     */
+    void applyAll(List<DailyUsage> dailyUsages);
+
+    /**
+     * Applies many written increments to the rollups in a single unordered bulk write
+     * <p>
+     * Increments with an ID created their daily usage and add a day. The peak is compared with each
+     * daily usage as it is after the increments, rollups whose peak day was lowered are recomputed.
+     *
+     * @param increments Daily Usages whose usedInMb is the amount added, see bulkIncrementUsedInMb
+     */
+    void applyIncrements(List<DailyUsage> increments);
+
+    /**
+     * Recomputes the rollups of some cycles from the daily usage collection
+     * <p>
+     * A rollup is only replaced if no change was applied to it while it was computed, otherwise it
+     * is computed again, up to MAX_REBUILD_ATTEMPTS times. A rollup that keeps changing is left as
+     * it is for the next full rebuild.
+     *
+     * @param cycleIds Cycle IDs
+     */
+    void rebuild(Collection<String> cycleIds);
+
+    /**
+     * Rebuilds every rollup from the cycle and daily usage collections
+     * <p>
+     * Each cycle is recomputed like in rebuild(cycleIds), so changes applied meanwhile are kept, and
+     * the rollups of deleted cycles are removed.
+     *
+     * @return Number of rollups
+     */
+    long rebuild();
+}
@@ -0,0 +1,324 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.entity.Cycle;
+import com.harris.usmob.entity.CycleUsageRollup;
+import com.harris.usmob.entity.DailyUsage;
+import lombok.AllArgsConstructor;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Implementation of the custom Cycle Usage Rollup repository operations
+ * <p>
+ * Rollups are created with their cycle and only ever updated with $inc and $max, so concurrent
+ * daily usage writes never overwrite each other's totals. Every change also increments the version,
+ * a rebuild replaces a rollup only if its version did not move while it was computed.
+ */
+@AllArgsConstructor
+public class CycleUsageRollupRepositoryCustomImpl implements CycleUsageRollupRepositoryCustom {
+
+    /**
+     * Number of times a rollup is computed before it is left for the next full rebuild
+     * <p>
+     * Shared with the reactive repository
+     */
+    public static final int MAX_REBUILD_ATTEMPTS = 5;
+
+    /**
+     * Number of rollup IDs checked against the cycle collection at once when removing orphaned rollups
+     */
+    private static final int ORPHAN_BATCH_SIZE = 1000;
+
+    /**
+     * Mongo Template
+     */
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void apply(String userId, String mdn, Date usageDate, long deltaInMb, int deltaDays, Integer usedInMb) {
+        mongoTemplate.updateMulti(holding(userId, mdn, usageDate), change(usageDate, deltaInMb, deltaDays, usedInMb), CycleUsageRollup.class);
+
+        if (usedInMb == null || deltaInMb < 0) {
+            List<String> cycleIds = mongoTemplate.findDistinct(peakOn(userId, mdn, usageDate), "_id", CycleUsageRollup.class, String.class);
+            rebuild(cycleIds);
+        }
+    }
+
+    @Override
+    public void applyAll(List<DailyUsage> dailyUsages) {
+        if (dailyUsages.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CycleUsageRollup.class);
+        for (DailyUsage dailyUsage : dailyUsages) {
+            bulkOperations.updateMulti(holding(dailyUsage.getUserId(), dailyUsage.getMdn(), dailyUsage.getUsageDate()),
+                    change(dailyUsage.getUsageDate(), dailyUsage.getUsedInMb(), 1, dailyUsage.getUsedInMb()));
+        }
+
+        bulkOperations.execute();
+    }
+
+    @Override
+    public void applyIncrements(List<DailyUsage> increments) {
+        if (increments.isEmpty()) {
+            return;
+        }
+
+        // Used in Mb after the increments, per MDN and usage date
+        Query written = new Query(new Criteria().orOperator(increments.stream()
+                .map(increment -> Criteria.where("mdn").is(increment.getMdn()).and("usageDate").is(increment.getUsageDate()))
+                .toList()));
+        written.fields().include("mdn", "usageDate", "usedInMb");
+        Map<String, Integer> usedInMbs = new HashMap<>();
+        for (DailyUsage dailyUsage : mongoTemplate.find(written, DailyUsage.class)) {
+            usedInMbs.put(dailyUsage.getMdn() + "|" + dailyUsage.getUsageDate().getTime(), dailyUsage.getUsedInMb());
+        }
+
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CycleUsageRollup.class);
+        List<DailyUsage> lowered = new ArrayList<>();
+        for (DailyUsage increment : increments) {
+            Integer usedInMb = usedInMbs.get(increment.getMdn() + "|" + increment.getUsageDate().getTime());
+            bulkOperations.updateMulti(holding(increment.getUserId(), increment.getMdn(), increment.getUsageDate()),
+                    change(increment.getUsageDate(), increment.getUsedInMb(), increment.getId() == null ? 0 : 1, usedInMb));
+
+            if (usedInMb == null || increment.getUsedInMb() < 0) {
+                lowered.add(increment);
+            }
+        }
+        bulkOperations.execute();
+
+        Set<String> cycleIds = new HashSet<>();
+        for (DailyUsage increment : lowered) {
+            cycleIds.addAll(mongoTemplate.findDistinct(peakOn(increment.getUserId(), increment.getMdn(), increment.getUsageDate()),
+                    "_id", CycleUsageRollup.class, String.class));
+        }
+        rebuild(cycleIds);
+    }
+
+    @Override
+    public void rebuild(Collection<String> cycleIds) {
+        cycleIds.forEach(this::rebuild);
+    }
+
+    /**
+     * Computes the rollup of a cycle again until no change is applied meanwhile, at most MAX_REBUILD_ATTEMPTS times
+     *
+     * @param cycleId Cycle ID
+     * @return Boolean, false if the rollup kept changing and was left for the next full rebuild
+     */
+    private boolean rebuild(String cycleId) {
+        for (int attempt = 0; attempt < MAX_REBUILD_ATTEMPTS; attempt++) {
+            if (rebuildOnce(cycleId)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Computes the rollup of a cycle and replaces it if no change was applied meanwhile
+     *
+     * @param cycleId Cycle ID
+     * @return Boolean, false if the rollup changed and must be computed again
+     */
+    private boolean rebuildOnce(String cycleId) {
+        CycleUsageRollup current = mongoTemplate.findById(cycleId, CycleUsageRollup.class);
+        CycleUsageRollup rebuilt = mongoTemplate.aggregate(rollups(Criteria.where("_id").is(cycleId),
+                mongoTemplate.getCollectionName(DailyUsage.class)), CycleUsageRollup.class).getUniqueMappedResult();
+
+        // The cycle was deleted
+        if (rebuilt == null) {
+            return true;
+        }
+
+        if (current == null) {
+            try {
+                mongoTemplate.insert(rebuilt);
+                return true;
+            } catch (DuplicateKeyException e) {
+                return false;
+            }
+        }
+
+        return mongoTemplate.updateFirst(unchanged(cycleId, current.getVersion()), replacing(rebuilt, current.getVersion()),
+                CycleUsageRollup.class).getMatchedCount() == 1;
+    }
+
+    @Override
+    public long rebuild() {
+        // One cycle at a time with the version check, so increments applied during the rebuild are kept
+        Query cycleIds = new Query();
+        cycleIds.fields().include("_id");
+        try (Stream<Cycle> cycles = mongoTemplate.stream(cycleIds, Cycle.class)) {
+            cycles.forEach(cycle -> rebuild(cycle.getId()));
+        }
+
+        removeOrphans();
+
+        return mongoTemplate.count(new Query(), CycleUsageRollup.class);
+    }
+
+    /**
+     * Removes the rollups of cycles that were deleted without the cycle service
+     */
+    private void removeOrphans() {
+        Query rollupIds = new Query();
+        rollupIds.fields().include("_id");
+        try (Stream<CycleUsageRollup> rollups = mongoTemplate.stream(rollupIds, CycleUsageRollup.class)) {
+            Iterator<CycleUsageRollup> iterator = rollups.iterator();
+            while (iterator.hasNext()) {
+                Set<String> batch = new HashSet<>();
+                while (iterator.hasNext() && batch.size() < ORPHAN_BATCH_SIZE) {
+                    batch.add(iterator.next().getId());
+                }
+
+                Query existing = new Query(Criteria.where("_id").in(batch));
+                existing.fields().include("_id");
+                mongoTemplate.find(existing, Cycle.class).forEach(cycle -> batch.remove(cycle.getId()));
+
+                if (!batch.isEmpty()) {
+                    mongoTemplate.remove(new Query(Criteria.where("_id").in(batch)), CycleUsageRollup.class);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the aggregation computing the rollups of the matching cycles from their daily usage
+     * <p>
+     * Shared with the reactive repository
+     *
+     * @param cycles               Criteria on the cycle collection
+     * @param dailyUsageCollection Name of the daily usage collection
+     * @return Aggregation on the Cycle type, so cycle IDs in the criteria are converted like in any other cycle query
+     */
+    public static TypedAggregation<Cycle> rollups(Criteria cycles, String dailyUsageCollection) {
+        // Usage inside the cycle window, matched on the (userId, mdn, usageDate) index
+        List<Document> usagePipeline = List.of(
+                new Document("$match", new Document("$expr", new Document("$and", List.of(
+                        new Document("$eq", List.of("$userId", "$$userId")),
+                        new Document("$eq", List.of("$mdn", "$$mdn")),
+                        new Document("$gte", List.of("$usageDate", "$$startDate")),
+                        new Document("$lte", List.of("$usageDate", "$$endDate")))))),
+                new Document("$group", new Document("_id", null)
+                        .append("totalInMb", new Document("$sum", "$usedInMb"))
+                        .append("days", new Document("$sum", 1))
+                        .append("peak", new Document("$max", new Document("usedInMb", "$usedInMb").append("usageDate", "$usageDate")))));
+
+        return Aggregation.newAggregation(Cycle.class,
+                Aggregation.match(cycles),
+                context -> new Document("$lookup", new Document("from", dailyUsageCollection)
+                        .append("let", new Document("userId", "$userId").append("mdn", "$mdn")
+                                .append("startDate", "$startDate").append("endDate", "$endDate"))
+                        .append("pipeline", usagePipeline)
+                        .append("as", "usage")),
+                context -> new Document("$unwind", new Document("path", "$usage").append("preserveNullAndEmptyArrays", true)),
+                context -> new Document("$project", new Document("_id", new Document("$toString", "$_id"))
+                        .append("userId", 1)
+                        .append("mdn", 1)
+                        .append("startDate", 1)
+                        .append("endDate", 1)
+                        .append("totalInMb", new Document("$ifNull", List.of("$usage.totalInMb", 0L)))
+                        .append("days", new Document("$ifNull", List.of("$usage.days", 0)))
+                        .append("peak", "$usage.peak")
+                        .append("version", new Document("$literal", 0L))));
+    }
+
+    /**
+     * Builds the query matching the rollups of a user and MDN whose cycle holds a usage date
+     * <p>
+     * Shared with the reactive repository
+     *
+     * @param userId    User ID
+     * @param mdn       MDN
+     * @param usageDate Usage Date
+     * @return Query object
+     */
+    public static Query holding(String userId, String mdn, Date usageDate) {
+        return new Query(Criteria.where("userId").is(userId).and("mdn").is(mdn)
+                .and("startDate").lte(usageDate).and("endDate").gte(usageDate));
+    }
+
+    /**
+     * Builds the query matching the rollups whose peak is on a usage date
+     * <p>
+     * Shared with the reactive repository
+     *
+     * @param userId    User ID
+     * @param mdn       MDN
+     * @param usageDate Usage Date
+     * @return Query object
+     */
+    public static Query peakOn(String userId, String mdn, Date usageDate) {
+        return holding(userId, mdn, usageDate).addCriteria(Criteria.where("peak.usageDate").is(usageDate));
+    }
+
+    /**
+     * Builds the query matching a rollup whose version did not move
+     * <p>
+     * Shared with the reactive repository
+     *
+     * @param cycleId Cycle ID
+     * @param version Version the rollup was read with
+     * @return Query object
+     */
+    public static Query unchanged(String cycleId, long version) {
+        // Rollups written before the version was kept have none, which reads as 0
+        Criteria current = version == 0 ? Criteria.where("version").in(0L, null) : Criteria.where("version").is(version);
+
+        return new Query(Criteria.where("_id").is(cycleId).andOperator(current));
+    }
+
+    /**
+     * Builds the update replacing the totals of a rollup with recomputed ones and moving its version
+     * <p>
+     * Shared with the reactive repository
+     *
+     * @param rebuilt Recomputed rollup
+     * @param version Version the rollup was read with
+     * @return Update object
+     */
+    public static Update replacing(CycleUsageRollup rebuilt, long version) {
+        return new Update().set("userId", rebuilt.getUserId())
+                .set("mdn", rebuilt.getMdn())
+                .set("startDate", rebuilt.getStartDate())
+                .set("endDate", rebuilt.getEndDate())
+                .set("totalInMb", rebuilt.getTotalInMb())
+                .set("days", rebuilt.getDays())
+                .set("peak", rebuilt.getPeak())
+                .set("version", version + 1);
+    }
+
+    /**
+     * Builds the update applying a change of one daily usage to a rollup
+     * <p>
+     * Shared with the reactive repository
+     *
+     * @param usageDate Usage Date
+     * @param deltaInMb Change in used in Mb
+     * @param deltaDays Change in the number of days with usage
+     * @param usedInMb  Used in Mb after the change, or null if the daily usage was deleted
+     * @return Update object
+     */
+    public static Update change(Date usageDate, long deltaInMb, int deltaDays, Integer usedInMb) {
+        Update update = new Update().inc("totalInMb", deltaInMb).inc("days", deltaDays).inc("version", 1);
+
+        if (usedInMb != null) {
+            update.max("peak", new Document("usedInMb", usedInMb).append("usageDate", usageDate));
+        }
+
+        return update;
+    }
+}
@@ -1,7 +1,9 @@
 package com.harris.usmob.repository;
 
+import com.harris.usmob.dto.DailyUsageDTO;
 import com.harris.usmob.entity.DailyUsage;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 
 import java.util.Date;
 import java.util.List;
@@ -9,7 +11,7 @@ import java.util.List;
 /**
  * Repository for Daily Usage
  */
-public interface DailyUsageRepository extends MongoRepository<DailyUsage, String> {
+public interface DailyUsageRepository extends MongoRepository<DailyUsage, String>, DailyUsageRepositoryCustom {
     /**
      * Delete by User ID
      * @param userId User ID
@@ -31,4 +33,17 @@ public interface DailyUsageRepository extends MongoRepository<DailyUsage, String
      * @return List of DailyUsage objects
      */
     List<DailyUsage> findByUserIdAndMdn(String userId, String mdn);
-}
\ No newline at end of file
+
+    /**
+     * Find by User ID and MDN with a usage date inside a window, both ends inclusive, sorted by usage date,
+     * reading only the fields of a DailyUsageDTO
+     * @param userId User ID
+     * @param mdn MDN
+     * @param start Window start
+     * @param end Window end
+     * @return List of DailyUsageDTO objects
+     */
+    @Query(value = "{ 'userId': ?0, 'mdn': ?1, 'usageDate': { '$gte': ?2, '$lte': ?3 } }",
+            fields = "{ '_id': 0, 'usageDate': 1, 'usedInMb': 1 }", sort = "{ 'usageDate': 1 }")
+    List<DailyUsageDTO> findByUserIdAndMdnInWindow(String userId, String mdn, Date start, Date end);
+}
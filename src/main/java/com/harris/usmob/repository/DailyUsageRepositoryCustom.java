@@ -0,0 +1,134 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.dto.CycleDTO;
+import com.harris.usmob.dto.CycleUsageDTO;
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.dto.UsageBucketDTO;
+import com.harris.usmob.dto.UsageSummaryDTO;
+import com.harris.usmob.entity.DailyUsage;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Custom repository operations for Daily Usage that are not expressible as derived queries
+ */
+public interface DailyUsageRepositoryCustom {
+    /**
+     * Reason reported for increments of a daily usage owned by another user
+     */
+    String OWNED_BY_OTHER_USER = "Daily usage belongs to another user";
+
+    /**
+     * Inserts all daily usages in a single unordered bulk write
+     * <p>
+     * A failing document does not stop the remaining documents from being written.
+     * Documents rejected by the unique mdn and usage date index are reported as already existing.
+     *
+     * @param dailyUsages Daily Usages to insert
+     * @return Map of failed positions in dailyUsages to the error message
+     */
+    Map<Integer, String> insertUnordered(List<DailyUsage> dailyUsages);
+
+    /**
+     * Atomically adds to the used in Mb of a daily usage of a user, creating it if it does not exist
+     * <p>
+     * A daily usage of the same mdn and usage date owned by another user is never incremented.
+     *
+     * @param mdn       MDN
+     * @param usageDate Usage Date
+     * @param userId    User ID owning the daily usage
+     * @param deltaInMb Amount to add in Mb
+     * @return DailyUsage object before the increment, or null if it was created
+     * @throws org.springframework.dao.DuplicateKeyException if the daily usage belongs to another user
+     */
+    DailyUsage incrementUsedInMb(String mdn, Date usageDate, String userId, int deltaInMb);
+
+    /**
+     * Atomically sets the used in Mb of an existing daily usage
+     *
+     * @param mdn       MDN
+     * @param usageDate Usage Date
+     * @param usedInMb  Used in Mb
+     * @return DailyUsage object before the update, or null if it does not exist
+     */
+    DailyUsage setUsedInMb(String mdn, Date usageDate, int usedInMb);
+
+    /**
+     * Adds to the used in Mb of many daily usages in a single unordered bulk write, creating any that do not exist
+     * <p>
+     * Increments of a daily usage owned by another user than the increment's fail with OWNED_BY_OTHER_USER.
+     * Increments that created their daily usage get its ID set, the others keep a null ID.
+     *
+     * @param increments Daily Usages whose usedInMb is the amount to add, with a null ID
+     * @return Map of failed positions in increments to the error message
+     */
+    Map<Integer, String> bulkIncrementUsedInMb(List<DailyUsage> increments);
+
+    /**
+     * Finds the current cycle of a user and MDN together with its daily usage in one aggregation
+     * <p>
+     * A cycle ending after the current cycle pointer is read instead of the pointer.
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return CycleUsageDTO object, or null if the line has no current cycle pointer
+     */
+    CycleUsageDTO findMostRecentCycleUsage(String userId, String mdn);
+
+    /**
+     * Finds the daily usage of many lines, each inside its own cycle window, in one query
+     * <p>
+     * Only the user ID, MDN, usage date and used in Mb are read.
+     *
+     * @param windows Cycle window of each line
+     * @return List of DailyUsage objects sorted by usage date
+     */
+    List<DailyUsage> findInWindows(Map<LineDTO, CycleDTO> windows);
+
+    /**
+     * Sums the daily usage of a user and MDN between two dates in one aggregation
+     *
+     * @param userId    User ID
+     * @param mdn       MDN
+     * @param startDate Start Date, inclusive
+     * @param endDate   End Date, inclusive
+     * @return UsageSummaryDTO object, or null if there is no usage between the dates
+     */
+    UsageSummaryDTO summarizeUsage(String userId, String mdn, Date startDate, Date endDate);
+
+    /**
+     * Sums the daily usage of a user and MDN between two dates into day, week or month buckets in one aggregation
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @param from   Start Date, inclusive
+     * @param until  End Date, exclusive
+     * @param unit   Bucket unit, day, week or month
+     * @return List of UsageBucketDTO objects sorted by bucket start, only buckets with usage
+     */
+    List<UsageBucketDTO> findUsageBuckets(String userId, String mdn, Date from, Date until, String unit);
+
+    /**
+     * Finds a page of daily usages sorted by MDN and usage date, read from the unique mdn and usage date index
+     * <p>
+     * Only the MDN, usage date and used in Mb are read.
+     *
+     * @param mdn       MDN of the last daily usage of the previous page, or null for the first page
+     * @param usageDate Usage Date of the last daily usage of the previous page, or null for the first page
+     * @param limit     Maximum number of daily usages
+     * @return List of DailyUsage objects
+     */
+    List<DailyUsage> findPageAfter(String mdn, Date usageDate, int limit);
+
+    /**
+     * Streams every daily usage from a database cursor, reading only the fields of a DailyUsageDTO
+     * <p>
+     * The stream holds the cursor open and must be closed.
+     *
+     * @return Stream of DailyUsage objects
+     */
+    Stream<DailyUsage> streamAll();
+}
@@ -0,0 +1,313 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.dto.CycleDTO;
+import com.harris.usmob.dto.CycleUsageDTO;
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.dto.UsageBucketDTO;
+import com.harris.usmob.dto.UsageSummaryDTO;
+import com.harris.usmob.entity.CurrentCycle;
+import com.harris.usmob.entity.Cycle;
+import com.harris.usmob.entity.DailyUsage;
+import lombok.AllArgsConstructor;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Implementation of the custom Daily Usage repository operations
+ */
+@AllArgsConstructor
+public class DailyUsageRepositoryCustomImpl implements DailyUsageRepositoryCustom {
+
+    /**
+     * Mongo Template
+     */
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public Map<Integer, String> insertUnordered(List<DailyUsage> dailyUsages) {
+        return BulkWrites.insertUnordered(mongoTemplate, DailyUsage.class, dailyUsages, "Daily usage already exists");
+    }
+
+    @Override
+    public DailyUsage incrementUsedInMb(String mdn, Date usageDate, String userId, int deltaInMb) {
+        Update update = new Update().inc("usedInMb", deltaInMb);
+        FindAndModifyOptions options = FindAndModifyOptions.options().upsert(true);
+
+        try {
+            return mongoTemplate.findAndModify(byOwner(mdn, usageDate, userId), update, options, DailyUsage.class);
+        } catch (DuplicateKeyException e) {
+            // A concurrent upsert created the document first, so this attempt now matches it,
+            // unless the daily usage belongs to another user
+            return mongoTemplate.findAndModify(byOwner(mdn, usageDate, userId), update, options, DailyUsage.class);
+        }
+    }
+
+    @Override
+    public Map<Integer, String> bulkIncrementUsedInMb(List<DailyUsage> increments) {
+        if (increments.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        Map<Integer, String> failures = incrementAll(increments);
+
+        // A concurrent upsert may have created a daily usage first, so retry those once like incrementUsedInMb
+        List<Integer> retries = failures.entrySet().stream()
+                .filter(failure -> OWNED_BY_OTHER_USER.equals(failure.getValue()))
+                .map(Map.Entry::getKey)
+                .sorted()
+                .toList();
+        if (retries.isEmpty()) {
+            return failures;
+        }
+
+        Map<Integer, String> retryFailures = incrementAll(retries.stream().map(increments::get).toList());
+        for (int j = 0; j < retries.size(); j++) {
+            String failure = retryFailures.get(j);
+            if (failure == null) {
+                failures.remove(retries.get(j));
+            } else {
+                failures.put(retries.get(j), failure);
+            }
+        }
+
+        return failures;
+    }
+
+    /**
+     * Adds to the used in Mb of many daily usages in one unordered bulk upsert
+     * <p>
+     * Increments that created their daily usage get its ID set.
+     *
+     * @param increments Daily Usages whose usedInMb is the amount to add
+     * @return Map of failed positions in increments to the error message
+     */
+    private Map<Integer, String> incrementAll(List<DailyUsage> increments) {
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, DailyUsage.class);
+        for (DailyUsage increment : increments) {
+            bulkOperations.upsert(byOwner(increment.getMdn(), increment.getUsageDate(), increment.getUserId()),
+                    new Update().inc("usedInMb", increment.getUsedInMb()));
+        }
+
+        return BulkWrites.execute(bulkOperations, OWNED_BY_OTHER_USER,
+                upsert -> increments.get(upsert.getIndex()).setId(upsert.getId().asObjectId().getValue().toHexString()));
+    }
+
+    @Override
+    public DailyUsage setUsedInMb(String mdn, Date usageDate, int usedInMb) {
+        Update update = new Update().set("usedInMb", usedInMb);
+
+        return mongoTemplate.findAndModify(byMdnAndUsageDate(mdn, usageDate), update, DailyUsage.class);
+    }
+
+    @Override
+    public CycleUsageDTO findMostRecentCycleUsage(String userId, String mdn) {
+        // Usage inside the cycle window, matched on the (userId, mdn, usageDate) index
+        List<Document> usagePipeline = List.of(
+                new Document("$match", new Document("userId", userId).append("mdn", mdn)
+                        .append("$expr", new Document("$and", List.of(
+                                new Document("$gte", List.of("$usageDate", "$$startDate")),
+                                new Document("$lte", List.of("$usageDate", "$$endDate")))))),
+                new Document("$sort", new Document("usageDate", 1)),
+                new Document("$project", new Document("_id", 0).append("usageDate", 1).append("usedInMb", 1)));
+
+        // A cycle saved by a request that stopped before advancing the pointer, on the (userId, mdn, endDate) index
+        List<Document> laterCyclePipeline = List.of(
+                new Document("$match", new Document("userId", userId).append("mdn", mdn)
+                        .append("$expr", new Document("$gt", List.of("$endDate", "$$endDate")))),
+                new Document("$sort", new Document("endDate", -1)),
+                new Document("$limit", 1),
+                new Document("$project", new Document("_id", 0).append("startDate", 1).append("endDate", 1)));
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("_id").is(CurrentCycle.idOf(userId, mdn))),
+                context -> new Document("$lookup", new Document("from", mongoTemplate.getCollectionName(Cycle.class))
+                        .append("let", new Document("endDate", "$endDate"))
+                        .append("pipeline", laterCyclePipeline)
+                        .append("as", "later")),
+                context -> new Document("$replaceWith", new Document("$mergeObjects", List.of("$$ROOT",
+                        new Document("$ifNull", List.of(new Document("$arrayElemAt", List.of("$later", 0)), new Document()))))),
+                context -> new Document("$lookup", new Document("from", mongoTemplate.getCollectionName(DailyUsage.class))
+                        .append("let", new Document("startDate", "$startDate").append("endDate", "$endDate"))
+                        .append("pipeline", usagePipeline)
+                        .append("as", "usages")),
+                context -> new Document("$project", new Document("_id", 0).append("startDate", 1).append("endDate", 1).append("usages", 1)));
+
+        return mongoTemplate.aggregate(aggregation, mongoTemplate.getCollectionName(CurrentCycle.class), CycleUsageDTO.class)
+                .getUniqueMappedResult();
+    }
+
+    @Override
+    public List<DailyUsage> findInWindows(Map<LineDTO, CycleDTO> windows) {
+        if (windows.isEmpty()) {
+            return List.of();
+        }
+
+        return mongoTemplate.find(inWindows(windows), DailyUsage.class);
+    }
+
+    @Override
+    public UsageSummaryDTO summarizeUsage(String userId, String mdn, Date startDate, Date endDate) {
+        return mongoTemplate.aggregate(usageSummary(userId, mdn, startDate, endDate), DailyUsage.class, UsageSummaryDTO.class)
+                .getUniqueMappedResult();
+    }
+
+    @Override
+    public List<UsageBucketDTO> findUsageBuckets(String userId, String mdn, Date from, Date until, String unit) {
+        return mongoTemplate.aggregate(usageBuckets(userId, mdn, from, until, unit), DailyUsage.class, UsageBucketDTO.class)
+                .getMappedResults();
+    }
+
+    @Override
+    public List<DailyUsage> findPageAfter(String mdn, Date usageDate, int limit) {
+        return mongoTemplate.find(pageAfter(mdn, usageDate, limit), DailyUsage.class);
+    }
+
+    @Override
+    public Stream<DailyUsage> streamAll() {
+        Query query = new Query();
+        query.fields().include("usageDate", "usedInMb");
+
+        return mongoTemplate.stream(query, DailyUsage.class);
+    }
+
+    /**
+     * Builds the query for the daily usage of many lines, each inside its own cycle window
+     * <p>
+     * Shared with the reactive repository
+     *
+     * @param windows Cycle window of each line, not empty
+     * @return Query object
+     */
+    public static Query inWindows(Map<LineDTO, CycleDTO> windows) {
+        // One branch per line, each matched on the (userId, mdn, usageDate) index
+        Criteria[] branches = windows.entrySet().stream()
+                .map(window -> Criteria.where("userId").is(window.getKey().getUserId()).and("mdn").is(window.getKey().getMdn())
+                        .and("usageDate").gte(window.getValue().getStartDate()).lte(window.getValue().getEndDate()))
+                .toArray(Criteria[]::new);
+
+        Query query = new Query(new Criteria().orOperator(branches));
+        query.fields().include("userId", "mdn", "usageDate", "usedInMb").exclude("_id");
+
+        return query.with(Sort.by(Sort.Direction.ASC, "usageDate"));
+    }
+
+    /**
+     * Builds the aggregation summing the daily usage of a user and MDN between two dates
+     * <p>
+     * Shared with the reactive repository
+     *
+     * @param userId    User ID
+     * @param mdn       MDN
+     * @param startDate Start Date, inclusive
+     * @param endDate   End Date, inclusive
+     * @return Aggregation object
+     */
+    public static Aggregation usageSummary(String userId, String mdn, Date startDate, Date endDate) {
+        return Aggregation.newAggregation(
+                // Matched on the (userId, mdn, usageDate) index
+                Aggregation.match(Criteria.where("userId").is(userId).and("mdn").is(mdn)
+                        .and("usageDate").gte(startDate).lte(endDate)),
+                // Highest usage first so the group can take the peak day with $first, the latest day wins a tie like in the rollup
+                Aggregation.sort(Sort.by(Sort.Order.desc("usedInMb"), Sort.Order.desc("usageDate"))),
+                Aggregation.group()
+                        .sum("usedInMb").as("totalInMb")
+                        .avg("usedInMb").as("averageInMb")
+                        .first("usageDate").as("peakDate")
+                        .first("usedInMb").as("peakInMb")
+                        .count().as("days"),
+                Aggregation.project("totalInMb", "averageInMb", "peakDate", "peakInMb", "days").andExclude("_id"));
+    }
+
+    /**
+     * Builds the aggregation summing the daily usage of a user and MDN between two dates into buckets
+     * <p>
+     * Shared with the reactive repository
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @param from   Start Date, inclusive
+     * @param until  End Date, exclusive
+     * @param unit   Bucket unit, day, week or month
+     * @return Aggregation object
+     */
+    public static Aggregation usageBuckets(String userId, String mdn, Date from, Date until, String unit) {
+        return Aggregation.newAggregation(
+                // Matched on the (userId, mdn, usageDate) index
+                Aggregation.match(Criteria.where("userId").is(userId).and("mdn").is(mdn)
+                        .and("usageDate").gte(from).lt(until)),
+                context -> new Document("$group", new Document("_id", new Document("$dateTrunc", new Document("date", "$usageDate")
+                        .append("unit", unit)
+                        .append("timezone", "UTC")
+                        .append("startOfWeek", "monday")))
+                        .append("totalInMb", new Document("$sum", "$usedInMb"))
+                        .append("days", new Document("$sum", 1))),
+                context -> new Document("$sort", new Document("_id", 1)),
+                context -> new Document("$project", new Document("_id", 0).append("bucketStart", "$_id")
+                        .append("totalInMb", 1).append("days", 1)));
+    }
+
+    /**
+     * Builds the query for a page of daily usages after an MDN and usage date
+     * <p>
+     * Shared with the reactive repository
+     *
+     * @param mdn       MDN of the last daily usage of the previous page, or null for the first page
+     * @param usageDate Usage Date of the last daily usage of the previous page, or null for the first page
+     * @param limit     Maximum number of daily usages
+     * @return Query object
+     */
+    public static Query pageAfter(String mdn, Date usageDate, int limit) {
+        Query query = new Query();
+
+        if (mdn != null) {
+            query.addCriteria(new Criteria().orOperator(
+                    Criteria.where("mdn").gt(mdn),
+                    Criteria.where("mdn").is(mdn).and("usageDate").gt(usageDate)));
+        }
+
+        // The cursor needs the MDN, the page only usage date and used in Mb
+        query.fields().include("mdn", "usageDate", "usedInMb");
+
+        return query.with(Sort.by(Sort.Order.asc("mdn"), Sort.Order.asc("usageDate"))).limit(limit);
+    }
+
+    /**
+     * Builds the query for a daily usage by its natural key
+     *
+     * @param mdn       MDN
+     * @param usageDate Usage Date
+     * @return Query object
+     */
+    private Query byMdnAndUsageDate(String mdn, Date usageDate) {
+        return new Query(Criteria.where("mdn").is(mdn).and("usageDate").is(usageDate));
+    }
+
+    /**
+     * Builds the query for a daily usage by its natural key and owner
+     * <p>
+     * Shared with the reactive repository. An upsert copies the user ID into a created daily usage,
+     * and fails on the unique mdn and usage date index if another user owns the daily usage.
+     *
+     * @param mdn       MDN
+     * @param usageDate Usage Date
+     * @param userId    User ID
+     * @return Query object
+     */
+    public static Query byOwner(String mdn, Date usageDate, String userId) {
+        return new Query(Criteria.where("mdn").is(mdn).and("usageDate").is(usageDate).and("userId").is(userId));
+    }
+}
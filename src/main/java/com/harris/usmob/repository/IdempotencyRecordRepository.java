@@ -0,0 +1,10 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.entity.IdempotencyRecord;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+/**
+ * Repository for Idempotency Record
+ */
+public interface IdempotencyRecordRepository extends MongoRepository<IdempotencyRecord, String>, IdempotencyRecordRepositoryCustom {
+}
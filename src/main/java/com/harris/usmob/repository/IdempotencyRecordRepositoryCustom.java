@@ -0,0 +1,26 @@
+package com.harris.usmob.repository;
+
+import java.util.Date;
+
+/**
+ * Custom Idempotency Record repository operations that derived queries cannot express
+ */
+public interface IdempotencyRecordRepositoryCustom {
+    /**
+     * Atomically moves the lease of a pending record, if it still holds the lease that was read
+     *
+     * @param id         Record ID
+     * @param readLease  Lease the record was read with, null if it had none
+     * @param leaseUntil New end of the lease
+     * @return Boolean, false if the record completed or another request took it over first
+     */
+    boolean takeOver(String id, Date readLease, Date leaseUntil);
+
+    /**
+     * Deletes a pending record, if it still holds the given lease
+     *
+     * @param id         Record ID
+     * @param leaseUntil Lease held by the request releasing the key
+     */
+    void release(String id, Date leaseUntil);
+}
@@ -0,0 +1,44 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.entity.IdempotencyRecord;
+import lombok.AllArgsConstructor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Date;
+
+/**
+ * Implementation of the custom Idempotency Record repository operations
+ */
+@AllArgsConstructor
+public class IdempotencyRecordRepositoryCustomImpl implements IdempotencyRecordRepositoryCustom {
+
+    /**
+     * Mongo Template
+     */
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public boolean takeOver(String id, Date readLease, Date leaseUntil) {
+        return mongoTemplate.updateFirst(holding(id, readLease), new Update().set("leaseUntil", leaseUntil), IdempotencyRecord.class)
+                .getModifiedCount() == 1;
+    }
+
+    @Override
+    public void release(String id, Date leaseUntil) {
+        mongoTemplate.remove(holding(id, leaseUntil), IdempotencyRecord.class);
+    }
+
+    /**
+     * Builds the query matching a pending record holding a lease
+     *
+     * @param id         Record ID
+     * @param leaseUntil End of the lease, null matches records without one
+     * @return Query object
+     */
+    private static Query holding(String id, Date leaseUntil) {
+        return new Query(Criteria.where("_id").is(id).and("pending").is(true).and("leaseUntil").is(leaseUntil));
+    }
+}
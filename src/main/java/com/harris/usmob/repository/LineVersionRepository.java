@@ -0,0 +1,10 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.entity.LineVersion;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+/**
+ * Repository for Line Version
+ */
+public interface LineVersionRepository extends MongoRepository<LineVersion, String>, LineVersionRepositoryCustom {
+}
@@ -0,0 +1,32 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.dto.LineDTO;
+
+import java.util.Collection;
+
+/**
+ * Custom Line Version repository operations that derived queries cannot express
+ */
+public interface LineVersionRepositoryCustom {
+    /**
+     * Atomically increments the version of a user and MDN, creating it at 1 if it does not exist
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     */
+    void bump(String userId, String mdn);
+
+    /**
+     * Increments the versions of many lines in a single unordered bulk write
+     *
+     * @param lines Lines, repeated lines are bumped once
+     */
+    void bumpAll(Collection<LineDTO> lines);
+
+    /**
+     * Increments the version of every line of a user
+     *
+     * @param userId User ID
+     */
+    void bumpUser(String userId);
+}
@@ -0,0 +1,82 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.entity.LineVersion;
+import lombok.AllArgsConstructor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Implementation of the custom Line Version repository operations
+ */
+@AllArgsConstructor
+public class LineVersionRepositoryCustomImpl implements LineVersionRepositoryCustom {
+
+    /**
+     * Mongo Template
+     */
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void bump(String userId, String mdn) {
+        mongoTemplate.upsert(line(userId, mdn), bumped(userId, mdn), LineVersion.class);
+    }
+
+    @Override
+    public void bumpAll(Collection<LineDTO> lines) {
+        Set<LineDTO> distinct = new LinkedHashSet<>(lines);
+
+        if (distinct.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, LineVersion.class);
+        for (LineDTO line : distinct) {
+            bulkOperations.upsert(line(line.getUserId(), line.getMdn()), bumped(line.getUserId(), line.getMdn()));
+        }
+
+        // The server retries upserts colliding on the ID, so a failure here is not a duplicate line
+        BulkWrites.execute(bulkOperations, "Line version already exists");
+    }
+
+    @Override
+    public void bumpUser(String userId) {
+        mongoTemplate.updateMulti(new Query(Criteria.where("userId").is(userId)), new Update().inc("version", 1), LineVersion.class);
+    }
+
+    /**
+     * Builds the query matching the version of a user and MDN
+     * <p>
+     * Shared with the reactive repository
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return Query object
+     */
+    public static Query line(String userId, String mdn) {
+        return new Query(Criteria.where("_id").is(LineVersion.idOf(userId, mdn)));
+    }
+
+    /**
+     * Builds the update incrementing the version of a user and MDN, setting the line on insert
+     * <p>
+     * Shared with the reactive repository
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return Update object
+     */
+    public static Update bumped(String userId, String mdn) {
+        return new Update()
+                .inc("version", 1)
+                .setOnInsert("userId", userId)
+                .setOnInsert("mdn", mdn);
+    }
+}
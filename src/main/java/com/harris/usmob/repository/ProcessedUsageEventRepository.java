@@ -0,0 +1,10 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.entity.ProcessedUsageEvent;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+/**
+ * Repository for Processed Usage Event
+ */
+public interface ProcessedUsageEventRepository extends MongoRepository<ProcessedUsageEvent, String>, ProcessedUsageEventRepositoryCustom {
+}
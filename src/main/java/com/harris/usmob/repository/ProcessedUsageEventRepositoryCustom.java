@@ -0,0 +1,26 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.entity.ProcessedUsageEvent;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Custom repository operations for Processed Usage Event
+ */
+public interface ProcessedUsageEventRepositoryCustom {
+    /**
+     * Reason reported for an event that was already processed
+     */
+    String ALREADY_PROCESSED = "Event already processed";
+
+    /**
+     * Inserts all processed events in a single unordered bulk write
+     * <p>
+     * Events that were already processed are reported with ALREADY_PROCESSED, any other failure with its error message.
+     *
+     * @param processedUsageEvents Processed Usage Events to insert
+     * @return Map of failed positions in processedUsageEvents to the error message
+     */
+    Map<Integer, String> insertUnordered(List<ProcessedUsageEvent> processedUsageEvents);
+}
@@ -0,0 +1,25 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.entity.ProcessedUsageEvent;
+import lombok.AllArgsConstructor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementation of the custom Processed Usage Event repository operations
+ */
+@AllArgsConstructor
+public class ProcessedUsageEventRepositoryCustomImpl implements ProcessedUsageEventRepositoryCustom {
+
+    /**
+     * Mongo Template
+     */
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public Map<Integer, String> insertUnordered(List<ProcessedUsageEvent> processedUsageEvents) {
+        return BulkWrites.insertUnordered(mongoTemplate, ProcessedUsageEvent.class, processedUsageEvents, ALREADY_PROCESSED);
+    }
+}
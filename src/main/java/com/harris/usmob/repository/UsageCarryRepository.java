@@ -0,0 +1,25 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.entity.UsageCarry;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Repository for Usage Carry
+ */
+public interface UsageCarryRepository extends MongoRepository<UsageCarry, String>, UsageCarryRepositoryCustom {
+    /**
+     * Find by Node ID
+     * @param nodeId Node ID
+     * @return List of UsageCarry objects
+     */
+    List<UsageCarry> findByNodeId(String nodeId);
+
+    /**
+     * Delete by Usage Date before, for every instance
+     * @param usageDate Start of the first usage date kept
+     */
+    void deleteByUsageDateBefore(Date usageDate);
+}
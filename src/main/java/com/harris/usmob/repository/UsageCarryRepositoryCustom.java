@@ -0,0 +1,17 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.entity.UsageCarry;
+
+import java.util.Collection;
+
+/**
+ * Custom Usage Carry repository operations that derived queries cannot express
+ */
+public interface UsageCarryRepositoryCustom {
+    /**
+     * Saves many carries in a single unordered bulk write, deleting those with no bytes left
+     *
+     * @param usageCarries Usage Carries
+     */
+    void replaceAll(Collection<UsageCarry> usageCarries);
+}
@@ -0,0 +1,43 @@
+package com.harris.usmob.repository;
+
+import com.harris.usmob.entity.UsageCarry;
+import lombok.AllArgsConstructor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.Collection;
+
+/**
+ * Implementation of the custom Usage Carry repository operations
+ */
+@AllArgsConstructor
+public class UsageCarryRepositoryCustomImpl implements UsageCarryRepositoryCustom {
+
+    /**
+     * Mongo Template
+     */
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void replaceAll(Collection<UsageCarry> usageCarries) {
+        if (usageCarries.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UsageCarry.class);
+        for (UsageCarry usageCarry : usageCarries) {
+            Query query = new Query(Criteria.where("_id").is(usageCarry.getId()));
+
+            if (usageCarry.getBytes() == 0) {
+                bulkOperations.remove(query);
+            } else {
+                bulkOperations.replaceOne(query, usageCarry, FindAndReplaceOptions.options().upsert());
+            }
+        }
+
+        bulkOperations.execute();
+    }
+}
@@ -1,16 +1,89 @@
 package com.harris.usmob.repository;
 
+import com.harris.usmob.dto.UserDTO;
 import com.harris.usmob.entity.User;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.core.annotation.Collation;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository for User
  */
 public interface UserRepository extends MongoRepository<User, String> {
     /**
-     * Find by Email
+     * Find by Email, ignoring case
      * @param email Email
      * @return User object
      */
+    @Collation(User.EMAIL_COLLATION)
     User findByEmail(String email);
+
+    /**
+     * Find by Email ignoring case, reading only the fields of the projection type
+     * @param email Email
+     * @param type Projection type, for example UserDTO to leave out the password
+     * @param <T> Projection type
+     * @return Projection of the User, or null if none
+     */
+    @Collation(User.EMAIL_COLLATION)
+    <T> T findByEmail(String email, Class<T> type);
+
+    /**
+     * Exists by Email, ignoring case
+     * @param email Email
+     * @return Boolean
+     */
+    @Collation(User.EMAIL_COLLATION)
+    boolean existsByEmail(String email);
+
+    /**
+     * Find by ID, reading only the ID and MDN
+     * @param id User ID
+     * @return User object, empty if none
+     */
+    @Query(fields = "{ 'mdn': 1 }")
+    Optional<User> findMdnById(String id);
+
+    /**
+     * Find by ID, reading only the ID and email
+     * @param id User ID
+     * @return User object, empty if none
+     */
+    @Query(fields = "{ 'email': 1 }")
+    Optional<User> findEmailById(String id);
+
+    /**
+     * Find by ID in, reading only the ID and MDN
+     * @param ids User IDs
+     * @return List of User objects
+     */
+    @Query(fields = "{ 'mdn': 1 }")
+    List<User> findMdnByIdIn(Collection<String> ids);
+
+    /**
+     * Find by MDN in
+     * @param mdns MDNs
+     * @return List of User objects
+     */
+    List<User> findByMdnIn(Collection<String> mdns);
+
+    /**
+     * Find the first users sorted by ID, reading only the fields of a UserDTO
+     * @param limit Maximum number of users
+     * @return List of UserDTO objects
+     */
+    List<UserDTO> findAllByOrderByIdAsc(Limit limit);
+
+    /**
+     * Find the users after an ID sorted by ID, reading only the fields of a UserDTO
+     * @param id ID of the last user of the previous page
+     * @param limit Maximum number of users
+     * @return List of UserDTO objects
+     */
+    List<UserDTO> findByIdGreaterThanOrderByIdAsc(String id, Limit limit);
 }
@@ -0,0 +1,17 @@
+package com.harris.usmob.repository.reactive;
+
+import com.harris.usmob.entity.CurrentCycle;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive Repository for Current Cycle
+ */
+public interface ReactiveCurrentCycleRepository extends ReactiveMongoRepository<CurrentCycle, String>, ReactiveCurrentCycleRepositoryCustom {
+    /**
+     * Delete by User ID
+     * @param userId User ID
+     * @return Completion signal
+     */
+    Mono<Void> deleteByUserId(String userId);
+}
@@ -0,0 +1,44 @@
+package com.harris.usmob.repository.reactive;
+
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.entity.CurrentCycle;
+import com.harris.usmob.entity.Cycle;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * Custom reactive Current Cycle repository operations that derived queries cannot express
+ */
+public interface ReactiveCurrentCycleRepositoryCustom {
+    /**
+     * Atomically points the current cycle of the cycle's user and MDN at the cycle if it ends later
+     *
+     * @param cycle Added cycle
+     * @return Completion signal
+     */
+    Mono<Void> advance(Cycle cycle);
+
+    /**
+     * Finds the current cycles of many lines, checked against the cycle collection
+     * <p>
+     * A cycle saved by a request that stopped before advancing the pointer ends after the pointer,
+     * so every line is checked for a later cycle in one query on the (userId, mdn, endDate) index.
+     * Lines with one are answered with it and their pointer is advanced.
+     *
+     * @param lines Lines
+     * @return Current cycles, one per line with a cycle
+     */
+    Flux<CurrentCycle> findCurrent(Collection<LineDTO> lines);
+
+    /**
+     * Moves the current cycle back to the latest remaining cycle if it pointed at a deleted cycle
+     * <p>
+     * The pointer is replaced in place, or removed when no cycle remains, so readers never miss it
+     *
+     * @param cycle Deleted cycle
+     * @return Completion signal
+     */
+    Mono<Void> retreat(Cycle cycle);
+}
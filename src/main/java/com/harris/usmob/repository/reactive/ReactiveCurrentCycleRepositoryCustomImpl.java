@@ -0,0 +1,79 @@
+package com.harris.usmob.repository.reactive;
+
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.entity.CurrentCycle;
+import com.harris.usmob.entity.Cycle;
+import lombok.AllArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.HashMap;
+
+import static com.harris.usmob.repository.CurrentCycleRepositoryCustomImpl.endsBefore;
+import static com.harris.usmob.repository.CurrentCycleRepositoryCustomImpl.idsOf;
+import static com.harris.usmob.repository.CurrentCycleRepositoryCustomImpl.latestOf;
+import static com.harris.usmob.repository.CurrentCycleRepositoryCustomImpl.later;
+import static com.harris.usmob.repository.CurrentCycleRepositoryCustomImpl.laterThan;
+import static com.harris.usmob.repository.CurrentCycleRepositoryCustomImpl.pointAt;
+import static com.harris.usmob.repository.CurrentCycleRepositoryCustomImpl.pointsAt;
+import static com.harris.usmob.repository.CurrentCycleRepositoryCustomImpl.toCurrent;
+
+/**
+ * Implementation of the custom reactive Current Cycle repository operations
+ */
+@AllArgsConstructor
+public class ReactiveCurrentCycleRepositoryCustomImpl implements ReactiveCurrentCycleRepositoryCustom {
+
+    /**
+     * Reactive Mongo Template
+     */
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Override
+    public Mono<Void> advance(Cycle cycle) {
+        return reactiveMongoTemplate.upsert(endsBefore(cycle), pointAt(cycle), CurrentCycle.class)
+                // Current cycle already ends at or after this cycle
+                .onErrorResume(DuplicateKeyException.class, e -> Mono.empty())
+                .then();
+    }
+
+    @Override
+    public Flux<CurrentCycle> findCurrent(Collection<LineDTO> lines) {
+        if (lines.isEmpty()) {
+            return Flux.empty();
+        }
+
+        return reactiveMongoTemplate.find(new Query(Criteria.where("_id").in(idsOf(lines))), CurrentCycle.class)
+                .collectMap(CurrentCycle::getId, pointer -> pointer, HashMap::new)
+                .flatMapMany(current -> reactiveMongoTemplate.find(laterThan(lines, current), Cycle.class)
+                        .concatMap(cycle -> {
+                            if (!later(current, cycle)) {
+                                return Mono.empty();
+                            }
+                            current.put(CurrentCycle.idOf(cycle.getUserId(), cycle.getMdn()), toCurrent(cycle));
+                            return advance(cycle);
+                        })
+                        .thenMany(Flux.defer(() -> Flux.fromIterable(current.values()))));
+    }
+
+    @Override
+    public Mono<Void> retreat(Cycle cycle) {
+        Query pointsAtCycle = pointsAt(cycle.getUserId(), cycle.getMdn(), cycle.getId());
+        Query latestRemaining = latestOf(cycle.getUserId(), cycle.getMdn());
+
+        // Replaced or removed in one conditional write, then the latest cycle advanced in case one was added meanwhile
+        return reactiveMongoTemplate.findOne(latestRemaining, Cycle.class)
+                .flatMap(latest -> reactiveMongoTemplate.updateFirst(pointsAtCycle, pointAt(latest), CurrentCycle.class)
+                        .map(result -> result.getMatchedCount() > 0))
+                .switchIfEmpty(Mono.defer(() -> reactiveMongoTemplate.remove(pointsAtCycle, CurrentCycle.class)
+                        .map(result -> result.getDeletedCount() > 0)))
+                .filter(Boolean::booleanValue)
+                .flatMap(changed -> reactiveMongoTemplate.findOne(latestRemaining, Cycle.class))
+                .flatMap(this::advance);
+    }
+}
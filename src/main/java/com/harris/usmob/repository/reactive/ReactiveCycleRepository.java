@@ -0,0 +1,60 @@
+package com.harris.usmob.repository.reactive;
+
+import com.harris.usmob.entity.Cycle;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Date;
+
+/**
+ * Reactive Repository for Cycle
+ */
+public interface ReactiveCycleRepository extends ReactiveMongoRepository<Cycle, String> {
+    /**
+     * Delete all cycles by user id
+     * @param userId user id
+     * @return Completion signal
+     */
+    Mono<Void> deleteByUserId(String userId);
+
+    /**
+     * Find all cycles by user id and mdn, reading only the ID, start date and end date
+     * @param userId user id
+     * @param mdn mdn
+     * @return Cycles
+     */
+    @Query(fields = "{ 'startDate': 1, 'endDate': 1 }")
+    Flux<Cycle> findByUserIdAndMdn(String userId, String mdn);
+
+    /**
+     * Exists a cycle of a User ID and MDN holding a date, start and end date included
+     * <p>
+     * Served by the (userId, mdn, endDate) index, only cycles ending on or after the date are read.
+     * @param userId User ID
+     * @param mdn MDN
+     * @param date Date
+     * @return Boolean
+     */
+    @Query(value = "{ 'userId': ?0, 'mdn': ?1, 'startDate': { '$lte': ?2 }, 'endDate': { '$gte': ?2 } }", exists = true)
+    Mono<Boolean> existsHolding(String userId, String mdn, Date date);
+
+    /**
+     * Find the first cycles sorted by id, reading only the ID, start date and end date
+     * @param limit Maximum number of cycles
+     * @return Cycles
+     */
+    @Query(fields = "{ 'startDate': 1, 'endDate': 1 }")
+    Flux<Cycle> findAllByOrderByIdAsc(Limit limit);
+
+    /**
+     * Find the cycles after an id sorted by id, reading only the ID, start date and end date
+     * @param id id of the last cycle of the previous page
+     * @param limit Maximum number of cycles
+     * @return Cycles
+     */
+    @Query(fields = "{ 'startDate': 1, 'endDate': 1 }")
+    Flux<Cycle> findByIdGreaterThanOrderByIdAsc(String id, Limit limit);
+}
@@ -0,0 +1,17 @@
+package com.harris.usmob.repository.reactive;
+
+import com.harris.usmob.entity.CycleUsageRollup;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive Repository for Cycle Usage Rollup
+ */
+public interface ReactiveCycleUsageRollupRepository extends ReactiveMongoRepository<CycleUsageRollup, String>, ReactiveCycleUsageRollupRepositoryCustom {
+    /**
+     * Delete by User ID
+     * @param userId User ID
+     * @return Completion signal
+     */
+    Mono<Void> deleteByUserId(String userId);
+}
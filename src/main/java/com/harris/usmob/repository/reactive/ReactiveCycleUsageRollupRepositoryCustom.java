@@ -0,0 +1,38 @@
+package com.harris.usmob.repository.reactive;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * Custom reactive Cycle Usage Rollup repository operations that derived queries cannot express
+ */
+public interface ReactiveCycleUsageRollupRepositoryCustom {
+    /**
+     * Atomically applies a change of one daily usage to the rollups of the cycles holding its usage date
+     * <p>
+     * A lowered or deleted peak day cannot be taken back with $max, so those rollups are recomputed.
+     *
+     * @param userId    User ID
+     * @param mdn       MDN
+     * @param usageDate Usage Date
+     * @param deltaInMb Change in used in Mb
+     * @param deltaDays 1 if the daily usage was created, -1 if it was deleted, otherwise 0
+     * @param usedInMb  Used in Mb after the change, or null if the daily usage was deleted
+     * @return Completion signal
+     */
+    Mono<Void> apply(String userId, String mdn, Date usageDate, long deltaInMb, int deltaDays, Integer usedInMb);
+
+    /**
+     * Recomputes the rollups of some cycles from the daily usage collection
+     * <p>
+     * A rollup is only replaced if no change was applied to it while it was computed, otherwise it
+     * is computed again, up to MAX_REBUILD_ATTEMPTS times. A rollup that keeps changing is left as
+     * it is for the next full rebuild.
+     *
+     * @param cycleIds Cycle IDs
+     * @return Completion signal
+     */
+    Mono<Void> rebuild(Collection<String> cycleIds);
+}
@@ -0,0 +1,75 @@
+package com.harris.usmob.repository.reactive;
+
+import com.harris.usmob.entity.CycleUsageRollup;
+import com.harris.usmob.entity.DailyUsage;
+import lombok.AllArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Date;
+
+import static com.harris.usmob.repository.CycleUsageRollupRepositoryCustomImpl.MAX_REBUILD_ATTEMPTS;
+import static com.harris.usmob.repository.CycleUsageRollupRepositoryCustomImpl.change;
+import static com.harris.usmob.repository.CycleUsageRollupRepositoryCustomImpl.holding;
+import static com.harris.usmob.repository.CycleUsageRollupRepositoryCustomImpl.peakOn;
+import static com.harris.usmob.repository.CycleUsageRollupRepositoryCustomImpl.replacing;
+import static com.harris.usmob.repository.CycleUsageRollupRepositoryCustomImpl.rollups;
+import static com.harris.usmob.repository.CycleUsageRollupRepositoryCustomImpl.unchanged;
+
+/**
+ * Implementation of the custom reactive Cycle Usage Rollup repository operations
+ */
+@AllArgsConstructor
+public class ReactiveCycleUsageRollupRepositoryCustomImpl implements ReactiveCycleUsageRollupRepositoryCustom {
+
+    /**
+     * Reactive Mongo Template
+     */
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Override
+    public Mono<Void> apply(String userId, String mdn, Date usageDate, long deltaInMb, int deltaDays, Integer usedInMb) {
+        Mono<Void> applied = reactiveMongoTemplate.updateMulti(holding(userId, mdn, usageDate), change(usageDate, deltaInMb, deltaDays, usedInMb), CycleUsageRollup.class)
+                .then();
+
+        if (usedInMb != null && deltaInMb >= 0) {
+            return applied;
+        }
+
+        return applied.then(reactiveMongoTemplate.findDistinct(peakOn(userId, mdn, usageDate), "_id", CycleUsageRollup.class, String.class)
+                .collectList()
+                .flatMap(this::rebuild));
+    }
+
+    @Override
+    public Mono<Void> rebuild(Collection<String> cycleIds) {
+        // A change was applied while a rollup was computed, compute it again, up to MAX_REBUILD_ATTEMPTS times in all
+        return Flux.fromIterable(cycleIds)
+                .concatMap(cycleId -> Mono.defer(() -> rebuildOnce(cycleId)).repeat(MAX_REBUILD_ATTEMPTS - 1).takeUntil(Boolean::booleanValue))
+                .then();
+    }
+
+    /**
+     * Computes the rollup of a cycle and replaces it if no change was applied meanwhile
+     *
+     * @param cycleId Cycle ID
+     * @return Boolean, false if the rollup changed and must be computed again
+     */
+    private Mono<Boolean> rebuildOnce(String cycleId) {
+        Mono<CycleUsageRollup> rebuilt = reactiveMongoTemplate.aggregate(rollups(Criteria.where("_id").is(cycleId),
+                reactiveMongoTemplate.getCollectionName(DailyUsage.class)), CycleUsageRollup.class).next();
+
+        return reactiveMongoTemplate.findById(cycleId, CycleUsageRollup.class)
+                .flatMap(current -> rebuilt.flatMap(rollup -> reactiveMongoTemplate.updateFirst(unchanged(cycleId, current.getVersion()),
+                                replacing(rollup, current.getVersion()), CycleUsageRollup.class))
+                        .map(result -> result.getMatchedCount() == 1))
+                .switchIfEmpty(Mono.defer(() -> rebuilt.flatMap(rollup -> reactiveMongoTemplate.insert(rollup).thenReturn(true))
+                        .onErrorReturn(DuplicateKeyException.class, false)))
+                // The cycle was deleted
+                .defaultIfEmpty(true);
+    }
+}
@@ -0,0 +1,35 @@
+package com.harris.usmob.repository.reactive;
+
+import com.harris.usmob.dto.DailyUsageDTO;
+import com.harris.usmob.entity.DailyUsage;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Date;
+
+/**
+ * Reactive Repository for Daily Usage
+ */
+public interface ReactiveDailyUsageRepository extends ReactiveMongoRepository<DailyUsage, String>, ReactiveDailyUsageRepositoryCustom {
+    /**
+     * Delete all daily usage by user id
+     * @param userId user id
+     * @return Completion signal
+     */
+    Mono<Void> deleteByUserId(String userId);
+
+    /**
+     * Find all daily usage by user id and mdn with a usage date inside a window, both ends inclusive, sorted by usage date,
+     * reading only the fields of a DailyUsageDTO
+     * @param userId user id
+     * @param mdn mdn
+     * @param start window start
+     * @param end window end
+     * @return Daily Usages
+     */
+    @Query(value = "{ 'userId': ?0, 'mdn': ?1, 'usageDate': { '$gte': ?2, '$lte': ?3 } }",
+            fields = "{ '_id': 0, 'usageDate': 1, 'usedInMb': 1 }", sort = "{ 'usageDate': 1 }")
+    Flux<DailyUsageDTO> findByUserIdAndMdnInWindow(String userId, String mdn, Date start, Date end);
+}
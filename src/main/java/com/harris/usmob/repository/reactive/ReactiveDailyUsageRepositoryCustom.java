@@ -0,0 +1,85 @@
+package com.harris.usmob.repository.reactive;
+
+import com.harris.usmob.dto.CycleDTO;
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.dto.UsageBucketDTO;
+import com.harris.usmob.dto.UsageSummaryDTO;
+import com.harris.usmob.entity.DailyUsage;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Custom reactive Daily Usage repository operations that derived queries cannot express
+ */
+public interface ReactiveDailyUsageRepositoryCustom {
+    /**
+     * Atomically adds to the used in Mb of a daily usage of a user, creating it if it does not exist
+     * <p>
+     * Errors with a DuplicateKeyException if the daily usage belongs to another user.
+     *
+     * @param mdn       MDN
+     * @param usageDate Usage Date
+     * @param userId    User ID owning the daily usage
+     * @param deltaInMb Amount to add in Mb
+     * @return DailyUsage object before the increment, empty if it was created
+     */
+    Mono<DailyUsage> incrementUsedInMb(String mdn, Date usageDate, String userId, int deltaInMb);
+
+    /**
+     * Atomically sets the used in Mb of an existing daily usage
+     *
+     * @param mdn       MDN
+     * @param usageDate Usage Date
+     * @param usedInMb  Used in Mb
+     * @return DailyUsage object before the update, empty if it does not exist
+     */
+    Mono<DailyUsage> setUsedInMb(String mdn, Date usageDate, int usedInMb);
+
+    /**
+     * Finds the daily usage of many lines, each inside its own cycle window, in one query
+     * <p>
+     * Only the user ID, MDN, usage date and used in Mb are read.
+     *
+     * @param windows Cycle window of each line
+     * @return Daily Usages sorted by usage date
+     */
+    Flux<DailyUsage> findInWindows(Map<LineDTO, CycleDTO> windows);
+
+    /**
+     * Sums the daily usage of a user and MDN between two dates in one aggregation
+     *
+     * @param userId    User ID
+     * @param mdn       MDN
+     * @param startDate Start Date, inclusive
+     * @param endDate   End Date, inclusive
+     * @return UsageSummaryDTO object, empty if there is no usage between the dates
+     */
+    Mono<UsageSummaryDTO> summarizeUsage(String userId, String mdn, Date startDate, Date endDate);
+
+    /**
+     * Sums the daily usage of a user and MDN between two dates into day, week or month buckets in one aggregation
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @param from   Start Date, inclusive
+     * @param until  End Date, exclusive
+     * @param unit   Bucket unit, day, week or month
+     * @return Usage buckets sorted by bucket start, only buckets with usage
+     */
+    Flux<UsageBucketDTO> findUsageBuckets(String userId, String mdn, Date from, Date until, String unit);
+
+    /**
+     * Finds a page of daily usages sorted by MDN and usage date, read from the unique mdn and usage date index
+     * <p>
+     * Only the MDN, usage date and used in Mb are read.
+     *
+     * @param mdn       MDN of the last daily usage of the previous page, or null for the first page
+     * @param usageDate Usage Date of the last daily usage of the previous page, or null for the first page
+     * @param limit     Maximum number of daily usages
+     * @return Daily Usages
+     */
+    Flux<DailyUsage> findPageAfter(String mdn, Date usageDate, int limit);
+}
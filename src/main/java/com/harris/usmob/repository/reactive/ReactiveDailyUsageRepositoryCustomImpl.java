@@ -0,0 +1,89 @@
+package com.harris.usmob.repository.reactive;
+
+import com.harris.usmob.dto.CycleDTO;
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.dto.UsageBucketDTO;
+import com.harris.usmob.dto.UsageSummaryDTO;
+import com.harris.usmob.entity.DailyUsage;
+import com.harris.usmob.repository.DailyUsageRepositoryCustomImpl;
+import lombok.AllArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Implementation of the custom reactive Daily Usage repository operations
+ */
+@AllArgsConstructor
+public class ReactiveDailyUsageRepositoryCustomImpl implements ReactiveDailyUsageRepositoryCustom {
+
+    /**
+     * Reactive Mongo Template
+     */
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Override
+    public Mono<DailyUsage> incrementUsedInMb(String mdn, Date usageDate, String userId, int deltaInMb) {
+        Update update = new Update().inc("usedInMb", deltaInMb);
+        FindAndModifyOptions options = FindAndModifyOptions.options().upsert(true);
+        Query query = DailyUsageRepositoryCustomImpl.byOwner(mdn, usageDate, userId);
+
+        return reactiveMongoTemplate.findAndModify(query, update, options, DailyUsage.class)
+                // A concurrent upsert created the document first, so this attempt now matches it,
+                // unless the daily usage belongs to another user
+                .onErrorResume(DuplicateKeyException.class,
+                        e -> reactiveMongoTemplate.findAndModify(query, update, options, DailyUsage.class));
+    }
+
+    @Override
+    public Mono<DailyUsage> setUsedInMb(String mdn, Date usageDate, int usedInMb) {
+        Update update = new Update().set("usedInMb", usedInMb);
+
+        return reactiveMongoTemplate.findAndModify(byMdnAndUsageDate(mdn, usageDate), update, DailyUsage.class);
+    }
+
+    @Override
+    public Flux<DailyUsage> findInWindows(Map<LineDTO, CycleDTO> windows) {
+        if (windows.isEmpty()) {
+            return Flux.empty();
+        }
+
+        return reactiveMongoTemplate.find(DailyUsageRepositoryCustomImpl.inWindows(windows), DailyUsage.class);
+    }
+
+    @Override
+    public Mono<UsageSummaryDTO> summarizeUsage(String userId, String mdn, Date startDate, Date endDate) {
+        return reactiveMongoTemplate.aggregate(DailyUsageRepositoryCustomImpl.usageSummary(userId, mdn, startDate, endDate),
+                DailyUsage.class, UsageSummaryDTO.class).next();
+    }
+
+    @Override
+    public Flux<UsageBucketDTO> findUsageBuckets(String userId, String mdn, Date from, Date until, String unit) {
+        return reactiveMongoTemplate.aggregate(DailyUsageRepositoryCustomImpl.usageBuckets(userId, mdn, from, until, unit),
+                DailyUsage.class, UsageBucketDTO.class);
+    }
+
+    @Override
+    public Flux<DailyUsage> findPageAfter(String mdn, Date usageDate, int limit) {
+        return reactiveMongoTemplate.find(DailyUsageRepositoryCustomImpl.pageAfter(mdn, usageDate, limit), DailyUsage.class);
+    }
+
+    /**
+     * Builds the query for a daily usage by its natural key
+     *
+     * @param mdn       MDN
+     * @param usageDate Usage Date
+     * @return Query object
+     */
+    private Query byMdnAndUsageDate(String mdn, Date usageDate) {
+        return new Query(Criteria.where("mdn").is(mdn).and("usageDate").is(usageDate));
+    }
+}
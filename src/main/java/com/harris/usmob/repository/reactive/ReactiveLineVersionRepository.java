@@ -0,0 +1,10 @@
+package com.harris.usmob.repository.reactive;
+
+import com.harris.usmob.entity.LineVersion;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+/**
+ * Reactive Repository for Line Version
+ */
+public interface ReactiveLineVersionRepository extends ReactiveMongoRepository<LineVersion, String>, ReactiveLineVersionRepositoryCustom {
+}
@@ -0,0 +1,25 @@
+package com.harris.usmob.repository.reactive;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Custom reactive Line Version repository operations that derived queries cannot express
+ */
+public interface ReactiveLineVersionRepositoryCustom {
+    /**
+     * Atomically increments the version of a user and MDN, creating it at 1 if it does not exist
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return Completion signal
+     */
+    Mono<Void> bump(String userId, String mdn);
+
+    /**
+     * Increments the version of every line of a user
+     *
+     * @param userId User ID
+     * @return Completion signal
+     */
+    Mono<Void> bumpUser(String userId);
+}
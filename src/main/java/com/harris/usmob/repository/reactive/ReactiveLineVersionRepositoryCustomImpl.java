@@ -0,0 +1,35 @@
+package com.harris.usmob.repository.reactive;
+
+import com.harris.usmob.entity.LineVersion;
+import lombok.AllArgsConstructor;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import static com.harris.usmob.repository.LineVersionRepositoryCustomImpl.bumped;
+import static com.harris.usmob.repository.LineVersionRepositoryCustomImpl.line;
+
+/**
+ * Implementation of the custom reactive Line Version repository operations
+ */
+@AllArgsConstructor
+public class ReactiveLineVersionRepositoryCustomImpl implements ReactiveLineVersionRepositoryCustom {
+
+    /**
+     * Reactive Mongo Template
+     */
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Override
+    public Mono<Void> bump(String userId, String mdn) {
+        return reactiveMongoTemplate.upsert(line(userId, mdn), bumped(userId, mdn), LineVersion.class).then();
+    }
+
+    @Override
+    public Mono<Void> bumpUser(String userId) {
+        return reactiveMongoTemplate.updateMulti(new Query(Criteria.where("userId").is(userId)), new Update().inc("version", 1), LineVersion.class)
+                .then();
+    }
+}
@@ -0,0 +1,72 @@
+package com.harris.usmob.repository.reactive;
+
+import com.harris.usmob.dto.UserDTO;
+import com.harris.usmob.entity.User;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.core.annotation.Collation;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive Repository for User
+ */
+public interface ReactiveUserRepository extends ReactiveMongoRepository<User, String> {
+    /**
+     * Find user by email, ignoring case
+     * @param email email
+     * @return User object, empty if none
+     */
+    @Collation(User.EMAIL_COLLATION)
+    Mono<User> findByEmail(String email);
+
+    /**
+     * Find user by email ignoring case, reading only the fields of the projection type
+     * @param email email
+     * @param type Projection type, for example UserDTO to leave out the password
+     * @param <T> Projection type
+     * @return Projection of the User, empty if none
+     */
+    @Collation(User.EMAIL_COLLATION)
+    <T> Mono<T> findByEmail(String email, Class<T> type);
+
+    /**
+     * Exists by email, ignoring case
+     * @param email email
+     * @return Boolean
+     */
+    @Collation(User.EMAIL_COLLATION)
+    Mono<Boolean> existsByEmail(String email);
+
+    /**
+     * Find by ID, reading only the ID and MDN
+     * @param id User ID
+     * @return User object, empty if none
+     */
+    @Query(fields = "{ 'mdn': 1 }")
+    Mono<User> findMdnById(String id);
+
+    /**
+     * Find by ID, reading only the ID and email
+     * @param id User ID
+     * @return User object, empty if none
+     */
+    @Query(fields = "{ 'email': 1 }")
+    Mono<User> findEmailById(String id);
+
+    /**
+     * Find the first users sorted by ID, reading only the fields of a UserDTO
+     * @param limit Maximum number of users
+     * @return Users
+     */
+    Flux<UserDTO> findAllByOrderByIdAsc(Limit limit);
+
+    /**
+     * Find the users after an ID sorted by ID, reading only the fields of a UserDTO
+     * @param id ID of the last user of the previous page
+     * @param limit Maximum number of users
+     * @return Users
+     */
+    Flux<UserDTO> findByIdGreaterThanOrderByIdAsc(String id, Limit limit);
+}
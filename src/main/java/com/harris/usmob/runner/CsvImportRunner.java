@@ -0,0 +1,67 @@
+package com.harris.usmob.runner;
+
+import com.harris.usmob.dto.IngestProgressDTO;
+import com.harris.usmob.service.CsvImportService;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Runs CSV imports passed as command line arguments at startup
+ * <p>
+ * Cycles are imported before daily usages. For example
+ * {@code --usmob.import.cycle-file=/data/cycles.csv --usmob.import.daily-usage-file=/data/usage.csv}
+ */
+@AllArgsConstructor
+@Component
+public class CsvImportRunner implements ApplicationRunner {
+
+    /**
+     * CSV Import Service
+     */
+    private final CsvImportService csvImportService;
+
+    /**
+     * Imports the files named in the arguments, if any
+     *
+     * @param args Application arguments
+     * @throws Exception if a file cannot be read
+     */
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        for (String file : optionValues(args, "usmob.import.cycle-file")) {
+            report("cycles", file, csvImportService.importCycles(Path.of(file)));
+        }
+        for (String file : optionValues(args, "usmob.import.daily-usage-file")) {
+            report("daily usages", file, csvImportService.importDailyUsages(Path.of(file)));
+        }
+    }
+
+    /**
+     * Gets the values of an option, empty if it was not passed
+     *
+     * @param args Application arguments
+     * @param name Option name
+     * @return List of values
+     */
+    private List<String> optionValues(ApplicationArguments args, String name) {
+        List<String> values = args.getOptionValues(name);
+        return values == null ? List.of() : values;
+    }
+
+    /**
+     * Prints the result of an import
+     *
+     * @param type   Type of rows imported
+     * @param file   File imported
+     * @param result Import totals
+     */
+    private void report(String type, String file, IngestProgressDTO result) {
+        System.out.println("Imported " + type + " from " + file + ": " + result.getAccepted() + " accepted, "
+                + result.getRejected() + " rejected" + (result.getError() == null ? "" : ", error: " + result.getError()));
+    }
+}
@@ -0,0 +1,44 @@
+package com.harris.usmob.runner;
+
+import com.harris.usmob.service.CycleService;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Repairs the current cycle pointers
+ * <p>
+ * Rebuilds at startup when cycles exist but no pointers do, and on
+ * {@code usmob.cycle.current-cycle-rebuild-cron} when set, for example {@code 0 0 3 * * *}
+ */
+@AllArgsConstructor
+@Component
+public class CurrentCycleRebuildJob implements ApplicationRunner {
+
+    /**
+     * Cycle Service
+     */
+    private final CycleService cycleService;
+
+    /**
+     * Rebuilds the current cycles if they are missing
+     *
+     * @param args Application arguments
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        if (cycleService.currentCyclesMissing()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Rebuilds the current cycles, disabled unless the cron is set
+     */
+    @Scheduled(cron = "${usmob.cycle.current-cycle-rebuild-cron:-}")
+    public void rebuild() {
+        System.out.println("Rebuilt " + cycleService.rebuildCurrentCycles() + " current cycles");
+    }
+}
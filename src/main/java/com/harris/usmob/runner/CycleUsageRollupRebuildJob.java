@@ -0,0 +1,44 @@
+package com.harris.usmob.runner;
+
+import com.harris.usmob.service.CycleService;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Repairs the cycle usage rollups
+ * <p>
+ * Rebuilds at startup when cycles exist but no rollups do, and on
+ * {@code usmob.cycle.usage-rollup-rebuild-cron} when set, for example {@code 0 30 3 * * *}
+ */
+@AllArgsConstructor
+@Component
+public class CycleUsageRollupRebuildJob implements ApplicationRunner {
+
+    /**
+     * Cycle Service
+     */
+    private final CycleService cycleService;
+
+    /**
+     * Rebuilds the usage rollups if they are missing
+     *
+     * @param args Application arguments
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        if (cycleService.usageRollupsMissing()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Rebuilds the usage rollups, disabled unless the cron is set
+     */
+    @Scheduled(cron = "${usmob.cycle.usage-rollup-rebuild-cron:-}")
+    public void rebuild() {
+        System.out.println("Rebuilt " + cycleService.rebuildUsageRollups() + " cycle usage rollups");
+    }
+}
@@ -0,0 +1,117 @@
+package com.harris.usmob.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Runs independent repository calls of one request concurrently on virtual threads
+ * <p>
+ * Calls are forked, then joined together. If any call fails the others are cancelled and the
+ * first failure is rethrown, so the request fails as it would have when run sequentially.
+ * Usage:
+ * <pre>
+ * try (ConcurrentLookups lookups = new ConcurrentLookups()) {
+ *     Supplier&lt;User&gt; user = lookups.fork(() -&gt; userRepository.findById(userId).orElse(null));
+ *     Supplier&lt;List&lt;Cycle&gt;&gt; cycles = lookups.fork(() -&gt; cycleRepository.findByUserIdAndMdn(userId, mdn));
+ *     lookups.join();
+ *     ...
+ * }
+ * </pre>
+ */
+final class ConcurrentLookups implements AutoCloseable {
+
+    /**
+     * Executor starting one virtual thread per call
+     */
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    /**
+     * Completion service used to notice the first failure
+     */
+    private final CompletionService<Object> completionService = new ExecutorCompletionService<>(executor);
+    /**
+     * Forked calls
+     */
+    private final List<Future<Object>> forks = new ArrayList<>();
+    /**
+     * Whether join has completed
+     */
+    private boolean joined = false;
+
+    /**
+     * Starts a call
+     *
+     * @param call Repository call
+     * @param <T>  Result type
+     * @return Supplier of the result, only valid after join
+     */
+    @SuppressWarnings("unchecked")
+    <T> Supplier<T> fork(Callable<T> call) {
+        Future<Object> future = completionService.submit((Callable<Object>) call);
+        forks.add(future);
+
+        return () -> {
+            if (!joined) {
+                throw new IllegalStateException("Result read before join");
+            }
+            return (T) future.resultNow();
+        };
+    }
+
+    /**
+     * Waits for all forked calls, cancelling the rest as soon as one fails
+     */
+    void join() {
+        try {
+            for (int i = 0; i < forks.size(); i++) {
+                Future<Object> done = completionService.take();
+                try {
+                    done.get();
+                } catch (ExecutionException e) {
+                    cancelAll();
+                    throw rethrow(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            cancelAll();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for lookups", e);
+        }
+        joined = true;
+    }
+
+    /**
+     * Cancels all calls that are still running
+     */
+    private void cancelAll() {
+        for (Future<Object> future : forks) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Rethrows the failure of a call unchanged where possible
+     *
+     * @param cause Failure
+     * @return Exception to throw
+     */
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException(cause);
+    }
+
+    /**
+     * Cancels any calls left running and shuts the executor down
+     */
+    @Override
+    public void close() {
+        cancelAll();
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,317 @@
+package com.harris.usmob.service;
+
+import com.harris.usmob.dto.BulkRowResultDTO;
+import com.harris.usmob.dto.IngestProgressDTO;
+import com.harris.usmob.entity.Cycle;
+import com.harris.usmob.entity.DailyUsage;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Service for importing large CSV files of Daily Usage and Cycles
+ * <p>
+ * The file is memory mapped and split on line boundaries into chunks that are parsed in parallel,
+ * one chunk per task, and each task writes its rows in batches through the bulk service methods.
+ */
+@AllArgsConstructor
+@Service
+public class CsvImportService {
+
+    /**
+     * Largest region mapped at once, well below the 2 GB limit of a MappedByteBuffer
+     */
+    static final long MAX_CHUNK_BYTES = 256L * 1024 * 1024;
+    /**
+     * Number of rows written per bulk write
+     */
+    static final int BATCH_SIZE = 5000;
+    /**
+     * Longest line accepted, longer lines are rejected
+     */
+    private static final int MAX_LINE_BYTES = 4096;
+
+    /**
+     * Daily Usage Service
+     */
+    private final DailyUsageService dailyUsageService;
+    /**
+     * Cycle Service
+     */
+    private final CycleService cycleService;
+
+    /**
+     * Imports a CSV file of daily usages with columns mdn,usageDate,usedInMb,userId
+     *
+     * @param path CSV file
+     * @return IngestProgressDTO object with the totals
+     * @throws IOException if the file cannot be read
+     */
+    public IngestProgressDTO importDailyUsages(Path path) throws IOException {
+        return importFile(path, this::parseDailyUsage, dailyUsageService::addDailyUsages);
+    }
+
+    /**
+     * Imports a CSV file of cycles with columns mdn,startDate,endDate,userId
+     * <p>
+     * Parsing runs in parallel but batches are written one at a time, so cycles for the same
+     * line in different chunks are still checked against each other for overlap.
+     *
+     * @param path CSV file
+     * @return IngestProgressDTO object with the totals
+     * @throws IOException if the file cannot be read
+     */
+    public IngestProgressDTO importCycles(Path path) throws IOException {
+        Object writeLock = new Object();
+        return importFile(path, this::parseCycle, batch -> {
+            synchronized (writeLock) {
+                return cycleService.addCycles(batch);
+            }
+        });
+    }
+
+    /**
+     * Splits a file into chunks and parses and writes them in parallel
+     *
+     * @param path   CSV file
+     * @param parser Parses the fields of one line, returns null for a header line
+     * @param writer Writes a batch of rows
+     * @param <T>    Entity type
+     * @return IngestProgressDTO object with the totals
+     * @throws IOException if the file cannot be read
+     */
+    private <T> IngestProgressDTO importFile(Path path, Function<String[], T> parser, Function<List<T>, List<BulkRowResultDTO>> writer) throws IOException {
+        AtomicLong rowsRead = new AtomicLong();
+        AtomicLong accepted = new AtomicLong();
+        String error = null;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<long[]> chunks = splitOnLines(channel);
+            int threads = Math.min(chunks.size(), Runtime.getRuntime().availableProcessors());
+
+            try (ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1))) {
+                List<Future<?>> futures = new ArrayList<>();
+                for (long[] chunk : chunks) {
+                    futures.add(executor.submit(() -> importChunk(channel, chunk[0], chunk[1], parser, writer, rowsRead, accepted)));
+                }
+
+                for (Future<?> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        error = e.getCause().getMessage();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        error = "Import interrupted";
+                    }
+                }
+            }
+        }
+
+        return new IngestProgressDTO(rowsRead.get(), accepted.get(), rowsRead.get() - accepted.get(), error, true);
+    }
+
+    /**
+     * Finds chunk boundaries so that every chunk starts at the beginning of a line
+     *
+     * @param channel File channel
+     * @return List of start and end offsets
+     * @throws IOException if the file cannot be read
+     */
+    private List<long[]> splitOnLines(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int cores = Runtime.getRuntime().availableProcessors();
+        long target = Math.min(MAX_CHUNK_BYTES, Math.max(size / cores, 1));
+
+        List<long[]> chunks = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(MAX_LINE_BYTES);
+        long start = 0;
+
+        while (start < size) {
+            long end = Math.min(start + target, size);
+
+            // Move the end forward to just after the next line break
+            while (end < size) {
+                probe.clear();
+                int read = channel.read(probe, end);
+                int newline = -1;
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+                if (newline >= 0) {
+                    end += newline + 1;
+                    break;
+                }
+                end += read;
+            }
+
+            chunks.add(new long[]{start, end});
+            start = end;
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Maps one chunk and parses and writes its lines in batches
+     *
+     * @param channel  File channel
+     * @param start    Offset of the first byte
+     * @param end      Offset after the last byte
+     * @param parser   Parses the fields of one line
+     * @param writer   Writes a batch of rows
+     * @param rowsRead Rows read counter
+     * @param accepted Rows accepted counter
+     * @param <T>      Entity type
+     */
+    private <T> void importChunk(FileChannel channel, long start, long end, Function<String[], T> parser,
+                                 Function<List<T>, List<BulkRowResultDTO>> writer, AtomicLong rowsRead, AtomicLong accepted) {
+        MappedByteBuffer buffer;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        byte[] line = new byte[MAX_LINE_BYTES];
+        int length = 0;
+        boolean tooLong = false;
+        List<T> batch = new ArrayList<>(BATCH_SIZE);
+
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+
+            if (b != '\n') {
+                if (length < MAX_LINE_BYTES) {
+                    line[length++] = b;
+                } else {
+                    tooLong = true;
+                }
+                if (buffer.hasRemaining()) {
+                    continue;
+                }
+            }
+
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            if (length > 0) {
+                T row = tooLong ? null : parseLine(new String(line, 0, length, StandardCharsets.UTF_8), parser, rowsRead);
+                if (row != null) {
+                    batch.add(row);
+                }
+                if (batch.size() == BATCH_SIZE) {
+                    accepted.addAndGet(writeBatch(batch, writer));
+                }
+            }
+            length = 0;
+            tooLong = false;
+        }
+
+        accepted.addAndGet(writeBatch(batch, writer));
+    }
+
+    /**
+     * Parses one line, counting it as read unless it is the header
+     *
+     * @param line     Line without the line break
+     * @param parser   Parses the fields of one line
+     * @param rowsRead Rows read counter
+     * @param <T>      Entity type
+     * @return Parsed row, or null for the header and malformed lines
+     */
+    private <T> T parseLine(String line, Function<String[], T> parser, AtomicLong rowsRead) {
+        if (line.startsWith("mdn,")) {
+            return null;
+        }
+
+        rowsRead.incrementAndGet();
+
+        String[] fields = line.split(",", -1);
+        if (fields.length != 4) {
+            return null;
+        }
+
+        try {
+            return parser.apply(fields);
+        } catch (RuntimeException e) {
+            // Malformed number or date, the row counts as rejected
+            return null;
+        }
+    }
+
+    /**
+     * Writes a batch and clears it
+     *
+     * @param batch  Rows to write
+     * @param writer Writes a batch of rows
+     * @param <T>    Entity type
+     * @return Number of rows accepted
+     */
+    private <T> long writeBatch(List<T> batch, Function<List<T>, List<BulkRowResultDTO>> writer) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        long written = writer.apply(batch).stream()
+                .filter(BulkRowResultDTO::isAccepted)
+                .count();
+        batch.clear();
+        return written;
+    }
+
+    /**
+     * Parses the fields mdn,usageDate,usedInMb,userId
+     *
+     * @param fields CSV fields
+     * @return DailyUsage object
+     */
+    private DailyUsage parseDailyUsage(String[] fields) {
+        return new DailyUsage(null, fields[0].trim(), parseDate(fields[1]), Integer.parseInt(fields[2].trim()), fields[3].trim());
+    }
+
+    /**
+     * Parses the fields mdn,startDate,endDate,userId
+     *
+     * @param fields CSV fields
+     * @return Cycle object
+     */
+    private Cycle parseCycle(String[] fields) {
+        return new Cycle(null, fields[0].trim(), parseDate(fields[1]), parseDate(fields[2]), fields[3].trim());
+    }
+
+    /**
+     * Parses an ISO date (start of the UTC day) or an ISO instant
+     *
+     * @param value Date text
+     * @return Date object
+     */
+    private Date parseDate(String value) {
+        String trimmed = value.trim();
+
+        if (trimmed.length() == 10) {
+            return Date.from(LocalDate.parse(trimmed).atStartOfDay(ZoneOffset.UTC).toInstant());
+        }
+        return Date.from(Instant.parse(trimmed));
+    }
+}
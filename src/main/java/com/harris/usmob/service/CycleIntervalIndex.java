@@ -0,0 +1,116 @@
+package com.harris.usmob.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.repository.CycleRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * Cache of the cycle intervals of each user and MDN, loaded from the repository on first use
+ * <p>
+ * Bounded by size and time. CycleService adds the cycles it saves to loaded lines and invalidates
+ * lines it deletes cycles from, writes made by other instances are covered by change streams when
+ * enabled and the time bound otherwise. Metrics are registered under the cache name cycle-intervals.
+ */
+@Service
+public class CycleIntervalIndex implements NearCache {
+
+    /**
+     * Name of the cache in the cache metrics
+     */
+    static final String NAME = "cycle-intervals";
+    /**
+     * Most lines kept in memory
+     */
+    static final int MAX_LINES = 100000;
+    /**
+     * How long a line is kept after it is loaded
+     */
+    static final Duration TTL = Duration.ofMinutes(10);
+
+    /**
+     * Cycle intervals by line
+     */
+    private final LoadingCache<LineDTO, CycleIntervals> cache;
+
+    /**
+     * Creates the index and registers its metrics
+     *
+     * @param cycleRepository Cycle Repository
+     * @param meterRegistry   Meter Registry
+     */
+    public CycleIntervalIndex(CycleRepository cycleRepository, MeterRegistry meterRegistry) {
+        cache = Caffeine.newBuilder()
+                .maximumSize(MAX_LINES)
+                .expireAfterWrite(TTL)
+                .recordStats()
+                .build(line -> new CycleIntervals(cycleRepository.findByUserIdAndMdn(line.getUserId(), line.getMdn())));
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, NAME);
+    }
+
+    /**
+     * Gets the cycle intervals of a line, loading them on a miss
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return CycleIntervals object
+     */
+    public CycleIntervals get(String userId, String mdn) {
+        return cache.get(new LineDTO(userId, mdn));
+    }
+
+    /**
+     * Gets the cycle intervals of a line if they are loaded
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return CycleIntervals object, or null if the line is not loaded
+     */
+    public CycleIntervals getIfPresent(String userId, String mdn) {
+        return cache.getIfPresent(new LineDTO(userId, mdn));
+    }
+
+    /**
+     * Drops a line, called after cycles of the line are deleted or written in bulk
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     */
+    public void invalidate(String userId, String mdn) {
+        cache.invalidate(new LineDTO(userId, mdn));
+    }
+
+    /**
+     * Drops every line of a user, called after the user is deleted
+     *
+     * @param userId User ID
+     */
+    public void invalidateUser(String userId) {
+        cache.asMap().keySet().removeIf(line -> userId.equals(line.getUserId()));
+    }
+
+    @Override
+    public void cycleChanged(String userId, String mdn) {
+        invalidate(userId, mdn);
+    }
+
+    /**
+     * Drops the loaded line holding a cycle, scanning every loaded line
+     *
+     * @param cycleId Cycle ID
+     */
+    @Override
+    public void cycleDeleted(String cycleId) {
+        cache.asMap().values().removeIf(intervals -> intervals.hasCycle(cycleId));
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,147 @@
+package com.harris.usmob.service;
+
+import com.harris.usmob.entity.Cycle;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Cycles of one user and MDN sorted by start date, for overlap checks and latest-cycle lookups in memory
+ * <p>
+ * A cycle overlaps if it starts inside an existing cycle, start and end date included, or repeats
+ * one exactly. Shared by the cycle services so both stacks apply the same rule.
+ * <p>
+ * While no two cycles of the line intersect, only the cycle starting at or before the new start
+ * date can contain it, so the check is one floor lookup. Lines with intersecting cycles, which the
+ * rule allows when a cycle starts before an existing one, fall back to scanning the cycles starting
+ * at or before the new start date.
+ * <p>
+ * Thread safe.
+ */
+public class CycleIntervals {
+
+    /**
+     * Cycles by start date
+     */
+    private final TreeMap<Date, List<Cycle>> byStart = new TreeMap<>();
+    /**
+     * Whether every cycle ends before the next one starts
+     */
+    private boolean disjoint = true;
+    /**
+     * Cycle with the latest end date, null if none
+     */
+    private Cycle latest;
+
+    /**
+     * Creates the intervals of a line
+     *
+     * @param cycles Cycles of the line, only the ID, start date and end date are read
+     */
+    public CycleIntervals(Collection<Cycle> cycles) {
+        for (Cycle cycle : cycles) {
+            add(cycle);
+        }
+    }
+
+    /**
+     * Check if a cycle overlaps with, or is the same as, any cycle of the line
+     *
+     * @param cycle Cycle
+     * @return Boolean
+     */
+    public synchronized boolean overlaps(Cycle cycle) {
+        Date startDate = cycle.getStartDate();
+
+        // Check if cycle already exists
+        List<Cycle> sameStart = byStart.get(startDate);
+        if (sameStart != null && sameStart.stream().anyMatch(old -> old.getEndDate().equals(cycle.getEndDate()))) {
+            return true;
+        }
+
+        if (disjoint) {
+            Map.Entry<Date, List<Cycle>> floor = byStart.floorEntry(startDate);
+            return floor != null && contains(floor.getValue(), startDate);
+        }
+
+        for (List<Cycle> cycles : byStart.headMap(startDate, true).descendingMap().values()) {
+            if (contains(cycles, startDate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a cycle to the line
+     *
+     * @param cycle Cycle
+     */
+    public synchronized void add(Cycle cycle) {
+        Date startDate = cycle.getStartDate();
+
+        if (disjoint) {
+            Map.Entry<Date, List<Cycle>> lower = byStart.floorEntry(startDate);
+            Map.Entry<Date, List<Cycle>> higher = byStart.higherEntry(startDate);
+
+            if (lower != null && (lower.getKey().equals(startDate) || !lower.getValue().getFirst().getEndDate().before(startDate))) {
+                disjoint = false;
+            }
+            if (higher != null && !cycle.getEndDate().before(higher.getKey())) {
+                disjoint = false;
+            }
+        }
+
+        byStart.computeIfAbsent(startDate, date -> new ArrayList<>(1)).add(cycle);
+
+        if (latest == null || cycle.getEndDate().after(latest.getEndDate())) {
+            latest = cycle;
+        }
+    }
+
+    /**
+     * Gets the cycle with the latest end date, the first one added on a tie
+     *
+     * @return Cycle, or null if the line has no cycle
+     */
+    public synchronized Cycle latest() {
+        return latest;
+    }
+
+    /**
+     * Check if the line has a cycle
+     *
+     * @param cycleId Cycle ID
+     * @return Boolean
+     */
+    public synchronized boolean hasCycle(String cycleId) {
+        for (List<Cycle> cycles : byStart.values()) {
+            for (Cycle cycle : cycles) {
+                if (cycleId.equals(cycle.getId())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if any cycle contains a date, start and end date included
+     *
+     * @param cycles Cycles
+     * @param date   Date
+     * @return Boolean
+     */
+    private static boolean contains(List<Cycle> cycles, Date date) {
+        for (Cycle cycle : cycles) {
+            if (!cycle.getStartDate().after(date) && !cycle.getEndDate().before(date)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
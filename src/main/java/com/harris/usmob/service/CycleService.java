@@ -1,15 +1,28 @@
 package com.harris.usmob.service;
 
+import com.harris.usmob.dto.BulkRowResultDTO;
 import com.harris.usmob.dto.CycleDTO;
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.dto.PageDTO;
+import com.harris.usmob.dto.UsageSummaryDTO;
 import com.harris.usmob.entity.Cycle;
+import com.harris.usmob.entity.CycleUsageRollup;
+import com.harris.usmob.entity.LineVersion;
 import com.harris.usmob.entity.User;
+import com.harris.usmob.repository.CurrentCycleRepository;
 import com.harris.usmob.repository.CycleRepository;
-import com.harris.usmob.repository.UserRepository;
+import com.harris.usmob.repository.CycleUsageRollupRepository;
+import com.harris.usmob.repository.DailyUsageRepository;
+import com.harris.usmob.repository.LineVersionRepository;
 import lombok.AllArgsConstructor;
+import org.springframework.data.domain.Limit;
+import org.bson.types.ObjectId;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Service for Cycle
@@ -23,9 +36,33 @@ public class CycleService {
      */
     private final CycleRepository cycleRepository;
     /**
-     * User Repository
+     * User MDN Cache
      */
-    private final UserRepository userRepository;
+    private final UserMdnCache userMdnCache;
+    /**
+     * Current Cycle Repository
+     */
+    private final CurrentCycleRepository currentCycleRepository;
+    /**
+     * Daily Usage Repository
+     */
+    private final DailyUsageRepository dailyUsageRepository;
+    /**
+     * Cycle Usage Rollup Repository
+     */
+    private final CycleUsageRollupRepository cycleUsageRollupRepository;
+    /**
+     * Cycle Interval Index
+     */
+    private final CycleIntervalIndex cycleIntervalIndex;
+    /**
+     * Line Version Repository
+     */
+    private final LineVersionRepository lineVersionRepository;
+    /**
+     * Locks of the lines whose cycles are being checked and written
+     */
+    private final LineLocks lineLocks = new LineLocks();
 
     /**
      * Adds a new cycle to the collection
@@ -37,13 +74,6 @@ public class CycleService {
         String userId = cycle.getUserId();
         String mdn = cycle.getMdn();
 
-        User user = userRepository.findById(userId).orElse(null);
-
-        //Foreign key error or mdn mismatch
-        if (user == null || !Objects.equals(user.getMdn(), mdn)) {
-            return null;
-        }
-
         Date startDate = cycle.getStartDate();
         Date endDate = cycle.getEndDate();
 
@@ -51,48 +81,151 @@ public class CycleService {
             return null;
         }
 
-        List<Cycle> oldCycles = cycleRepository.findByUserIdAndMdn(userId, mdn);
+        User user;
+
+        try (ConcurrentLookups lookups = new ConcurrentLookups()) {
+            Supplier<User> userLookup = lookups.fork(() -> userMdnCache.loadUser(userId));
+            // Loaded alongside the user, it is read again from the index under the line lock
+            lookups.fork(() -> cycleIntervalIndex.get(userId, mdn));
+            lookups.join();
 
-        if (!oldCycles.isEmpty()) {
-            for (Cycle oldCycle : oldCycles) {
+            user = userLookup.get();
+        }
 
-                // Cycle overlaps with any previous cycle
-                // Check logic on this
-                if (afterOrEquals(startDate, oldCycle.getStartDate()) && beforeOrEquals(startDate, oldCycle.getEndDate())) {
-                    return null;
-                }
+        //Foreign key error or mdn mismatch
+        if (user == null || !Objects.equals(user.getMdn(), mdn)) {
+            return null;
+        }
 
-                // Check if cycle already exists
-                if (oldCycle.getStartDate().equals(startDate) && oldCycle.getEndDate().equals(endDate)) {
-                    return null;
-                }
+        // Held until the cycle is added, so a concurrent add of the line on this instance sees it. The
+        // index may miss a cycle another instance saved since it was loaded, so Mongo is checked too.
+        Cycle savedCycle = lineLocks.withLock(userId, mdn, () -> {
+            CycleIntervals oldCycles = cycleIntervalIndex.get(userId, mdn);
+            if (oldCycles.overlaps(cycle) || cycleRepository.existsHolding(userId, mdn, startDate)) {
+                return null;
             }
+
+            Cycle saved = cycleRepository.save(cycle);
+            oldCycles.add(saved);
+            return saved;
+        });
+
+        if (savedCycle == null) {
+            return null;
         }
 
-        Cycle savedCycle = cycleRepository.save(cycle);
+        currentCycleRepository.advance(savedCycle);
+        // Usage may already exist inside the window of the new cycle
+        cycleUsageRollupRepository.rebuild(List.of(savedCycle.getId()));
+        lineVersionRepository.bump(userId, mdn);
+
         return new CycleDTO(savedCycle.getId(), savedCycle.getStartDate(), savedCycle.getEndDate());
     }
 
     /**
-     * Check if Date 1 is after or equals Date 2
+     * Adds a batch of cycles to the collection
+     * <p>
+     * Users and their existing cycles are each loaded in one query for the whole batch and all
+     * valid rows are written in one unordered bulk write. Rows are also checked for overlap
+     * against earlier rows of the same batch. The lines of the batch stay locked from loading their
+     * cycles until they are written, like in addCycle.
      *
-     * @param date1 Date 1
-     * @param date2 Date 2
-     * @return Boolean
+     * @param cycles Cycles
+     * @return List of BulkRowResultDTO objects, one per row in the same order
      */
-    private Boolean afterOrEquals(Date date1, Date date2) {
-        return date1.after(date2) || date1.equals(date2);
+    public List<BulkRowResultDTO> addCycles(List<Cycle> cycles) {
+        BulkRowResultDTO[] results = new BulkRowResultDTO[cycles.size()];
+
+        Set<String> userIds = cycles.stream()
+                .map(Cycle::getUserId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<String, User> users = userMdnCache.loadUsers(userIds);
+        List<LineDTO> lines = users.values().stream().map(user -> new LineDTO(user.getId(), user.getMdn())).toList();
+        List<Cycle> inserted = lineLocks.withLocks(lines, () -> insertCycles(cycles, users, results));
+
+        currentCycleRepository.advanceAll(inserted);
+        cycleUsageRollupRepository.rebuild(inserted.stream().map(Cycle::getId).toList());
+        lineVersionRepository.bumpAll(inserted.stream().map(cycle -> new LineDTO(cycle.getUserId(), cycle.getMdn())).toList());
+
+        return Arrays.asList(results);
     }
 
     /**
-     * Check if Date 1 is before or equals Date 2
+     * Checks a batch of cycles against the existing cycles of their lines and inserts the valid ones
+     * <p>
+     * Must hold the line locks of the users
      *
-     * @param date1 Date 1
-     * @param date2 Date 2
-     * @return Boolean
+     * @param cycles  Cycles
+     * @param users   Users of the cycles by ID
+     * @param results Result of each row, filled in
+     * @return Inserted cycles
      */
-    private Boolean beforeOrEquals(Date date1, Date date2) {
-        return date1.before(date2) || date1.equals(date2);
+    private List<Cycle> insertCycles(List<Cycle> cycles, Map<String, User> users, BulkRowResultDTO[] results) {
+        Map<String, CycleIntervals> cyclesByLine = cycleRepository.findByUserIdIn(users.keySet()).stream()
+                .collect(Collectors.groupingBy(cycle -> cycle.getUserId() + "|" + cycle.getMdn(),
+                        Collectors.collectingAndThen(Collectors.toList(), CycleIntervals::new)));
+
+        List<Cycle> toInsert = new ArrayList<>();
+        List<Integer> toInsertIndexes = new ArrayList<>();
+
+        for (int i = 0; i < cycles.size(); i++) {
+            Cycle cycle = cycles.get(i);
+
+            if (cycle.getMdn() == null || cycle.getStartDate() == null || cycle.getEndDate() == null) {
+                results[i] = new BulkRowResultDTO(i, false, "Missing mdn, startDate or endDate");
+                continue;
+            }
+
+            User user = users.get(cycle.getUserId());
+
+            //Foreign key error or mdn mismatch
+            if (user == null) {
+                results[i] = new BulkRowResultDTO(i, false, "User does not exist");
+                continue;
+            }
+            if (!Objects.equals(user.getMdn(), cycle.getMdn())) {
+                results[i] = new BulkRowResultDTO(i, false, "MDN does not belong to user");
+                continue;
+            }
+
+            if (cycle.getStartDate().after(cycle.getEndDate())) {
+                results[i] = new BulkRowResultDTO(i, false, "Start date is after end date");
+                continue;
+            }
+
+            CycleIntervals lineCycles = cyclesByLine.computeIfAbsent(cycle.getUserId() + "|" + cycle.getMdn(), line -> new CycleIntervals(List.of()));
+            if (lineCycles.overlaps(cycle)) {
+                results[i] = new BulkRowResultDTO(i, false, "Cycle overlaps an existing cycle");
+                continue;
+            }
+
+            // Bulk inserts do not report generated IDs back, the current cycle needs them
+            if (cycle.getId() == null) {
+                cycle.setId(new ObjectId().toHexString());
+            }
+
+            lineCycles.add(cycle);
+            toInsert.add(cycle);
+            toInsertIndexes.add(i);
+        }
+
+        Map<Integer, String> failures = cycleRepository.insertUnordered(toInsert);
+        List<Cycle> inserted = new ArrayList<>();
+
+        for (int j = 0; j < toInsert.size(); j++) {
+            int i = toInsertIndexes.get(j);
+            String failure = failures.get(j);
+            results[i] = new BulkRowResultDTO(i, failure == null, failure);
+
+            if (failure == null) {
+                inserted.add(toInsert.get(j));
+            }
+        }
+
+        inserted.forEach(cycle -> cycleIntervalIndex.invalidate(cycle.getUserId(), cycle.getMdn()));
+
+        return inserted;
     }
 
     /**
@@ -109,19 +242,50 @@ public class CycleService {
         }
 
         cycleRepository.deleteById(cycleId);
+        currentCycleRepository.retreat(cycle.get());
+        cycleUsageRollupRepository.deleteById(cycleId);
+        cycleIntervalIndex.invalidate(cycle.get().getUserId(), cycle.get().getMdn());
+        lineVersionRepository.bump(cycle.get().getUserId(), cycle.get().getMdn());
+
         return true;
     }
 
     /**
-     * Get All Cycles
+     * Get a page of All Cycles, sorted by ID
      *
-     * @return List of CycleDTO objects
+     * @param after Cursor returned with the previous page, or null for the first page
+     * @param limit Maximum number of cycles, capped to PageCursors.MAX_LIMIT
+     * @return PageDTO of CycleDTO objects, or null if the cursor is invalid
      */
-    public List<CycleDTO> getAllCycles() {
-        List<Cycle> cycles = cycleRepository.findAll();
-        return cycles.stream()
-                .map(cycle -> new CycleDTO(cycle.getId(), cycle.getStartDate(), cycle.getEndDate()))
-                .collect(Collectors.toList());
+    public PageDTO<CycleDTO> getAllCycles(String after, int limit) {
+        int size = PageCursors.size(limit);
+        List<Cycle> cycles;
+
+        if (after == null) {
+            cycles = cycleRepository.findAllByOrderByIdAsc(Limit.of(size + 1));
+        } else {
+            String[] keys = PageCursors.decode(after, 1);
+            if (keys == null) {
+                return null;
+            }
+            cycles = cycleRepository.findByIdGreaterThanOrderByIdAsc(keys[0], Limit.of(size + 1));
+        }
+
+        return PageCursors.page(cycles, size,
+                cycle -> new CycleDTO(cycle.getId(), cycle.getStartDate(), cycle.getEndDate()),
+                cycle -> PageCursors.encode(cycle.getId()));
+    }
+
+    /**
+     * Streams All Cycles from a database cursor without loading them into memory
+     * <p>
+     * The stream holds the cursor open and must be closed.
+     *
+     * @return Stream of CycleDTO objects
+     */
+    public Stream<CycleDTO> streamAllCycles() {
+        return cycleRepository.streamAll()
+                .map(cycle -> new CycleDTO(cycle.getId(), cycle.getStartDate(), cycle.getEndDate()));
     }
 
     /**
@@ -139,36 +303,137 @@ public class CycleService {
     }
 
     /**
-     * Gets Most Recent Cycle dates for a user and MDN
+     * Gets the strong ETag of the cycle and daily usage history of a user and MDN
      * <p>
-     * Helper method for getDailyUsageHistory
+     * Every cycle and daily usage write bumps the version of its line after writing. Read the ETag
+     * before the history, so a write racing the read can only leave the ETag older than the body.
+     * Lines without a version were last written before versions existed and have no ETag.
      *
      * @param userId User ID
      * @param mdn    MDN
-     * @return List of Date objects
+     * @return Quoted ETag, or null if the line has no version
      */
-    public List<Date> getMostRecentCycle(String userId, String mdn) {
-        List<Cycle> cycles = cycleRepository.findByUserIdAndMdn(userId, mdn);
+    public String getHistoryETag(String userId, String mdn) {
+        return lineVersionRepository.findById(LineVersion.idOf(userId, mdn))
+                .map(lineVersion -> LineVersion.eTagOf(lineVersion.getVersion()))
+                .orElse(null);
+    }
+
+    /**
+     * Gets the total, average and peak daily usage of a cycle
+     * <p>
+     * Read from the maintained usage rollup, cycles without one are summed by the database
+     *
+     * @param cycleId Cycle ID
+     * @return UsageSummaryDTO object, or null if the cycle does not exist
+     */
+    public UsageSummaryDTO getUsageSummary(String cycleId) {
+        CycleUsageRollup rollup = cycleUsageRollupRepository.findById(cycleId).orElse(null);
 
-        if (cycles.isEmpty()) {
+        if (rollup != null) {
+            return toSummary(rollup);
+        }
+
+        Cycle cycle = cycleRepository.findById(cycleId).orElse(null);
+
+        if (cycle == null) {
             return null;
         }
 
-        Date latestEndDate = null;
-        Date latestStartDate = null;
+        UsageSummaryDTO summary = dailyUsageRepository.summarizeUsage(cycle.getUserId(), cycle.getMdn(), cycle.getStartDate(), cycle.getEndDate());
 
-        for (Cycle cycle : cycles) {
-            if (latestEndDate == null || cycle.getEndDate().after(latestEndDate)) {
-                latestEndDate = cycle.getEndDate();
-                latestStartDate = cycle.getStartDate();
-            }
+        return summary != null ? summary : new UsageSummaryDTO(0, 0, null, 0, 0);
+    }
+
+    /**
+     * Converts a Cycle Usage Rollup to a UsageSummaryDTO
+     * <p>
+     * Shared with the reactive cycle service
+     *
+     * @param rollup Cycle Usage Rollup
+     * @return UsageSummaryDTO object
+     */
+    public static UsageSummaryDTO toSummary(CycleUsageRollup rollup) {
+        CycleUsageRollup.Peak peak = rollup.getPeak();
+        double averageInMb = rollup.getDays() == 0 ? 0 : (double) rollup.getTotalInMb() / rollup.getDays();
+
+        return new UsageSummaryDTO(rollup.getTotalInMb(), averageInMb,
+                peak == null ? null : peak.getUsageDate(), peak == null ? 0 : peak.getUsedInMb(), rollup.getDays());
+    }
+
+    /**
+     * Gets Most Recent Cycle for a user and MDN
+     * <p>
+     * Helper method for getDailyUsageHistory, reads the cycle intervals of the line if they are
+     * loaded and the maintained current cycle otherwise, checked for a later cycle the pointer missed
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return CycleDTO object, or null if the user has no cycle
+     */
+    public CycleDTO getMostRecentCycle(String userId, String mdn) {
+        CycleIntervals intervals = cycleIntervalIndex.getIfPresent(userId, mdn);
+
+        if (intervals != null) {
+            Cycle latest = intervals.latest();
+            return latest == null ? null : new CycleDTO(latest.getId(), latest.getStartDate(), latest.getEndDate());
         }
 
-        List<Date> mostRecentCycle = new ArrayList<>();
-        mostRecentCycle.add(latestStartDate);
-        mostRecentCycle.add(latestEndDate);
+        return currentCycleRepository.findCurrent(List.of(new LineDTO(userId, mdn))).stream()
+                .findFirst()
+                .map(currentCycle -> new CycleDTO(currentCycle.getCycleId(), currentCycle.getStartDate(), currentCycle.getEndDate()))
+                .orElse(null);
+    }
 
-        return mostRecentCycle;
+    /**
+     * Gets Most Recent Cycles for many lines in one query, plus one query for later cycles the pointers missed
+     *
+     * @param lines Lines
+     * @return Map of each line with a cycle to its CycleDTO object
+     */
+    public Map<LineDTO, CycleDTO> getMostRecentCycles(Collection<LineDTO> lines) {
+        return currentCycleRepository.findCurrent(lines).stream()
+                .collect(Collectors.toMap(current -> new LineDTO(current.getUserId(), current.getMdn()),
+                        current -> new CycleDTO(current.getCycleId(), current.getStartDate(), current.getEndDate())));
+    }
+
+    /**
+     * Rebuilds every current cycle from the cycle collection
+     * <p>
+     * Repairs current cycles after writes that bypassed this service
+     *
+     * @return Number of current cycles
+     */
+    public long rebuildCurrentCycles() {
+        return currentCycleRepository.rebuild();
+    }
+
+    /**
+     * Rebuilds every cycle usage rollup from the cycle and daily usage collections
+     * <p>
+     * Repairs rollups after daily usage writes that bypassed the daily usage service
+     *
+     * @return Number of rollups
+     */
+    public long rebuildUsageRollups() {
+        return cycleUsageRollupRepository.rebuild();
+    }
+
+    /**
+     * Checks whether cycles exist without any usage rollup, for example after a restore or an upgrade
+     *
+     * @return Boolean
+     */
+    public boolean usageRollupsMissing() {
+        return cycleUsageRollupRepository.count() == 0 && cycleRepository.count() > 0;
     }
-}
 
+    /**
+     * Checks whether cycles exist without any current cycle, for example after a restore or an upgrade
+     *
+     * @return Boolean
+     */
+    public boolean currentCyclesMissing() {
+        return currentCycleRepository.count() == 0 && cycleRepository.count() > 0;
+    }
+}
@@ -0,0 +1,97 @@
+package com.harris.usmob.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.harris.usmob.dto.BulkRowResultDTO;
+import com.harris.usmob.dto.IngestProgressDTO;
+import com.harris.usmob.entity.DailyUsage;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Service for streamed ingestion of Daily Usage
+ */
+@AllArgsConstructor
+@Service
+public class DailyUsageIngestService {
+
+    /**
+     * Number of rows written per bulk write
+     */
+    static final int CHUNK_SIZE = 1000;
+
+    /**
+     * Daily Usage Service
+     */
+    private final DailyUsageService dailyUsageService;
+    /**
+     * Object Mapper
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Ingests newline delimited JSON daily usages
+     * <p>
+     * The input is parsed one row at a time and written in chunks of CHUNK_SIZE, so only
+     * one chunk is held in memory regardless of the input size. Progress is reported after
+     * every chunk. A malformed row stops the ingestion, rows before it stay written.
+     *
+     * @param inputStream      NDJSON input
+     * @param progressListener Receives progress after every chunk and once when finished
+     * @return IngestProgressDTO object with the final totals
+     * @throws IOException if the input cannot be read
+     */
+    public IngestProgressDTO ingestNdjson(InputStream inputStream, Consumer<IngestProgressDTO> progressListener) throws IOException {
+        long rowsRead = 0;
+        long accepted = 0;
+        String error = null;
+        List<DailyUsage> chunk = new ArrayList<>(CHUNK_SIZE);
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(inputStream);
+             MappingIterator<DailyUsage> rows = objectMapper.readerFor(DailyUsage.class).readValues(parser)) {
+            while (rows.hasNextValue()) {
+                chunk.add(rows.nextValue());
+                rowsRead++;
+
+                if (chunk.size() == CHUNK_SIZE) {
+                    accepted += writeChunk(chunk);
+                    progressListener.accept(new IngestProgressDTO(rowsRead, accepted, rowsRead - accepted, null, false));
+                }
+            }
+        } catch (JsonProcessingException e) {
+            error = "Malformed row after row " + rowsRead + ": " + e.getOriginalMessage();
+        }
+
+        accepted += writeChunk(chunk);
+
+        IngestProgressDTO result = new IngestProgressDTO(rowsRead, accepted, rowsRead - accepted, error, true);
+        progressListener.accept(result);
+        return result;
+    }
+
+    /**
+     * Writes a chunk through the bulk insert and clears it
+     *
+     * @param chunk Daily Usages to write
+     * @return Number of rows accepted
+     */
+    private long writeChunk(List<DailyUsage> chunk) {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+
+        long accepted = dailyUsageService.addDailyUsages(chunk).stream()
+                .filter(BulkRowResultDTO::isAccepted)
+                .count();
+        chunk.clear();
+        return accepted;
+    }
+}
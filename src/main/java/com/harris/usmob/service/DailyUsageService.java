@@ -1,16 +1,29 @@
 package com.harris.usmob.service;
 
+import com.harris.usmob.config.DailyUsageProperties;
+import com.harris.usmob.dto.BulkRowResultDTO;
+import com.harris.usmob.dto.CycleDTO;
+import com.harris.usmob.dto.CycleUsageDTO;
 import com.harris.usmob.dto.DailyUsageDTO;
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.dto.LineHistoryDTO;
+import com.harris.usmob.dto.PageDTO;
+import com.harris.usmob.dto.UsageBucketDTO;
 import com.harris.usmob.entity.DailyUsage;
 import com.harris.usmob.entity.User;
+import com.harris.usmob.repository.CycleUsageRollupRepository;
 import com.harris.usmob.repository.DailyUsageRepository;
-import com.harris.usmob.repository.UserRepository;
+import com.harris.usmob.repository.LineVersionRepository;
 import lombok.AllArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 
-import java.util.Date;
-import java.util.List;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Service for Daily Usage
@@ -19,6 +32,44 @@ import java.util.stream.Collectors;
 @Service
 public class DailyUsageService {
 
+    /**
+     * Maximum number of lines in one batch history request
+     */
+    public static final int MAX_HISTORY_LINES = 100;
+
+    /**
+     * Bucket sizes of a usage range
+     */
+    public enum UsageBucket {
+        /**
+         * One point per day
+         */
+        DAY,
+        /**
+         * One point per week, starting on Monday
+         */
+        WEEK,
+        /**
+         * One point per calendar month
+         */
+        MONTH;
+
+        /**
+         * Parses a bucket size ignoring case
+         *
+         * @param bucket Bucket size, day, week or month
+         * @return UsageBucket, or null if the bucket size is unknown
+         */
+        public static UsageBucket parse(String bucket) {
+            for (UsageBucket usageBucket : values()) {
+                if (usageBucket.name().equalsIgnoreCase(bucket)) {
+                    return usageBucket;
+                }
+            }
+            return null;
+        }
+    }
+
     /**
      * Cycle Service
      */
@@ -28,9 +79,25 @@ public class DailyUsageService {
      */
     private final DailyUsageRepository dailyUsageRepository;
     /**
-     * User Repository
+     * User MDN Cache
+     */
+    private final UserMdnCache userMdnCache;
+    /**
+     * Write-behind buffer for usage increments
+     */
+    private final UsageWriteBehindBuffer usageWriteBehindBuffer;
+    /**
+     * Daily Usage Properties
      */
-    private final UserRepository userRepository;
+    private final DailyUsageProperties dailyUsageProperties;
+    /**
+     * Cycle Usage Rollup Repository
+     */
+    private final CycleUsageRollupRepository cycleUsageRollupRepository;
+    /**
+     * Line Version Repository
+     */
+    private final LineVersionRepository lineVersionRepository;
 
     /**
      * Adds a new daily usage to the collection
@@ -39,23 +106,90 @@ public class DailyUsageService {
      * @return DailyUsageDTO object
      */
     public DailyUsageDTO addDailyUsage(DailyUsage dailyUsage) {
-        User user = userRepository.findById(dailyUsage.getUserId()).orElse(null);
+        User user = userMdnCache.loadUser(dailyUsage.getUserId());
 
         //Foreign key error or mdn mismatch
         if (user == null || !user.getMdn().equals(dailyUsage.getMdn())) {
             return null;
         }
 
-        List<DailyUsage> oldDailyUsages = dailyUsageRepository.findByUserIdAndMdn(dailyUsage.getUserId(), dailyUsage.getMdn());
+        DailyUsage savedDailyUsage;
+        try {
+            savedDailyUsage = dailyUsageRepository.insert(dailyUsage);
+        } catch (DuplicateKeyException e) {
+            // Daily usage already exists for this mdn and usage date
+            return null;
+        }
 
-        for (DailyUsage oldDailyUsage : oldDailyUsages) {
-            // Check if daily usage already exists
-            if (oldDailyUsage.getUsageDate().equals(dailyUsage.getUsageDate())) {
-                return null;
+        int usedInMb = Objects.requireNonNullElse(savedDailyUsage.getUsedInMb(), 0);
+        cycleUsageRollupRepository.apply(savedDailyUsage.getUserId(), savedDailyUsage.getMdn(), savedDailyUsage.getUsageDate(), usedInMb, 1, usedInMb);
+        lineVersionRepository.bump(savedDailyUsage.getUserId(), savedDailyUsage.getMdn());
+
+        return new DailyUsageDTO(savedDailyUsage.getUsageDate(), savedDailyUsage.getUsedInMb());
+    }
+
+    /**
+     * Adds a batch of daily usages to the collection
+     * <p>
+     * Users are resolved once per distinct user ID and all valid rows are written in one
+     * unordered bulk write. Duplicates are rejected by the unique mdn and usage date index.
+     *
+     * @param dailyUsages Daily Usages
+     * @return List of BulkRowResultDTO objects, one per row in the same order
+     */
+    public List<BulkRowResultDTO> addDailyUsages(List<DailyUsage> dailyUsages) {
+        BulkRowResultDTO[] results = new BulkRowResultDTO[dailyUsages.size()];
+
+        Set<String> userIds = dailyUsages.stream()
+                .map(DailyUsage::getUserId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<String, User> users = userMdnCache.loadUsers(userIds);
+
+        List<DailyUsage> toInsert = new ArrayList<>();
+        List<Integer> toInsertIndexes = new ArrayList<>();
+
+        for (int i = 0; i < dailyUsages.size(); i++) {
+            DailyUsage dailyUsage = dailyUsages.get(i);
+
+            if (dailyUsage.getMdn() == null || dailyUsage.getUsageDate() == null || dailyUsage.getUsedInMb() == null) {
+                results[i] = new BulkRowResultDTO(i, false, "Missing mdn, usageDate or usedInMb");
+                continue;
             }
+
+            User user = users.get(dailyUsage.getUserId());
+
+            //Foreign key error or mdn mismatch
+            if (user == null) {
+                results[i] = new BulkRowResultDTO(i, false, "User does not exist");
+                continue;
+            }
+            if (!Objects.equals(user.getMdn(), dailyUsage.getMdn())) {
+                results[i] = new BulkRowResultDTO(i, false, "MDN does not belong to user");
+                continue;
+            }
+
+            toInsert.add(dailyUsage);
+            toInsertIndexes.add(i);
         }
-        DailyUsage savedDailyUsage = dailyUsageRepository.save(dailyUsage);
-        return new DailyUsageDTO(savedDailyUsage.getUsageDate(), savedDailyUsage.getUsedInMb());
+
+        Map<Integer, String> failures = dailyUsageRepository.insertUnordered(toInsert);
+        List<DailyUsage> inserted = new ArrayList<>();
+
+        for (int j = 0; j < toInsert.size(); j++) {
+            int i = toInsertIndexes.get(j);
+            String failure = failures.get(j);
+            results[i] = new BulkRowResultDTO(i, failure == null, failure);
+
+            if (failure == null) {
+                inserted.add(toInsert.get(j));
+            }
+        }
+
+        cycleUsageRollupRepository.applyAll(inserted);
+        lineVersionRepository.bumpAll(inserted.stream().map(dailyUsage -> new LineDTO(dailyUsage.getUserId(), dailyUsage.getMdn())).toList());
+
+        return Arrays.asList(results);
     }
 
     /**
@@ -72,45 +206,207 @@ public class DailyUsageService {
         }
 
         dailyUsageRepository.delete(dailyUsage);
+
+        int usedInMb = Objects.requireNonNullElse(dailyUsage.getUsedInMb(), 0);
+        cycleUsageRollupRepository.apply(dailyUsage.getUserId(), dailyUsage.getMdn(), dailyUsage.getUsageDate(), -usedInMb, -1, null);
+        lineVersionRepository.bump(dailyUsage.getUserId(), dailyUsage.getMdn());
+
         return true;
     }
 
     /**
-     * Gets all Daily Usages
+     * Gets a page of all Daily Usages, sorted by MDN and usage date
      *
-     * @return List of DailyUsage objects
+     * @param after Cursor returned with the previous page, or null for the first page
+     * @param limit Maximum number of daily usages, capped to PageCursors.MAX_LIMIT
+     * @return PageDTO of DailyUsageDTO objects, or null if the cursor is invalid
      */
-    public List<DailyUsageDTO> getAllDailyUsages() {
-        List<DailyUsage> dailyUsages = dailyUsageRepository.findAll();
+    public PageDTO<DailyUsageDTO> getAllDailyUsages(String after, int limit) {
+        int size = PageCursors.size(limit);
+        String afterMdn = null;
+        Date afterUsageDate = null;
+
+        if (after != null) {
+            String[] keys = PageCursors.decode(after, 2);
+            if (keys == null || PageCursors.parseDateKey(keys[1]) == null) {
+                return null;
+            }
+            afterMdn = keys[0];
+            afterUsageDate = PageCursors.parseDateKey(keys[1]);
+        }
+
+        List<DailyUsage> dailyUsages = dailyUsageRepository.findPageAfter(afterMdn, afterUsageDate, size + 1);
+
+        return PageCursors.page(dailyUsages, size,
+                dailyUsage -> new DailyUsageDTO(dailyUsage.getUsageDate(), dailyUsage.getUsedInMb()),
+                dailyUsage -> PageCursors.encode(dailyUsage.getMdn(), PageCursors.dateKey(dailyUsage.getUsageDate())));
+    }
 
-        return dailyUsages.stream()
-                .map(dailyUsage -> new DailyUsageDTO(dailyUsage.getUsageDate(), dailyUsage.getUsedInMb()))
-                .collect(Collectors.toList());
+    /**
+     * Streams all Daily Usages from a database cursor without loading them into memory
+     * <p>
+     * The stream holds the cursor open and must be closed.
+     *
+     * @return Stream of DailyUsageDTO objects
+     */
+    public Stream<DailyUsageDTO> streamAllDailyUsages() {
+        return dailyUsageRepository.streamAll()
+                .map(dailyUsage -> new DailyUsageDTO(dailyUsage.getUsageDate(), dailyUsage.getUsedInMb()));
     }
 
     /**
      * Gets Daily Usage History for a User
+     * <p>
+     * By default the most recent cycle and its usage are read in one aggregation, the
+     * two-query history mode reads the cycle and then its usage
      *
      * @param userId User ID
      * @param mdn    MDN
      * @return List of DailyUsageDTO objects
      */
     public List<DailyUsageDTO> getDailyUsageHistory(String userId, String mdn) {
-        List<DailyUsage> dailyUsages = dailyUsageRepository.findByUserIdAndMdn(userId, mdn);
+        if (dailyUsageProperties.getHistoryMode() == DailyUsageProperties.HistoryMode.TWO_QUERY) {
+            return getDailyUsageHistoryTwoQuery(userId, mdn);
+        }
+
+        CycleUsageDTO cycleUsage = dailyUsageRepository.findMostRecentCycleUsage(userId, mdn);
+
+        // No pointer yet, the cycle collection may still hold a cycle whose pointer was never written
+        if (cycleUsage == null) {
+            return getDailyUsageHistoryTwoQuery(userId, mdn);
+        }
+
+        return mergePendingDeltas(new ArrayList<>(cycleUsage.getUsages()), userId, mdn, cycleUsage.getStartDate(), cycleUsage.getEndDate());
+    }
+
+    /**
+     * Gets the strong ETag of the daily usage history of a user and MDN
+     * <p>
+     * Read before the history. Unflushed write-behind increments are merged into the history
+     * without bumping the version, so a line with any has no ETag until they are written.
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return Quoted ETag, or null if the line has no version or has unflushed increments
+     */
+    public String getHistoryETag(String userId, String mdn) {
+        if (usageWriteBehindBuffer.hasPending(userId, mdn)) {
+            return null;
+        }
+
+        return cycleService.getHistoryETag(userId, mdn);
+    }
+
+    /**
+     * Gets Daily Usage History for many lines
+     * <p>
+     * The most recent cycles of all lines are read in one query and their usage in one more
+     *
+     * @param lines Lines, repeated lines are returned once
+     * @return List of LineHistoryDTO objects in the order of the lines
+     */
+    public List<LineHistoryDTO> getDailyUsageHistories(List<LineDTO> lines) {
+        Map<LineDTO, CycleDTO> windows = cycleService.getMostRecentCycles(lines);
+        Map<LineDTO, List<DailyUsageDTO>> usagesByLine = dailyUsageRepository.findInWindows(windows).stream()
+                .collect(Collectors.groupingBy(dailyUsage -> new LineDTO(dailyUsage.getUserId(), dailyUsage.getMdn()),
+                        Collectors.mapping(dailyUsage -> new DailyUsageDTO(dailyUsage.getUsageDate(), dailyUsage.getUsedInMb()), Collectors.toList())));
 
+        return lines.stream()
+                .distinct()
+                .map(line -> {
+                    CycleDTO cycle = windows.get(line);
+                    if (cycle == null) {
+                        return new LineHistoryDTO(line.getUserId(), line.getMdn(), null);
+                    }
+
+                    List<DailyUsageDTO> history = usagesByLine.getOrDefault(line, new ArrayList<>());
+                    return new LineHistoryDTO(line.getUserId(), line.getMdn(),
+                            mergePendingDeltas(history, line.getUserId(), line.getMdn(), cycle.getStartDate(), cycle.getEndDate()));
+                })
+                .toList();
+    }
+
+    /**
+     * Gets the Daily Usage of a user and MDN between two days summed into day, week or month buckets
+     * <p>
+     * Summed by the database, so only one point per bucket is read
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @param from   First day, inclusive
+     * @param to     Last day, inclusive
+     * @param bucket Bucket size
+     * @return List of UsageBucketDTO objects with usage, or null if from is after to
+     */
+    public List<UsageBucketDTO> getUsageRange(String userId, String mdn, LocalDate from, LocalDate to, UsageBucket bucket) {
+        if (from.isAfter(to)) {
+            return null;
+        }
+
+        return dailyUsageRepository.findUsageBuckets(userId, mdn, startOfDay(from), startOfDay(to.plusDays(1)), bucket.name().toLowerCase());
+    }
+
+    /**
+     * Converts a day to midnight UTC, the time of day usage dates are stored at
+     * <p>
+     * Shared with the reactive daily usage service
+     *
+     * @param day Day
+     * @return Date object
+     */
+    public static Date startOfDay(LocalDate day) {
+        return Date.from(day.atStartOfDay(ZoneOffset.UTC).toInstant());
+    }
+
+    /**
+     * Gets Daily Usage History for a User with a cycle query followed by a usage query
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return List of DailyUsageDTO objects
+     */
+    private List<DailyUsageDTO> getDailyUsageHistoryTwoQuery(String userId, String mdn) {
         //filter out for only most recent cycle
-        List<Date> mostRecentDates = cycleService.getMostRecentCycle(userId, mdn);
+        CycleDTO mostRecentCycle = cycleService.getMostRecentCycle(userId, mdn);
 
-        if (mostRecentDates == null) {
+        if (mostRecentCycle == null) {
             return null;
         }
 
-        dailyUsages.removeIf(dailyUsage -> dailyUsage.getUsageDate().before(mostRecentDates.getFirst()) || dailyUsage.getUsageDate().after(mostRecentDates.get(1)));
+        List<DailyUsageDTO> history = dailyUsageRepository.findByUserIdAndMdnInWindow(userId, mdn, mostRecentCycle.getStartDate(), mostRecentCycle.getEndDate());
+
+        return mergePendingDeltas(history, userId, mdn, mostRecentCycle.getStartDate(), mostRecentCycle.getEndDate());
+    }
 
+    /**
+     * Adds unflushed write-behind increments to a usage history
+     *
+     * @param history   Daily usage history read from the collection
+     * @param userId    User ID
+     * @param mdn       MDN
+     * @param startDate Start Date of the history
+     * @param endDate   End Date of the history
+     * @return List of DailyUsageDTO objects including unflushed usage
+     */
+    private List<DailyUsageDTO> mergePendingDeltas(List<DailyUsageDTO> history, String userId, String mdn, Date startDate, Date endDate) {
+        Map<Date, Long> deltas = usageWriteBehindBuffer.getPendingDeltas(userId, mdn, startDate, endDate);
 
-        return dailyUsages.stream()
-                .map(dailyUsage -> new DailyUsageDTO(dailyUsage.getUsageDate(), dailyUsage.getUsedInMb()))
-                .collect(Collectors.toList());
+        if (deltas.isEmpty()) {
+            return history;
+        }
+
+        for (DailyUsageDTO dailyUsage : history) {
+            Long delta = deltas.remove(dailyUsage.getUsageDate());
+            if (delta != null) {
+                dailyUsage.setUsedInMb(Math.toIntExact(dailyUsage.getUsedInMb() + delta));
+            }
+        }
+
+        // Usage dates that have not been written to the collection yet
+        deltas.forEach((usageDate, delta) -> history.add(new DailyUsageDTO(usageDate, Math.toIntExact(delta))));
+        history.sort(Comparator.comparing(DailyUsageDTO::getUsageDate));
+
+        return history;
     }
 
     /**
@@ -122,15 +418,92 @@ public class DailyUsageService {
      * @return DailyUsageDTO object
      */
     public DailyUsageDTO updateUsedInMb(Date usageDate, String mdn, int usedInMb) {
-        DailyUsage dailyUsage = dailyUsageRepository.findByUsageDateAndMdn(usageDate, mdn);
+        DailyUsage previous = dailyUsageRepository.setUsedInMb(mdn, usageDate, usedInMb);
 
-        if (dailyUsage == null) {
+        if (previous == null) {
             return null;
         }
 
-        dailyUsage.setUsedInMb(usedInMb);
-        dailyUsageRepository.save(dailyUsage);
+        long deltaInMb = usedInMb - Objects.requireNonNullElse(previous.getUsedInMb(), 0);
+        cycleUsageRollupRepository.apply(previous.getUserId(), mdn, usageDate, deltaInMb, 0, usedInMb);
+        lineVersionRepository.bump(previous.getUserId(), mdn);
+
+        return new DailyUsageDTO(previous.getUsageDate(), usedInMb);
+    }
 
-        return new DailyUsageDTO(dailyUsage.getUsageDate(), dailyUsage.getUsedInMb());
+    /**
+     * Buffers an increment for a later bulk write when write-behind is enabled
+     *
+     * @param usageDate Usage Date
+     * @param mdn       MDN
+     * @param userId    User ID
+     * @param deltaInMb Used in Mb to add
+     * @return Boolean, false if write-behind is disabled or the increment is invalid
+     */
+    public Boolean queueIncrement(Date usageDate, String mdn, String userId, int deltaInMb) {
+        // The buffer checks ownership in Mongo again before writing, so the cached user is enough here
+        if (!usageWriteBehindBuffer.isEnabled() || !isValidIncrement(usageDate, mdn, userId, userMdnCache::getUser)) {
+            return false;
+        }
+
+        usageWriteBehindBuffer.add(mdn, usageDate, userId, deltaInMb);
+        return true;
+    }
+
+    /**
+     * Adds to the used in Mb for a daily usage, creating the daily usage if it does not exist
+     * <p>
+     * Done in a single atomic round trip so concurrent reporters do not overwrite each other
+     *
+     * @param usageDate Usage Date
+     * @param mdn       MDN
+     * @param userId    User ID
+     * @param deltaInMb Used in Mb to add
+     * @return DailyUsageDTO object with the new total, or null if the user does not own the MDN or the daily usage
+     */
+    public DailyUsageDTO incrementUsedInMb(Date usageDate, String mdn, String userId, int deltaInMb) {
+        if (!isValidIncrement(usageDate, mdn, userId, userMdnCache::loadUser)) {
+            return null;
+        }
+
+        DailyUsage previous;
+        try {
+            previous = dailyUsageRepository.incrementUsedInMb(mdn, usageDate, userId, deltaInMb);
+        } catch (DuplicateKeyException e) {
+            // Daily usage for this mdn and usage date belongs to another user
+            return null;
+        }
+
+        if (previous == null) {
+            cycleUsageRollupRepository.apply(userId, mdn, usageDate, deltaInMb, 1, deltaInMb);
+            lineVersionRepository.bump(userId, mdn);
+            return new DailyUsageDTO(usageDate, deltaInMb);
+        }
+
+        int usedInMb = Objects.requireNonNullElse(previous.getUsedInMb(), 0) + deltaInMb;
+        cycleUsageRollupRepository.apply(userId, mdn, usageDate, deltaInMb, 0, usedInMb);
+        lineVersionRepository.bump(userId, mdn);
+
+        return new DailyUsageDTO(previous.getUsageDate(), usedInMb);
+    }
+
+    /**
+     * Check if an increment names a usage date and an MDN owned by an existing user
+     *
+     * @param usageDate Usage Date
+     * @param mdn       MDN
+     * @param userId    User ID
+     * @param users     Lookup of the user by ID
+     * @return Boolean
+     */
+    private boolean isValidIncrement(Date usageDate, String mdn, String userId, Function<String, User> users) {
+        if (usageDate == null || mdn == null || userId == null) {
+            return false;
+        }
+
+        User user = users.apply(userId);
+
+        //Foreign key error or mdn mismatch
+        return user != null && mdn.equals(user.getMdn());
     }
 }
\ No newline at end of file
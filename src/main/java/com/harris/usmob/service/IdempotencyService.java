@@ -0,0 +1,257 @@
+package com.harris.usmob.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.harris.usmob.entity.IdempotencyRecord;
+import com.harris.usmob.repository.IdempotencyRecordRepository;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+
+/**
+ * Service for replaying the responses of requests made with an idempotency key
+ * <p>
+ * Responses are kept in a bounded in-memory cache backed by a Mongo TTL collection, so a retry
+ * is answered with the original response without running the request again.
+ * <p>
+ * A key is reserved with a pending record before its request runs, so a concurrent duplicate is
+ * answered with 409 rather than running twice. The reservation is a short lease: if the request
+ * fails it is released, and if the instance dies first a retry takes the key over once the lease
+ * has expired. Each record keeps a hash of the request body, and
+ * reusing a key with a different body is answered with 422 rather than replaying a response meant
+ * for another request.
+ */
+@Service
+public class IdempotencyService {
+
+    /**
+     * Request header carrying the idempotency key
+     */
+    public static final String HEADER = "Idempotency-Key";
+    /**
+     * Response header set on replayed responses
+     */
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    /**
+     * How long a response is kept, matches the TTL index on IdempotencyRecord
+     */
+    static final Duration TTL = Duration.ofHours(24);
+    /**
+     * How long a pending request holds its key before a retry may take it over
+     */
+    static final Duration LEASE = Duration.ofMinutes(1);
+    /**
+     * Most responses kept in memory
+     */
+    static final int MAX_CACHED = 10000;
+    /**
+     * Message returned while the original request is still running
+     */
+    static final String IN_PROGRESS = "A request with this idempotency key is in progress";
+    /**
+     * Message returned when the key was used with a different request body
+     */
+    static final String MISMATCH = "Idempotency key was used with a different request";
+
+    /**
+     * Idempotency Record Repository
+     */
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    /**
+     * Object Mapper
+     */
+    private final ObjectMapper objectMapper;
+    /**
+     * Recently stored responses
+     */
+    private final Cache<String, IdempotencyRecord> cache = Caffeine.newBuilder()
+            .maximumSize(MAX_CACHED)
+            .expireAfterWrite(TTL)
+            .build();
+
+    /**
+     * Creates the service
+     *
+     * @param idempotencyRecordRepository Idempotency Record Repository
+     * @param objectMapper                Object Mapper
+     */
+    public IdempotencyService(IdempotencyRecordRepository idempotencyRecordRepository, ObjectMapper objectMapper) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Runs a request once per idempotency key, replaying the stored response on retries
+     *
+     * @param scope          Endpoint the key belongs to
+     * @param idempotencyKey Idempotency key sent by the client
+     * @param body           Request body the key is used with
+     * @param request        Runs the request
+     * @return Original or replayed response, 409 while the original still runs or 422 for a different body
+     */
+    public ResponseEntity<Object> execute(String scope, String idempotencyKey, Object body, Supplier<ResponseEntity<Object>> request) {
+        String id = scope + ":" + idempotencyKey;
+        String fingerprint = fingerprint(body);
+        Date leaseUntil = new Date(System.currentTimeMillis() + LEASE.toMillis());
+
+        IdempotencyRecord stored = find(id);
+        if (stored == null) {
+            stored = reserve(id, fingerprint, leaseUntil);
+        }
+        if (stored != null && !takeOver(stored, fingerprint, leaseUntil)) {
+            return answer(stored, fingerprint);
+        }
+
+        ResponseEntity<Object> response;
+        try {
+            response = request.get();
+        } catch (Throwable e) {
+            // Nothing was answered, so a retry may run the request again
+            idempotencyRecordRepository.release(id, leaseUntil);
+            throw e;
+        }
+
+        IdempotencyRecord idempotencyRecord = toRecord(id, fingerprint, response);
+        idempotencyRecordRepository.save(idempotencyRecord);
+        cache.put(id, idempotencyRecord);
+
+        return response;
+    }
+
+    /**
+     * Reserves a key with a pending record
+     *
+     * @param id          Record ID
+     * @param fingerprint Hash of the request body
+     * @param leaseUntil  End of the lease
+     * @return Null if reserved, otherwise the record of the concurrent request that reserved it first
+     */
+    private IdempotencyRecord reserve(String id, String fingerprint, Date leaseUntil) {
+        IdempotencyRecord reserved = new IdempotencyRecord(id, 0, null, false, fingerprint, true, leaseUntil, new Date());
+
+        try {
+            idempotencyRecordRepository.insert(reserved);
+            return null;
+        } catch (DuplicateKeyException e) {
+            // Released again since, answered as still in progress
+            return idempotencyRecordRepository.findById(id).orElse(reserved);
+        }
+    }
+
+    /**
+     * Takes over the key of a pending request whose lease expired, as its instance stopped before answering
+     *
+     * @param stored      Stored record
+     * @param fingerprint Hash of the request body
+     * @param leaseUntil  End of the new lease
+     * @return Boolean, true if this request now holds the key
+     */
+    private boolean takeOver(IdempotencyRecord stored, String fingerprint, Date leaseUntil) {
+        // Records reserved before leases were kept hold the key for one lease after they were created
+        Date expiresAt = stored.getLeaseUntil() != null ? stored.getLeaseUntil()
+                : new Date(stored.getCreatedAt().getTime() + LEASE.toMillis());
+
+        return stored.isPending() && fingerprint.equals(stored.getFingerprint()) && expiresAt.before(new Date())
+                && idempotencyRecordRepository.takeOver(stored.getId(), stored.getLeaseUntil(), leaseUntil);
+    }
+
+    /**
+     * Finds the record of a key, only caching completed ones
+     *
+     * @param id Record ID
+     * @return IdempotencyRecord object, null if the key is unused
+     */
+    private IdempotencyRecord find(String id) {
+        IdempotencyRecord cached = cache.getIfPresent(id);
+        if (cached != null) {
+            return cached;
+        }
+
+        IdempotencyRecord stored = idempotencyRecordRepository.findById(id).orElse(null);
+        if (stored != null && !stored.isPending()) {
+            cache.put(id, stored);
+        }
+
+        return stored;
+    }
+
+    /**
+     * Answers a request whose key already has a record
+     *
+     * @param stored      Stored record
+     * @param fingerprint Hash of the request body
+     * @return Replayed response, 409 while the original still runs or 422 for a different body
+     */
+    private ResponseEntity<Object> answer(IdempotencyRecord stored, String fingerprint) {
+        if (!fingerprint.equals(stored.getFingerprint())) {
+            return new ResponseEntity<>(MISMATCH, HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+
+        if (stored.isPending()) {
+            return new ResponseEntity<>(IN_PROGRESS, HttpStatus.CONFLICT);
+        }
+
+        return replay(stored);
+    }
+
+    /**
+     * Hashes a request body
+     *
+     * @param body Request body
+     * @return Hex SHA-256 of the JSON body
+     */
+    private String fingerprint(Object body) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(body);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(json));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Request body cannot be hashed", e);
+        }
+    }
+
+    /**
+     * Builds the record stored for a response
+     *
+     * @param id          Record ID
+     * @param fingerprint Hash of the request body
+     * @param response    Response to store
+     * @return IdempotencyRecord object
+     */
+    private IdempotencyRecord toRecord(String id, String fingerprint, ResponseEntity<Object> response) {
+        Object body = response.getBody();
+
+        if (body == null || body instanceof String) {
+            return new IdempotencyRecord(id, response.getStatusCode().value(), (String) body, false, fingerprint, false, null, new Date());
+        }
+
+        try {
+            return new IdempotencyRecord(id, response.getStatusCode().value(), objectMapper.writeValueAsString(body), true, fingerprint, false, null, new Date());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Response body cannot be stored", e);
+        }
+    }
+
+    /**
+     * Rebuilds a response from a stored record
+     *
+     * @param idempotencyRecord Stored record
+     * @return Replayed response
+     */
+    private ResponseEntity<Object> replay(IdempotencyRecord idempotencyRecord) {
+        return ResponseEntity.status(HttpStatus.valueOf(idempotencyRecord.getStatus()))
+                .header(REPLAYED_HEADER, "true")
+                .contentType(idempotencyRecord.isJson() ? MediaType.APPLICATION_JSON : MediaType.TEXT_PLAIN)
+                .body(idempotencyRecord.getBody());
+    }
+}
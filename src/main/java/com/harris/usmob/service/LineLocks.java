@@ -0,0 +1,99 @@
+package com.harris.usmob.service;
+
+import com.harris.usmob.dto.LineDTO;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Striped locks keyed by user and MDN, serializing the checks and writes of a line on this instance
+ * <p>
+ * Lines share a fixed number of locks, so the locks never have to be created or evicted and two
+ * writers of the same line always hold the same lock. Lines of a batch are locked in stripe order,
+ * so batches sharing stripes never deadlock.
+ * <p>
+ * Thread safe.
+ */
+public class LineLocks {
+
+    /**
+     * Number of locks lines are spread over
+     */
+    private static final int STRIPES = 256;
+
+    /**
+     * Locks by stripe
+     */
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    /**
+     * Creates the locks
+     */
+    public LineLocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Runs an action holding the lock of one line
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @param action Action
+     * @param <T>    Result type
+     * @return Result of the action
+     */
+    public <T> T withLock(String userId, String mdn, Supplier<T> action) {
+        ReentrantLock lock = locks[stripe(userId, mdn)];
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs an action holding the locks of many lines
+     *
+     * @param lines  Lines
+     * @param action Action
+     * @param <T>    Result type
+     * @return Result of the action
+     */
+    public <T> T withLocks(Collection<LineDTO> lines, Supplier<T> action) {
+        TreeSet<Integer> stripes = new TreeSet<>();
+        lines.forEach(line -> stripes.add(stripe(line.getUserId(), line.getMdn())));
+
+        List<ReentrantLock> held = new ArrayList<>();
+        try {
+            for (int stripe : stripes) {
+                locks[stripe].lock();
+                held.add(locks[stripe]);
+            }
+
+            return action.get();
+        } finally {
+            for (int i = held.size() - 1; i >= 0; i--) {
+                held.get(i).unlock();
+            }
+        }
+    }
+
+    /**
+     * Gets the stripe of a line
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return Stripe index
+     */
+    private static int stripe(String userId, String mdn) {
+        return Math.floorMod(Objects.hash(userId, mdn), STRIPES);
+    }
+}
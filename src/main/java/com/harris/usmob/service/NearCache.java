@@ -0,0 +1,43 @@
+package com.harris.usmob.service;
+
+/**
+ * In-process cache of documents that other instances also write
+ * <p>
+ * When change streams are enabled, ChangeStreamListener reports every write to the user and cycle
+ * collections to each near cache, writes made by this instance included. Without them the time
+ * bound of each cache covers writes made by other instances.
+ */
+public interface NearCache {
+
+    /**
+     * Drops what is cached about a user, called after the user is created, changed or deleted
+     *
+     * @param userId User ID
+     * @param email  Email of the user after the write, or null if the user is deleted
+     */
+    default void userChanged(String userId, String email) {
+    }
+
+    /**
+     * Drops what is cached about a user and MDN, called after a cycle of the line is written
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     */
+    default void cycleChanged(String userId, String mdn) {
+    }
+
+    /**
+     * Drops what is cached about the line of a cycle, called after the cycle is changed or deleted
+     * and its line may no longer be known
+     *
+     * @param cycleId Cycle ID
+     */
+    default void cycleDeleted(String cycleId) {
+    }
+
+    /**
+     * Drops everything, called when writes may have been missed
+     */
+    void invalidateAll();
+}
@@ -0,0 +1,110 @@
+package com.harris.usmob.service;
+
+import com.harris.usmob.dto.PageDTO;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Builds keyset pages and the opaque cursors between them
+ * <p>
+ * A cursor holds the sort key of the last item of a page, the next page is read with a range
+ * condition on that key, so every page costs one index seek however deep it is. Pages are read
+ * with one extra row to tell whether a next page exists.
+ */
+public final class PageCursors {
+
+    /**
+     * Largest page size, larger limits are capped
+     */
+    public static final int MAX_LIMIT = 1000;
+    /**
+     * Separator between the keys of a cursor
+     */
+    private static final String SEPARATOR = "\u0000";
+
+    private PageCursors() {
+    }
+
+    /**
+     * Caps a requested limit to between 1 and MAX_LIMIT
+     *
+     * @param limit Requested limit
+     * @return Page size
+     */
+    public static int size(int limit) {
+        return Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+
+    /**
+     * Encodes the sort key of an item as a cursor
+     *
+     * @param keys Sort key values
+     * @return Cursor
+     */
+    public static String encode(String... keys) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(String.join(SEPARATOR, keys).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor into its sort key values
+     *
+     * @param cursor Cursor
+     * @param count  Number of keys expected
+     * @return Sort key values, null if the cursor is invalid
+     */
+    public static String[] decode(String cursor, int count) {
+        try {
+            String[] keys = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(SEPARATOR, -1);
+            return keys.length == count ? keys : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Encodes a date sort key value
+     *
+     * @param date Date
+     * @return Sort key value
+     */
+    public static String dateKey(Date date) {
+        return Long.toString(date.getTime());
+    }
+
+    /**
+     * Decodes a date sort key value
+     *
+     * @param key Sort key value
+     * @return Date, null if the value is invalid
+     */
+    public static Date parseDateKey(String key) {
+        try {
+            return new Date(Long.parseLong(key));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Builds a page from rows read with a limit of size + 1
+     *
+     * @param rows     Rows in key order
+     * @param size     Page size
+     * @param toDTO    Converts a row to an item
+     * @param cursorOf Encodes the sort key of a row
+     * @param <E>      Type of the rows
+     * @param <T>      Type of the items
+     * @return PageDTO object
+     */
+    public static <E, T> PageDTO<T> page(List<E> rows, int size, Function<E, T> toDTO, Function<E, String> cursorOf) {
+        List<E> pageRows = rows.size() > size ? rows.subList(0, size) : rows;
+        String next = rows.size() > size ? cursorOf.apply(pageRows.get(size - 1)) : null;
+
+        return new PageDTO<>(pageRows.stream().map(toDTO).toList(), next);
+    }
+}
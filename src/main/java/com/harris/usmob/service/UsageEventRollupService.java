@@ -0,0 +1,336 @@
+package com.harris.usmob.service;
+
+import com.harris.usmob.config.DailyUsageProperties;
+import com.harris.usmob.config.NodeIds;
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.dto.UsageEventDTO;
+import com.harris.usmob.dto.UsageEventResultDTO;
+import com.harris.usmob.entity.DailyUsage;
+import com.harris.usmob.entity.ProcessedUsageEvent;
+import com.harris.usmob.entity.UsageCarry;
+import com.harris.usmob.entity.User;
+import com.harris.usmob.repository.CycleUsageRollupRepository;
+import com.harris.usmob.repository.DailyUsageRepository;
+import com.harris.usmob.repository.LineVersionRepository;
+import com.harris.usmob.repository.ProcessedUsageEventRepository;
+import com.harris.usmob.repository.UsageCarryRepository;
+import com.harris.usmob.repository.UserRepository;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Service that rolls raw usage events up into Daily Usage
+ * <p>
+ * Bytes below one Mb are carried per instance, in memory and in the usage carry collection, so they
+ * survive a restart. Only the instance that carries bytes changes them, so no other instance races
+ * the conversion to whole Mb.
+ * <p>
+ * Once a day has ended for the configured number of open days, its carried bytes are settled. They
+ * are truncated like every other conversion to whole Mb, so nothing is written and the carries of
+ * that day are deleted, for every instance. Events arriving later for a closed day carry nothing.
+ */
+@Service
+public class UsageEventRollupService {
+
+    /**
+     * Bytes in one Mb
+     */
+    static final long BYTES_PER_MB = 1024L * 1024L;
+
+    /**
+     * Rollup key, the natural key of a daily usage
+     *
+     * @param mdn       MDN
+     * @param usageDate Start of the UTC day in epoch milliseconds
+     * @param userId    User ID owning the MDN
+     */
+    private record Key(String mdn, long usageDate, String userId) {
+    }
+
+    /**
+     * Daily Usage Repository
+     */
+    private final DailyUsageRepository dailyUsageRepository;
+    /**
+     * Processed Usage Event Repository
+     */
+    private final ProcessedUsageEventRepository processedUsageEventRepository;
+    /**
+     * User Repository
+     */
+    private final UserRepository userRepository;
+    /**
+     * Line Version Repository
+     */
+    private final LineVersionRepository lineVersionRepository;
+    /**
+     * Usage Carry Repository
+     */
+    private final UsageCarryRepository usageCarryRepository;
+    /**
+     * Cycle Usage Rollup Repository
+     */
+    private final CycleUsageRollupRepository cycleUsageRollupRepository;
+    /**
+     * ID the carried bytes of this instance are saved under
+     */
+    private final String nodeId;
+    /**
+     * Days after a UTC day ends before its carried bytes are settled
+     */
+    private final int carryOpenDays;
+    /**
+     * Bytes below one Mb carried over to the next flush of the same key
+     */
+    private final Map<Key, Long> carriedBytes = new HashMap<>();
+    /**
+     * Ensures a single flush changes the carried bytes at a time
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+    /**
+     * Whether the saved carried bytes have been loaded
+     */
+    private boolean loaded;
+    /**
+     * Start of the first UTC day whose bytes are still carried, in epoch milliseconds
+     */
+    private long openFrom;
+
+    /**
+     * Creates the service, the bytes this instance carried when it last stopped are loaded on first use
+     *
+     * @param dailyUsageRepository          Daily Usage Repository
+     * @param processedUsageEventRepository Processed Usage Event Repository
+     * @param userRepository                User Repository
+     * @param lineVersionRepository         Line Version Repository
+     * @param usageCarryRepository          Usage Carry Repository
+     * @param cycleUsageRollupRepository    Cycle Usage Rollup Repository
+     * @param dailyUsageProperties          Daily Usage configuration
+     */
+    public UsageEventRollupService(DailyUsageRepository dailyUsageRepository, ProcessedUsageEventRepository processedUsageEventRepository,
+                                   UserRepository userRepository, LineVersionRepository lineVersionRepository,
+                                   UsageCarryRepository usageCarryRepository, CycleUsageRollupRepository cycleUsageRollupRepository,
+                                   DailyUsageProperties dailyUsageProperties) {
+        this.dailyUsageRepository = dailyUsageRepository;
+        this.processedUsageEventRepository = processedUsageEventRepository;
+        this.userRepository = userRepository;
+        this.lineVersionRepository = lineVersionRepository;
+        this.usageCarryRepository = usageCarryRepository;
+        this.cycleUsageRollupRepository = cycleUsageRollupRepository;
+        this.nodeId = NodeIds.resolve(dailyUsageProperties.getNodeId());
+        this.carryOpenDays = dailyUsageProperties.getCarryOpenDays();
+    }
+
+    /**
+     * Rolls a batch of raw usage events up into daily usage
+     * <p>
+     * Events are resolved to users once per distinct MDN and deduplicated by event ID, then summed
+     * per MDN and UTC day in memory. Bytes are converted to Mb only when the rollups are written in
+     * one bulk upsert, whole Mb are written and the remainder is carried to the next batch.
+     * <p>
+     * Event IDs are marked processed before the rollups are written, so a concurrent retry is
+     * dropped. If the write throws, or fails for a rollup, the marks of its events are deleted
+     * again, so a retry of those events is counted rather than dropped. Events whose mark fails to
+     * insert for any other reason than being processed already are rejected.
+     *
+     * @param events Raw usage events
+     * @return UsageEventResultDTO object
+     */
+    public UsageEventResultDTO ingestEvents(List<UsageEventDTO> events) {
+        int rejected = 0;
+
+        Set<String> mdns = events.stream()
+                .map(UsageEventDTO::getMdn)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<String, User> usersByMdn = userRepository.findByMdnIn(mdns).stream()
+                .collect(Collectors.toMap(User::getMdn, Function.identity(), (a, b) -> a));
+
+        List<UsageEventDTO> validEvents = new ArrayList<>();
+        List<ProcessedUsageEvent> processedEvents = new ArrayList<>();
+        Date processedAt = new Date();
+
+        for (UsageEventDTO event : events) {
+            if (event.getEventId() == null || event.getTimestamp() == null || event.getBytes() == null
+                    || event.getBytes() < 0 || !usersByMdn.containsKey(event.getMdn())) {
+                rejected++;
+                continue;
+            }
+            validEvents.add(event);
+            processedEvents.add(new ProcessedUsageEvent(event.getEventId(), processedAt));
+        }
+
+        // Event IDs already in the collection are retries and must not be counted twice
+        Map<Integer, String> unmarked = processedUsageEventRepository.insertUnordered(processedEvents);
+        long duplicates = unmarked.values().stream().filter(ProcessedUsageEventRepository.ALREADY_PROCESSED::equals).count();
+        rejected += Math.toIntExact(unmarked.size() - duplicates);
+
+        Map<Key, Long> bytesByDay = new HashMap<>();
+        Map<Key, List<String>> eventIdsByDay = new HashMap<>();
+        for (int i = 0; i < validEvents.size(); i++) {
+            if (unmarked.containsKey(i)) {
+                continue;
+            }
+            UsageEventDTO event = validEvents.get(i);
+            long day = Instant.ofEpochMilli(event.getTimestamp().getTime()).truncatedTo(ChronoUnit.DAYS).toEpochMilli();
+            Key key = new Key(event.getMdn(), day, usersByMdn.get(event.getMdn()).getId());
+            bytesByDay.merge(key, event.getBytes(), Long::sum);
+            eventIdsByDay.computeIfAbsent(key, k -> new ArrayList<>()).add(event.getEventId());
+        }
+
+        Set<Key> failedKeys = flush(bytesByDay, eventIdsByDay);
+
+        List<String> failedEventIds = failedKeys.stream().flatMap(key -> eventIdsByDay.get(key).stream()).toList();
+        processedUsageEventRepository.deleteAllById(failedEventIds);
+
+        int accepted = validEvents.size() - unmarked.size() - failedEventIds.size();
+        return new UsageEventResultDTO(accepted, Math.toIntExact(duplicates), rejected + failedEventIds.size());
+    }
+
+    /**
+     * Converts summed bytes to whole Mb and writes them in one bulk upsert
+     * <p>
+     * The carried bytes of a key only change once its rollup is written, so a failed rollup leaves
+     * them as they were for the retry of its events. If the bulk upsert throws, the marks of every
+     * event are deleted before rethrowing.
+     *
+     * @param bytesByDay    Bytes per rollup key
+     * @param eventIdsByDay IDs of the events summed into each rollup key
+     * @return Keys whose rollup failed to write
+     */
+    private Set<Key> flush(Map<Key, Long> bytesByDay, Map<Key, List<String>> eventIdsByDay) {
+        flushLock.lock();
+        try {
+            loadCarriedBytes();
+            settleClosedDays();
+            List<Key> keys = new ArrayList<>();
+            List<DailyUsage> increments = new ArrayList<>();
+            Map<Key, Long> remainders = new HashMap<>();
+
+            bytesByDay.forEach((key, bytes) -> {
+                long total = bytes + carriedBytes.getOrDefault(key, 0L);
+                long mb = total / BYTES_PER_MB;
+
+                // The remainder of a closed day is settled right away
+                remainders.put(key, key.usageDate() < openFrom ? 0 : total % BYTES_PER_MB);
+                if (mb > 0) {
+                    keys.add(key);
+                    increments.add(new DailyUsage(null, key.mdn(), new Date(key.usageDate()), Math.toIntExact(mb), key.userId()));
+                }
+            });
+
+            Map<Integer, String> failures;
+            try {
+                failures = dailyUsageRepository.bulkIncrementUsedInMb(increments);
+            } catch (RuntimeException e) {
+                processedUsageEventRepository.deleteAllById(eventIdsByDay.values().stream().flatMap(List::stream).toList());
+                throw e;
+            }
+            lineVersionRepository.bumpAll(lines(increments));
+
+            Set<Key> failedKeys = failures.keySet().stream().map(keys::get).collect(Collectors.toSet());
+            remainders.keySet().removeAll(failedKeys);
+            remainders.forEach((key, remainder) -> {
+                if (remainder == 0) {
+                    carriedBytes.remove(key);
+                } else {
+                    carriedBytes.put(key, remainder);
+                }
+            });
+            saveCarriedBytes(remainders);
+            cycleUsageRollupRepository.applyIncrements(written(increments, failures));
+
+            return failedKeys;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Keeps the increments a bulk upsert wrote
+     *
+     * @param increments Increments passed to the bulk upsert
+     * @param failures   Failed positions in increments
+     * @return Written increments
+     */
+    private static List<DailyUsage> written(List<DailyUsage> increments, Map<Integer, String> failures) {
+        List<DailyUsage> written = new ArrayList<>();
+        for (int i = 0; i < increments.size(); i++) {
+            if (!failures.containsKey(i)) {
+                written.add(increments.get(i));
+            }
+        }
+
+        return written;
+    }
+
+    /**
+     * Loads the bytes this instance carried when it last stopped, once
+     * <p>
+     * Must hold flushLock
+     */
+    private void loadCarriedBytes() {
+        if (loaded) {
+            return;
+        }
+
+        for (UsageCarry usageCarry : usageCarryRepository.findByNodeId(nodeId)) {
+            carriedBytes.put(new Key(usageCarry.getMdn(), usageCarry.getUsageDate().getTime(), usageCarry.getUserId()), usageCarry.getBytes());
+        }
+        loaded = true;
+    }
+
+    /**
+     * Settles the bytes carried for days that closed since the last settlement, by every instance
+     * <p>
+     * Carried bytes are below one Mb and truncate to none, so settling only deletes them.
+     * <p>
+     * Must hold flushLock
+     */
+    private void settleClosedDays() {
+        long from = Instant.now().truncatedTo(ChronoUnit.DAYS).minus(carryOpenDays, ChronoUnit.DAYS).toEpochMilli();
+        if (from <= openFrom) {
+            return;
+        }
+
+        usageCarryRepository.deleteByUsageDateBefore(new Date(from));
+        carriedBytes.keySet().removeIf(key -> key.usageDate() < from);
+        openFrom = from;
+    }
+
+    /**
+     * Saves the carried bytes of some keys, deleting keys with none left
+     * <p>
+     * Must hold flushLock
+     *
+     * @param bytesByKey Carried bytes per key
+     */
+    private void saveCarriedBytes(Map<Key, Long> bytesByKey) {
+        usageCarryRepository.replaceAll(bytesByKey.entrySet().stream()
+                .map(entry -> {
+                    Key key = entry.getKey();
+                    Date usageDate = new Date(key.usageDate());
+                    return new UsageCarry(UsageCarry.idOf(nodeId, key.mdn(), usageDate, key.userId()), nodeId,
+                            key.mdn(), usageDate, key.userId(), entry.getValue());
+                })
+                .toList());
+    }
+
+    /**
+     * Gets the lines of written increments, bumping a line whose increment failed is harmless
+     *
+     * @param increments Increments
+     * @return List of LineDTO objects
+     */
+    private static List<LineDTO> lines(List<DailyUsage> increments) {
+        return increments.stream()
+                .map(increment -> new LineDTO(increment.getUserId(), increment.getMdn()))
+                .toList();
+    }
+}
@@ -0,0 +1,428 @@
+package com.harris.usmob.service;
+
+import com.harris.usmob.config.DailyUsageProperties;
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.entity.DailyUsage;
+import com.harris.usmob.entity.User;
+import com.harris.usmob.repository.CycleUsageRollupRepository;
+import com.harris.usmob.repository.DailyUsageRepository;
+import com.harris.usmob.repository.DailyUsageRepositoryCustom;
+import com.harris.usmob.repository.LineVersionRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind buffer for Daily Usage increments
+ * <p>
+ * Increments are summed in memory per mdn and usage date and written as one unordered bulk upsert
+ * on a fixed interval, when the buffer is full, and on shutdown. Drained increments stay visible to
+ * history reads as in flight until the bulk upsert returns. Ownership of each MDN is read from Mongo
+ * for the whole batch right before the write, increments of a user that no longer owns the MDN are dropped.
+ */
+@Component
+public class UsageWriteBehindBuffer {
+
+    /**
+     * Buffer key, the natural key of a daily usage
+     *
+     * @param mdn       MDN
+     * @param usageDate Usage Date in epoch milliseconds
+     */
+    private record Key(String mdn, long usageDate) {
+    }
+
+    /**
+     * Buffered increment
+     *
+     * @param userId    User ID, written if the daily usage is created
+     * @param deltaInMb Summed increments in Mb
+     */
+    private record Pending(String userId, long deltaInMb) {
+        Pending plus(Pending other) {
+            return new Pending(userId, deltaInMb + other.deltaInMb);
+        }
+    }
+
+    /**
+     * Daily Usage Repository
+     */
+    private final DailyUsageRepository dailyUsageRepository;
+    /**
+     * Line Version Repository
+     */
+    private final LineVersionRepository lineVersionRepository;
+    /**
+     * Cycle Usage Rollup Repository
+     */
+    private final CycleUsageRollupRepository cycleUsageRollupRepository;
+    /**
+     * User MDN Cache, read through to Mongo for the ownership checks
+     */
+    private final UserMdnCache userMdnCache;
+    /**
+     * Write-behind configuration
+     */
+    private final DailyUsageProperties.WriteBehind properties;
+    /**
+     * Buffered increments, merges on the same key are atomic
+     */
+    private final ConcurrentHashMap<Key, Pending> pending = new ConcurrentHashMap<>();
+    /**
+     * Drained increments whose bulk upsert has not returned yet
+     */
+    private final ConcurrentHashMap<Key, Pending> inFlight = new ConcurrentHashMap<>();
+    /**
+     * Keys of the pending and in flight increments by MDN, so the reads of a line only visit the
+     * increments of its MDN. May still hold keys that were written, never misses a buffered one.
+     */
+    private final ConcurrentHashMap<String, Set<Key>> keysByMdn = new ConcurrentHashMap<>();
+    /**
+     * Held for reading while pending and in flight increments are read together, and for writing
+     * while increments move between them, so a read never misses an increment in between
+     */
+    private final ReentrantReadWriteLock inFlightLock = new ReentrantReadWriteLock();
+    /**
+     * Time in epoch milliseconds of the oldest unflushed increment, 0 if none
+     */
+    private final AtomicLong oldestPendingAt = new AtomicLong();
+    /**
+     * Time in epoch milliseconds of the oldest in flight increment, 0 if none
+     */
+    private volatile long oldestInFlightAt;
+    /**
+     * Ensures a single flush runs at a time
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+    /**
+     * Flush duration timer
+     */
+    private final Timer flushTimer;
+
+    /**
+     * Creates the buffer and registers its metrics
+     *
+     * @param dailyUsageRepository       Daily Usage Repository
+     * @param lineVersionRepository      Line Version Repository
+     * @param cycleUsageRollupRepository Cycle Usage Rollup Repository
+     * @param userMdnCache               User MDN Cache
+     * @param dailyUsageProperties       Daily Usage configuration
+     * @param meterRegistry              Meter Registry
+     */
+    public UsageWriteBehindBuffer(DailyUsageRepository dailyUsageRepository, LineVersionRepository lineVersionRepository,
+                                  CycleUsageRollupRepository cycleUsageRollupRepository, UserMdnCache userMdnCache,
+                                  DailyUsageProperties dailyUsageProperties, MeterRegistry meterRegistry) {
+        this.dailyUsageRepository = dailyUsageRepository;
+        this.lineVersionRepository = lineVersionRepository;
+        this.cycleUsageRollupRepository = cycleUsageRollupRepository;
+        this.userMdnCache = userMdnCache;
+        this.properties = dailyUsageProperties.getWriteBehind();
+
+        Gauge.builder("usmob.daily_usage.write_behind.buffer.size", pending, Map::size)
+                .description("Number of buffered daily usage increments")
+                .register(meterRegistry);
+        Gauge.builder("usmob.daily_usage.write_behind.flush.lag", this, UsageWriteBehindBuffer::flushLagMillis)
+                .description("Age of the oldest unflushed daily usage increment")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("usmob.daily_usage.write_behind.flush")
+                .description("Time taken to flush buffered daily usage increments")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether increments should be buffered
+     *
+     * @return Boolean
+     */
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Buffers an increment, flushing immediately if the buffer is full
+     *
+     * @param mdn       MDN
+     * @param usageDate Usage Date
+     * @param userId    User ID
+     * @param deltaInMb Used in Mb to add
+     */
+    public void add(String mdn, Date usageDate, String userId, long deltaInMb) {
+        merge(mdn, usageDate, userId, deltaInMb);
+
+        if (pending.size() >= properties.getMaxEntries() && flushLock.tryLock()) {
+            try {
+                drainAndWrite();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Gets the unflushed increments for a user and MDN within a date range
+     *
+     * @param userId    User ID
+     * @param mdn       MDN
+     * @param startDate Start Date, inclusive
+     * @param endDate   End Date, inclusive
+     * @return Map of usage date to unflushed Mb
+     */
+    public Map<Date, Long> getPendingDeltas(String userId, String mdn, Date startDate, Date endDate) {
+        Map<Date, Long> deltas = new HashMap<>();
+
+        if (pending.isEmpty() && inFlight.isEmpty()) {
+            return deltas;
+        }
+
+        inFlightLock.readLock().lock();
+        try {
+            for (Key key : keysByMdn.getOrDefault(mdn, Set.of())) {
+                if (key.usageDate() < startDate.getTime() || key.usageDate() > endDate.getTime()) {
+                    continue;
+                }
+
+                for (Map<Key, Pending> increments : List.of(pending, inFlight)) {
+                    Pending value = increments.get(key);
+                    if (value != null && Objects.equals(value.userId(), userId)) {
+                        deltas.merge(new Date(key.usageDate()), value.deltaInMb(), Long::sum);
+                    }
+                }
+            }
+        } finally {
+            inFlightLock.readLock().unlock();
+        }
+
+        return deltas;
+    }
+
+    /**
+     * Check if a user and MDN has unflushed increments
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return Boolean
+     */
+    public boolean hasPending(String userId, String mdn) {
+        if (pending.isEmpty() && inFlight.isEmpty()) {
+            return false;
+        }
+
+        inFlightLock.readLock().lock();
+        try {
+            for (Key key : keysByMdn.getOrDefault(mdn, Set.of())) {
+                for (Map<Key, Pending> increments : List.of(pending, inFlight)) {
+                    Pending value = increments.get(key);
+                    if (value != null && Objects.equals(value.userId(), userId)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } finally {
+            inFlightLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes all buffered increments, runs on the configured interval
+     */
+    @Scheduled(fixedDelayString = "${usmob.daily-usage.write-behind.flush-interval-ms:1000}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            drainAndWrite();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Writes all buffered increments before the application stops
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    /**
+     * Moves every buffered entry in flight and writes them in one bulk upsert
+     * <p>
+     * Must hold flushLock. Entries that fail to write are merged back into the buffer, apart from
+     * entries for a daily usage that belongs to another user. An entry whose sum does not fit in an
+     * int is drained up to the int range, the rest stays buffered for the next flush.
+     */
+    private void drainAndWrite() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        long drainedAt;
+        boolean split = false;
+        inFlightLock.writeLock().lock();
+        try {
+            drainedAt = oldestPendingAt.getAndSet(0);
+            for (Key key : pending.keySet()) {
+                Pending rest = pending.computeIfPresent(key, (k, value) -> {
+                    long drained = Math.clamp(value.deltaInMb(), Integer.MIN_VALUE, Integer.MAX_VALUE);
+                    inFlight.put(k, new Pending(value.userId(), drained));
+                    return drained == value.deltaInMb() ? null : new Pending(value.userId(), value.deltaInMb() - drained);
+                });
+                split |= rest != null;
+            }
+            if (split) {
+                oldestPendingAt.accumulateAndGet(drainedAt, UsageWriteBehindBuffer::oldest);
+            }
+            oldestInFlightAt = drainedAt;
+        } finally {
+            inFlightLock.writeLock().unlock();
+        }
+
+        List<DailyUsage> increments = new ArrayList<>(inFlight.size());
+        List<DailyUsage> owned;
+        Map<Integer, String> failures;
+        try {
+            inFlight.forEach((key, value) -> {
+                if (value.deltaInMb() != 0) {
+                    increments.add(new DailyUsage(null, key.mdn(), new Date(key.usageDate()), Math.toIntExact(value.deltaInMb()), value.userId()));
+                }
+            });
+            owned = owned(increments);
+            failures = flushTimer.record(() -> dailyUsageRepository.bulkIncrementUsedInMb(owned));
+        } catch (RuntimeException e) {
+            land(increments, drainedAt);
+            throw e;
+        }
+
+        // Increments of a daily usage owned by another user would never succeed, so they are dropped
+        List<DailyUsage> failed = new ArrayList<>();
+        failures.forEach((index, failure) -> {
+            if (!DailyUsageRepositoryCustom.OWNED_BY_OTHER_USER.equals(failure)) {
+                failed.add(owned.get(index));
+            }
+        });
+        land(failed, drainedAt);
+
+        // Requeued lines stay pending, so bumping them too is harmless
+        lineVersionRepository.bumpAll(increments.stream()
+                .map(increment -> new LineDTO(increment.getUserId(), increment.getMdn()))
+                .toList());
+
+        List<DailyUsage> written = new ArrayList<>();
+        for (int i = 0; i < owned.size(); i++) {
+            if (!failures.containsKey(i)) {
+                written.add(owned.get(i));
+            }
+        }
+        cycleUsageRollupRepository.applyIncrements(written);
+    }
+
+    /**
+     * Keeps the increments whose user still owns the MDN, reading every user from Mongo in one query
+     * <p>
+     * The MDN may have moved to another user since the increment was queued.
+     *
+     * @param increments Increments
+     * @return Increments of the current owners
+     */
+    private List<DailyUsage> owned(List<DailyUsage> increments) {
+        Map<String, User> users = userMdnCache.loadUsers(increments.stream().map(DailyUsage::getUserId).toList());
+
+        return increments.stream()
+                .filter(increment -> {
+                    User user = users.get(increment.getUserId());
+                    return user != null && increment.getMdn().equals(user.getMdn());
+                })
+                .toList();
+    }
+
+    /**
+     * Clears the in flight entries once their bulk upsert returned, merging failed entries back into the buffer
+     * <p>
+     * Failed entries keep the age they were drained with, so the flush lag keeps growing while writes fail.
+     *
+     * @param failed    Increments to merge back
+     * @param drainedAt Time in epoch milliseconds of the oldest drained increment
+     */
+    private void land(List<DailyUsage> failed, long drainedAt) {
+        inFlightLock.writeLock().lock();
+        try {
+            Set<Key> landed = new HashSet<>(inFlight.keySet());
+            inFlight.clear();
+            oldestInFlightAt = 0;
+
+            for (DailyUsage increment : failed) {
+                merge(increment.getMdn(), increment.getUsageDate(), increment.getUserId(), increment.getUsedInMb());
+            }
+            if (!failed.isEmpty()) {
+                oldestPendingAt.accumulateAndGet(drainedAt, UsageWriteBehindBuffer::oldest);
+            }
+
+            // Checked and removed under the MDN's entry, so a key merged concurrently is never unindexed
+            for (Key key : landed) {
+                keysByMdn.computeIfPresent(key.mdn(), (mdn, keys) -> {
+                    if (!pending.containsKey(key)) {
+                        keys.remove(key);
+                    }
+                    return keys.isEmpty() ? null : keys;
+                });
+            }
+        } finally {
+            inFlightLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Merges an increment into the buffer without triggering a flush
+     *
+     * @param mdn       MDN
+     * @param usageDate Usage Date
+     * @param userId    User ID
+     * @param deltaInMb Used in Mb to add
+     */
+    private void merge(String mdn, Date usageDate, String userId, long deltaInMb) {
+        Key key = new Key(mdn, usageDate.getTime());
+        oldestPendingAt.compareAndSet(0, System.currentTimeMillis());
+        pending.merge(key, new Pending(userId, deltaInMb), Pending::plus);
+
+        // Indexed after the merge, see land
+        keysByMdn.compute(mdn, (m, keys) -> {
+            Set<Key> indexed = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+            indexed.add(key);
+            return indexed;
+        });
+    }
+
+    /**
+     * Age of the oldest unflushed increment
+     *
+     * @return Milliseconds, 0 if the buffer is empty
+     */
+    private double flushLagMillis() {
+        long oldest = oldest(oldestPendingAt.get(), oldestInFlightAt);
+        return oldest == 0 ? 0 : System.currentTimeMillis() - oldest;
+    }
+
+    /**
+     * Earliest of two times where 0 means none
+     *
+     * @param a Time in epoch milliseconds, or 0
+     * @param b Time in epoch milliseconds, or 0
+     * @return Earliest time, or 0 if both are 0
+     */
+    private static long oldest(long a, long b) {
+        if (a == 0 || b == 0) {
+            return Math.max(a, b);
+        }
+        return Math.min(a, b);
+    }
+}
@@ -0,0 +1,154 @@
+package com.harris.usmob.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.harris.usmob.dto.UserDTO;
+import com.harris.usmob.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Read-through cache of users by normalized email, for user search and the email checks on user writes
+ * <p>
+ * Emails with no user are cached too, for a shorter time, so repeated lookups of unknown emails
+ * do not reach Mongo either. UserService invalidates the emails of every user it creates, changes
+ * or deletes. Hit, miss, eviction and load time metrics are registered under the cache name user-email.
+ */
+@Service
+public class UserEmailCache implements NearCache {
+
+    /**
+     * Name of the cache in the cache metrics
+     */
+    static final String NAME = "user-email";
+    /**
+     * Most emails kept in memory
+     */
+    static final int MAX_EMAILS = 100000;
+    /**
+     * How long a found user is kept after it is loaded
+     */
+    static final Duration TTL = Duration.ofMinutes(10);
+    /**
+     * How long an email with no user is kept after it is loaded
+     */
+    static final Duration MISSING_TTL = Duration.ofSeconds(30);
+
+    /**
+     * User Repository
+     */
+    private final UserRepository userRepository;
+    /**
+     * Users by normalized email, empty if no user has the email
+     */
+    private final Cache<String, Optional<UserDTO>> cache;
+    /**
+     * Emails each cached user is cached under
+     */
+    private final UserEmailKeys userEmailKeys = new UserEmailKeys();
+
+    /**
+     * Creates the cache and registers its metrics
+     *
+     * @param userRepository User Repository
+     * @param meterRegistry  Meter Registry
+     */
+    public UserEmailCache(UserRepository userRepository, MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(MAX_EMAILS)
+                .expireAfter(UserEmailCache.<UserDTO>expiry())
+                .removalListener(userEmailKeys)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, NAME);
+    }
+
+    /**
+     * Gets the user with an email, loading it on a miss
+     *
+     * @param email Email, normalized before the lookup
+     * @return UserDTO object, empty if no user has the email
+     */
+    public Optional<UserDTO> getUser(String email) {
+        String key = normalize(email);
+        if (key == null) {
+            return Optional.empty();
+        }
+        return cache.get(key, k -> userEmailKeys.add(k, Optional.ofNullable(userRepository.findByEmail(k, UserDTO.class))));
+    }
+
+    /**
+     * Drops an email, called after a user with the email is created, changed or deleted
+     *
+     * @param email Email
+     */
+    public void invalidate(String email) {
+        String key = normalize(email);
+        if (key != null) {
+            cache.invalidate(key);
+        }
+    }
+
+    /**
+     * Drops the new email of a user, which may be cached as missing, and any email cached as the user
+     *
+     * @param userId User ID
+     * @param email  Email of the user after the write, or null if the user is deleted
+     */
+    @Override
+    public void userChanged(String userId, String email) {
+        invalidate(email);
+        cache.invalidateAll(userEmailKeys.take(userId));
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Normalizes an email, the form emails are stored and cached in
+     * <p>
+     * Shared with the reactive user email cache
+     *
+     * @param email Email
+     * @return Email without surrounding whitespace and in lower case, or null if the email is null
+     */
+    public static String normalize(String email) {
+        return email == null ? null : email.strip().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Expiry keeping found users for TTL and missing users for MISSING_TTL
+     * <p>
+     * Shared with the reactive user email cache
+     *
+     * @param <T> Cached user type
+     * @return Expiry object
+     */
+    public static <T> Expiry<String, Optional<T>> expiry() {
+        return new Expiry<>() {
+            @Override
+            public long expireAfterCreate(String email, Optional<T> user, long currentTime) {
+                return (user.isPresent() ? TTL : MISSING_TTL).toNanos();
+            }
+
+            @Override
+            public long expireAfterUpdate(String email, Optional<T> user, long currentTime, long currentDuration) {
+                return expireAfterCreate(email, user, currentTime);
+            }
+
+            @Override
+            public long expireAfterRead(String email, Optional<T> user, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        };
+    }
+}
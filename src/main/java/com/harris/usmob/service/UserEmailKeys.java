@@ -0,0 +1,75 @@
+package com.harris.usmob.service;
+
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.RemovalListener;
+import com.harris.usmob.dto.UserDTO;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Emails a user is cached under, so a change to the user drops those emails without scanning the cache
+ * <p>
+ * Each email is kept with the cached value it was loaded as, and only that value removes it, so a
+ * removal reported after the email was loaded again does not drop the new entry. Shared by the user
+ * email caches.
+ * <p>
+ * Thread safe.
+ */
+public class UserEmailKeys implements RemovalListener<String, Optional<UserDTO>> {
+
+    /**
+     * Cached values by normalized email, by user ID
+     */
+    private final ConcurrentHashMap<String, Map<String, Optional<UserDTO>>> emailsByUser = new ConcurrentHashMap<>();
+
+    /**
+     * Records an email loaded into the cache
+     *
+     * @param email Normalized email
+     * @param user  Cached value, nothing is recorded if no user has the email
+     * @return The cached value
+     */
+    public Optional<UserDTO> add(String email, Optional<UserDTO> user) {
+        user.ifPresent(found -> emailsByUser.compute(found.getId(), (id, emails) -> {
+            Map<String, Optional<UserDTO>> added = emails == null ? new HashMap<>() : emails;
+            added.put(email, user);
+            return added;
+        }));
+        return user;
+    }
+
+    /**
+     * Forgets an email removed from the cache
+     *
+     * @param email Normalized email
+     * @param user  Removed value
+     * @param cause Why the email was removed
+     */
+    @Override
+    public void onRemoval(String email, Optional<UserDTO> user, RemovalCause cause) {
+        if (email == null || user == null || user.isEmpty()) {
+            return;
+        }
+        emailsByUser.computeIfPresent(user.get().getId(), (id, emails) -> {
+            if (emails.get(email) == user) {
+                emails.remove(email);
+            }
+            return emails.isEmpty() ? null : emails;
+        });
+    }
+
+    /**
+     * Takes the emails a user is cached under
+     *
+     * @param userId User ID
+     * @return Normalized emails, forgotten once taken
+     */
+    public Set<String> take(String userId) {
+        Map<String, Optional<UserDTO>> emails = emailsByUser.remove(userId);
+        return emails == null ? Set.of() : emails.keySet();
+    }
+}
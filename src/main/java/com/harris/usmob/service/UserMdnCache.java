@@ -0,0 +1,153 @@
+package com.harris.usmob.service;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.harris.usmob.entity.User;
+import com.harris.usmob.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Cache of the MDN of each user, with the ownership reads of the cycle and daily usage write paths
+ * <p>
+ * Bounded by size and time. UserService invalidates every user it changes or deletes, writes made
+ * by other instances are covered by change streams when enabled and the time bound otherwise. Missing users are not cached, so a user is found
+ * as soon as it is created. Hit, miss, eviction and load time metrics are registered under the
+ * cache name user-mdn.
+ * <p>
+ * Another instance may have moved an MDN since a user was cached, so writes check ownership with
+ * loadUser or loadUsers, which always read Mongo. The cached users only serve checks that are
+ * verified again before the write, like queued increments.
+ */
+@Service
+public class UserMdnCache implements NearCache {
+
+    /**
+     * Name of the cache in the cache metrics
+     */
+    static final String NAME = "user-mdn";
+    /**
+     * Most users kept in memory
+     */
+    static final int MAX_USERS = 100000;
+    /**
+     * How long a user is kept after it is loaded
+     */
+    static final Duration TTL = Duration.ofMinutes(10);
+
+    /**
+     * Users by ID, holding only the ID and MDN
+     */
+    private final LoadingCache<String, User> cache;
+    /**
+     * User Repository
+     */
+    private final UserRepository userRepository;
+
+    /**
+     * Creates the cache and registers its metrics
+     *
+     * @param userRepository User Repository
+     * @param meterRegistry  Meter Registry
+     */
+    public UserMdnCache(UserRepository userRepository, MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        cache = Caffeine.newBuilder()
+                .maximumSize(MAX_USERS)
+                .expireAfterWrite(TTL)
+                .recordStats()
+                .build(new CacheLoader<>() {
+                    @Override
+                    public User load(String userId) {
+                        return userRepository.findMdnById(userId).orElse(null);
+                    }
+
+                    @Override
+                    public Map<String, User> loadAll(Set<? extends String> userIds) {
+                        return userRepository.findMdnByIdIn(Set.copyOf(userIds)).stream()
+                                .collect(Collectors.toMap(User::getId, Function.identity()));
+                    }
+                });
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, NAME);
+    }
+
+    /**
+     * Gets a user, loading it on a miss
+     *
+     * @param userId User ID
+     * @return User object with only the ID and MDN, or null if the user does not exist
+     */
+    public User getUser(String userId) {
+        if (userId == null) {
+            return null;
+        }
+        return cache.get(userId);
+    }
+
+    /**
+     * Gets many users, loading all misses in one query
+     *
+     * @param userIds User IDs
+     * @return User objects with only the ID and MDN by ID, missing users are left out
+     */
+    public Map<String, User> getUsers(Collection<String> userIds) {
+        return cache.getAll(userIds.stream().filter(Objects::nonNull).collect(Collectors.toSet()));
+    }
+
+    /**
+     * Reads a user from Mongo, for the ownership check of a write
+     *
+     * @param userId User ID
+     * @return User object with only the ID and MDN, or null if the user does not exist
+     */
+    public User loadUser(String userId) {
+        if (userId == null) {
+            return null;
+        }
+        return userRepository.findMdnById(userId).orElse(null);
+    }
+
+    /**
+     * Reads many users from Mongo in one query, for the ownership checks of a batch write
+     *
+     * @param userIds User IDs
+     * @return User objects with only the ID and MDN by ID, missing users are left out
+     */
+    public Map<String, User> loadUsers(Collection<String> userIds) {
+        Set<String> ids = userIds.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        return userRepository.findMdnByIdIn(ids).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+    }
+
+    /**
+     * Drops a user, called after the user is changed or deleted
+     *
+     * @param userId User ID
+     */
+    public void invalidate(String userId) {
+        cache.invalidate(userId);
+    }
+
+    @Override
+    public void userChanged(String userId, String email) {
+        invalidate(userId);
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+}
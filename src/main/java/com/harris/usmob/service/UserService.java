@@ -1,17 +1,24 @@
 package com.harris.usmob.service;
 
+import com.harris.usmob.dto.PageDTO;
 import com.harris.usmob.dto.UserDTO;
 import com.harris.usmob.entity.User;
+import com.harris.usmob.repository.CurrentCycleRepository;
 import com.harris.usmob.repository.CycleRepository;
+import com.harris.usmob.repository.CycleUsageRollupRepository;
 import com.harris.usmob.repository.DailyUsageRepository;
+import com.harris.usmob.repository.LineVersionRepository;
 import com.harris.usmob.repository.UserRepository;
 import lombok.AllArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Service for User
@@ -31,18 +38,52 @@ public class UserService {
      * User Repository
      */
     private final UserRepository userRepository;
+    /**
+     * Current Cycle Repository
+     */
+    private final CurrentCycleRepository currentCycleRepository;
+    /**
+     * Cycle Usage Rollup Repository
+     */
+    private final CycleUsageRollupRepository cycleUsageRollupRepository;
+    /**
+     * User MDN Cache
+     */
+    private final UserMdnCache userMdnCache;
+    /**
+     * User Email Cache
+     */
+    private final UserEmailCache userEmailCache;
+    /**
+     * Cycle Interval Index
+     */
+    private final CycleIntervalIndex cycleIntervalIndex;
+    /**
+     * Line Version Repository
+     */
+    private final LineVersionRepository lineVersionRepository;
 
     /**
-     * Creates a new user in the collection
+     * Creates a new user in the collection, storing the email normalized
      *
      * @param user User
-     * @return UserDTO object
+     * @return UserDTO object, or null if the email is already in use
      */
     public UserDTO createUser(User user) {
-        if (userRepository.findByEmail(user.getEmail()) != null) {
+        user.setEmail(UserEmailCache.normalize(user.getEmail()));
+        if (userEmailCache.getUser(user.getEmail()).isPresent()) {
+            return null;
+        }
+
+        User savedUser;
+        try {
+            savedUser = userRepository.save(user);
+        } catch (DuplicateKeyException e) {
+            // Created since the email was cached as missing
             return null;
+        } finally {
+            userEmailCache.invalidate(user.getEmail());
         }
-        User savedUser = userRepository.save(user);
         return new UserDTO(savedUser.getId(), savedUser.getMdn(), savedUser.getFirstName(), savedUser.getLastName(), savedUser.getEmail());
     }
 
@@ -53,47 +94,58 @@ public class UserService {
      * @return Boolean
      */
     public Boolean deleteUser(String id) {
-        User user = userRepository.findById(id).orElse(null);
-
-        if (user == null) {
+        Optional<User> user = userRepository.findEmailById(id);
+        if (user.isEmpty()) {
             return false;
         }
 
         userRepository.deleteById(id);
+        userMdnCache.invalidate(id);
+        userEmailCache.invalidate(user.get().getEmail());
 
         // Delete references to this user in other tables
         cycleRepository.deleteByUserId(id);
+        cycleIntervalIndex.invalidateUser(id);
+        currentCycleRepository.deleteByUserId(id);
+        cycleUsageRollupRepository.deleteByUserId(id);
         dailyUsageRepository.deleteByUserId(id);
+        lineVersionRepository.bumpUser(id);
 
         return true;
     }
 
     /**
-     * Gets All Users
+     * Gets a page of All Users, sorted by ID
      *
-     * @return List of UserDTO objects
+     * @param after Cursor returned with the previous page, or null for the first page
+     * @param limit Maximum number of users, capped to PageCursors.MAX_LIMIT
+     * @return PageDTO of UserDTO objects, or null if the cursor is invalid
      */
-    public List<UserDTO> getAllUsers() {
-        List<User> allUsers = userRepository.findAll();
+    public PageDTO<UserDTO> getAllUsers(String after, int limit) {
+        int size = PageCursors.size(limit);
+        List<UserDTO> users;
+
+        if (after == null) {
+            users = userRepository.findAllByOrderByIdAsc(Limit.of(size + 1));
+        } else {
+            String[] keys = PageCursors.decode(after, 1);
+            if (keys == null) {
+                return null;
+            }
+            users = userRepository.findByIdGreaterThanOrderByIdAsc(keys[0], Limit.of(size + 1));
+        }
 
-        return allUsers.stream()
-                .map(user -> new UserDTO(user.getId(), user.getMdn(), user.getFirstName(), user.getLastName(), user.getEmail()))
-                .collect(Collectors.toList());
+        return PageCursors.page(users, size, Function.identity(), user -> PageCursors.encode(user.getId()));
     }
 
     /**
      * Gets a User By Email
      *
-     * @param email User email
+     * @param email User email, matched ignoring case
      * @return UserDTO object
      */
     public Optional<UserDTO> getUserByEmail(String email) {
-        User user = userRepository.findByEmail(email);
-
-        if (user == null) {
-            return Optional.empty();
-        }
-        return Optional.of(new UserDTO(user.getId(), user.getMdn(), user.getFirstName(), user.getLastName(), user.getEmail()));
+        return userEmailCache.getUser(email);
     }
 
     /**
@@ -104,8 +156,17 @@ public class UserService {
      * @return List of UserDTO objects
      */
     public List<UserDTO> transferMDN(String userIdA, String userIdB) {
-        User a = userRepository.findById(userIdA).orElse(null);
-        User b = userRepository.findById(userIdB).orElse(null);
+        User a;
+        User b;
+
+        try (ConcurrentLookups lookups = new ConcurrentLookups()) {
+            Supplier<User> lookupA = lookups.fork(() -> userRepository.findById(userIdA).orElse(null));
+            Supplier<User> lookupB = lookups.fork(() -> userRepository.findById(userIdB).orElse(null));
+            lookups.join();
+
+            a = lookupA.get();
+            b = lookupB.get();
+        }
 
         if (a == null || b == null || b.getMdn().isEmpty()) {
             return null;
@@ -115,6 +176,10 @@ public class UserService {
         userRepository.save(a);
         b.setMdn("");
         userRepository.save(b);
+        userMdnCache.invalidate(a.getId());
+        userMdnCache.invalidate(b.getId());
+        userEmailCache.invalidate(a.getEmail());
+        userEmailCache.invalidate(b.getEmail());
 
         List<UserDTO> updatedUsers = new ArrayList<>();
         updatedUsers.add(new UserDTO(a.getId(), a.getMdn(), a.getFirstName(), a.getLastName(), a.getEmail()));
@@ -123,7 +188,7 @@ public class UserService {
     }
 
     /**
-     * Updates a User
+     * Updates a User, storing the email normalized
      *
      * @param userId User ID
      * @param user   User
@@ -135,18 +200,29 @@ public class UserService {
 
             User userToUpdate = u.get();
 
-            User existingEmail = userRepository.findByEmail(user.getEmail());
-            if (existingEmail != null && !existingEmail.getId().equals(userId)) {
+            String email = UserEmailCache.normalize(user.getEmail());
+            Optional<UserDTO> existingEmail = userEmailCache.getUser(email);
+            if (existingEmail.isPresent() && !existingEmail.get().getId().equals(userId)) {
                 return Optional.empty();
             }
 
-            userToUpdate.setEmail(user.getEmail());
+            String oldEmail = userToUpdate.getEmail();
+            userToUpdate.setEmail(email);
             userToUpdate.setFirstName(user.getFirstName());
             userToUpdate.setLastName(user.getLastName());
             userToUpdate.setPassword(user.getPassword());
 
-            User savedUser = userRepository.save(userToUpdate);
-
+            User savedUser;
+            try {
+                savedUser = userRepository.save(userToUpdate);
+            } catch (DuplicateKeyException e) {
+                // Taken since the email was cached as missing
+                return Optional.empty();
+            } finally {
+                userMdnCache.invalidate(userId);
+                userEmailCache.invalidate(oldEmail);
+                userEmailCache.invalidate(email);
+            }
 
             return Optional.of(new UserDTO(savedUser.getId(), savedUser.getMdn(), savedUser.getFirstName(), savedUser.getLastName(), savedUser.getEmail()));
         }
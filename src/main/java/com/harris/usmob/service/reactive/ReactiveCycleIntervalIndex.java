@@ -0,0 +1,125 @@
+package com.harris.usmob.service.reactive;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.repository.reactive.ReactiveCycleRepository;
+import com.harris.usmob.service.CycleIntervals;
+import com.harris.usmob.service.NearCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reactive cache of the cycle intervals of each user and MDN
+ * <p>
+ * Mirrors CycleIntervalIndex. Loads are shared, so concurrent misses on the same line run one query.
+ * Metrics are registered under the cache name reactive-cycle-intervals.
+ */
+@Profile("reactive")
+@Service
+public class ReactiveCycleIntervalIndex implements NearCache {
+
+    /**
+     * Name of the cache in the cache metrics
+     */
+    static final String NAME = "reactive-cycle-intervals";
+    /**
+     * Most lines kept in memory
+     */
+    static final int MAX_LINES = 100000;
+    /**
+     * How long a line is kept after it is loaded
+     */
+    static final Duration TTL = Duration.ofMinutes(10);
+
+    /**
+     * Cycle intervals by line
+     */
+    private final AsyncLoadingCache<LineDTO, CycleIntervals> cache;
+
+    /**
+     * Creates the index and registers its metrics
+     *
+     * @param cycleRepository Reactive Cycle Repository
+     * @param meterRegistry   Meter Registry
+     */
+    public ReactiveCycleIntervalIndex(ReactiveCycleRepository cycleRepository, MeterRegistry meterRegistry) {
+        cache = Caffeine.newBuilder()
+                .maximumSize(MAX_LINES)
+                .expireAfterWrite(TTL)
+                .recordStats()
+                .buildAsync((line, executor) -> cycleRepository.findByUserIdAndMdn(line.getUserId(), line.getMdn())
+                        .collectList()
+                        .map(CycleIntervals::new)
+                        .toFuture());
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, NAME);
+    }
+
+    /**
+     * Gets the cycle intervals of a line, loading them on a miss
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return CycleIntervals object
+     */
+    public Mono<CycleIntervals> get(String userId, String mdn) {
+        return Mono.fromFuture(() -> cache.get(new LineDTO(userId, mdn)));
+    }
+
+    /**
+     * Gets the cycle intervals of a line if they are loaded
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return CycleIntervals object, or null if the line is not loaded or still loading
+     */
+    public CycleIntervals getIfPresent(String userId, String mdn) {
+        CompletableFuture<CycleIntervals> intervals = cache.getIfPresent(new LineDTO(userId, mdn));
+        return intervals != null && intervals.isDone() && !intervals.isCompletedExceptionally() ? intervals.join() : null;
+    }
+
+    /**
+     * Drops a line, called after cycles of the line are deleted
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     */
+    public void invalidate(String userId, String mdn) {
+        cache.synchronous().invalidate(new LineDTO(userId, mdn));
+    }
+
+    /**
+     * Drops every line of a user, called after the user is deleted
+     *
+     * @param userId User ID
+     */
+    public void invalidateUser(String userId) {
+        cache.asMap().keySet().removeIf(line -> userId.equals(line.getUserId()));
+    }
+
+    @Override
+    public void cycleChanged(String userId, String mdn) {
+        invalidate(userId, mdn);
+    }
+
+    /**
+     * Drops the loaded line holding a cycle, scanning every loaded line
+     *
+     * @param cycleId Cycle ID
+     */
+    @Override
+    public void cycleDeleted(String cycleId) {
+        cache.synchronous().asMap().values().removeIf(intervals -> intervals.hasCycle(cycleId));
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+}
@@ -0,0 +1,232 @@
+package com.harris.usmob.service.reactive;
+
+import com.harris.usmob.dto.CycleDTO;
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.dto.PageDTO;
+import com.harris.usmob.dto.UsageSummaryDTO;
+import com.harris.usmob.entity.Cycle;
+import com.harris.usmob.entity.LineVersion;
+import com.harris.usmob.repository.reactive.ReactiveCurrentCycleRepository;
+import com.harris.usmob.repository.reactive.ReactiveCycleRepository;
+import com.harris.usmob.repository.reactive.ReactiveCycleUsageRollupRepository;
+import com.harris.usmob.repository.reactive.ReactiveDailyUsageRepository;
+import com.harris.usmob.repository.reactive.ReactiveLineVersionRepository;
+import com.harris.usmob.service.CycleIntervals;
+import com.harris.usmob.service.CycleService;
+import com.harris.usmob.service.PageCursors;
+import lombok.AllArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reactive Service for Cycle
+ * <p>
+ * Mirrors CycleService, completing empty where CycleService returns null
+ */
+@AllArgsConstructor
+@Profile("reactive")
+@Service
+public class ReactiveCycleService {
+    /**
+     * Reactive Cycle Repository
+     */
+    private final ReactiveCycleRepository cycleRepository;
+    /**
+     * Reactive User MDN Cache
+     */
+    private final ReactiveUserMdnCache userMdnCache;
+    /**
+     * Reactive Current Cycle Repository
+     */
+    private final ReactiveCurrentCycleRepository currentCycleRepository;
+    /**
+     * Reactive Daily Usage Repository
+     */
+    private final ReactiveDailyUsageRepository dailyUsageRepository;
+    /**
+     * Reactive Cycle Usage Rollup Repository
+     */
+    private final ReactiveCycleUsageRollupRepository cycleUsageRollupRepository;
+    /**
+     * Reactive Cycle Interval Index
+     */
+    private final ReactiveCycleIntervalIndex cycleIntervalIndex;
+    /**
+     * Reactive Line Version Repository
+     */
+    private final ReactiveLineVersionRepository lineVersionRepository;
+
+    /**
+     * Adds a new cycle to the collection
+     *
+     * @param cycle Cycle
+     * @return CycleDTO object, empty if the user is missing or the cycle is invalid or overlaps
+     */
+    public Mono<CycleDTO> addCycle(Cycle cycle) {
+        String userId = cycle.getUserId();
+        String mdn = cycle.getMdn();
+
+        if (cycle.getStartDate().after(cycle.getEndDate())) {
+            return Mono.empty();
+        }
+
+        return Mono.zip(userMdnCache.loadUser(userId), cycleIntervalIndex.get(userId, mdn))
+                //Foreign key error or mdn mismatch, or overlap
+                .filter(found -> Objects.equals(found.getT1().getMdn(), mdn) && !found.getT2().overlaps(cycle))
+                // The index may miss a cycle another instance saved since it was loaded
+                .filterWhen(found -> cycleRepository.existsHolding(userId, mdn, cycle.getStartDate()).map(exists -> !exists))
+                .flatMap(found -> cycleRepository.save(cycle)
+                        .doOnNext(savedCycle -> found.getT2().add(savedCycle)))
+                .flatMap(savedCycle -> currentCycleRepository.advance(savedCycle)
+                        // Usage may already exist inside the window of the new cycle
+                        .then(cycleUsageRollupRepository.rebuild(List.of(savedCycle.getId())))
+                        .then(lineVersionRepository.bump(userId, mdn))
+                        .thenReturn(savedCycle))
+                .map(ReactiveCycleService::toDTO);
+    }
+
+    /**
+     * Deletes a cycle from the collection
+     *
+     * @param cycleId Cycle ID
+     * @return Boolean
+     */
+    public Mono<Boolean> deleteCycle(String cycleId) {
+        return cycleRepository.findById(cycleId)
+                .flatMap(cycle -> cycleRepository.deleteById(cycleId)
+                        .then(currentCycleRepository.retreat(cycle))
+                        .then(cycleUsageRollupRepository.deleteById(cycleId))
+                        .then(Mono.fromRunnable(() -> cycleIntervalIndex.invalidate(cycle.getUserId(), cycle.getMdn())))
+                        .then(lineVersionRepository.bump(cycle.getUserId(), cycle.getMdn()))
+                        .thenReturn(true))
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * Gets a page of All Cycles, sorted by ID
+     *
+     * @param after Cursor returned with the previous page, or null for the first page
+     * @param limit Maximum number of cycles, capped to PageCursors.MAX_LIMIT
+     * @return PageDTO of CycleDTO objects, empty if the cursor is invalid
+     */
+    public Mono<PageDTO<CycleDTO>> getAllCycles(String after, int limit) {
+        int size = PageCursors.size(limit);
+        Flux<Cycle> cycles;
+
+        if (after == null) {
+            cycles = cycleRepository.findAllByOrderByIdAsc(Limit.of(size + 1));
+        } else {
+            String[] keys = PageCursors.decode(after, 1);
+            if (keys == null) {
+                return Mono.empty();
+            }
+            cycles = cycleRepository.findByIdGreaterThanOrderByIdAsc(keys[0], Limit.of(size + 1));
+        }
+
+        return cycles.collectList()
+                .map(rows -> PageCursors.page(rows, size, ReactiveCycleService::toDTO, cycle -> PageCursors.encode(cycle.getId())));
+    }
+
+    /**
+     * Gets Cycle History for a user and MDN
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return CycleDTO objects
+     */
+    public Flux<CycleDTO> getCycleHistory(String userId, String mdn) {
+        return cycleRepository.findByUserIdAndMdn(userId, mdn).map(ReactiveCycleService::toDTO);
+    }
+
+    /**
+     * Gets the strong ETag of the cycle and daily usage history of a user and MDN
+     * <p>
+     * Read before the history, see CycleService.getHistoryETag
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return Quoted ETag, empty if the line has no version
+     */
+    public Mono<String> getHistoryETag(String userId, String mdn) {
+        return lineVersionRepository.findById(LineVersion.idOf(userId, mdn))
+                .map(lineVersion -> LineVersion.eTagOf(lineVersion.getVersion()));
+    }
+
+    /**
+     * Gets the total, average and peak daily usage of a cycle
+     * <p>
+     * Read from the maintained usage rollup, cycles without one are summed by the database
+     *
+     * @param cycleId Cycle ID
+     * @return UsageSummaryDTO object, empty if the cycle does not exist
+     */
+    public Mono<UsageSummaryDTO> getUsageSummary(String cycleId) {
+        return cycleUsageRollupRepository.findById(cycleId)
+                .map(CycleService::toSummary)
+                .switchIfEmpty(Mono.defer(() -> summarizeUsage(cycleId)));
+    }
+
+    /**
+     * Sums the daily usage of a cycle without a usage rollup
+     *
+     * @param cycleId Cycle ID
+     * @return UsageSummaryDTO object, empty if the cycle does not exist
+     */
+    private Mono<UsageSummaryDTO> summarizeUsage(String cycleId) {
+        return cycleRepository.findById(cycleId)
+                .flatMap(cycle -> dailyUsageRepository.summarizeUsage(cycle.getUserId(), cycle.getMdn(), cycle.getStartDate(), cycle.getEndDate())
+                        .defaultIfEmpty(new UsageSummaryDTO(0, 0, null, 0, 0)));
+    }
+
+    /**
+     * Gets Most Recent Cycle for a user and MDN
+     * <p>
+     * Helper method for getDailyUsageHistory, reads the cycle intervals of the line if they are
+     * loaded and the maintained current cycle pointer otherwise, checked for a later cycle the pointer missed
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return CycleDTO object with the latest end date, empty if none
+     */
+    public Mono<CycleDTO> getMostRecentCycle(String userId, String mdn) {
+        CycleIntervals intervals = cycleIntervalIndex.getIfPresent(userId, mdn);
+
+        if (intervals != null) {
+            return Mono.justOrEmpty(intervals.latest()).map(ReactiveCycleService::toDTO);
+        }
+
+        return currentCycleRepository.findCurrent(List.of(new LineDTO(userId, mdn)))
+                .next()
+                .map(current -> new CycleDTO(current.getCycleId(), current.getStartDate(), current.getEndDate()));
+    }
+
+    /**
+     * Gets Most Recent Cycles for many lines in one query, plus one query for later cycles the pointers missed
+     *
+     * @param lines Lines
+     * @return Map of each line with a cycle to its CycleDTO object
+     */
+    public Mono<Map<LineDTO, CycleDTO>> getMostRecentCycles(Collection<LineDTO> lines) {
+        return currentCycleRepository.findCurrent(lines)
+                .collectMap(current -> new LineDTO(current.getUserId(), current.getMdn()),
+                        current -> new CycleDTO(current.getCycleId(), current.getStartDate(), current.getEndDate()));
+    }
+
+    /**
+     * Converts a Cycle to a CycleDTO
+     *
+     * @param cycle Cycle
+     * @return CycleDTO object
+     */
+    private static CycleDTO toDTO(Cycle cycle) {
+        return new CycleDTO(cycle.getId(), cycle.getStartDate(), cycle.getEndDate());
+    }
+}
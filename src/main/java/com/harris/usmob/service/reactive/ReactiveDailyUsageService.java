@@ -0,0 +1,246 @@
+package com.harris.usmob.service.reactive;
+
+import com.harris.usmob.dto.DailyUsageDTO;
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.dto.LineHistoryDTO;
+import com.harris.usmob.dto.PageDTO;
+import com.harris.usmob.dto.UsageBucketDTO;
+import com.harris.usmob.entity.DailyUsage;
+import com.harris.usmob.repository.reactive.ReactiveCycleUsageRollupRepository;
+import com.harris.usmob.repository.reactive.ReactiveDailyUsageRepository;
+import com.harris.usmob.repository.reactive.ReactiveLineVersionRepository;
+import com.harris.usmob.service.DailyUsageService;
+import com.harris.usmob.service.PageCursors;
+import lombok.AllArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Reactive Service for Daily Usage
+ * <p>
+ * Mirrors DailyUsageService, completing empty where DailyUsageService returns null
+ */
+@AllArgsConstructor
+@Profile("reactive")
+@Service
+public class ReactiveDailyUsageService {
+    /**
+     * Reactive Cycle Service
+     */
+    private final ReactiveCycleService cycleService;
+    /**
+     * Reactive Daily Usage Repository
+     */
+    private final ReactiveDailyUsageRepository dailyUsageRepository;
+    /**
+     * Reactive User MDN Cache
+     */
+    private final ReactiveUserMdnCache userMdnCache;
+    /**
+     * Reactive Cycle Usage Rollup Repository
+     */
+    private final ReactiveCycleUsageRollupRepository cycleUsageRollupRepository;
+    /**
+     * Reactive Line Version Repository
+     */
+    private final ReactiveLineVersionRepository lineVersionRepository;
+
+    /**
+     * Adds a new daily usage to the collection
+     *
+     * @param dailyUsage Daily Usage
+     * @return DailyUsageDTO object, empty if the user is missing or the daily usage exists
+     */
+    public Mono<DailyUsageDTO> addDailyUsage(DailyUsage dailyUsage) {
+        return userMdnCache.loadUser(dailyUsage.getUserId())
+                //Foreign key error or mdn mismatch
+                .filter(user -> user.getMdn().equals(dailyUsage.getMdn()))
+                .flatMap(user -> dailyUsageRepository.insert(dailyUsage))
+                // Daily usage already exists for this mdn and usage date
+                .onErrorResume(DuplicateKeyException.class, e -> Mono.empty())
+                .flatMap(saved -> {
+                    int usedInMb = Objects.requireNonNullElse(saved.getUsedInMb(), 0);
+                    return cycleUsageRollupRepository.apply(saved.getUserId(), saved.getMdn(), saved.getUsageDate(), usedInMb, 1, usedInMb)
+                            .then(lineVersionRepository.bump(saved.getUserId(), saved.getMdn()))
+                            .thenReturn(saved);
+                })
+                .map(ReactiveDailyUsageService::toDTO);
+    }
+
+    /**
+     * Deletes a daily usage from the collection
+     *
+     * @param usageId Daily Usage ID
+     * @return Boolean
+     */
+    public Mono<Boolean> deleteDailyUsage(String usageId) {
+        return dailyUsageRepository.findById(usageId)
+                .flatMap(dailyUsage -> dailyUsageRepository.delete(dailyUsage)
+                        .then(cycleUsageRollupRepository.apply(dailyUsage.getUserId(), dailyUsage.getMdn(), dailyUsage.getUsageDate(),
+                                -Objects.requireNonNullElse(dailyUsage.getUsedInMb(), 0), -1, null))
+                        .then(lineVersionRepository.bump(dailyUsage.getUserId(), dailyUsage.getMdn()))
+                        .thenReturn(true))
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * Gets a page of All Daily Usages, sorted by MDN and usage date
+     *
+     * @param after Cursor returned with the previous page, or null for the first page
+     * @param limit Maximum number of daily usages, capped to PageCursors.MAX_LIMIT
+     * @return PageDTO of DailyUsageDTO objects, empty if the cursor is invalid
+     */
+    public Mono<PageDTO<DailyUsageDTO>> getAllDailyUsages(String after, int limit) {
+        int size = PageCursors.size(limit);
+        String afterMdn = null;
+        Date afterUsageDate = null;
+
+        if (after != null) {
+            String[] keys = PageCursors.decode(after, 2);
+            if (keys == null || PageCursors.parseDateKey(keys[1]) == null) {
+                return Mono.empty();
+            }
+            afterMdn = keys[0];
+            afterUsageDate = PageCursors.parseDateKey(keys[1]);
+        }
+
+        return dailyUsageRepository.findPageAfter(afterMdn, afterUsageDate, size + 1)
+                .collectList()
+                .map(rows -> PageCursors.page(rows, size, ReactiveDailyUsageService::toDTO,
+                        dailyUsage -> PageCursors.encode(dailyUsage.getMdn(), PageCursors.dateKey(dailyUsage.getUsageDate()))));
+    }
+
+    /**
+     * Gets Daily Usage History for a user and MDN in the most recent cycle
+     * <p>
+     * Only usages inside the cycle window are read from the database
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return List of DailyUsageDTO objects, empty if the user has no cycle
+     */
+    public Mono<List<DailyUsageDTO>> getDailyUsageHistory(String userId, String mdn) {
+        return cycleService.getMostRecentCycle(userId, mdn)
+                .flatMap(mostRecentCycle -> dailyUsageRepository
+                        .findByUserIdAndMdnInWindow(userId, mdn, mostRecentCycle.getStartDate(), mostRecentCycle.getEndDate())
+                        .collectList());
+    }
+
+    /**
+     * Gets the strong ETag of the daily usage history of a user and MDN
+     * <p>
+     * Read before the history, see CycleService.getHistoryETag
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @return Quoted ETag, empty if the line has no version
+     */
+    public Mono<String> getHistoryETag(String userId, String mdn) {
+        return cycleService.getHistoryETag(userId, mdn);
+    }
+
+    /**
+     * Gets Daily Usage History for many lines
+     * <p>
+     * The most recent cycles of all lines are read in one query and their usage in one more
+     *
+     * @param lines Lines, repeated lines are returned once
+     * @return List of LineHistoryDTO objects in the order of the lines
+     */
+    public Mono<List<LineHistoryDTO>> getDailyUsageHistories(List<LineDTO> lines) {
+        return cycleService.getMostRecentCycles(lines)
+                .flatMap(windows -> dailyUsageRepository.findInWindows(windows)
+                        .collectMultimap(dailyUsage -> new LineDTO(dailyUsage.getUserId(), dailyUsage.getMdn()), ReactiveDailyUsageService::toDTO)
+                        .map(usagesByLine -> lines.stream()
+                                .distinct()
+                                .map(line -> new LineHistoryDTO(line.getUserId(), line.getMdn(), !windows.containsKey(line) ? null
+                                        : new ArrayList<>(usagesByLine.getOrDefault(line, List.of()))))
+                                .toList()));
+    }
+
+    /**
+     * Gets the Daily Usage of a user and MDN between two days summed into day, week or month buckets
+     *
+     * @param userId User ID
+     * @param mdn    MDN
+     * @param from   First day, inclusive
+     * @param to     Last day, inclusive
+     * @param bucket Bucket size
+     * @return Usage buckets with usage, empty if from is after to
+     */
+    public Mono<List<UsageBucketDTO>> getUsageRange(String userId, String mdn, LocalDate from, LocalDate to, DailyUsageService.UsageBucket bucket) {
+        if (from.isAfter(to)) {
+            return Mono.empty();
+        }
+
+        return dailyUsageRepository.findUsageBuckets(userId, mdn, DailyUsageService.startOfDay(from), DailyUsageService.startOfDay(to.plusDays(1)),
+                bucket.name().toLowerCase()).collectList();
+    }
+
+    /**
+     * Updates the used in Mb of a daily usage
+     *
+     * @param usageDate Usage Date
+     * @param mdn       MDN
+     * @param usedInMb  Used in Mb
+     * @return DailyUsageDTO object, empty if the daily usage does not exist
+     */
+    public Mono<DailyUsageDTO> updateUsedInMb(Date usageDate, String mdn, int usedInMb) {
+        return dailyUsageRepository.setUsedInMb(mdn, usageDate, usedInMb)
+                .flatMap(previous -> cycleUsageRollupRepository.apply(previous.getUserId(), mdn, usageDate,
+                                usedInMb - Objects.requireNonNullElse(previous.getUsedInMb(), 0), 0, usedInMb)
+                        .then(lineVersionRepository.bump(previous.getUserId(), mdn))
+                        .thenReturn(new DailyUsageDTO(previous.getUsageDate(), usedInMb)));
+    }
+
+    /**
+     * Atomically adds to the used in Mb of a daily usage, creating it if it does not exist
+     *
+     * @param usageDate Usage Date
+     * @param mdn       MDN
+     * @param userId    User ID
+     * @param deltaInMb Amount to add in Mb
+     * @return DailyUsageDTO object, empty if any field is missing or the user does not own the MDN or the daily usage
+     */
+    public Mono<DailyUsageDTO> incrementUsedInMb(Date usageDate, String mdn, String userId, int deltaInMb) {
+        if (usageDate == null || mdn == null || userId == null) {
+            return Mono.empty();
+        }
+
+        return userMdnCache.loadUser(userId)
+                //Foreign key error or mdn mismatch
+                .filter(user -> mdn.equals(user.getMdn()))
+                .flatMap(user -> dailyUsageRepository.incrementUsedInMb(mdn, usageDate, userId, deltaInMb)
+                        .flatMap(previous -> {
+                            int usedInMb = Objects.requireNonNullElse(previous.getUsedInMb(), 0) + deltaInMb;
+                            return cycleUsageRollupRepository.apply(userId, mdn, usageDate, deltaInMb, 0, usedInMb)
+                                    .then(lineVersionRepository.bump(userId, mdn))
+                                    .thenReturn(new DailyUsageDTO(previous.getUsageDate(), usedInMb));
+                        })
+                        // Empty when the increment created the daily usage
+                        .switchIfEmpty(Mono.defer(() -> cycleUsageRollupRepository.apply(userId, mdn, usageDate, deltaInMb, 1, deltaInMb)
+                                .then(lineVersionRepository.bump(userId, mdn))
+                                .thenReturn(new DailyUsageDTO(usageDate, deltaInMb))))
+                        // Daily usage for this mdn and usage date belongs to another user
+                        .onErrorResume(DuplicateKeyException.class, e -> Mono.empty()));
+    }
+
+    /**
+     * Converts a DailyUsage to a DailyUsageDTO
+     *
+     * @param dailyUsage Daily Usage
+     * @return DailyUsageDTO object
+     */
+    private static DailyUsageDTO toDTO(DailyUsage dailyUsage) {
+        return new DailyUsageDTO(dailyUsage.getUsageDate(), dailyUsage.getUsedInMb());
+    }
+}
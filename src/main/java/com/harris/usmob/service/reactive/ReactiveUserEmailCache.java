@@ -0,0 +1,115 @@
+package com.harris.usmob.service.reactive;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.harris.usmob.dto.UserDTO;
+import com.harris.usmob.repository.reactive.ReactiveUserRepository;
+import com.harris.usmob.service.NearCache;
+import com.harris.usmob.service.UserEmailCache;
+import com.harris.usmob.service.UserEmailKeys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+
+/**
+ * Reactive read-through cache of users by normalized email
+ * <p>
+ * Mirrors UserEmailCache, including the shorter expiry of emails with no user. Loads are shared,
+ * so concurrent misses on the same email run one query. Metrics are registered under the cache
+ * name reactive-user-email.
+ */
+@Profile("reactive")
+@Service
+public class ReactiveUserEmailCache implements NearCache {
+
+    /**
+     * Name of the cache in the cache metrics
+     */
+    static final String NAME = "reactive-user-email";
+    /**
+     * Most emails kept in memory
+     */
+    static final int MAX_EMAILS = 100000;
+
+    /**
+     * Reactive User Repository
+     */
+    private final ReactiveUserRepository userRepository;
+    /**
+     * Users by normalized email, empty if no user has the email
+     */
+    private final AsyncCache<String, Optional<UserDTO>> cache;
+    /**
+     * Emails each cached user is cached under
+     */
+    private final UserEmailKeys userEmailKeys = new UserEmailKeys();
+
+    /**
+     * Creates the cache and registers its metrics
+     *
+     * @param userRepository Reactive User Repository
+     * @param meterRegistry  Meter Registry
+     */
+    public ReactiveUserEmailCache(ReactiveUserRepository userRepository, MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(MAX_EMAILS)
+                .expireAfter(UserEmailCache.<UserDTO>expiry())
+                .removalListener(userEmailKeys)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, NAME);
+    }
+
+    /**
+     * Gets the user with an email, loading it on a miss
+     *
+     * @param email Email, normalized before the lookup
+     * @return UserDTO object, empty if no user has the email
+     */
+    public Mono<UserDTO> getUser(String email) {
+        String key = UserEmailCache.normalize(email);
+        if (key == null) {
+            return Mono.empty();
+        }
+        return Mono.fromFuture(() -> cache.get(key, (k, executor) -> userRepository.findByEmail(k, UserDTO.class)
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .map(user -> userEmailKeys.add(k, user))
+                        .toFuture()))
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    /**
+     * Drops an email, called after a user with the email is created, changed or deleted
+     *
+     * @param email Email
+     */
+    public void invalidate(String email) {
+        String key = UserEmailCache.normalize(email);
+        if (key != null) {
+            cache.synchronous().invalidate(key);
+        }
+    }
+
+    /**
+     * Drops the new email of a user, which may be cached as missing, and any email cached as the user
+     *
+     * @param userId User ID
+     * @param email  Email of the user after the write, or null if the user is deleted
+     */
+    @Override
+    public void userChanged(String userId, String email) {
+        invalidate(email);
+        cache.synchronous().invalidateAll(userEmailKeys.take(userId));
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+}
@@ -0,0 +1,109 @@
+package com.harris.usmob.service.reactive;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.harris.usmob.entity.User;
+import com.harris.usmob.repository.reactive.ReactiveUserRepository;
+import com.harris.usmob.service.NearCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Reactive cache of the MDN of each user
+ * <p>
+ * Mirrors UserMdnCache, writes check ownership with loadUser. Loads are shared, so concurrent misses
+ * on the same user run one query. Metrics are registered under the cache name reactive-user-mdn.
+ */
+@Profile("reactive")
+@Service
+public class ReactiveUserMdnCache implements NearCache {
+
+    /**
+     * Name of the cache in the cache metrics
+     */
+    static final String NAME = "reactive-user-mdn";
+    /**
+     * Most users kept in memory
+     */
+    static final int MAX_USERS = 100000;
+    /**
+     * How long a user is kept after it is loaded
+     */
+    static final Duration TTL = Duration.ofMinutes(10);
+
+    /**
+     * Users by ID, holding only the ID and MDN
+     */
+    private final AsyncLoadingCache<String, User> cache;
+    /**
+     * Reactive User Repository
+     */
+    private final ReactiveUserRepository userRepository;
+
+    /**
+     * Creates the cache and registers its metrics
+     *
+     * @param userRepository Reactive User Repository
+     * @param meterRegistry  Meter Registry
+     */
+    public ReactiveUserMdnCache(ReactiveUserRepository userRepository, MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        // A load completing with null is not cached, so missing users are looked up again
+        cache = Caffeine.newBuilder()
+                .maximumSize(MAX_USERS)
+                .expireAfterWrite(TTL)
+                .recordStats()
+                .buildAsync((userId, executor) -> userRepository.findMdnById(userId).toFuture());
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, NAME);
+    }
+
+    /**
+     * Gets a user, loading it on a miss
+     *
+     * @param userId User ID
+     * @return User object with only the ID and MDN, empty if the user does not exist
+     */
+    public Mono<User> getUser(String userId) {
+        if (userId == null) {
+            return Mono.empty();
+        }
+        return Mono.fromFuture(() -> cache.get(userId));
+    }
+
+    /**
+     * Reads a user from Mongo, for the ownership check of a write
+     *
+     * @param userId User ID
+     * @return User object with only the ID and MDN, empty if the user does not exist
+     */
+    public Mono<User> loadUser(String userId) {
+        if (userId == null) {
+            return Mono.empty();
+        }
+        return userRepository.findMdnById(userId);
+    }
+
+    /**
+     * Drops a user, called after the user is changed or deleted
+     *
+     * @param userId User ID
+     */
+    public void invalidate(String userId) {
+        cache.synchronous().invalidate(userId);
+    }
+
+    @Override
+    public void userChanged(String userId, String email) {
+        invalidate(userId);
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+}
@@ -0,0 +1,222 @@
+package com.harris.usmob.service.reactive;
+
+import com.harris.usmob.dto.PageDTO;
+import com.harris.usmob.dto.UserDTO;
+import com.harris.usmob.entity.User;
+import com.harris.usmob.repository.reactive.ReactiveCurrentCycleRepository;
+import com.harris.usmob.repository.reactive.ReactiveCycleRepository;
+import com.harris.usmob.repository.reactive.ReactiveCycleUsageRollupRepository;
+import com.harris.usmob.repository.reactive.ReactiveDailyUsageRepository;
+import com.harris.usmob.repository.reactive.ReactiveLineVersionRepository;
+import com.harris.usmob.repository.reactive.ReactiveUserRepository;
+import com.harris.usmob.service.PageCursors;
+import com.harris.usmob.service.UserEmailCache;
+import lombok.AllArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Reactive Service for User
+ * <p>
+ * Mirrors UserService, completing empty where UserService returns null
+ */
+@AllArgsConstructor
+@Profile("reactive")
+@Service
+public class ReactiveUserService {
+    /**
+     * Reactive Cycle Repository
+     */
+    private final ReactiveCycleRepository cycleRepository;
+    /**
+     * Reactive Daily Usage Repository
+     */
+    private final ReactiveDailyUsageRepository dailyUsageRepository;
+    /**
+     * Reactive User Repository
+     */
+    private final ReactiveUserRepository userRepository;
+    /**
+     * Reactive Current Cycle Repository
+     */
+    private final ReactiveCurrentCycleRepository currentCycleRepository;
+    /**
+     * Reactive Cycle Usage Rollup Repository
+     */
+    private final ReactiveCycleUsageRollupRepository cycleUsageRollupRepository;
+    /**
+     * Reactive User MDN Cache
+     */
+    private final ReactiveUserMdnCache userMdnCache;
+    /**
+     * Reactive User Email Cache
+     */
+    private final ReactiveUserEmailCache userEmailCache;
+    /**
+     * Reactive Cycle Interval Index
+     */
+    private final ReactiveCycleIntervalIndex cycleIntervalIndex;
+    /**
+     * Reactive Line Version Repository
+     */
+    private final ReactiveLineVersionRepository lineVersionRepository;
+
+    /**
+     * Creates a new user in the collection, storing the email normalized
+     *
+     * @param user User
+     * @return UserDTO object, empty if the email is already in use
+     */
+    public Mono<UserDTO> createUser(User user) {
+        String email = UserEmailCache.normalize(user.getEmail());
+        user.setEmail(email);
+
+        return userEmailCache.getUser(email)
+                .hasElement()
+                .flatMap(exists -> exists ? Mono.<User>empty() : userRepository.save(user)
+                        // Created since the email was cached as missing
+                        .onErrorResume(DuplicateKeyException.class, e -> Mono.empty())
+                        .doFinally(signal -> userEmailCache.invalidate(email)))
+                .map(ReactiveUserService::toDTO);
+    }
+
+    /**
+     * Deletes a user from the collection
+     *
+     * @param id User ID
+     * @return Boolean
+     */
+    public Mono<Boolean> deleteUser(String id) {
+        return userRepository.findEmailById(id)
+                .flatMap(user -> userRepository.deleteById(id)
+                        .then(Mono.fromRunnable(() -> {
+                            userMdnCache.invalidate(id);
+                            userEmailCache.invalidate(user.getEmail());
+                            cycleIntervalIndex.invalidateUser(id);
+                        }))
+                        // Delete references to this user in other tables
+                        .then(Mono.when(cycleRepository.deleteByUserId(id), currentCycleRepository.deleteByUserId(id),
+                                cycleUsageRollupRepository.deleteByUserId(id), dailyUsageRepository.deleteByUserId(id)))
+                        .then(lineVersionRepository.bumpUser(id))
+                        .thenReturn(true))
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * Gets a page of All Users, sorted by ID
+     *
+     * @param after Cursor returned with the previous page, or null for the first page
+     * @param limit Maximum number of users, capped to PageCursors.MAX_LIMIT
+     * @return PageDTO of UserDTO objects, empty if the cursor is invalid
+     */
+    public Mono<PageDTO<UserDTO>> getAllUsers(String after, int limit) {
+        int size = PageCursors.size(limit);
+        Flux<UserDTO> users;
+
+        if (after == null) {
+            users = userRepository.findAllByOrderByIdAsc(Limit.of(size + 1));
+        } else {
+            String[] keys = PageCursors.decode(after, 1);
+            if (keys == null) {
+                return Mono.empty();
+            }
+            users = userRepository.findByIdGreaterThanOrderByIdAsc(keys[0], Limit.of(size + 1));
+        }
+
+        return users.collectList()
+                .map(rows -> PageCursors.page(rows, size, Function.identity(), user -> PageCursors.encode(user.getId())));
+    }
+
+    /**
+     * Gets a User By Email
+     *
+     * @param email User email, matched ignoring case
+     * @return UserDTO object, empty if none
+     */
+    public Mono<UserDTO> getUserByEmail(String email) {
+        return userEmailCache.getUser(email);
+    }
+
+    /**
+     * Transfers MDN from User B to User A
+     *
+     * @param userIdA User ID A
+     * @param userIdB User ID B
+     * @return List of UserDTO objects, empty if either user is missing or B has no MDN
+     */
+    public Mono<List<UserDTO>> transferMDN(String userIdA, String userIdB) {
+        return Mono.zip(userRepository.findById(userIdA), userRepository.findById(userIdB))
+                .filter(users -> !users.getT2().getMdn().isEmpty())
+                .flatMap(users -> {
+                    User a = users.getT1();
+                    User b = users.getT2();
+
+                    a.setMdn(b.getMdn());
+                    b.setMdn("");
+
+                    return userRepository.save(a)
+                            .then(userRepository.save(b))
+                            .doOnSuccess(saved -> {
+                                userMdnCache.invalidate(a.getId());
+                                userMdnCache.invalidate(b.getId());
+                                userEmailCache.invalidate(a.getEmail());
+                                userEmailCache.invalidate(b.getEmail());
+                            })
+                            .thenReturn(List.of(toDTO(a), toDTO(b)));
+                });
+    }
+
+    /**
+     * Updates a User, storing the email normalized
+     *
+     * @param userId User ID
+     * @param user   User
+     * @return UserDTO object, empty if the user is missing or the new email is in use
+     */
+    public Mono<UserDTO> updateUser(String userId, User user) {
+        String email = UserEmailCache.normalize(user.getEmail());
+
+        return userRepository.findById(userId)
+                .flatMap(userToUpdate -> userEmailCache.getUser(email)
+                        .filter(existingEmail -> !existingEmail.getId().equals(userId))
+                        .hasElement()
+                        .flatMap(emailInUse -> {
+                            if (emailInUse) {
+                                return Mono.empty();
+                            }
+
+                            String oldEmail = userToUpdate.getEmail();
+                            userToUpdate.setEmail(email);
+                            userToUpdate.setFirstName(user.getFirstName());
+                            userToUpdate.setLastName(user.getLastName());
+                            userToUpdate.setPassword(user.getPassword());
+
+                            return userRepository.save(userToUpdate)
+                                    // Taken since the email was cached as missing
+                                    .onErrorResume(DuplicateKeyException.class, e -> Mono.empty())
+                                    .doFinally(signal -> {
+                                        userMdnCache.invalidate(userId);
+                                        userEmailCache.invalidate(oldEmail);
+                                        userEmailCache.invalidate(email);
+                                    });
+                        }))
+                .map(ReactiveUserService::toDTO);
+    }
+
+    /**
+     * Converts a User to a UserDTO
+     *
+     * @param user User
+     * @return UserDTO object
+     */
+    private static UserDTO toDTO(User user) {
+        return new UserDTO(user.getId(), user.getMdn(), user.getFirstName(), user.getLastName(), user.getEmail());
+    }
+}
@@ -0,0 +1,311 @@
+package com.harris.usmob.controller;
+
+import com.harris.usmob.dto.CycleDTO;
+import com.harris.usmob.dto.PageDTO;
+import com.harris.usmob.dto.UsageSummaryDTO;
+import com.harris.usmob.entity.Cycle;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Tests shared by the servlet and reactive cycle controllers.
+ * <p>
+ * Each subclass wires its stack and stubs its own service, the expectations are the same.
+ */
+public abstract class AbstractCycleControllerTest {
+
+    protected static final String BASE_URL = "/api/cycle";
+
+    protected Cycle mockCycle;
+
+    protected CycleDTO mockCycleDTO;
+
+    /**
+     * Client bound to the controller under test.
+     * @return WebTestClient
+     */
+    protected abstract WebTestClient client();
+
+    /**
+     * Stub adding a cycle.
+     * @param added Added cycle, null if it overlaps another
+     */
+    protected abstract void givenAddCycle(CycleDTO added);
+
+    /**
+     * Stub deleting a cycle.
+     * @param deleted Whether the cycle existed
+     */
+    protected abstract void givenDeleteCycle(boolean deleted);
+
+    /**
+     * Stub getting a page of cycles.
+     * @param after Cursor expected
+     * @param limit Page size expected
+     * @param page  Page returned, null if the cursor is invalid
+     */
+    protected abstract void givenAllCycles(String after, int limit, PageDTO<CycleDTO> page);
+
+    /**
+     * Stub getting the usage summary of a cycle.
+     * @param summary Usage summary, null if the cycle does not exist
+     */
+    protected abstract void givenUsageSummary(UsageSummaryDTO summary);
+
+    /**
+     * Stub getting the cycle history of a line.
+     * @param cycles Cycles of the line
+     */
+    protected abstract void givenCycleHistory(List<CycleDTO> cycles);
+
+    /**
+     * Stub getting the history ETag of a line.
+     * @param eTag ETag, null if the line has no version
+     */
+    protected abstract void givenHistoryETag(String eTag);
+
+    /**
+     * Verify the cycle history was never read.
+     */
+    protected abstract void verifyCycleHistoryNotRead();
+
+    /**
+     * Set up mock objects for each test.
+     */
+    @BeforeEach
+    public void setup() {
+        Date startDate = new Date();
+        Date endDate = new Date();
+        mockCycle = new Cycle("cycleId", "2024600871", startDate, endDate, "2024-06-18");
+        mockCycleDTO = new CycleDTO("cycleId", startDate, endDate);
+        givenHistoryETag(null);
+    }
+
+    /**
+     * Format a date the way it is serialized in responses.
+     * @param date Date
+     * @return Formatted date
+     */
+    protected static String isoDate(Date date) {
+        SimpleDateFormat isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+        isoFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        return isoFormat.format(date).replace("Z", "+00:00");
+    }
+
+    /**
+     * Test adding a cycle.
+     * Expect a 201 status code and the cycle details.
+     */
+    @Test
+    public void testAddCycle() {
+        givenAddCycle(mockCycleDTO);
+
+        client().post().uri(BASE_URL + "/add")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(mockCycle)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody()
+                .jsonPath("$.cycleId").isEqualTo(mockCycleDTO.getCycleId())
+                .jsonPath("$.startDate").isEqualTo(isoDate(mockCycleDTO.getStartDate()))
+                .jsonPath("$.endDate").isEqualTo(isoDate(mockCycleDTO.getEndDate()));
+    }
+
+    /**
+     * Test adding a cycle when a cycle already exists.
+     * Expect a 409 status code and an error message.
+     */
+    @Test
+    public void testAddCycleConflict() {
+        givenAddCycle(null);
+
+        client().post().uri(BASE_URL + "/add")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(mockCycle)
+                .exchange()
+                .expectStatus().isEqualTo(409)
+                .expectBody(String.class).isEqualTo("Error adding cycle");
+    }
+
+    /**
+     * Test deleting a cycle.
+     * Expect a 200 status code and a success message.
+     */
+    @Test
+    public void testDeleteCycle() {
+        givenDeleteCycle(true);
+
+        client().post().uri(BASE_URL + "/delete/{cycleId}", mockCycle.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("Cycle deleted successfully.");
+    }
+
+    /**
+     * Test deleting a cycle that does not exist.
+     * Expect a 404 status code and an error message.
+     */
+    @Test
+    public void testDeleteCycleNotFound() {
+        givenDeleteCycle(false);
+
+        client().post().uri(BASE_URL + "/delete/{cycleId}", mockCycle.getId())
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class).isEqualTo("Cycle does not exist.");
+    }
+
+    /**
+     * Test getting all cycles.
+     * Expect a 200 status code and the list of cycles.
+     */
+    @Test
+    public void testGetAllCycles() {
+        givenAllCycles(null, 100, new PageDTO<>(Collections.singletonList(mockCycleDTO), "next-cursor"));
+
+        client().get().uri(BASE_URL + "/all")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.items[0].cycleId").isEqualTo(mockCycleDTO.getCycleId())
+                .jsonPath("$.items[0].startDate").isEqualTo(isoDate(mockCycleDTO.getStartDate()))
+                .jsonPath("$.items[0].endDate").isEqualTo(isoDate(mockCycleDTO.getEndDate()))
+                .jsonPath("$.next").isEqualTo("next-cursor");
+    }
+
+    /**
+     * Test getting all cycles when no cycles exist.
+     * Expect a 404 status code and an error message.
+     */
+    @Test
+    public void testGetAllCyclesNotFound() {
+        givenAllCycles(null, 100, new PageDTO<>(Collections.emptyList(), null));
+
+        client().get().uri(BASE_URL + "/all")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class).isEqualTo("No cycles found.");
+    }
+
+    /**
+     * Test getting a page with an invalid cursor.
+     * Expect a 400 status code and an error message.
+     */
+    @Test
+    public void testGetAllCyclesInvalidCursor() {
+        givenAllCycles("bad-cursor", 100, null);
+
+        client().get().uri(BASE_URL + "/all?after=bad-cursor")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("Invalid cursor.");
+    }
+
+    /**
+     * Test getting the usage summary of a cycle.
+     * Expect a 200 status code and the summary.
+     */
+    @Test
+    public void testGetUsageSummary() {
+        givenUsageSummary(new UsageSummaryDTO(700, 350.0, mockCycleDTO.getStartDate(), 500, 2));
+
+        client().get().uri(BASE_URL + "/{cycleId}/usage-summary", mockCycleDTO.getCycleId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.totalInMb").isEqualTo(700)
+                .jsonPath("$.averageInMb").isEqualTo(350.0)
+                .jsonPath("$.peakDate").isEqualTo(isoDate(mockCycleDTO.getStartDate()))
+                .jsonPath("$.peakInMb").isEqualTo(500)
+                .jsonPath("$.days").isEqualTo(2);
+    }
+
+    /**
+     * Test getting the usage summary of a cycle that does not exist.
+     * Expect a 404 status code and an error message.
+     */
+    @Test
+    public void testGetUsageSummaryNotFound() {
+        givenUsageSummary(null);
+
+        client().get().uri(BASE_URL + "/{cycleId}/usage-summary", "nonexistent-cycle-id")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class).isEqualTo("Cycle does not exist.");
+    }
+
+    /**
+     * Test getting the cycle history for a user.
+     * Expect a 200 status code and the list of cycles.
+     */
+    @Test
+    public void testGetCycleHistory() {
+        givenCycleHistory(Collections.singletonList(mockCycleDTO));
+
+        client().get().uri(BASE_URL + "/history/{userId}/{mdn}", mockCycle.getUserId(), mockCycle.getMdn())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].cycleId").isEqualTo(mockCycleDTO.getCycleId())
+                .jsonPath("$[0].startDate").isEqualTo(isoDate(mockCycleDTO.getStartDate()))
+                .jsonPath("$[0].endDate").isEqualTo(isoDate(mockCycleDTO.getEndDate()));
+    }
+
+    /**
+     * Test getting the cycle history for a user when no cycles exist.
+     * Expect a 404 status code and an error message.
+     */
+    @Test
+    public void testGetCycleHistoryNotFound() {
+        givenCycleHistory(Collections.emptyList());
+
+        client().get().uri(BASE_URL + "/history/{userId}/{mdn}", mockCycle.getUserId(), mockCycle.getMdn())
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class).isEqualTo("No cycle history found.");
+    }
+
+    /**
+     * Test getting the cycle history of a line with a version.
+     * Expect a 200 status code and the version as the ETag.
+     */
+    @Test
+    public void testGetCycleHistoryETag() {
+        givenHistoryETag("\"3\"");
+        givenCycleHistory(Collections.singletonList(mockCycleDTO));
+
+        client().get().uri(BASE_URL + "/history/{userId}/{mdn}", mockCycle.getUserId(), mockCycle.getMdn())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"3\"")
+                .expectBody()
+                .jsonPath("$[0].cycleId").isEqualTo(mockCycleDTO.getCycleId());
+    }
+
+    /**
+     * Test getting the cycle history with the current ETag in If-None-Match.
+     * Expect a 304 status code without reading the history.
+     */
+    @Test
+    public void testGetCycleHistoryNotModified() {
+        givenHistoryETag("\"3\"");
+
+        client().get().uri(BASE_URL + "/history/{userId}/{mdn}", mockCycle.getUserId(), mockCycle.getMdn())
+                .header("If-None-Match", "\"3\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals("ETag", "\"3\"")
+                .expectBody().isEmpty();
+
+        verifyCycleHistoryNotRead();
+    }
+}
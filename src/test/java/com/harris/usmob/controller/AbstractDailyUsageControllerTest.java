@@ -0,0 +1,458 @@
+package com.harris.usmob.controller;
+
+import com.harris.usmob.dto.DailyUsageDTO;
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.dto.LineHistoryDTO;
+import com.harris.usmob.dto.PageDTO;
+import com.harris.usmob.dto.UsageBucketDTO;
+import com.harris.usmob.entity.DailyUsage;
+import com.harris.usmob.service.DailyUsageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Tests shared by the servlet and reactive daily usage controllers.
+ * <p>
+ * Each subclass wires its stack and stubs its own service, the expectations are the same.
+ */
+public abstract class AbstractDailyUsageControllerTest {
+
+    protected static final String BASE_URL = "/api/daily-usage";
+
+    protected DailyUsage mockDailyUsage;
+
+    protected DailyUsageDTO mockDailyUsageDTO;
+
+    /**
+     * Client bound to the controller under test.
+     * @return WebTestClient
+     */
+    protected abstract WebTestClient client();
+
+    /**
+     * Stub adding a daily usage.
+     * @param added Added daily usage, null if it cannot be added
+     */
+    protected abstract void givenAddDailyUsage(DailyUsageDTO added);
+
+    /**
+     * Stub getting a page of daily usages.
+     * @param after Cursor expected
+     * @param limit Page size expected
+     * @param page  Page returned, null if the cursor is invalid
+     */
+    protected abstract void givenAllDailyUsages(String after, int limit, PageDTO<DailyUsageDTO> page);
+
+    /**
+     * Stub getting the daily usage history of a line.
+     * @param usages Daily usages of the current cycle
+     */
+    protected abstract void givenDailyUsageHistory(List<DailyUsageDTO> usages);
+
+    /**
+     * Stub getting the history ETag of a line.
+     * @param eTag ETag, null if the line has no version
+     */
+    protected abstract void givenHistoryETag(String eTag);
+
+    /**
+     * Verify the daily usage history was never read.
+     */
+    protected abstract void verifyDailyUsageHistoryNotRead();
+
+    /**
+     * Stub getting the daily usage history of many lines.
+     * @param histories History of each line
+     */
+    protected abstract void givenDailyUsageHistories(List<LineHistoryDTO> histories);
+
+    /**
+     * Stub getting the daily usage of a line in a range.
+     * @param bucket  Bucket size expected
+     * @param buckets Buckets returned, null if from is after to
+     */
+    protected abstract void givenUsageRange(DailyUsageService.UsageBucket bucket, List<UsageBucketDTO> buckets);
+
+    /**
+     * Stub deleting a daily usage.
+     * @param deleted Whether the daily usage existed
+     */
+    protected abstract void givenDeleteDailyUsage(boolean deleted);
+
+    /**
+     * Stub updating the used in Mb of a daily usage.
+     * @param usedInMb Used in Mb expected
+     * @param updated  Updated daily usage, null if not found
+     */
+    protected abstract void givenUpdateUsedInMb(int usedInMb, DailyUsageDTO updated);
+
+    /**
+     * Stub incrementing the used in Mb of a daily usage.
+     * @param delta       Increment expected
+     * @param incremented Incremented daily usage, null if the request is invalid
+     */
+    protected abstract void givenIncrementUsedInMb(int delta, DailyUsageDTO incremented);
+
+    /**
+     * Set up mock objects for each test.
+     */
+    @BeforeEach
+    public void setup() {
+        Date usageDate = new Date();
+        mockDailyUsage = new DailyUsage("usageId", "2024600871", usageDate, 500, "userId");
+        mockDailyUsageDTO = new DailyUsageDTO(usageDate, 500);
+        givenHistoryETag(null);
+    }
+
+    /**
+     * Format a date the way it is serialized in responses.
+     * @param date Date
+     * @return Formatted date
+     */
+    protected static String isoDate(Date date) {
+        SimpleDateFormat isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+        isoFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        return isoFormat.format(date).replace("Z", "+00:00");
+    }
+
+    /**
+     * Test adding a daily usage.
+     * Expect a 201 status code and the daily usage details.
+     */
+    @Test
+    public void testAddDailyUsage() {
+        givenAddDailyUsage(mockDailyUsageDTO);
+
+        client().post().uri(BASE_URL + "/add")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(mockDailyUsage)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody()
+                .jsonPath("$.usageDate").isEqualTo(isoDate(mockDailyUsageDTO.getUsageDate()))
+                .jsonPath("$.usedInMb").isEqualTo(mockDailyUsageDTO.getUsedInMb());
+    }
+
+    /**
+     * Test adding a daily usage when a conflict occurs.
+     * Expect a 409 status code and an error message.
+     */
+    @Test
+    public void testAddDailyUsageConflict() {
+        givenAddDailyUsage(null);
+
+        client().post().uri(BASE_URL + "/add")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(mockDailyUsage)
+                .exchange()
+                .expectStatus().isEqualTo(409)
+                .expectBody(String.class).isEqualTo("Error adding daily usage");
+    }
+
+    /**
+     * Test getting all daily usages.
+     * Expect a 200 status code and the list of daily usages.
+     */
+    @Test
+    public void testGetAllDailyUsages() {
+        givenAllDailyUsages(null, 100, new PageDTO<>(Collections.singletonList(mockDailyUsageDTO), "next-cursor"));
+
+        client().get().uri(BASE_URL + "/all")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.items[0].usageDate").isEqualTo(isoDate(mockDailyUsageDTO.getUsageDate()))
+                .jsonPath("$.items[0].usedInMb").isEqualTo(mockDailyUsageDTO.getUsedInMb())
+                .jsonPath("$.next").isEqualTo("next-cursor");
+    }
+
+    /**
+     * Test getting all daily usages when none exist.
+     * Expect a 404 status code and an error message.
+     */
+    @Test
+    public void testGetAllDailyUsagesNotFound() {
+        givenAllDailyUsages(null, 100, new PageDTO<>(Collections.emptyList(), null));
+
+        client().get().uri(BASE_URL + "/all")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class).isEqualTo("No daily usages found.");
+    }
+
+    /**
+     * Test getting a page with an invalid cursor.
+     * Expect a 400 status code and an error message.
+     */
+    @Test
+    public void testGetAllDailyUsagesInvalidCursor() {
+        givenAllDailyUsages("bad-cursor", 100, null);
+
+        client().get().uri(BASE_URL + "/all?after=bad-cursor")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("Invalid cursor.");
+    }
+
+    /**
+     * Test getting the daily usage history for a user.
+     * Expect a 200 status code and the list of daily usages.
+     */
+    @Test
+    public void testGetDailyUsageHistory() {
+        givenDailyUsageHistory(Collections.singletonList(mockDailyUsageDTO));
+
+        client().get().uri(BASE_URL + "/history/{userId}/{mdn}", mockDailyUsage.getUserId(), mockDailyUsage.getMdn())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].usageDate").isEqualTo(isoDate(mockDailyUsageDTO.getUsageDate()))
+                .jsonPath("$[0].usedInMb").isEqualTo(mockDailyUsageDTO.getUsedInMb());
+    }
+
+    /**
+     * Test getting the daily usage history for a user when none exists.
+     * Expect a 404 status code and an error message.
+     */
+    @Test
+    public void testGetDailyUsageHistoryNotFound() {
+        givenDailyUsageHistory(Collections.emptyList());
+
+        client().get().uri(BASE_URL + "/history/{userId}/{mdn}", mockDailyUsage.getUserId(), mockDailyUsage.getMdn())
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class).isEqualTo("No daily usage history found.");
+    }
+
+    /**
+     * Test getting the daily usage history with a stale ETag in If-None-Match.
+     * Expect a 200 status code, the history and the current ETag.
+     */
+    @Test
+    public void testGetDailyUsageHistoryETagChanged() {
+        givenHistoryETag("\"4\"");
+        givenDailyUsageHistory(Collections.singletonList(mockDailyUsageDTO));
+
+        client().get().uri(BASE_URL + "/history/{userId}/{mdn}", mockDailyUsage.getUserId(), mockDailyUsage.getMdn())
+                .header("If-None-Match", "\"3\"")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"4\"")
+                .expectBody()
+                .jsonPath("$[0].usedInMb").isEqualTo(mockDailyUsageDTO.getUsedInMb());
+    }
+
+    /**
+     * Test getting the daily usage history with the current ETag in If-None-Match.
+     * Expect a 304 status code without reading the history.
+     */
+    @Test
+    public void testGetDailyUsageHistoryNotModified() {
+        givenHistoryETag("\"3\"");
+
+        client().get().uri(BASE_URL + "/history/{userId}/{mdn}", mockDailyUsage.getUserId(), mockDailyUsage.getMdn())
+                .header("If-None-Match", "\"3\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+
+        verifyDailyUsageHistoryNotRead();
+    }
+
+    /**
+     * Test getting the daily usage history of many lines.
+     * Expect a 200 status code and the history of each line, null for a line without a cycle.
+     */
+    @Test
+    public void testGetDailyUsageHistories() {
+        givenDailyUsageHistories(List.of(
+                new LineHistoryDTO("userId", "2024600871", List.of(mockDailyUsageDTO)),
+                new LineHistoryDTO("userId2", "2024600872", null)));
+
+        client().post().uri(BASE_URL + "/history/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of(new LineDTO("userId", "2024600871"), new LineDTO("userId2", "2024600872")))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].mdn").isEqualTo("2024600871")
+                .jsonPath("$[0].usages[0].usedInMb").isEqualTo(mockDailyUsageDTO.getUsedInMb())
+                .jsonPath("$[1].usages").doesNotExist();
+    }
+
+    /**
+     * Test getting the daily usage history of no lines.
+     * Expect a 400 status code and an error message.
+     */
+    @Test
+    public void testGetDailyUsageHistoriesEmpty() {
+        client().post().uri(BASE_URL + "/history/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of())
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("No lines provided.");
+    }
+
+    /**
+     * Test getting the daily usage history of more lines than allowed.
+     * Expect a 400 status code and an error message.
+     */
+    @Test
+    public void testGetDailyUsageHistoriesTooManyLines() {
+        List<LineDTO> lines = Collections.nCopies(DailyUsageService.MAX_HISTORY_LINES + 1, new LineDTO("userId", "2024600871"));
+
+        client().post().uri(BASE_URL + "/history/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(lines)
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("At most " + DailyUsageService.MAX_HISTORY_LINES + " lines per request.");
+    }
+
+    /**
+     * Test getting the daily usage of a line summed per month.
+     * Expect a 200 status code and one bucket per month.
+     */
+    @Test
+    public void testGetUsageRange() {
+        givenUsageRange(DailyUsageService.UsageBucket.MONTH, List.of(new UsageBucketDTO(new Date(0), 1500, 30)));
+
+        client().get().uri(BASE_URL + "/range/{userId}/{mdn}?from=2024-01-01&to=2024-06-30&bucket=month", "userId", "2024600871")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].totalInMb").isEqualTo(1500)
+                .jsonPath("$[0].days").isEqualTo(30);
+    }
+
+    /**
+     * Test getting the daily usage of a line with an unknown bucket size.
+     * Expect a 400 status code and an error message.
+     */
+    @Test
+    public void testGetUsageRangeInvalidBucket() {
+        client().get().uri(BASE_URL + "/range/{userId}/{mdn}?from=2024-01-01&to=2024-06-30&bucket=year", "userId", "2024600871")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("Invalid bucket, use day, week or month.");
+    }
+
+    /**
+     * Test getting the daily usage of a line with from after to.
+     * Expect a 400 status code and an error message.
+     */
+    @Test
+    public void testGetUsageRangeFromAfterTo() {
+        givenUsageRange(DailyUsageService.UsageBucket.DAY, null);
+
+        client().get().uri(BASE_URL + "/range/{userId}/{mdn}?from=2024-06-30&to=2024-01-01", "userId", "2024600871")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("From must not be after to.");
+    }
+
+    /**
+     * Test deleting a daily usage.
+     * Expect a 200 status code and a success message.
+     */
+    @Test
+    public void testDeleteDailyUsage() {
+        givenDeleteDailyUsage(true);
+
+        client().delete().uri(BASE_URL + "/delete/{usageId}", mockDailyUsage.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("Daily usage deleted successfully.");
+    }
+
+    /**
+     * Test deleting a daily usage that does not exist.
+     * Expect a 404 status code and an error message.
+     */
+    @Test
+    public void testDeleteDailyUsageNotFound() {
+        givenDeleteDailyUsage(false);
+
+        client().delete().uri(BASE_URL + "/delete/{usageId}", mockDailyUsage.getId())
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class).isEqualTo("Daily usage does not exist.");
+    }
+
+    /**
+     * Test updating the used in Mb for a daily usage.
+     * Expect a 200 status code and the updated daily usage details.
+     */
+    @Test
+    public void testUpdateUsedInMb() {
+        givenUpdateUsedInMb(1000, new DailyUsageDTO(mockDailyUsage.getUsageDate(), 1000));
+
+        client().patch().uri(BASE_URL + "/update/{usedInMb}", 1000)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(mockDailyUsage)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.usageDate").isEqualTo(isoDate(mockDailyUsageDTO.getUsageDate()))
+                .jsonPath("$.usedInMb").isEqualTo(1000);
+    }
+
+    /**
+     * Test updating the used in Mb for a daily usage when the daily usage is not found.
+     * Expect a 404 status code and an error message.
+     */
+    @Test
+    public void testUpdateUsedInMbNotFound() {
+        givenUpdateUsedInMb(1000, null);
+
+        client().patch().uri(BASE_URL + "/update/{usedInMb}", 1000)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(mockDailyUsage)
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class).isEqualTo("Error updating daily usage");
+    }
+
+    /**
+     * Test incrementing the used in Mb for a daily usage.
+     * Expect a 200 status code and the new total.
+     */
+    @Test
+    public void testIncrementUsedInMb() {
+        givenIncrementUsedInMb(500, new DailyUsageDTO(mockDailyUsage.getUsageDate(), 1000));
+
+        client().patch().uri(BASE_URL + "/increment")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(mockDailyUsage)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.usedInMb").isEqualTo(1000);
+    }
+
+    /**
+     * Test incrementing the used in Mb when the request is missing fields.
+     * Expect a 400 status code and an error message.
+     */
+    @Test
+    public void testIncrementUsedInMbBadRequest() {
+        givenIncrementUsedInMb(500, null);
+
+        client().patch().uri(BASE_URL + "/increment")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(mockDailyUsage)
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("Error incrementing daily usage");
+    }
+}
@@ -0,0 +1,247 @@
+package com.harris.usmob.controller;
+
+import com.harris.usmob.dto.PageDTO;
+import com.harris.usmob.dto.UserDTO;
+import com.harris.usmob.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests shared by the servlet and reactive user controllers.
+ * <p>
+ * Each subclass wires its stack and stubs its own service, the expectations are the same.
+ */
+public abstract class AbstractUserControllerTest {
+
+    protected static final String BASE_URL = "/api/user";
+
+    protected User mockUser;
+
+    protected UserDTO mockUserDTO;
+
+    /**
+     * Client bound to the controller under test.
+     * @return WebTestClient
+     */
+    protected abstract WebTestClient client();
+
+    /**
+     * Stub creating a user.
+     * @param created Created user, null if the email is in use
+     */
+    protected abstract void givenCreateUser(UserDTO created);
+
+    /**
+     * Stub deleting a user.
+     * @param deleted Whether the user existed
+     */
+    protected abstract void givenDeleteUser(boolean deleted);
+
+    /**
+     * Stub finding a user by email.
+     * @param user Found user, null if none
+     */
+    protected abstract void givenUserByEmail(UserDTO user);
+
+    /**
+     * Stub getting a page of users.
+     * @param after Cursor expected
+     * @param limit Page size expected
+     * @param page  Page returned, null if the cursor is invalid
+     */
+    protected abstract void givenAllUsers(String after, int limit, PageDTO<UserDTO> page);
+
+    /**
+     * Stub transferring an MDN.
+     * @param users Both updated users, null if a user is missing
+     */
+    protected abstract void givenTransferMDN(List<UserDTO> users);
+
+    /**
+     * Set up mock objects for each test.
+     */
+    @BeforeEach
+    public void setup() {
+        mockUser = new User("jdew09xm092zm09x", "2024600871", "John", "Doe", "john@doe.com", "password");
+        mockUserDTO = new UserDTO("jdew09xm092zm09x", "2024600871", "John", "Doe", "john@doe.com");
+    }
+
+    /**
+     * Test creating a user.
+     * Expect a 201 status code and the user details.
+     */
+    @Test
+    public void testCreateUser() {
+        givenCreateUser(mockUserDTO);
+
+        client().post().uri(BASE_URL + "/create")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(mockUser)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(mockUserDTO.getId())
+                .jsonPath("$.firstName").isEqualTo(mockUserDTO.getFirstName())
+                .jsonPath("$.lastName").isEqualTo(mockUserDTO.getLastName())
+                .jsonPath("$.email").isEqualTo(mockUserDTO.getEmail());
+    }
+
+    /**
+     * Test creating a user when the email is already in use.
+     * Expect a 409 status code and an error message.
+     */
+    @Test
+    public void testCreateUserConflict() {
+        givenCreateUser(null);
+
+        client().post().uri(BASE_URL + "/create")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(mockUser)
+                .exchange()
+                .expectStatus().isEqualTo(409)
+                .expectBody(String.class).isEqualTo("Email is already in use.");
+    }
+
+    /**
+     * Test deleting a user.
+     * Expect a 200 status code and a success message.
+     */
+    @Test
+    public void testDeleteUser() {
+        givenDeleteUser(true);
+
+        client().delete().uri(BASE_URL + "/delete/{id}", mockUser.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("User deleted successfully.");
+    }
+
+    /**
+     * Test deleting a user when the user is not found.
+     * Expect a 404 status code and an error message.
+     */
+    @Test
+    public void testDeleteUserNotFound() {
+        givenDeleteUser(false);
+
+        client().delete().uri(BASE_URL + "/delete/{id}", mockUser.getId())
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class).isEqualTo("User does not exist.");
+    }
+
+    /**
+     * Test fetching a user by email.
+     * Expect a 200 status code and the user details.
+     */
+    @Test
+    public void testFetchUserByEmail() {
+        givenUserByEmail(mockUserDTO);
+
+        client().get().uri(BASE_URL + "/search/{email}", mockUser.getEmail())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(mockUserDTO.getId())
+                .jsonPath("$.firstName").isEqualTo(mockUserDTO.getFirstName())
+                .jsonPath("$.lastName").isEqualTo(mockUserDTO.getLastName())
+                .jsonPath("$.email").isEqualTo(mockUserDTO.getEmail());
+    }
+
+    /**
+     * Test fetching a user by email when the user is not found.
+     * Expect a 404 status code and an error message.
+     */
+    @Test
+    public void testFetchUserByEmailNotFound() {
+        givenUserByEmail(null);
+
+        client().get().uri(BASE_URL + "/search/{email}", mockUser.getEmail())
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class).isEqualTo("User does not exist.");
+    }
+
+    /**
+     * Test fetching all users.
+     * Expect a 200 status code and the list of users.
+     */
+    @Test
+    public void testGetAllUsers() {
+        givenAllUsers(null, 100, new PageDTO<>(Collections.singletonList(mockUserDTO), "next-cursor"));
+
+        client().get().uri(BASE_URL + "/all")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.items[0].id").isEqualTo(mockUserDTO.getId())
+                .jsonPath("$.items[0].firstName").isEqualTo(mockUserDTO.getFirstName())
+                .jsonPath("$.items[0].lastName").isEqualTo(mockUserDTO.getLastName())
+                .jsonPath("$.items[0].email").isEqualTo(mockUserDTO.getEmail())
+                .jsonPath("$.next").isEqualTo("next-cursor");
+    }
+
+    /**
+     * Test fetching all users when no users exist.
+     * Expect a 404 status code and an error message.
+     */
+    @Test
+    public void testGetAllUsersNotFound() {
+        givenAllUsers(null, 100, new PageDTO<>(Collections.emptyList(), null));
+
+        client().get().uri(BASE_URL + "/all")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class).isEqualTo("No users found.");
+    }
+
+    /**
+     * Test getting a page with an invalid cursor.
+     * Expect a 400 status code and an error message.
+     */
+    @Test
+    public void testGetAllUsersInvalidCursor() {
+        givenAllUsers("bad-cursor", 100, null);
+
+        client().get().uri(BASE_URL + "/all?after=bad-cursor")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("Invalid cursor.");
+    }
+
+    /**
+     * Test transferring an MDN between users.
+     * Expect a 200 status code and both updated users.
+     */
+    @Test
+    public void testTransferMDN() {
+        UserDTO other = new UserDTO("other", "", "Jane", "Doe", "jane@doe.com");
+        givenTransferMDN(List.of(mockUserDTO, other));
+
+        client().post().uri(BASE_URL + "/transfer/{a}/{b}", mockUser.getId(), "other")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].mdn").isEqualTo(mockUserDTO.getMdn())
+                .jsonPath("$[1].mdn").isEqualTo("");
+    }
+
+    /**
+     * Test transferring an MDN when a user is missing.
+     * Expect a 409 status code and an error message.
+     */
+    @Test
+    public void testTransferMDNConflict() {
+        givenTransferMDN(null);
+
+        client().post().uri(BASE_URL + "/transfer/{a}/{b}", mockUser.getId(), "other")
+                .exchange()
+                .expectStatus().isEqualTo(409)
+                .expectBody(String.class).isEqualTo("Error transferring MDN.");
+    }
+}
@@ -2,24 +2,32 @@ package com.harris.usmob.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.harris.usmob.dto.CycleDTO;
+import com.harris.usmob.dto.PageDTO;
+import com.harris.usmob.dto.UsageSummaryDTO;
 import com.harris.usmob.entity.Cycle;
 import com.harris.usmob.service.CycleService;
-import org.junit.jupiter.api.BeforeEach;
+import com.harris.usmob.service.IdempotencyService;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.client.MockMvcWebTestClient;
 
-import java.text.SimpleDateFormat;
-import java.util.Collections;
-import java.util.Date;
-import java.util.TimeZone;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -28,16 +36,13 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  * Unit tests for the CycleController class.
  */
 @WebMvcTest(CycleController.class)
-public class CycleControllerTest {
-
-    private static final String BASE_URL = "/api/cycle";
+public class CycleControllerTest extends AbstractCycleControllerTest {
 
     @MockBean
     private CycleService cycleService;
 
-    private Cycle mockCycle;
-
-    private CycleDTO mockCycleDTO;
+    @MockBean
+    private IdempotencyService idempotencyService;
 
     @Autowired
     private MockMvc mockMvc;
@@ -45,172 +50,137 @@ public class CycleControllerTest {
     @Autowired
     private ObjectMapper objectMapper;
 
-    /**
-     * Set up mock objects for each test.
-     */
-    @BeforeEach
-    public void setup() {
-        Date startDate = new Date();
-        Date endDate = new Date();
-        mockCycle = new Cycle("cycleId", "2024600871", startDate, endDate, "2024-06-18");
-        mockCycleDTO = new CycleDTO("cycleId", startDate, endDate);
+    @Override
+    protected WebTestClient client() {
+        return MockMvcWebTestClient.bindTo(mockMvc).build();
     }
 
-    /**
-     * Test adding a cycle.
-     * Expect a 201 status code and the cycle details.
-     * @throws Exception if an error occurs
-     */
-    @Test
-    public void testAddCycle() throws Exception {
-        Mockito.when(cycleService.addCycle(any(Cycle.class))).thenReturn(mockCycleDTO);
+    @Override
+    protected void givenAddCycle(CycleDTO added) {
+        Mockito.when(cycleService.addCycle(any(Cycle.class))).thenReturn(added);
+    }
 
-        SimpleDateFormat isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
-        isoFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    @Override
+    protected void givenDeleteCycle(boolean deleted) {
+        Mockito.when(cycleService.deleteCycle(anyString())).thenReturn(deleted);
+    }
 
-        Date expectedStartDate = mockCycleDTO.getStartDate();
-        String expectedStartDateStr = isoFormat.format(expectedStartDate);
+    @Override
+    protected void givenAllCycles(String after, int limit, PageDTO<CycleDTO> page) {
+        Mockito.when(cycleService.getAllCycles(eq(after), eq(limit))).thenReturn(page);
+    }
 
-        Date expectedEndDate = mockCycleDTO.getEndDate();
-        String expectedEndDateStr = isoFormat.format(expectedEndDate);
+    @Override
+    protected void givenUsageSummary(UsageSummaryDTO summary) {
+        Mockito.when(cycleService.getUsageSummary(anyString())).thenReturn(summary);
+    }
 
-        expectedStartDateStr = expectedStartDateStr.replace("Z", "+00:00");
-        expectedEndDateStr = expectedEndDateStr.replace("Z", "+00:00");
+    @Override
+    protected void givenCycleHistory(List<CycleDTO> cycles) {
+        Mockito.when(cycleService.getCycleHistory(anyString(), anyString())).thenReturn(cycles);
+    }
 
-        mockMvc.perform(post(BASE_URL + "/add")
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .content(objectMapper.writeValueAsString(mockCycle)))
-                .andExpect(status().isCreated())
-                .andExpect(jsonPath("$.cycleId").value(mockCycleDTO.getCycleId()))
-                .andExpect(jsonPath("$.startDate").value(expectedStartDateStr))
-                .andExpect(jsonPath("$.endDate").value(expectedEndDateStr));
+    @Override
+    protected void givenHistoryETag(String eTag) {
+        Mockito.when(cycleService.getHistoryETag(anyString(), anyString())).thenReturn(eTag);
+    }
+
+    @Override
+    protected void verifyCycleHistoryNotRead() {
+        Mockito.verify(cycleService, Mockito.never()).getCycleHistory(anyString(), anyString());
     }
 
     /**
-     * Test adding a cycle when a cycle already exists.
-     * Expect a 409 status code and an error message.
+     * Test adding a cycle with an idempotency key.
+     * Expect the request to run through the idempotency service and a 201 status code.
      * @throws Exception if an error occurs
      */
     @Test
-    public void testAddCycleConflict() throws Exception {
-        Mockito.when(cycleService.addCycle(any(Cycle.class))).thenReturn(null);
+    @SuppressWarnings("unchecked")
+    public void testAddCycleWithIdempotencyKey() throws Exception {
+        Mockito.when(cycleService.addCycle(any(Cycle.class))).thenReturn(mockCycleDTO);
+        Mockito.when(idempotencyService.execute(eq("cycle/add"), eq("key-1"), any(), any(Supplier.class)))
+                .thenAnswer(invocation -> ((Supplier<ResponseEntity<Object>>) invocation.getArgument(3)).get());
 
         mockMvc.perform(post(BASE_URL + "/add")
+                        .header(IdempotencyService.HEADER, "key-1")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(mockCycle)))
-                .andExpect(status().isConflict())
-                .andExpect(content().string("Error adding cycle"));
-    }
-
-    /**
-     * Test deleting a cycle.
-     * Expect a 200 status code and a success message.
-     * @throws Exception if an error occurs
-     */
-    @Test
-    public void testDeleteCycle() throws Exception {
-        Mockito.when(cycleService.deleteCycle(anyString())).thenReturn(true);
+                .andExpect(status().isCreated());
 
-        mockMvc.perform(post(BASE_URL + "/delete/{cycleId}", mockCycle.getId()))
-                .andExpect(status().isOk())
-                .andExpect(content().string("Cycle deleted successfully."));
+        Mockito.verify(idempotencyService).execute(eq("cycle/add"), eq("key-1"), any(), any(Supplier.class));
     }
 
     /**
-     * Test deleting a cycle when the cycle does not exist.
-     * Expect a 404 status code and an error message.
+     * Test retrying an add cycle request with the same idempotency key.
+     * Expect the stored response to be replayed without adding again.
      * @throws Exception if an error occurs
      */
     @Test
-    public void testDeleteCycleNotFound() throws Exception {
-        Mockito.when(cycleService.deleteCycle(anyString())).thenReturn(false);
+    @SuppressWarnings("unchecked")
+    public void testAddCycleIdempotentReplay() throws Exception {
+        Mockito.when(idempotencyService.execute(eq("cycle/add"), eq("key-1"), any(), any(Supplier.class)))
+                .thenReturn(ResponseEntity.status(HttpStatus.CREATED)
+                        .header(IdempotencyService.REPLAYED_HEADER, "true")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body("{\"replayed\":true}"));
 
-        mockMvc.perform(post(BASE_URL + "/delete/{cycleId}", mockCycle.getId()))
-                .andExpect(status().isNotFound())
-                .andExpect(content().string("Cycle does not exist."));
+        mockMvc.perform(post(BASE_URL + "/add")
+                        .header(IdempotencyService.HEADER, "key-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(mockCycle)))
+                .andExpect(status().isCreated())
+                .andExpect(header().string(IdempotencyService.REPLAYED_HEADER, "true"))
+                .andExpect(jsonPath("$.replayed").value(true));
+
+        Mockito.verify(cycleService, Mockito.never()).addCycle(any());
     }
 
     /**
-     * Test getting all cycles.
-     * Expect a 200 status code and the list of cycles.
+     * Test rebuilding the current cycles.
+     * Expect a 200 status code and the number of rebuilt current cycles.
      * @throws Exception if an error occurs
      */
     @Test
-    public void testGetAllCycles() throws Exception {
-        Mockito.when(cycleService.getAllCycles()).thenReturn(Collections.singletonList(mockCycleDTO));
-
-        SimpleDateFormat isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
-        isoFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-
-        Date expectedStartDate = mockCycleDTO.getStartDate();
-        String expectedStartDateStr = isoFormat.format(expectedStartDate);
-
-        Date expectedEndDate = mockCycleDTO.getEndDate();
-        String expectedEndDateStr = isoFormat.format(expectedEndDate);
+    public void testRebuildCurrentCycles() throws Exception {
+        Mockito.when(cycleService.rebuildCurrentCycles()).thenReturn(3L);
 
-        expectedStartDateStr = expectedStartDateStr.replace("Z", "+00:00");
-        expectedEndDateStr = expectedEndDateStr.replace("Z", "+00:00");
-
-        mockMvc.perform(get(BASE_URL + "/all"))
+        mockMvc.perform(post(BASE_URL + "/current/rebuild"))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$[0].cycleId").value(mockCycleDTO.getCycleId()))
-                .andExpect(jsonPath("$[0].startDate").value(expectedStartDateStr))
-                .andExpect(jsonPath("$[0].endDate").value(expectedEndDateStr));
+                .andExpect(content().string("Rebuilt 3 current cycles."));
     }
 
     /**
-     * Test getting all cycles when no cycles exist.
-     * Expect a 404 status code and an error message.
+     * Test rebuilding the cycle usage rollups.
+     * Expect a 200 status code and the number of rebuilt usage rollups.
      * @throws Exception if an error occurs
      */
     @Test
-    public void testGetAllCyclesNotFound() throws Exception {
-        Mockito.when(cycleService.getAllCycles()).thenReturn(Collections.emptyList());
+    public void testRebuildUsageRollups() throws Exception {
+        Mockito.when(cycleService.rebuildUsageRollups()).thenReturn(4L);
 
-        mockMvc.perform(get(BASE_URL + "/all"))
-                .andExpect(status().isNotFound())
-                .andExpect(content().string("No cycles found."));
+        mockMvc.perform(post(BASE_URL + "/usage-rollup/rebuild"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Rebuilt 4 usage rollups."));
     }
 
     /**
-     * Test getting the cycle history for a user.
-     * Expect a 200 status code and the list of cycles.
+     * Test streaming all cycles.
+     * Expect a 200 status code and every cycle in one JSON array.
      * @throws Exception if an error occurs
      */
     @Test
-    public void testGetCycleHistory() throws Exception {
-        Mockito.when(cycleService.getCycleHistory(anyString(), anyString())).thenReturn(Collections.singletonList(mockCycleDTO));
-
-        SimpleDateFormat isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
-        isoFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    public void testStreamAllCycles() throws Exception {
+        CycleDTO secondCycleDTO = new CycleDTO("cycleId2", mockCycleDTO.getStartDate(), mockCycleDTO.getEndDate());
+        Mockito.when(cycleService.streamAllCycles()).thenReturn(Stream.of(mockCycleDTO, secondCycleDTO));
 
-        Date expectedStartDate = mockCycleDTO.getStartDate();
-        String expectedStartDateStr = isoFormat.format(expectedStartDate);
+        MvcResult result = mockMvc.perform(get(BASE_URL + "/all/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
 
-        Date expectedEndDate = mockCycleDTO.getEndDate();
-        String expectedEndDateStr = isoFormat.format(expectedEndDate);
-
-        expectedStartDateStr = expectedStartDateStr.replace("Z", "+00:00");
-        expectedEndDateStr = expectedEndDateStr.replace("Z", "+00:00");
-
-        mockMvc.perform(get(BASE_URL + "/history/{userId}/{mdn}", mockCycle.getUserId(), mockCycle.getMdn()))
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$[0].cycleId").value(mockCycleDTO.getCycleId()))
-                .andExpect(jsonPath("$[0].startDate").value(expectedStartDateStr))
-                .andExpect(jsonPath("$[0].endDate").value(expectedEndDateStr));
-    }
-
-    /**
-     * Test getting the cycle history for a user when no cycles exist.
-     * Expect a 404 status code and an error message.
-     * @throws Exception if an error occurs
-     */
-    @Test
-    public void testGetCycleHistoryNotFound() throws Exception {
-        Mockito.when(cycleService.getCycleHistory(anyString(), anyString())).thenReturn(Collections.emptyList());
-
-        mockMvc.perform(get(BASE_URL + "/history/{userId}/{mdn}", mockCycle.getUserId(), mockCycle.getMdn()))
-                .andExpect(status().isNotFound())
-                .andExpect(content().string("No cycle history found."));
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(content().json(objectMapper.writeValueAsString(List.of(mockCycleDTO, secondCycleDTO)), true));
     }
 }
@@ -1,23 +1,41 @@
 package com.harris.usmob.controller;
 
+import com.harris.usmob.config.DailyUsageProperties;
+import com.harris.usmob.dto.BulkRowResultDTO;
 import com.harris.usmob.dto.DailyUsageDTO;
+import com.harris.usmob.dto.IngestProgressDTO;
+import com.harris.usmob.dto.LineHistoryDTO;
+import com.harris.usmob.dto.PageDTO;
+import com.harris.usmob.dto.UsageBucketDTO;
+import com.harris.usmob.dto.UsageEventDTO;
+import com.harris.usmob.dto.UsageEventResultDTO;
 import com.harris.usmob.entity.DailyUsage;
+import com.harris.usmob.service.DailyUsageIngestService;
 import com.harris.usmob.service.DailyUsageService;
+import com.harris.usmob.service.IdempotencyService;
+import com.harris.usmob.service.UsageEventRollupService;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.client.MockMvcWebTestClient;
 
-import java.text.SimpleDateFormat;
-import java.util.Collections;
 import java.util.Date;
-import java.util.TimeZone;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -26,7 +44,8 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  * Unit tests for the DailyUsageController class.
  */
 @WebMvcTest(DailyUsageController.class)
-public class DailyUsageControllerTest {
+@EnableConfigurationProperties(DailyUsageProperties.class)
+public class DailyUsageControllerTest extends AbstractDailyUsageControllerTest {
 
     @Autowired
     private MockMvc mockMvc;
@@ -37,207 +56,270 @@ public class DailyUsageControllerTest {
     @MockBean
     private DailyUsageService dailyUsageService;
 
-    private static final String BASE_URL = "/api/daily-usage";
+    @MockBean
+    private DailyUsageIngestService dailyUsageIngestService;
 
-    private DailyUsage mockDailyUsage;
+    @MockBean
+    private UsageEventRollupService usageEventRollupService;
 
-    private DailyUsageDTO mockDailyUsageDTO;
+    @MockBean
+    private IdempotencyService idempotencyService;
 
-    /**
-     * Set up mock objects for each test.
-     */
-    @BeforeEach
-    public void setup() {
-        Date usageDate = new Date();
-        mockDailyUsage = new DailyUsage("usageId", "2024600871", usageDate, 500, "userId");
-        mockDailyUsageDTO = new DailyUsageDTO(usageDate, 500);
+    @Override
+    protected WebTestClient client() {
+        return MockMvcWebTestClient.bindTo(mockMvc).build();
+    }
+
+    @Override
+    protected void givenAddDailyUsage(DailyUsageDTO added) {
+        Mockito.when(dailyUsageService.addDailyUsage(any(DailyUsage.class))).thenReturn(added);
+    }
+
+    @Override
+    protected void givenAllDailyUsages(String after, int limit, PageDTO<DailyUsageDTO> page) {
+        Mockito.when(dailyUsageService.getAllDailyUsages(eq(after), eq(limit))).thenReturn(page);
+    }
+
+    @Override
+    protected void givenDailyUsageHistory(List<DailyUsageDTO> usages) {
+        Mockito.when(dailyUsageService.getDailyUsageHistory(anyString(), anyString())).thenReturn(usages);
+    }
+
+    @Override
+    protected void givenHistoryETag(String eTag) {
+        Mockito.when(dailyUsageService.getHistoryETag(anyString(), anyString())).thenReturn(eTag);
+    }
+
+    @Override
+    protected void verifyDailyUsageHistoryNotRead() {
+        Mockito.verify(dailyUsageService, Mockito.never()).getDailyUsageHistory(anyString(), anyString());
+    }
+
+    @Override
+    protected void givenDailyUsageHistories(List<LineHistoryDTO> histories) {
+        Mockito.when(dailyUsageService.getDailyUsageHistories(anyList())).thenReturn(histories);
+    }
+
+    @Override
+    protected void givenUsageRange(DailyUsageService.UsageBucket bucket, List<UsageBucketDTO> buckets) {
+        Mockito.when(dailyUsageService.getUsageRange(anyString(), anyString(), any(), any(), eq(bucket))).thenReturn(buckets);
+    }
+
+    @Override
+    protected void givenDeleteDailyUsage(boolean deleted) {
+        Mockito.when(dailyUsageService.deleteDailyUsage(anyString())).thenReturn(deleted);
+    }
+
+    @Override
+    protected void givenUpdateUsedInMb(int usedInMb, DailyUsageDTO updated) {
+        Mockito.when(dailyUsageService.updateUsedInMb(any(), anyString(), eq(usedInMb))).thenReturn(updated);
+    }
+
+    @Override
+    protected void givenIncrementUsedInMb(int delta, DailyUsageDTO incremented) {
+        Mockito.when(dailyUsageService.incrementUsedInMb(any(), anyString(), anyString(), eq(delta))).thenReturn(incremented);
     }
 
     /**
-     * Test adding a daily usage.
-     * Expect a 201 status code and the daily usage details.
+     * Test adding a daily usage with an idempotency key.
+     * Expect the request to run through the idempotency service and a 201 status code.
      * @throws Exception if an error occurs
      */
     @Test
-    public void testAddDailyUsage() throws Exception {
+    @SuppressWarnings("unchecked")
+    public void testAddDailyUsageWithIdempotencyKey() throws Exception {
         Mockito.when(dailyUsageService.addDailyUsage(any(DailyUsage.class))).thenReturn(mockDailyUsageDTO);
-
-        SimpleDateFormat isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
-        isoFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-
-        Date expectedDate = mockDailyUsageDTO.getUsageDate();
-        String expectedDateStr = isoFormat.format(expectedDate);
-
-        expectedDateStr = expectedDateStr.replace("Z", "+00:00");
+        Mockito.when(idempotencyService.execute(eq("daily-usage/add"), eq("key-1"), any(), any(Supplier.class)))
+                .thenAnswer(invocation -> ((Supplier<ResponseEntity<Object>>) invocation.getArgument(3)).get());
 
         mockMvc.perform(post(BASE_URL + "/add")
+                        .header(IdempotencyService.HEADER, "key-1")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(mockDailyUsage)))
-                .andExpect(status().isCreated())
-                .andExpect(jsonPath("$.usageDate").value(expectedDateStr))
-                .andExpect(jsonPath("$.usedInMb").value(mockDailyUsageDTO.getUsedInMb()));
+                .andExpect(status().isCreated());
+
+        Mockito.verify(idempotencyService).execute(eq("daily-usage/add"), eq("key-1"), any(), any(Supplier.class));
     }
 
     /**
-     * Test adding a daily usage when a conflict occurs.
-     * Expect a 409 status code and an error message.
+     * Test retrying an add daily usage request with the same idempotency key.
+     * Expect the stored response to be replayed without adding again.
      * @throws Exception if an error occurs
      */
     @Test
-    public void testAddDailyUsageConflict() throws Exception {
-        Mockito.when(dailyUsageService.addDailyUsage(any(DailyUsage.class))).thenReturn(null);
+    @SuppressWarnings("unchecked")
+    public void testAddDailyUsageIdempotentReplay() throws Exception {
+        Mockito.when(idempotencyService.execute(eq("daily-usage/add"), eq("key-1"), any(), any(Supplier.class)))
+                .thenReturn(ResponseEntity.status(HttpStatus.CREATED)
+                        .header(IdempotencyService.REPLAYED_HEADER, "true")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body("{\"replayed\":true}"));
 
         mockMvc.perform(post(BASE_URL + "/add")
+                        .header(IdempotencyService.HEADER, "key-1")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(mockDailyUsage)))
-                .andExpect(status().isConflict())
-                .andExpect(content().string("Error adding daily usage"));
+                .andExpect(status().isCreated())
+                .andExpect(header().string(IdempotencyService.REPLAYED_HEADER, "true"))
+                .andExpect(jsonPath("$.replayed").value(true));
+
+        Mockito.verify(dailyUsageService, Mockito.never()).addDailyUsage(any());
     }
 
     /**
-     * Test getting all daily usages.
-     * Expect a 200 status code and the daily usage details.
+     * Test adding a batch of daily usages.
+     * Expect a 200 status code and a result for each row.
      * @throws Exception if an error occurs
      */
     @Test
-    public void testGetAllDailyUsages() throws Exception {
-        Mockito.when(dailyUsageService.getAllDailyUsages()).thenReturn(Collections.singletonList(mockDailyUsageDTO));
+    public void testAddDailyUsages() throws Exception {
+        List<BulkRowResultDTO> results = List.of(
+                new BulkRowResultDTO(0, true, null),
+                new BulkRowResultDTO(1, false, "Daily usage already exists"));
+        Mockito.when(dailyUsageService.addDailyUsages(anyList())).thenReturn(results);
 
-        SimpleDateFormat isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
-        isoFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-
-        Date expectedDate = mockDailyUsageDTO.getUsageDate();
-        String expectedDateStr = isoFormat.format(expectedDate);
-
-        expectedDateStr = expectedDateStr.replace("Z", "+00:00");
-
-        mockMvc.perform(get(BASE_URL + "/all"))
+        mockMvc.perform(post(BASE_URL + "/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(mockDailyUsage, mockDailyUsage))))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$[0].usageDate").value(expectedDateStr))
-                .andExpect(jsonPath("$[0].usedInMb").value(mockDailyUsageDTO.getUsedInMb()));
+                .andExpect(jsonPath("$[0].accepted").value(true))
+                .andExpect(jsonPath("$[1].accepted").value(false))
+                .andExpect(jsonPath("$[1].reason").value("Daily usage already exists"));
     }
 
     /**
-     * Test getting all daily usages when none are found.
-     * Expect a 404 status code and an error message.
+     * Test adding an empty batch of daily usages.
+     * Expect a 400 status code and an error message.
      * @throws Exception if an error occurs
      */
     @Test
-    public void testGetAllDailyUsagesNotFound() throws Exception {
-        Mockito.when(dailyUsageService.getAllDailyUsages()).thenReturn(Collections.emptyList());
-
-        mockMvc.perform(get(BASE_URL + "/all"))
-                .andExpect(status().isNotFound())
-                .andExpect(content().string("No daily usages found."));
+    public void testAddDailyUsagesEmpty() throws Exception {
+        mockMvc.perform(post(BASE_URL + "/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("No daily usages provided."));
     }
 
     /**
-     * Test getting daily usage history.
-     * Expect a 200 status code and the daily usage history.
+     * Test ingesting raw usage events.
+     * Expect a 200 status code and the event counts.
      * @throws Exception if an error occurs
      */
     @Test
-    public void testGetDailyUsageHistory() throws Exception {
-        Mockito.when(dailyUsageService.getDailyUsageHistory(anyString(), anyString()))
-                .thenReturn(Collections.singletonList(mockDailyUsageDTO));
+    public void testIngestUsageEvents() throws Exception {
+        Mockito.when(usageEventRollupService.ingestEvents(anyList())).thenReturn(new UsageEventResultDTO(1, 1, 0));
 
-        SimpleDateFormat isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
-        isoFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        UsageEventDTO event = new UsageEventDTO("event-1", "2024600871", new Date(), 2048L);
 
-        Date expectedDate = mockDailyUsageDTO.getUsageDate();
-        String expectedDateStr = isoFormat.format(expectedDate);
-
-        expectedDateStr = expectedDateStr.replace("Z", "+00:00");
-
-        mockMvc.perform(get(BASE_URL + "/history/{userId}/{mdn}", "userId", mockDailyUsage.getMdn()))
+        mockMvc.perform(post(BASE_URL + "/events")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(event, event))))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$[0].usageDate").value(expectedDateStr))
-                .andExpect(jsonPath("$[0].usedInMb").value(mockDailyUsageDTO.getUsedInMb()));
+                .andExpect(jsonPath("$.accepted").value(1))
+                .andExpect(jsonPath("$.duplicates").value(1))
+                .andExpect(jsonPath("$.rejected").value(0));
     }
 
     /**
-     * Test getting daily usage history when none is found.
-     * Expect a 404 status code and an error message.
+     * Test ingesting an empty list of raw usage events.
+     * Expect a 400 status code and an error message.
      * @throws Exception if an error occurs
      */
     @Test
-    public void testGetDailyUsageHistoryNotFound() throws Exception {
-        Mockito.when(dailyUsageService.getDailyUsageHistory(anyString(), anyString()))
-                .thenReturn(Collections.emptyList());
-
-        mockMvc.perform(get(BASE_URL + "/history/{userId}/{mdn}", "userId", mockDailyUsage.getMdn()))
-                .andExpect(status().isNotFound())
-                .andExpect(content().string("No daily usage history found."));
+    public void testIngestUsageEventsEmpty() throws Exception {
+        mockMvc.perform(post(BASE_URL + "/events")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("No usage events provided."));
     }
 
     /**
-     * Test deleting a daily usage.
-     * Expect a 200 status code and a success message.
+     * Test streaming newline delimited daily usages.
+     * Expect a 200 status code, one progress line per reported chunk and the ingestion timeout.
      * @throws Exception if an error occurs
      */
     @Test
-    public void testDeleteDailyUsage() throws Exception {
-        Mockito.when(dailyUsageService.deleteDailyUsage(anyString())).thenReturn(true);
-
-        mockMvc.perform(delete(BASE_URL + "/delete/{usageId}", mockDailyUsage.getId()))
+    public void testIngestDailyUsages() throws Exception {
+        IngestProgressDTO chunkProgress = new IngestProgressDTO(1000, 999, 1, null, false);
+        IngestProgressDTO finalProgress = new IngestProgressDTO(1500, 1499, 1, null, true);
+        Mockito.when(dailyUsageIngestService.ingestNdjson(any(), any())).thenAnswer(invocation -> {
+            Consumer<IngestProgressDTO> listener = invocation.getArgument(1);
+            listener.accept(chunkProgress);
+            listener.accept(finalProgress);
+            return finalProgress;
+        });
+
+        String line = objectMapper.writeValueAsString(mockDailyUsage);
+
+        MvcResult result = mockMvc.perform(post(BASE_URL + "/ingest")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(line + "\n" + line + "\n"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertEquals(new DailyUsageProperties().getIngestTimeoutMs(), result.getRequest().getAsyncContext().getTimeout());
+
+        String expected = objectMapper.writeValueAsString(chunkProgress) + "\n"
+                + objectMapper.writeValueAsString(finalProgress) + "\n";
+
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
-                .andExpect(content().string("Daily usage deleted successfully."));
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(expected));
     }
 
     /**
-     * Test deleting a daily usage when the daily usage does not exist.
-     * Expect a 404 status code and an error message.
+     * Test streaming all daily usages.
+     * Expect a 200 status code and every daily usage in one JSON array.
      * @throws Exception if an error occurs
      */
     @Test
-    public void testDeleteDailyUsageNotFound() throws Exception {
-        Mockito.when(dailyUsageService.deleteDailyUsage(anyString())).thenReturn(false);
+    public void testStreamAllDailyUsages() throws Exception {
+        DailyUsageDTO secondDailyUsageDTO = new DailyUsageDTO(mockDailyUsageDTO.getUsageDate(), 700);
+        Mockito.when(dailyUsageService.streamAllDailyUsages()).thenReturn(Stream.of(mockDailyUsageDTO, secondDailyUsageDTO));
+
+        MvcResult result = mockMvc.perform(get(BASE_URL + "/all/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
 
-        mockMvc.perform(delete(BASE_URL + "/delete/{usageId}", mockDailyUsage.getId()))
-                .andExpect(status().isNotFound())
-                .andExpect(content().string("Daily usage does not exist."));
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(content().json(objectMapper.writeValueAsString(List.of(mockDailyUsageDTO, secondDailyUsageDTO)), true));
     }
 
     /**
-     * Test updating the used in Mb for a daily usage.
-     * Expect a 200 status code and the updated daily usage details.
+     * Test streaming all daily usages when none exist.
+     * Expect a 200 status code and an empty JSON array.
      * @throws Exception if an error occurs
      */
     @Test
-    public void testUpdateUsedInMb() throws Exception {
-        DailyUsageDTO mockDailyUsageDTOUpdated = new DailyUsageDTO(mockDailyUsage.getUsageDate(), 1000);
-
-        SimpleDateFormat isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
-        isoFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-
-        Date expectedDate = mockDailyUsageDTO.getUsageDate();
-        String expectedDateStr = isoFormat.format(expectedDate);
+    public void testStreamAllDailyUsagesEmpty() throws Exception {
+        Mockito.when(dailyUsageService.streamAllDailyUsages()).thenReturn(Stream.empty());
 
-        expectedDateStr = expectedDateStr.replace("Z", "+00:00");
+        MvcResult result = mockMvc.perform(get(BASE_URL + "/all/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
 
-        Mockito.when(dailyUsageService.updateUsedInMb(any(), anyString(), eq(1000))).thenReturn(mockDailyUsageDTOUpdated);
-
-        mockMvc.perform(patch(BASE_URL + "/update/{usedInMb}", 1000)
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .content(objectMapper.writeValueAsString(mockDailyUsage)))
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.usageDate").value(expectedDateStr))
-                .andExpect(jsonPath("$.usedInMb").value(1000));
+                .andExpect(content().string("[]"));
     }
 
     /**
-     * Test updating the used in Mb for a daily usage when the daily usage is not found.
-     * Expect a 404 status code and an error message.
+     * Test incrementing the used in Mb when write-behind is enabled.
+     * Expect a 202 status code and the increment to be queued.
      * @throws Exception if an error occurs
      */
     @Test
-    public void testUpdateUsedInMbNotFound() throws Exception {
-        Mockito.when(dailyUsageService.updateUsedInMb(any(), anyString(), anyInt())).thenReturn(null);
+    public void testIncrementUsedInMbQueued() throws Exception {
+        Mockito.when(dailyUsageService.queueIncrement(any(), anyString(), anyString(), eq(500))).thenReturn(true);
 
-        mockMvc.perform(patch(BASE_URL + "/update/{usedInMb}", 1000)
+        mockMvc.perform(patch(BASE_URL + "/increment")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(mockDailyUsage)))
-                .andExpect(status().isNotFound())
-                .andExpect(content().string("Error updating daily usage"));
+                .andExpect(status().isAccepted())
+                .andExpect(content().string("Daily usage increment queued."));
     }
-}
\ No newline at end of file
+}
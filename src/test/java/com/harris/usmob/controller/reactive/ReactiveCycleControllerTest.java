@@ -0,0 +1,76 @@
+package com.harris.usmob.controller.reactive;
+
+import com.harris.usmob.controller.AbstractCycleControllerTest;
+import com.harris.usmob.dto.CycleDTO;
+import com.harris.usmob.dto.PageDTO;
+import com.harris.usmob.dto.UsageSummaryDTO;
+import com.harris.usmob.entity.Cycle;
+import com.harris.usmob.service.reactive.ReactiveCycleService;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+/**
+ * Unit tests for the ReactiveCycleController class.
+ */
+@ActiveProfiles("reactive")
+@WebFluxTest(ReactiveCycleController.class)
+public class ReactiveCycleControllerTest extends AbstractCycleControllerTest {
+
+    @MockBean
+    private ReactiveCycleService cycleService;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Override
+    protected WebTestClient client() {
+        return webTestClient;
+    }
+
+    @Override
+    protected void givenAddCycle(CycleDTO added) {
+        Mockito.when(cycleService.addCycle(any(Cycle.class))).thenReturn(Mono.justOrEmpty(added));
+    }
+
+    @Override
+    protected void givenDeleteCycle(boolean deleted) {
+        Mockito.when(cycleService.deleteCycle(anyString())).thenReturn(Mono.just(deleted));
+    }
+
+    @Override
+    protected void givenAllCycles(String after, int limit, PageDTO<CycleDTO> page) {
+        Mockito.when(cycleService.getAllCycles(eq(after), eq(limit))).thenReturn(Mono.justOrEmpty(page));
+    }
+
+    @Override
+    protected void givenUsageSummary(UsageSummaryDTO summary) {
+        Mockito.when(cycleService.getUsageSummary(anyString())).thenReturn(Mono.justOrEmpty(summary));
+    }
+
+    @Override
+    protected void givenCycleHistory(List<CycleDTO> cycles) {
+        Mockito.when(cycleService.getCycleHistory(anyString(), anyString())).thenReturn(Flux.fromIterable(cycles));
+    }
+
+    @Override
+    protected void givenHistoryETag(String eTag) {
+        Mockito.when(cycleService.getHistoryETag(anyString(), anyString())).thenReturn(Mono.justOrEmpty(eTag));
+    }
+
+    @Override
+    protected void verifyCycleHistoryNotRead() {
+        Mockito.verify(cycleService, Mockito.never()).getCycleHistory(anyString(), anyString());
+    }
+}
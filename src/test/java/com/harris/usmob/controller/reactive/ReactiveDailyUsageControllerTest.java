@@ -0,0 +1,105 @@
+package com.harris.usmob.controller.reactive;
+
+import com.harris.usmob.controller.AbstractDailyUsageControllerTest;
+import com.harris.usmob.dto.DailyUsageDTO;
+import com.harris.usmob.dto.LineHistoryDTO;
+import com.harris.usmob.dto.PageDTO;
+import com.harris.usmob.dto.UsageBucketDTO;
+import com.harris.usmob.entity.DailyUsage;
+import com.harris.usmob.service.DailyUsageService;
+import com.harris.usmob.service.reactive.ReactiveDailyUsageService;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+
+/**
+ * Unit tests for the ReactiveDailyUsageController class.
+ */
+@ActiveProfiles("reactive")
+@WebFluxTest(ReactiveDailyUsageController.class)
+public class ReactiveDailyUsageControllerTest extends AbstractDailyUsageControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private ReactiveDailyUsageService dailyUsageService;
+
+    @Override
+    protected WebTestClient client() {
+        return webTestClient;
+    }
+
+    @Override
+    protected void givenAddDailyUsage(DailyUsageDTO added) {
+        Mockito.when(dailyUsageService.addDailyUsage(any(DailyUsage.class))).thenReturn(Mono.justOrEmpty(added));
+    }
+
+    @Override
+    protected void givenAllDailyUsages(String after, int limit, PageDTO<DailyUsageDTO> page) {
+        Mockito.when(dailyUsageService.getAllDailyUsages(eq(after), eq(limit))).thenReturn(Mono.justOrEmpty(page));
+    }
+
+    @Override
+    protected void givenDailyUsageHistory(List<DailyUsageDTO> usages) {
+        Mockito.when(dailyUsageService.getDailyUsageHistory(anyString(), anyString())).thenReturn(Mono.justOrEmpty(usages));
+    }
+
+    @Override
+    protected void givenHistoryETag(String eTag) {
+        Mockito.when(dailyUsageService.getHistoryETag(anyString(), anyString())).thenReturn(Mono.justOrEmpty(eTag));
+    }
+
+    @Override
+    protected void verifyDailyUsageHistoryNotRead() {
+        Mockito.verify(dailyUsageService, Mockito.never()).getDailyUsageHistory(anyString(), anyString());
+    }
+
+    @Override
+    protected void givenDailyUsageHistories(List<LineHistoryDTO> histories) {
+        Mockito.when(dailyUsageService.getDailyUsageHistories(anyList())).thenReturn(Mono.just(histories));
+    }
+
+    @Override
+    protected void givenUsageRange(DailyUsageService.UsageBucket bucket, List<UsageBucketDTO> buckets) {
+        Mockito.when(dailyUsageService.getUsageRange(anyString(), anyString(), any(), any(), eq(bucket))).thenReturn(Mono.justOrEmpty(buckets));
+    }
+
+    @Override
+    protected void givenDeleteDailyUsage(boolean deleted) {
+        Mockito.when(dailyUsageService.deleteDailyUsage(anyString())).thenReturn(Mono.just(deleted));
+    }
+
+    @Override
+    protected void givenUpdateUsedInMb(int usedInMb, DailyUsageDTO updated) {
+        Mockito.when(dailyUsageService.updateUsedInMb(any(), anyString(), eq(usedInMb))).thenReturn(Mono.justOrEmpty(updated));
+    }
+
+    @Override
+    protected void givenIncrementUsedInMb(int delta, DailyUsageDTO incremented) {
+        Mockito.when(dailyUsageService.incrementUsedInMb(any(), anyString(), anyString(), eq(delta))).thenReturn(Mono.justOrEmpty(incremented));
+    }
+
+    /**
+     * Test getting the daily usage history for a user with no cycle.
+     * Expect a 404 status code and an error message.
+     */
+    @Test
+    public void testGetDailyUsageHistoryNoCycle() {
+        givenDailyUsageHistory(null);
+
+        webTestClient.get().uri(BASE_URL + "/history/{userId}/{mdn}", mockDailyUsage.getUserId(), mockDailyUsage.getMdn())
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class).isEqualTo("No daily usage history found.");
+    }
+}
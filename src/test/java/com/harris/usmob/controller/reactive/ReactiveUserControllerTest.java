@@ -0,0 +1,64 @@
+package com.harris.usmob.controller.reactive;
+
+import com.harris.usmob.controller.AbstractUserControllerTest;
+import com.harris.usmob.dto.PageDTO;
+import com.harris.usmob.dto.UserDTO;
+import com.harris.usmob.entity.User;
+import com.harris.usmob.service.reactive.ReactiveUserService;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+/**
+ * Unit tests for the ReactiveUserController class.
+ */
+@ActiveProfiles("reactive")
+@WebFluxTest(ReactiveUserController.class)
+public class ReactiveUserControllerTest extends AbstractUserControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private ReactiveUserService userService;
+
+    @Override
+    protected WebTestClient client() {
+        return webTestClient;
+    }
+
+    @Override
+    protected void givenCreateUser(UserDTO created) {
+        Mockito.when(userService.createUser(any(User.class))).thenReturn(Mono.justOrEmpty(created));
+    }
+
+    @Override
+    protected void givenDeleteUser(boolean deleted) {
+        Mockito.when(userService.deleteUser(anyString())).thenReturn(Mono.just(deleted));
+    }
+
+    @Override
+    protected void givenUserByEmail(UserDTO user) {
+        Mockito.when(userService.getUserByEmail(anyString())).thenReturn(Mono.justOrEmpty(user));
+    }
+
+    @Override
+    protected void givenAllUsers(String after, int limit, PageDTO<UserDTO> page) {
+        Mockito.when(userService.getAllUsers(eq(after), eq(limit))).thenReturn(Mono.justOrEmpty(page));
+    }
+
+    @Override
+    protected void givenTransferMDN(List<UserDTO> users) {
+        Mockito.when(userService.transferMDN(anyString(), anyString())).thenReturn(Mono.justOrEmpty(users));
+    }
+}
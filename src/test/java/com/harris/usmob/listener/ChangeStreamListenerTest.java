@@ -0,0 +1,141 @@
+package com.harris.usmob.listener;
+
+import com.harris.usmob.config.NearCacheProperties;
+import com.harris.usmob.entity.Cycle;
+import com.harris.usmob.entity.User;
+import com.harris.usmob.repository.ChangeStreamTokenRepository;
+import com.harris.usmob.service.NearCache;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+
+/**
+ * Unit tests for the ChangeStreamListener class.
+ */
+public class ChangeStreamListenerTest {
+
+    private MongoTemplate mongoTemplate;
+
+    private NearCache nearCache;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private NearCacheProperties nearCacheProperties;
+
+    private ChangeStreamListener changeStreamListener;
+
+    /**
+     * Set up the test environment.
+     */
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = Mockito.mock(MongoTemplate.class);
+        Mockito.when(mongoTemplate.getCollectionName(User.class)).thenReturn("user");
+        Mockito.when(mongoTemplate.getCollectionName(Cycle.class)).thenReturn("cycle");
+
+        nearCache = Mockito.mock(NearCache.class);
+        meterRegistry = new SimpleMeterRegistry();
+        nearCacheProperties = new NearCacheProperties();
+        changeStreamListener = new ChangeStreamListener(mongoTemplate, Mockito.mock(ChangeStreamTokenRepository.class),
+                List.of(nearCache), nearCacheProperties, meterRegistry);
+    }
+
+    /**
+     * Test a user update.
+     * Expect the user to be dropped with the email after the update.
+     */
+    @Test
+    void testApplyUserUpdate() {
+        ObjectId userId = new ObjectId();
+
+        changeStreamListener.apply(change("update", "user", new BsonObjectId(userId), new Document("email", "john@doe.com")));
+
+        Mockito.verify(nearCache).userChanged(userId.toHexString(), "john@doe.com");
+    }
+
+    /**
+     * Test a cycle insert and a cycle delete.
+     * Expect the line of the inserted cycle to be dropped, and the line holding the deleted cycle.
+     */
+    @Test
+    void testApplyCycleInsertAndDelete() {
+        changeStreamListener.apply(change("insert", "cycle", new BsonString("cycle-id-1"),
+                new Document("userId", "userId1").append("mdn", "2024600871")));
+
+        Mockito.verify(nearCache).cycleChanged("userId1", "2024600871");
+        Mockito.verify(nearCache, Mockito.never()).cycleDeleted(anyString());
+
+        changeStreamListener.apply(change("delete", "cycle", new BsonString("cycle-id-1"), null));
+
+        Mockito.verify(nearCache).cycleDeleted("cycle-id-1");
+        Mockito.verify(nearCache, Mockito.times(1)).cycleChanged(anyString(), anyString());
+    }
+
+    /**
+     * Test a collection drop.
+     * Expect every near cache to be cleared.
+     */
+    @Test
+    void testApplyDrop() {
+        changeStreamListener.apply(change("drop", "cycle", null, null));
+
+        Mockito.verify(nearCache).invalidateAll();
+        Mockito.verify(nearCache, Mockito.never()).userChanged(any(), any());
+    }
+
+    /**
+     * Test document IDs stored as ObjectIds and as strings.
+     * Expect the IDs as the repositories return them.
+     */
+    @Test
+    void testIdOf() {
+        ObjectId id = new ObjectId();
+
+        assertEquals(id.toHexString(), ChangeStreamListener.idOf(new BsonDocument("_id", new BsonObjectId(id))));
+        assertEquals("cycle-id-1", ChangeStreamListener.idOf(new BsonDocument("_id", new BsonString("cycle-id-1"))));
+        assertNull(ChangeStreamListener.idOf(null));
+    }
+
+    /**
+     * Test a stream failing with an exception other than a MongoException.
+     * Expect every near cache to be cleared, the restart counted and the stream reopened.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Test
+    void testWatch_WhenStreamThrowsRuntimeException() throws InterruptedException {
+        Mockito.when(mongoTemplate.getDb()).thenThrow(new IllegalStateException("Pool closed"));
+        nearCacheProperties.getChangeStreams().setEnabled(true);
+
+        changeStreamListener.onApplicationEvent(Mockito.mock(ApplicationReadyEvent.class));
+        Thread.sleep(ChangeStreamListener.RETRY_DELAY.multipliedBy(3).toMillis() / 2);
+        changeStreamListener.stop();
+
+        Mockito.verify(mongoTemplate, Mockito.times(2)).getDb();
+        Mockito.verify(nearCache, Mockito.times(2)).invalidateAll();
+        assertEquals(2, meterRegistry.get("usmob.near_cache.change_stream.restarts").counter().count());
+    }
+
+    private static ChangeStreamDocument<Document> change(String operationType, String collection, BsonValue id, Document fullDocument) {
+        BsonDocument namespace = new BsonDocument("db", new BsonString("mydatabase")).append("coll", new BsonString(collection));
+        BsonDocument documentKey = id == null ? null : new BsonDocument("_id", id);
+
+        return new ChangeStreamDocument<>(operationType, new BsonDocument(), namespace, null, fullDocument, null, documentKey,
+                null, null, null, null, null, null, null);
+    }
+}
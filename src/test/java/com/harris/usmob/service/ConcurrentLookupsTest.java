@@ -0,0 +1,71 @@
+package com.harris.usmob.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the ConcurrentLookups class.
+ */
+public class ConcurrentLookupsTest {
+
+    /**
+     * Test forking two calls that each wait for the other.
+     * Expect both to run at the same time and return their results.
+     */
+    @Test
+    void testForkRunsConcurrently() {
+        CountDownLatch started = new CountDownLatch(2);
+
+        try (ConcurrentLookups lookups = new ConcurrentLookups()) {
+            Supplier<String> a = lookups.fork(() -> {
+                started.countDown();
+                return started.await(5, TimeUnit.SECONDS) ? "a" : null;
+            });
+            Supplier<String> b = lookups.fork(() -> {
+                started.countDown();
+                return started.await(5, TimeUnit.SECONDS) ? "b" : null;
+            });
+            lookups.join();
+
+            assertEquals("a", a.get());
+            assertEquals("b", b.get());
+        }
+    }
+
+    /**
+     * Test forking a call that fails next to one that never finishes.
+     * Expect the failure to be rethrown without waiting for the other call.
+     */
+    @Test
+    void testJoinFailsTogether() {
+        CountDownLatch never = new CountDownLatch(1);
+
+        try (ConcurrentLookups lookups = new ConcurrentLookups()) {
+            lookups.fork(() -> never.await(1, TimeUnit.MINUTES));
+            lookups.fork(() -> {
+                throw new IllegalArgumentException("lookup failed");
+            });
+
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, lookups::join);
+            assertEquals("lookup failed", e.getMessage());
+        }
+    }
+
+    /**
+     * Test reading a result before joining.
+     * Expect an IllegalStateException.
+     */
+    @Test
+    void testResultBeforeJoin() {
+        try (ConcurrentLookups lookups = new ConcurrentLookups()) {
+            Supplier<String> a = lookups.fork(() -> "a");
+
+            assertThrows(IllegalStateException.class, a::get);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.harris.usmob.service;
+
+import com.harris.usmob.config.DailyUsageProperties;
+import com.harris.usmob.dto.IngestProgressDTO;
+import com.harris.usmob.entity.User;
+import com.harris.usmob.repository.CurrentCycleRepository;
+import com.harris.usmob.repository.CycleRepository;
+import com.harris.usmob.repository.CycleUsageRollupRepository;
+import com.harris.usmob.repository.DailyUsageRepository;
+import com.harris.usmob.repository.LineVersionRepository;
+import com.harris.usmob.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the CsvImportService class.
+ */
+@DataMongoTest
+public class CsvImportServiceTest {
+
+    @Autowired
+    private CycleRepository cycleRepository;
+
+    @Autowired
+    private CurrentCycleRepository currentCycleRepository;
+
+    @Autowired
+    private CycleUsageRollupRepository cycleUsageRollupRepository;
+
+    @Autowired
+    private LineVersionRepository lineVersionRepository;
+
+    @Autowired
+    private DailyUsageRepository dailyUsageRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private CsvImportService csvImportService;
+
+    @TempDir
+    private Path tempDir;
+
+    /**
+     * Set up the test environment.
+     */
+    @BeforeEach
+    void setUp() {
+        userRepository.deleteAll();
+        cycleRepository.deleteAll();
+        dailyUsageRepository.deleteAll();
+        currentCycleRepository.deleteAll();
+        cycleUsageRollupRepository.deleteAll();
+        UserMdnCache userMdnCache = new UserMdnCache(userRepository, new SimpleMeterRegistry());
+        CycleIntervalIndex cycleIntervalIndex = new CycleIntervalIndex(cycleRepository, new SimpleMeterRegistry());
+        CycleService cycleService = new CycleService(cycleRepository, userMdnCache, currentCycleRepository, dailyUsageRepository, cycleUsageRollupRepository, cycleIntervalIndex, lineVersionRepository);
+        DailyUsageProperties dailyUsageProperties = new DailyUsageProperties();
+        UsageWriteBehindBuffer usageWriteBehindBuffer = new UsageWriteBehindBuffer(dailyUsageRepository, lineVersionRepository, cycleUsageRollupRepository, userMdnCache, dailyUsageProperties, new SimpleMeterRegistry());
+        DailyUsageService dailyUsageService = new DailyUsageService(cycleService, dailyUsageRepository, userMdnCache, usageWriteBehindBuffer, dailyUsageProperties, cycleUsageRollupRepository, lineVersionRepository);
+        csvImportService = new CsvImportService(dailyUsageService, cycleService);
+    }
+
+    /**
+     * Tear down the test environment.
+     */
+    @AfterEach
+    void tearDown() {
+        userRepository.deleteAll();
+        cycleRepository.deleteAll();
+        dailyUsageRepository.deleteAll();
+        currentCycleRepository.deleteAll();
+        cycleUsageRollupRepository.deleteAll();
+    }
+
+    /**
+     * Test importing a daily usage file larger than one batch.
+     * Expect valid rows to be written and invalid rows to be rejected.
+     * @throws IOException if the file cannot be written or read
+     */
+    @Test
+    void testImportDailyUsages() throws IOException {
+        userRepository.save(new User("user-id-1", "2024600871", "John", "Doe", "john@doe.com", "password"));
+
+        int rows = CsvImportService.BATCH_SIZE + 100;
+        StringBuilder csv = new StringBuilder("mdn,usageDate,usedInMb,userId\n");
+        LocalDate date = LocalDate.of(2000, 1, 1);
+        for (int i = 0; i < rows; i++) {
+            csv.append("2024600871,").append(date.plusDays(i)).append(",").append(i).append(",user-id-1\r\n");
+        }
+        csv.append("2024600871,not-a-date,5,user-id-1\n");
+        csv.append("2024600872,2000-01-01,5,user-id-1");
+        Path file = Files.writeString(tempDir.resolve("usage.csv"), csv);
+
+        IngestProgressDTO result = csvImportService.importDailyUsages(file);
+
+        assertNull(result.getError());
+        assertEquals(rows + 2, result.getRowsRead());
+        assertEquals(rows, result.getAccepted());
+        assertEquals(2, result.getRejected());
+        assertEquals(rows, dailyUsageRepository.count());
+    }
+
+    /**
+     * Test importing a cycle file with an overlapping cycle.
+     * Expect the overlapping cycle to be rejected.
+     * @throws IOException if the file cannot be written or read
+     */
+    @Test
+    void testImportCycles() throws IOException {
+        userRepository.save(new User("user-id-1", "2024600871", "John", "Doe", "john@doe.com", "password"));
+
+        String csv = "mdn,startDate,endDate,userId\n"
+                + "2024600871,2024-01-01,2024-01-31,user-id-1\n"
+                + "2024600871,2024-02-01,2024-02-29,user-id-1\n"
+                + "2024600871,2024-01-15,2024-02-14,user-id-1\n";
+        Path file = Files.writeString(tempDir.resolve("cycles.csv"), csv);
+
+        IngestProgressDTO result = csvImportService.importCycles(file);
+
+        assertEquals(3, result.getRowsRead());
+        assertEquals(2, result.getAccepted());
+        assertEquals(1, result.getRejected());
+        assertEquals(2, cycleRepository.count());
+    }
+}
@@ -0,0 +1,119 @@
+package com.harris.usmob.service;
+
+import com.harris.usmob.entity.Cycle;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the CycleIntervals class.
+ */
+public class CycleIntervalsTest {
+
+    /**
+     * Test a cycle starting inside, on the edges of, and after an existing cycle.
+     * Expect an overlap only when the start date is inside the existing cycle, edges included.
+     */
+    @Test
+    void testOverlaps() {
+        CycleIntervals intervals = new CycleIntervals(List.of(cycle("cycle-id-1", 10, 20), cycle("cycle-id-2", 30, 40)));
+
+        assertTrue(intervals.overlaps(cycle(null, 10, 12)));
+        assertTrue(intervals.overlaps(cycle(null, 15, 25)));
+        assertTrue(intervals.overlaps(cycle(null, 20, 25)));
+        assertFalse(intervals.overlaps(cycle(null, 21, 29)));
+        assertFalse(intervals.overlaps(cycle(null, 5, 15)));
+        assertFalse(intervals.overlaps(cycle(null, 41, 50)));
+    }
+
+    /**
+     * Test a line where an earlier cycle contains later ones.
+     * Expect the start date to be checked against the containing cycle too.
+     */
+    @Test
+    void testOverlapsWithNestedCycles() {
+        CycleIntervals intervals = new CycleIntervals(List.of(cycle("cycle-id-1", 10, 20)));
+        intervals.add(cycle("cycle-id-2", 5, 50));
+
+        assertTrue(intervals.overlaps(cycle(null, 30, 35)));
+        assertFalse(intervals.overlaps(cycle(null, 51, 60)));
+    }
+
+    /**
+     * Test the latest cycle after adding cycles out of order and with the same end date.
+     * Expect the cycle with the latest end date, the first one added on a tie.
+     */
+    @Test
+    void testLatest() {
+        CycleIntervals intervals = new CycleIntervals(List.of());
+        assertNull(intervals.latest());
+
+        intervals.add(cycle("cycle-id-2", 30, 40));
+        intervals.add(cycle("cycle-id-1", 10, 20));
+        intervals.add(cycle("cycle-id-3", 35, 40));
+
+        assertEquals("cycle-id-2", intervals.latest().getId());
+    }
+
+    /**
+     * Test looking up cycles by ID.
+     * Expect only the cycles of the line to be found.
+     */
+    @Test
+    void testHasCycle() {
+        CycleIntervals intervals = new CycleIntervals(List.of(cycle("cycle-id-1", 10, 20)));
+        intervals.add(cycle("cycle-id-2", 10, 30));
+
+        assertTrue(intervals.hasCycle("cycle-id-1"));
+        assertTrue(intervals.hasCycle("cycle-id-2"));
+        assertFalse(intervals.hasCycle("cycle-id-3"));
+    }
+
+    /**
+     * Test random cycles against a scan of every cycle.
+     * Expect the same overlap result for every cycle.
+     */
+    @Test
+    void testOverlapsMatchesScan() {
+        Random random = new Random(42);
+
+        for (int line = 0; line < 200; line++) {
+            List<Cycle> cycles = new ArrayList<>();
+            CycleIntervals intervals = new CycleIntervals(List.of());
+
+            for (int i = 0; i < 30; i++) {
+                long start = random.nextInt(500);
+                Cycle cycle = cycle("cycle-id-" + i, start, start + random.nextInt(random.nextBoolean() ? 10 : 100));
+
+                assertEquals(scan(cycle, cycles), intervals.overlaps(cycle));
+
+                // Keep some overlapping cycles too, as if written without the check
+                if (!scan(cycle, cycles) || random.nextInt(10) == 0) {
+                    cycles.add(cycle);
+                    intervals.add(cycle);
+                }
+            }
+        }
+    }
+
+    private static boolean scan(Cycle cycle, List<Cycle> oldCycles) {
+        for (Cycle oldCycle : oldCycles) {
+            if (!cycle.getStartDate().before(oldCycle.getStartDate()) && !cycle.getStartDate().after(oldCycle.getEndDate())) {
+                return true;
+            }
+            if (oldCycle.getStartDate().equals(cycle.getStartDate()) && oldCycle.getEndDate().equals(cycle.getEndDate())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Cycle cycle(String id, long start, long end) {
+        return new Cycle(id, "2024600871", new Date(start), new Date(end), "userId1");
+    }
+}
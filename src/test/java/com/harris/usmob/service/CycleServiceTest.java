@@ -1,10 +1,22 @@
 package com.harris.usmob.service;
 
+import com.harris.usmob.dto.BulkRowResultDTO;
 import com.harris.usmob.dto.CycleDTO;
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.dto.PageDTO;
+import com.harris.usmob.dto.UsageSummaryDTO;
+import com.harris.usmob.entity.CurrentCycle;
 import com.harris.usmob.entity.Cycle;
+import com.harris.usmob.entity.CycleUsageRollup;
+import com.harris.usmob.entity.DailyUsage;
 import com.harris.usmob.entity.User;
+import com.harris.usmob.repository.CurrentCycleRepository;
 import com.harris.usmob.repository.CycleRepository;
+import com.harris.usmob.repository.CycleUsageRollupRepository;
+import com.harris.usmob.repository.DailyUsageRepository;
+import com.harris.usmob.repository.LineVersionRepository;
 import com.harris.usmob.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -26,6 +38,18 @@ public class CycleServiceTest {
     @Autowired
     private CycleRepository cycleRepository;
 
+    @Autowired
+    private CurrentCycleRepository currentCycleRepository;
+
+    @Autowired
+    private CycleUsageRollupRepository cycleUsageRollupRepository;
+
+    @Autowired
+    private LineVersionRepository lineVersionRepository;
+
+    @Autowired
+    private DailyUsageRepository dailyUsageRepository;
+
     private CycleService cycleService;
     
     @Autowired
@@ -37,8 +61,14 @@ public class CycleServiceTest {
     @BeforeEach
     void setUp() {
         cycleRepository.deleteAll();
+        currentCycleRepository.deleteAll();
+        cycleUsageRollupRepository.deleteAll();
         userRepository.deleteAll();
-        cycleService = new CycleService(cycleRepository, userRepository);
+        dailyUsageRepository.deleteAll();
+        lineVersionRepository.deleteAll();
+        UserMdnCache userMdnCache = new UserMdnCache(userRepository, new SimpleMeterRegistry());
+        CycleIntervalIndex cycleIntervalIndex = new CycleIntervalIndex(cycleRepository, new SimpleMeterRegistry());
+        cycleService = new CycleService(cycleRepository, userMdnCache, currentCycleRepository, dailyUsageRepository, cycleUsageRollupRepository, cycleIntervalIndex, lineVersionRepository);
     }
 
     /**
@@ -47,7 +77,11 @@ public class CycleServiceTest {
     @AfterEach
     void tearDown() {
         cycleRepository.deleteAll();
+        currentCycleRepository.deleteAll();
+        cycleUsageRollupRepository.deleteAll();
         userRepository.deleteAll();
+        dailyUsageRepository.deleteAll();
+        lineVersionRepository.deleteAll();
     }
 
     /**
@@ -92,6 +126,27 @@ public class CycleServiceTest {
         assertNull(addedCycle);
     }
 
+    /**
+     * Test adding a cycle overlapping one another instance saved after the line's cycles were indexed.
+     * Expect the cycle to not be added.
+     */
+    @Test
+    void testAddCycle_WhenOverlapNotIndexed() {
+        User user = new User("userId1", "2024600871", "John", "Doe", "john@doe.com", "password");
+        userRepository.save(user);
+
+        Date startDate1 = new Date(System.currentTimeMillis() - 86400000);   // One day ago
+        assertNotNull(cycleService.addCycle(new Cycle("cycle-id-1", "2024600871", startDate1, startDate1, "userId1")));
+
+        Date startDate2 = new Date(System.currentTimeMillis() - 43200000);   // 12 hours ago
+        Date endDate2 = new Date(System.currentTimeMillis() + 43200000);     // 12 hours in future
+        cycleRepository.save(new Cycle("cycle-id-2", "2024600871", startDate2, endDate2, "userId1"));
+
+        Cycle cycle3 = new Cycle("cycle-id-3", "2024600871", new Date(), endDate2, "userId1");
+        assertNull(cycleService.addCycle(cycle3));
+        assertFalse(cycleRepository.existsById("cycle-id-3"));
+    }
+
     /**
      * Test adding a cycle when the mdn does not belong to the associated user.
      * Expect the cycle to not be added.
@@ -139,6 +194,39 @@ public class CycleServiceTest {
         assertNull(addedCycle);
     }
 
+    /**
+     * Test adding a batch of cycles with valid and invalid rows.
+     * Expect valid rows to be added and invalid rows to be rejected with a reason.
+     */
+    @Test
+    void testAddCycles() {
+        User user = new User("userId1", "2024600871", "John", "Doe", "john@doe.com", "password");
+        userRepository.save(user);
+
+        Date startDate1 = new Date(System.currentTimeMillis() - 86400000);   // One day ago
+        Date endDate1 = new Date();
+        cycleRepository.save(new Cycle("cycle-id-1", "2024600871", startDate1, endDate1, "userId1"));
+
+        Date startDate2 = new Date(System.currentTimeMillis() + 43200000);   // 12 hours in future
+        Date endDate2 = new Date(System.currentTimeMillis() + 86400000);     // One day in future
+        List<Cycle> batch = List.of(
+                new Cycle(null, "2024600871", startDate2, endDate2, "userId1"),
+                new Cycle(null, "2024600871", startDate2, endDate2, "userId1"),
+                new Cycle(null, "2024600871", startDate1, endDate1, "userId1"),
+                new Cycle(null, "2024600872", startDate2, endDate2, "userId1"),
+                new Cycle(null, "2024600871", endDate2, startDate2, "userId1"),
+                new Cycle(null, "2024600871", startDate2, endDate2, "nonexistent-user-id"));
+
+        List<BulkRowResultDTO> results = cycleService.addCycles(batch);
+
+        assertEquals(6, results.size());
+        assertTrue(results.get(0).isAccepted());
+        for (int i = 1; i < results.size(); i++) {
+            assertFalse(results.get(i).isAccepted());
+        }
+        assertEquals(2, cycleRepository.findByUserIdAndMdn("userId1", "2024600871").size());
+    }
+
     /**
      * Test deleting a cycle.
      * Expect the cycle to be deleted successfully.
@@ -167,6 +255,26 @@ public class CycleServiceTest {
         assertFalse(result);
     }
 
+    /**
+     * Test the history ETag of a line before and after adding and deleting a cycle.
+     * Expect no ETag before the first write and a new ETag after every write.
+     */
+    @Test
+    void testGetHistoryETag() {
+        User user = new User("userId1", "2024600871", "John", "Doe", "john@doe.com", "password");
+        userRepository.save(user);
+
+        assertNull(cycleService.getHistoryETag("userId1", "2024600871"));
+
+        cycleService.addCycle(new Cycle("cycle-id-1", "2024600871", new Date(), new Date(), "userId1"));
+        String added = cycleService.getHistoryETag("userId1", "2024600871");
+        assertEquals("\"1\"", added);
+        assertEquals(added, cycleService.getHistoryETag("userId1", "2024600871"));
+
+        cycleService.deleteCycle("cycle-id-1");
+        assertEquals("\"2\"", cycleService.getHistoryETag("userId1", "2024600871"));
+    }
+
     /**
      * Test getting all cycles.
      * Expect all cycles to be returned.
@@ -182,9 +290,31 @@ public class CycleServiceTest {
         Cycle cycle2 = new Cycle("cycle-id-2", "2024600871", new Date(), new Date(), "userId1");
         cycleRepository.save(cycle2);
 
-        List<CycleDTO> allCycles = cycleService.getAllCycles();
+        PageDTO<CycleDTO> allCycles = cycleService.getAllCycles(null, 100);
+
+        assertEquals(2, allCycles.getItems().size());
+        assertNull(allCycles.getNext());
+    }
+
+    /**
+     * Test paging through all cycles with the next cursor.
+     * Expect every cycle once, sorted by ID, and no cursor after the last page.
+     */
+    @Test
+    void testGetAllCycles_Paged() {
+        for (int i = 3; i >= 1; i--) {
+            cycleRepository.save(new Cycle("cycle-id-" + i, "2024600871", new Date(), new Date(), "userId1"));
+        }
+
+        PageDTO<CycleDTO> firstPage = cycleService.getAllCycles(null, 2);
+
+        assertEquals(List.of("cycle-id-1", "cycle-id-2"), firstPage.getItems().stream().map(CycleDTO::getCycleId).toList());
+        assertNotNull(firstPage.getNext());
+
+        PageDTO<CycleDTO> lastPage = cycleService.getAllCycles(firstPage.getNext(), 2);
 
-        assertEquals(2, allCycles.size());
+        assertEquals(List.of("cycle-id-3"), lastPage.getItems().stream().map(CycleDTO::getCycleId).toList());
+        assertNull(lastPage.getNext());
     }
 
     /**
@@ -229,8 +359,120 @@ public class CycleServiceTest {
     }
 
     /**
-     * Test getting the dates of the most recent cycle for a given user and MDN.
-     * Expect the dates of the most recent cycle to be returned.
+     * Test getting the usage summary of a cycle when usage exists inside and outside the cycle.
+     * Expect only the usage inside the cycle to be summed, with the latest highest day as the peak.
+     */
+    @Test
+    void testGetUsageSummary() {
+        Cycle cycle = new Cycle("cycle-id-1", "2024600871", new Date(1000000), new Date(5000000), "userId1");
+        cycleRepository.save(cycle);
+
+        dailyUsageRepository.save(new DailyUsage("usage-id-1", "2024600871", new Date(1000000), 100, "userId1"));
+        dailyUsageRepository.save(new DailyUsage("usage-id-2", "2024600871", new Date(2000000), 300, "userId1"));
+        dailyUsageRepository.save(new DailyUsage("usage-id-3", "2024600871", new Date(3000000), 300, "userId1"));
+        dailyUsageRepository.save(new DailyUsage("usage-id-4", "2024600871", new Date(6000000), 900, "userId1"));
+
+        UsageSummaryDTO summary = cycleService.getUsageSummary("cycle-id-1");
+
+        assertNotNull(summary);
+        assertEquals(700, summary.getTotalInMb());
+        assertEquals(700 / 3.0, summary.getAverageInMb(), 0.001);
+        assertEquals(new Date(3000000), summary.getPeakDate());
+        assertEquals(300, summary.getPeakInMb());
+        assertEquals(3, summary.getDays());
+    }
+
+    /**
+     * Test getting the usage summary of a cycle added through the service after its usage.
+     * Expect the summary to be read from the rollup seeded when the cycle was added.
+     */
+    @Test
+    void testGetUsageSummary_FromRollup() {
+        User user = new User("userId1", "2024600871", "John", "Doe", "john@doe.com", "password");
+        userRepository.save(user);
+
+        dailyUsageRepository.save(new DailyUsage("usage-id-1", "2024600871", new Date(1000000), 100, "userId1"));
+        dailyUsageRepository.save(new DailyUsage("usage-id-2", "2024600871", new Date(2000000), 300, "userId1"));
+
+        cycleService.addCycle(new Cycle("cycle-id-1", "2024600871", new Date(1000000), new Date(5000000), "userId1"));
+
+        assertTrue(cycleUsageRollupRepository.existsById("cycle-id-1"));
+
+        UsageSummaryDTO summary = cycleService.getUsageSummary("cycle-id-1");
+
+        assertEquals(400, summary.getTotalInMb());
+        assertEquals(200.0, summary.getAverageInMb(), 0.001);
+        assertEquals(new Date(2000000), summary.getPeakDate());
+        assertEquals(300, summary.getPeakInMb());
+        assertEquals(2, summary.getDays());
+    }
+
+    /**
+     * Test rebuilding the usage rollups after a cycle was saved without the service and a rollup was deleted.
+     * Expect a rollup for every cycle.
+     */
+    @Test
+    void testRebuildUsageRollups() {
+        cycleRepository.save(new Cycle("cycle-id-1", "2024600871", new Date(1000000), new Date(5000000), "userId1"));
+        cycleRepository.save(new Cycle("cycle-id-2", "2024600872", new Date(1000000), new Date(5000000), "userId2"));
+        dailyUsageRepository.save(new DailyUsage("usage-id-1", "2024600871", new Date(2000000), 100, "userId1"));
+
+        assertTrue(cycleService.usageRollupsMissing());
+        assertEquals(2, cycleService.rebuildUsageRollups());
+        assertFalse(cycleService.usageRollupsMissing());
+
+        assertEquals(100, cycleUsageRollupRepository.findById("cycle-id-1").orElseThrow().getTotalInMb());
+        assertEquals(0, cycleUsageRollupRepository.findById("cycle-id-2").orElseThrow().getDays());
+    }
+
+    /**
+     * Test rebuilding the usage rollups with a stale rollup and a rollup whose cycle was deleted without the service.
+     * Expect the stale rollup to be recomputed with a new version and the orphaned rollup to be removed.
+     */
+    @Test
+    void testRebuildUsageRollups_KeepsCyclesOnly() {
+        cycleRepository.save(new Cycle("cycle-id-1", "2024600871", new Date(1000000), new Date(5000000), "userId1"));
+        dailyUsageRepository.save(new DailyUsage("usage-id-1", "2024600871", new Date(2000000), 100, "userId1"));
+        cycleUsageRollupRepository.save(new CycleUsageRollup("cycle-id-1", "userId1", "2024600871", new Date(1000000), new Date(5000000), 40, 1, null, 3));
+        cycleUsageRollupRepository.save(new CycleUsageRollup("cycle-id-9", "userId1", "2024600871", new Date(1000000), new Date(5000000), 40, 1, null, 0));
+
+        assertEquals(1, cycleService.rebuildUsageRollups());
+
+        CycleUsageRollup rollup = cycleUsageRollupRepository.findById("cycle-id-1").orElseThrow();
+        assertEquals(100, rollup.getTotalInMb());
+        assertEquals(4, rollup.getVersion());
+        assertFalse(cycleUsageRollupRepository.existsById("cycle-id-9"));
+    }
+
+    /**
+     * Test getting the usage summary of a cycle without usage.
+     * Expect a summary of zero days.
+     */
+    @Test
+    void testGetUsageSummary_WhenNoUsageFound() {
+        Cycle cycle = new Cycle("cycle-id-1", "2024600871", new Date(1000000), new Date(5000000), "userId1");
+        cycleRepository.save(cycle);
+
+        UsageSummaryDTO summary = cycleService.getUsageSummary("cycle-id-1");
+
+        assertNotNull(summary);
+        assertEquals(0, summary.getTotalInMb());
+        assertNull(summary.getPeakDate());
+        assertEquals(0, summary.getDays());
+    }
+
+    /**
+     * Test getting the usage summary of a cycle that does not exist.
+     * Expect null to be returned.
+     */
+    @Test
+    void testGetUsageSummary_WhenCycleNotFound() {
+        assertNull(cycleService.getUsageSummary("nonexistent-cycle-id"));
+    }
+
+    /**
+     * Test getting the most recent cycle after rebuilding the current cycles from cycles saved directly.
+     * Expect the cycle with the latest end date to be returned.
      */
     @Test
     void testGetMostRecentCycle() {
@@ -247,20 +489,124 @@ public class CycleServiceTest {
         Cycle cycle2 = new Cycle("cycle-id-2", "2024600871", startDate2, endDate2, "userId1");
         cycleRepository.save(cycle2);
 
-        List<Date> mostRecentCycle = cycleService.getMostRecentCycle("userId1", "2024600871");
+        assertTrue(cycleService.currentCyclesMissing());
+        assertEquals(1, cycleService.rebuildCurrentCycles());
+
+        CycleDTO mostRecentCycle = cycleService.getMostRecentCycle("userId1", "2024600871");
+
+        assertNotNull(mostRecentCycle);
+        assertEquals("cycle-id-2", mostRecentCycle.getCycleId());
+        assertEquals(startDate2, mostRecentCycle.getStartDate());
+        assertEquals(endDate2, mostRecentCycle.getEndDate());
+    }
+
+    /**
+     * Test getting the most recent cycle when a later cycle was saved but its pointer never advanced.
+     * Expect the later cycle to be returned and the pointer to be advanced to it.
+     */
+    @Test
+    void testGetMostRecentCycle_WhenAdvanceMissed() {
+        userRepository.save(new User("userId1", "2024600871", "John", "Doe", "john@doe.com", "password"));
+
+        Date endDate1 = new Date();
+        cycleRepository.save(new Cycle("cycle-id-1", "2024600871", new Date(System.currentTimeMillis() - 86400000), endDate1, "userId1"));
+        assertEquals(1, cycleService.rebuildCurrentCycles());
+
+        Date endDate2 = new Date(System.currentTimeMillis() + 86400000);   // One day in future
+        cycleRepository.save(new Cycle("cycle-id-2", "2024600871", new Date(endDate1.getTime() + 1000), endDate2, "userId1"));
 
+        CycleDTO mostRecentCycle = cycleService.getMostRecentCycle("userId1", "2024600871");
+
+        assertEquals("cycle-id-2", mostRecentCycle.getCycleId());
+        assertEquals("cycle-id-2", currentCycleRepository.findById(CurrentCycle.idOf("userId1", "2024600871")).orElseThrow().getCycleId());
+        assertEquals("cycle-id-2", cycleService.getMostRecentCycles(List.of(new LineDTO("userId1", "2024600871")))
+                .get(new LineDTO("userId1", "2024600871")).getCycleId());
+    }
+
+    /**
+     * Test rebuilding the current cycles when pointers point at deleted cycles.
+     * Expect the pointer of a line with cycles to move to its latest cycle and the pointer of a line without cycles to be removed.
+     */
+    @Test
+    void testRebuildCurrentCycles_WhenPointersStale() {
+        userRepository.save(new User("userId1", "2024600871", "John", "Doe", "john@doe.com", "password"));
+
+        Date startDate = new Date(System.currentTimeMillis() - 86400000);   // One day ago
+        Date endDate = new Date();
+        cycleRepository.save(new Cycle("cycle-id-1", "2024600871", startDate, endDate, "userId1"));
+
+        Date laterEndDate = new Date(System.currentTimeMillis() + 86400000);   // One day in future
+        currentCycleRepository.save(new CurrentCycle(CurrentCycle.idOf("userId1", "2024600871"), "userId1", "2024600871",
+                "deleted-cycle-id", endDate, laterEndDate));
+        currentCycleRepository.save(new CurrentCycle(CurrentCycle.idOf("userId2", "2024600872"), "userId2", "2024600872",
+                "deleted-cycle-id-2", startDate, endDate));
+
+        assertEquals(1, cycleService.rebuildCurrentCycles());
+
+        CycleDTO mostRecentCycle = cycleService.getMostRecentCycle("userId1", "2024600871");
+
+        assertNotNull(mostRecentCycle);
+        assertEquals("cycle-id-1", mostRecentCycle.getCycleId());
+        assertFalse(currentCycleRepository.existsById(CurrentCycle.idOf("userId2", "2024600872")));
+    }
+
+    /**
+     * Test the current cycle is maintained by addCycle when an older cycle is added after a newer one.
+     * Expect the cycle with the latest end date to stay the most recent cycle.
+     */
+    @Test
+    void testGetMostRecentCycle_AfterAddCycle() {
+        userRepository.save(new User("userId1", "2024600871", "John", "Doe", "john@doe.com", "password"));
+
+        Date startDate2 = new Date(System.currentTimeMillis() - 43200000);   // 12 hours ago
+        Date endDate2 = new Date(System.currentTimeMillis() + 43200000);     // 12 hours in future
+        cycleService.addCycle(new Cycle("cycle-id-2", "2024600871", startDate2, endDate2, "userId1"));
+
+        Date startDate1 = new Date(System.currentTimeMillis() - 3 * 86400000);   // Three days ago
+        Date endDate1 = new Date(System.currentTimeMillis() - 2 * 86400000);     // Two days ago
+        cycleService.addCycle(new Cycle("cycle-id-1", "2024600871", startDate1, endDate1, "userId1"));
+
+        CycleDTO mostRecentCycle = cycleService.getMostRecentCycle("userId1", "2024600871");
+
+        assertNotNull(mostRecentCycle);
+        assertEquals("cycle-id-2", mostRecentCycle.getCycleId());
+        assertEquals(1, currentCycleRepository.count());
+    }
+
+    /**
+     * Test deleting the most recent cycle.
+     * Expect the previous cycle to become the most recent cycle, and none once both are deleted.
+     */
+    @Test
+    void testGetMostRecentCycle_AfterDeleteCycle() {
+        userRepository.save(new User("userId1", "2024600871", "John", "Doe", "john@doe.com", "password"));
+
+        Date startDate1 = new Date(System.currentTimeMillis() - 3 * 86400000);   // Three days ago
+        Date endDate1 = new Date(System.currentTimeMillis() - 2 * 86400000);     // Two days ago
+        cycleService.addCycle(new Cycle("cycle-id-1", "2024600871", startDate1, endDate1, "userId1"));
+
+        Date startDate2 = new Date(System.currentTimeMillis() - 43200000);   // 12 hours ago
+        Date endDate2 = new Date(System.currentTimeMillis() + 43200000);     // 12 hours in future
+        cycleService.addCycle(new Cycle("cycle-id-2", "2024600871", startDate2, endDate2, "userId1"));
+
+        cycleService.deleteCycle("cycle-id-2");
+
+        CycleDTO mostRecentCycle = cycleService.getMostRecentCycle("userId1", "2024600871");
         assertNotNull(mostRecentCycle);
-        assertEquals(startDate2, mostRecentCycle.get(0));
-        assertEquals(endDate2, mostRecentCycle.get(1));
+        assertEquals("cycle-id-1", mostRecentCycle.getCycleId());
+        assertEquals(endDate1, mostRecentCycle.getEndDate());
+
+        cycleService.deleteCycle("cycle-id-1");
+        assertNull(cycleService.getMostRecentCycle("userId1", "2024600871"));
     }
 
     /**
-     * Test getting the dates of the most recent cycle when no cycles exist.
+     * Test getting the most recent cycle when no cycles exist.
      * Expect null to be returned.
      */
     @Test
     void testGetMostRecentCycle_WhenNoCyclesFound() {
-        List<Date> mostRecentCycle = cycleService.getMostRecentCycle("nonexistent-user-id", "2024600871");
+        CycleDTO mostRecentCycle = cycleService.getMostRecentCycle("nonexistent-user-id", "2024600871");
         assertNull(mostRecentCycle);
     }
 }
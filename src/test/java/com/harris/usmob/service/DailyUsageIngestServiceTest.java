@@ -0,0 +1,134 @@
+package com.harris.usmob.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.harris.usmob.config.DailyUsageProperties;
+import com.harris.usmob.dto.IngestProgressDTO;
+import com.harris.usmob.entity.User;
+import com.harris.usmob.repository.CurrentCycleRepository;
+import com.harris.usmob.repository.CycleRepository;
+import com.harris.usmob.repository.CycleUsageRollupRepository;
+import com.harris.usmob.repository.DailyUsageRepository;
+import com.harris.usmob.repository.LineVersionRepository;
+import com.harris.usmob.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the DailyUsageIngestService class.
+ */
+@DataMongoTest
+public class DailyUsageIngestServiceTest {
+
+    @Autowired
+    private CycleRepository cycleRepository;
+
+    @Autowired
+    private CurrentCycleRepository currentCycleRepository;
+
+    @Autowired
+    private CycleUsageRollupRepository cycleUsageRollupRepository;
+
+    @Autowired
+    private LineVersionRepository lineVersionRepository;
+
+    @Autowired
+    private DailyUsageRepository dailyUsageRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private DailyUsageIngestService dailyUsageIngestService;
+
+    /**
+     * Set up the test environment.
+     */
+    @BeforeEach
+    void setUp() {
+        userRepository.deleteAll();
+        dailyUsageRepository.deleteAll();
+        currentCycleRepository.deleteAll();
+        cycleUsageRollupRepository.deleteAll();
+        UserMdnCache userMdnCache = new UserMdnCache(userRepository, new SimpleMeterRegistry());
+        CycleIntervalIndex cycleIntervalIndex = new CycleIntervalIndex(cycleRepository, new SimpleMeterRegistry());
+        CycleService cycleService = new CycleService(cycleRepository, userMdnCache, currentCycleRepository, dailyUsageRepository, cycleUsageRollupRepository, cycleIntervalIndex, lineVersionRepository);
+        DailyUsageProperties dailyUsageProperties = new DailyUsageProperties();
+        UsageWriteBehindBuffer usageWriteBehindBuffer = new UsageWriteBehindBuffer(dailyUsageRepository, lineVersionRepository, cycleUsageRollupRepository, userMdnCache, dailyUsageProperties, new SimpleMeterRegistry());
+        DailyUsageService dailyUsageService = new DailyUsageService(cycleService, dailyUsageRepository, userMdnCache, usageWriteBehindBuffer, dailyUsageProperties, cycleUsageRollupRepository, lineVersionRepository);
+        dailyUsageIngestService = new DailyUsageIngestService(dailyUsageService, new ObjectMapper());
+    }
+
+    /**
+     * Tear down the test environment.
+     */
+    @AfterEach
+    void tearDown() {
+        userRepository.deleteAll();
+        dailyUsageRepository.deleteAll();
+        currentCycleRepository.deleteAll();
+        cycleUsageRollupRepository.deleteAll();
+    }
+
+    /**
+     * Test ingesting more rows than fit in one chunk.
+     * Expect every valid row to be written and progress to be reported per chunk.
+     * @throws IOException if the input cannot be read
+     */
+    @Test
+    void testIngestNdjson() throws IOException {
+        userRepository.save(new User("user-id-1", "2024600871", "John", "Doe", "john@doe.com", "password"));
+
+        int rows = DailyUsageIngestService.CHUNK_SIZE + 10;
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            ndjson.append("{\"mdn\":\"2024600871\",\"usageDate\":").append(i * 86400000L)
+                    .append(",\"usedInMb\":").append(i).append(",\"userId\":\"user-id-1\"}\n");
+        }
+        ndjson.append("{\"mdn\":\"2024600871\",\"usageDate\":0,\"usedInMb\":5,\"userId\":\"user-id-1\"}\n");
+
+        List<IngestProgressDTO> progress = new ArrayList<>();
+        IngestProgressDTO result = dailyUsageIngestService.ingestNdjson(
+                new ByteArrayInputStream(ndjson.toString().getBytes(StandardCharsets.UTF_8)), progress::add);
+
+        assertEquals(2, progress.size());
+        assertFalse(progress.getFirst().isDone());
+        assertTrue(result.isDone());
+        assertNull(result.getError());
+        assertEquals(rows + 1, result.getRowsRead());
+        assertEquals(rows, result.getAccepted());
+        assertEquals(1, result.getRejected());
+        assertEquals(rows, dailyUsageRepository.count());
+    }
+
+    /**
+     * Test ingesting input with a malformed row.
+     * Expect rows before the malformed row to be written and an error to be reported.
+     * @throws IOException if the input cannot be read
+     */
+    @Test
+    void testIngestNdjson_WhenRowMalformed() throws IOException {
+        userRepository.save(new User("user-id-1", "2024600871", "John", "Doe", "john@doe.com", "password"));
+
+        String ndjson = "{\"mdn\":\"2024600871\",\"usageDate\":0,\"usedInMb\":5,\"userId\":\"user-id-1\"}\n"
+                + "{\"mdn\":\"2024600871\",\"usageDate\":\n";
+
+        IngestProgressDTO result = dailyUsageIngestService.ingestNdjson(
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), progress -> { });
+
+        assertTrue(result.isDone());
+        assertNotNull(result.getError());
+        assertEquals(1, result.getAccepted());
+        assertEquals(1, dailyUsageRepository.count());
+    }
+}
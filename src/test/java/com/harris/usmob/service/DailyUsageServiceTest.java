@@ -1,20 +1,33 @@
 package com.harris.usmob.service;
 
+import com.harris.usmob.config.DailyUsageProperties;
+import com.harris.usmob.dto.BulkRowResultDTO;
 import com.harris.usmob.dto.DailyUsageDTO;
+import com.harris.usmob.dto.LineDTO;
+import com.harris.usmob.dto.LineHistoryDTO;
+import com.harris.usmob.dto.PageDTO;
+import com.harris.usmob.dto.UsageBucketDTO;
 import com.harris.usmob.entity.Cycle;
+import com.harris.usmob.entity.CycleUsageRollup;
 import com.harris.usmob.entity.DailyUsage;
 import com.harris.usmob.entity.User;
+import com.harris.usmob.repository.CurrentCycleRepository;
 import com.harris.usmob.repository.CycleRepository;
+import com.harris.usmob.repository.CycleUsageRollupRepository;
 import com.harris.usmob.repository.DailyUsageRepository;
+import com.harris.usmob.repository.LineVersionRepository;
 import com.harris.usmob.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
 
+import java.time.LocalDate;
 import java.util.Date;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -27,11 +40,24 @@ public class DailyUsageServiceTest {
     @Autowired
     private CycleRepository cycleRepository;
 
+    @Autowired
+    private CurrentCycleRepository currentCycleRepository;
+
+    @Autowired
+    private CycleUsageRollupRepository cycleUsageRollupRepository;
+
+    @Autowired
+    private LineVersionRepository lineVersionRepository;
+
     @Autowired
     private DailyUsageRepository dailyUsageRepository;
 
     private DailyUsageService dailyUsageService;
 
+    private DailyUsageProperties dailyUsageProperties;
+
+    private UsageWriteBehindBuffer usageWriteBehindBuffer;
+
     @Autowired
     private UserRepository userRepository;
 
@@ -42,8 +68,15 @@ public class DailyUsageServiceTest {
     void setUp() {
         userRepository.deleteAll();
         dailyUsageRepository.deleteAll();
-        CycleService cycleService = new CycleService(cycleRepository, userRepository);
-        dailyUsageService = new DailyUsageService(cycleService, dailyUsageRepository, userRepository);
+        currentCycleRepository.deleteAll();
+        cycleUsageRollupRepository.deleteAll();
+        lineVersionRepository.deleteAll();
+        UserMdnCache userMdnCache = new UserMdnCache(userRepository, new SimpleMeterRegistry());
+        CycleIntervalIndex cycleIntervalIndex = new CycleIntervalIndex(cycleRepository, new SimpleMeterRegistry());
+        CycleService cycleService = new CycleService(cycleRepository, userMdnCache, currentCycleRepository, dailyUsageRepository, cycleUsageRollupRepository, cycleIntervalIndex, lineVersionRepository);
+        dailyUsageProperties = new DailyUsageProperties();
+        usageWriteBehindBuffer = new UsageWriteBehindBuffer(dailyUsageRepository, lineVersionRepository, cycleUsageRollupRepository, userMdnCache, dailyUsageProperties, new SimpleMeterRegistry());
+        dailyUsageService = new DailyUsageService(cycleService, dailyUsageRepository, userMdnCache, usageWriteBehindBuffer, dailyUsageProperties, cycleUsageRollupRepository, lineVersionRepository);
     }
 
     /**
@@ -53,6 +86,9 @@ public class DailyUsageServiceTest {
     void tearDown() {
         userRepository.deleteAll();
         dailyUsageRepository.deleteAll();
+        currentCycleRepository.deleteAll();
+        cycleUsageRollupRepository.deleteAll();
+        lineVersionRepository.deleteAll();
     }
 
     /**
@@ -121,6 +157,37 @@ public class DailyUsageServiceTest {
         assertNull(createdDailyUsage);
     }
 
+    /**
+     * Test adding a batch of daily usages with valid and invalid rows.
+     * Expect valid rows to be added and invalid rows to be rejected with a reason.
+     */
+    @Test
+    void testAddDailyUsages() {
+        User user = new User("user-id-8", "2024600878", "Grace", "Hopper", "grace@example.com", "password");
+        userRepository.save(user);
+
+        Date existingDate = new Date(System.currentTimeMillis() - 86400000);   // One day ago
+        dailyUsageRepository.save(new DailyUsage("usage-id-14", "2024600878", existingDate, 100, "user-id-8"));
+
+        Date usageDate = new Date();
+        List<DailyUsage> batch = List.of(
+                new DailyUsage(null, "2024600878", usageDate, 200, "user-id-8"),
+                new DailyUsage(null, "2024600878", usageDate, 300, "user-id-8"),
+                new DailyUsage(null, "2024600878", existingDate, 400, "user-id-8"),
+                new DailyUsage(null, "2024600871", usageDate, 500, "user-id-8"),
+                new DailyUsage(null, "2024600878", usageDate, 600, "nonexistent-user-id"));
+
+        List<BulkRowResultDTO> results = dailyUsageService.addDailyUsages(batch);
+
+        assertEquals(5, results.size());
+        assertTrue(results.get(0).isAccepted());
+        assertFalse(results.get(1).isAccepted());
+        assertFalse(results.get(2).isAccepted());
+        assertFalse(results.get(3).isAccepted());
+        assertFalse(results.get(4).isAccepted());
+        assertEquals(2, dailyUsageRepository.findByUserIdAndMdn("user-id-8", "2024600878").size());
+    }
+
     /**
      * Test deleting a daily usage.
      * Expect the daily usage to be deleted successfully.
@@ -156,11 +223,53 @@ public class DailyUsageServiceTest {
         DailyUsage dailyUsage2 = new DailyUsage("usage-id-7", "2024600872", new Date(), 700, "user-id-2");
         dailyUsageRepository.saveAll(List.of(dailyUsage1, dailyUsage2));
 
-        List<DailyUsageDTO> allDailyUsages = dailyUsageService.getAllDailyUsages();
+        PageDTO<DailyUsageDTO> allDailyUsages = dailyUsageService.getAllDailyUsages(null, 100);
+
+        assertEquals(2, allDailyUsages.getItems().size());
+        assertEquals(600, allDailyUsages.getItems().get(0).getUsedInMb());
+        assertEquals(700, allDailyUsages.getItems().get(1).getUsedInMb());
+        assertNull(allDailyUsages.getNext());
+    }
+
+    /**
+     * Test paging through all daily usages with the next cursor.
+     * Expect every daily usage once, sorted by MDN and usage date, and no cursor after the last page.
+     */
+    @Test
+    void testGetAllDailyUsages_Paged() {
+        long day = 86400000L;
+        dailyUsageRepository.saveAll(List.of(
+                new DailyUsage("usage-id-8", "2024600872", new Date(day), 300, "user-id-2"),
+                new DailyUsage("usage-id-9", "2024600871", new Date(2 * day), 200, "user-id-1"),
+                new DailyUsage("usage-id-10", "2024600871", new Date(day), 100, "user-id-1")));
+
+        PageDTO<DailyUsageDTO> firstPage = dailyUsageService.getAllDailyUsages(null, 2);
+
+        assertEquals(List.of(100, 200), firstPage.getItems().stream().map(DailyUsageDTO::getUsedInMb).toList());
+        assertNotNull(firstPage.getNext());
+
+        PageDTO<DailyUsageDTO> lastPage = dailyUsageService.getAllDailyUsages(firstPage.getNext(), 2);
+
+        assertEquals(List.of(300), lastPage.getItems().stream().map(DailyUsageDTO::getUsedInMb).toList());
+        assertNull(lastPage.getNext());
+    }
+
+    /**
+     * Test streaming all daily usages.
+     * Expect every daily usage to be streamed.
+     */
+    @Test
+    void testStreamAllDailyUsages() {
+        dailyUsageRepository.saveAll(List.of(
+                new DailyUsage("usage-id-11", "2024600871", new Date(), 600, "user-id-1"),
+                new DailyUsage("usage-id-12", "2024600872", new Date(), 700, "user-id-2")));
+
+        List<Integer> usedInMb;
+        try (Stream<DailyUsageDTO> dailyUsages = dailyUsageService.streamAllDailyUsages()) {
+            usedInMb = dailyUsages.map(DailyUsageDTO::getUsedInMb).sorted().toList();
+        }
 
-        assertEquals(2, allDailyUsages.size());
-        assertEquals(600, allDailyUsages.get(0).getUsedInMb());
-        assertEquals(700, allDailyUsages.get(1).getUsedInMb());
+        assertEquals(List.of(600, 700), usedInMb);
     }
 
     /**
@@ -180,7 +289,7 @@ public class DailyUsageServiceTest {
 
         Date endDate = new Date();
         Cycle cycle = new Cycle("cycle-id-1", "2024600875", startDate, endDate, "user-id-5");
-        cycleRepository.save(cycle);
+        saveCycle(cycle);
 
         List<DailyUsageDTO> usageHistory = dailyUsageService.getDailyUsageHistory("user-id-5", "2024600875");
 
@@ -207,6 +316,114 @@ public class DailyUsageServiceTest {
         assertNull(usageHistory);
     }
 
+    /**
+     * Test getting daily usage history when the line has usage outside the most recent cycle.
+     * Expect only usage inside the cycle window, including both ends, sorted by date.
+     */
+    @Test
+    void testGetDailyUsageHistory_OnlyCycleWindow() {
+        User user = new User("user-id-12", "2024600882", "Grace", "Hopper", "grace@example.com", "password");
+        userRepository.save(user);
+
+        long day = 86400000L;
+        Date startDate = new Date(100 * day);
+        Date endDate = new Date(130 * day);
+        saveCycle(new Cycle("cycle-id-12", "2024600882", startDate, endDate, "user-id-12"));
+
+        dailyUsageRepository.saveAll(List.of(
+                new DailyUsage("usage-id-20", "2024600882", new Date(99 * day), 10, "user-id-12"),
+                new DailyUsage("usage-id-21", "2024600882", endDate, 30, "user-id-12"),
+                new DailyUsage("usage-id-22", "2024600882", startDate, 20, "user-id-12"),
+                new DailyUsage("usage-id-23", "2024600882", new Date(131 * day), 40, "user-id-12")));
+
+        List<DailyUsageDTO> usageHistory = dailyUsageService.getDailyUsageHistory("user-id-12", "2024600882");
+
+        assertEquals(2, usageHistory.size());
+        assertEquals(startDate, usageHistory.get(0).getUsageDate());
+        assertEquals(20, usageHistory.get(0).getUsedInMb());
+        assertEquals(endDate, usageHistory.get(1).getUsageDate());
+        assertEquals(30, usageHistory.get(1).getUsedInMb());
+    }
+
+    /**
+     * Test getting daily usage history in two-query mode.
+     * Expect the same history as the aggregation.
+     */
+    @Test
+    void testGetDailyUsageHistory_TwoQueryMode() {
+        User user = new User("user-id-13", "2024600883", "Alan", "Turing", "alan@example.com", "password");
+        userRepository.save(user);
+
+        long day = 86400000L;
+        saveCycle(new Cycle("cycle-id-13", "2024600883", new Date(10 * day), new Date(20 * day), "user-id-13"));
+        saveCycle(new Cycle("cycle-id-14", "2024600883", new Date(21 * day), new Date(40 * day), "user-id-13"));
+
+        dailyUsageRepository.saveAll(List.of(
+                new DailyUsage("usage-id-24", "2024600883", new Date(15 * day), 10, "user-id-13"),
+                new DailyUsage("usage-id-25", "2024600883", new Date(25 * day), 20, "user-id-13")));
+
+        List<DailyUsageDTO> aggregated = dailyUsageService.getDailyUsageHistory("user-id-13", "2024600883");
+
+        dailyUsageProperties.setHistoryMode(DailyUsageProperties.HistoryMode.TWO_QUERY);
+        List<DailyUsageDTO> twoQuery = dailyUsageService.getDailyUsageHistory("user-id-13", "2024600883");
+
+        assertEquals(1, aggregated.size());
+        assertEquals(20, aggregated.getFirst().getUsedInMb());
+        assertEquals(aggregated, twoQuery);
+        assertNull(dailyUsageService.getDailyUsageHistory("user-id-13", "0000000000"));
+    }
+
+    /**
+     * Test getting the daily usage history of many lines at once.
+     * Expect each line to get only the usage inside its own most recent cycle, in the order of the lines.
+     */
+    @Test
+    void testGetDailyUsageHistories() {
+        saveCycle(new Cycle("cycle-id-4", "2024600883", new Date(1000000), new Date(5000000), "user-id-13"));
+        saveCycle(new Cycle("cycle-id-5", "2024600884", new Date(3000000), new Date(9000000), "user-id-14"));
+
+        dailyUsageRepository.save(new DailyUsage("usage-id-18", "2024600883", new Date(2000000), 100, "user-id-13"));
+        dailyUsageRepository.save(new DailyUsage("usage-id-19", "2024600883", new Date(6000000), 200, "user-id-13"));
+        dailyUsageRepository.save(new DailyUsage("usage-id-20", "2024600884", new Date(2000000), 300, "user-id-14"));
+        dailyUsageRepository.save(new DailyUsage("usage-id-21", "2024600884", new Date(4000000), 400, "user-id-14"));
+
+        List<LineHistoryDTO> histories = dailyUsageService.getDailyUsageHistories(List.of(
+                new LineDTO("user-id-14", "2024600884"),
+                new LineDTO("user-id-13", "2024600883"),
+                new LineDTO("user-id-15", "2024600885")));
+
+        assertEquals(3, histories.size());
+        assertEquals("2024600884", histories.getFirst().getMdn());
+        assertEquals(List.of(400), histories.getFirst().getUsages().stream().map(DailyUsageDTO::getUsedInMb).toList());
+        assertEquals(List.of(100), histories.get(1).getUsages().stream().map(DailyUsageDTO::getUsedInMb).toList());
+        assertNull(histories.get(2).getUsages());
+
+        cycleRepository.deleteAll();
+    }
+
+    /**
+     * Test getting the daily usage of a line summed per month.
+     * Expect one bucket per month with usage, and usage outside the range left out.
+     */
+    @Test
+    void testGetUsageRange() {
+        dailyUsageRepository.save(new DailyUsage("usage-id-26", "2024600886", DailyUsageService.startOfDay(LocalDate.of(2024, 1, 5)), 100, "user-id-16"));
+        dailyUsageRepository.save(new DailyUsage("usage-id-27", "2024600886", DailyUsageService.startOfDay(LocalDate.of(2024, 1, 31)), 200, "user-id-16"));
+        dailyUsageRepository.save(new DailyUsage("usage-id-28", "2024600886", DailyUsageService.startOfDay(LocalDate.of(2024, 3, 1)), 300, "user-id-16"));
+        dailyUsageRepository.save(new DailyUsage("usage-id-29", "2024600886", DailyUsageService.startOfDay(LocalDate.of(2024, 3, 2)), 400, "user-id-16"));
+
+        List<UsageBucketDTO> buckets = dailyUsageService.getUsageRange("user-id-16", "2024600886",
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 3, 1), DailyUsageService.UsageBucket.MONTH);
+
+        assertEquals(2, buckets.size());
+        assertEquals(DailyUsageService.startOfDay(LocalDate.of(2024, 1, 1)), buckets.getFirst().getBucketStart());
+        assertEquals(300, buckets.getFirst().getTotalInMb());
+        assertEquals(2, buckets.getFirst().getDays());
+        assertEquals(300, buckets.get(1).getTotalInMb());
+        assertNull(dailyUsageService.getUsageRange("user-id-16", "2024600886",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 1, 1), DailyUsageService.UsageBucket.DAY));
+    }
+
     /**
      * Test update used in Mb for a daily usage.
      * Expect the used in Mb to be updated successfully.
@@ -235,5 +452,213 @@ public class DailyUsageServiceTest {
         DailyUsageDTO updatedDailyUsage = dailyUsageService.updateUsedInMb(new Date(), "nonexistent-mdn", 1500);
         assertNull(updatedDailyUsage);
     }
-}
 
+    /**
+     * Test incrementing the used in Mb for an existing daily usage.
+     * Expect the delta to be added to the stored value.
+     */
+    @Test
+    void testIncrementUsedInMb() {
+        userRepository.save(new User("user-id-9", "2024600879", "John", "Doe", "john@doe.com", "password"));
+        Date usageDate = new Date();
+        DailyUsage dailyUsage = new DailyUsage("usage-id-15", "2024600879", usageDate, 100, "user-id-9");
+        dailyUsageRepository.save(dailyUsage);
+
+        dailyUsageService.incrementUsedInMb(usageDate, "2024600879", "user-id-9", 50);
+        DailyUsageDTO incrementedDailyUsage = dailyUsageService.incrementUsedInMb(usageDate, "2024600879", "user-id-9", 25);
+
+        assertNotNull(incrementedDailyUsage);
+        assertEquals(175, incrementedDailyUsage.getUsedInMb());
+    }
+
+    /**
+     * Test incrementing the used in Mb when the daily usage does not exist yet.
+     * Expect the daily usage to be created with the delta as its value.
+     */
+    @Test
+    void testIncrementUsedInMb_WhenUsageNotFound() {
+        userRepository.save(new User("user-id-10", "2024600880", "John", "Doe", "john@doe.com", "password"));
+        Date usageDate = new Date();
+
+        DailyUsageDTO incrementedDailyUsage = dailyUsageService.incrementUsedInMb(usageDate, "2024600880", "user-id-10", 40);
+
+        assertNotNull(incrementedDailyUsage);
+        assertEquals(40, incrementedDailyUsage.getUsedInMb());
+        DailyUsage created = dailyUsageRepository.findByUsageDateAndMdn(usageDate, "2024600880");
+        assertEquals("user-id-10", created.getUserId());
+    }
+
+    /**
+     * Test incrementing the used in Mb for a missing user and for an MDN of another user.
+     * Expect the increments to be rejected and no daily usage to be created.
+     */
+    @Test
+    void testIncrementUsedInMb_WhenUserInvalid() {
+        userRepository.save(new User("user-id-18", "2024600888", "John", "Doe", "john@doe.com", "password"));
+        Date usageDate = new Date();
+
+        assertNull(dailyUsageService.incrementUsedInMb(usageDate, "2024600888", "user-id-99", 40));
+        assertNull(dailyUsageService.incrementUsedInMb(usageDate, "2024600899", "user-id-18", 40));
+        assertEquals(0, dailyUsageRepository.count());
+    }
+
+    /**
+     * Test incrementing a daily usage created by the previous owner of the MDN.
+     * Expect the increment to be rejected and the previous owner's daily usage to be unchanged.
+     */
+    @Test
+    void testIncrementUsedInMb_WhenUsageOwnedByOtherUser() {
+        userRepository.save(new User("user-id-19", "2024600889", "John", "Doe", "john@doe.com", "password"));
+        Date usageDate = new Date();
+        dailyUsageRepository.save(new DailyUsage("usage-id-19", "2024600889", usageDate, 100, "user-id-20"));
+
+        assertNull(dailyUsageService.incrementUsedInMb(usageDate, "2024600889", "user-id-19", 40));
+        assertEquals(100, dailyUsageRepository.findByUsageDateAndMdn(usageDate, "2024600889").getUsedInMb());
+    }
+
+    /**
+     * Test queueing an increment when write-behind is disabled.
+     * Expect the increment to not be queued.
+     */
+    @Test
+    void testQueueIncrement_WhenWriteBehindDisabled() {
+        assertFalse(dailyUsageService.queueIncrement(new Date(), "2024600881", "user-id-11", 10));
+    }
+
+    /**
+     * Test queueing increments when write-behind is enabled.
+     * Expect history to include unflushed increments and the flush to write their sum.
+     */
+    @Test
+    void testQueueIncrement_WhenWriteBehindEnabled() {
+        dailyUsageProperties.getWriteBehind().setEnabled(true);
+
+        User user = new User("user-id-11", "2024600881", "Heidi", "Lamarr", "heidi@example.com", "password");
+        userRepository.save(user);
+
+        Date startDate = new Date(System.currentTimeMillis() - 86400000);   // One day ago
+        Date usageDate = new Date();
+        Date endDate = new Date(System.currentTimeMillis() + 86400000);     // One day in future
+        saveCycle(new Cycle("cycle-id-2", "2024600881", startDate, endDate, "user-id-11"));
+        dailyUsageRepository.save(new DailyUsage("usage-id-16", "2024600881", usageDate, 100, "user-id-11"));
+
+        assertTrue(dailyUsageService.queueIncrement(usageDate, "2024600881", "user-id-11", 10));
+        assertTrue(dailyUsageService.queueIncrement(usageDate, "2024600881", "user-id-11", 15));
+
+        List<DailyUsageDTO> usageHistory = dailyUsageService.getDailyUsageHistory("user-id-11", "2024600881");
+        assertEquals(1, usageHistory.size());
+        assertEquals(125, usageHistory.getFirst().getUsedInMb());
+        assertEquals(100, dailyUsageRepository.findById("usage-id-16").orElseThrow().getUsedInMb());
+
+        usageWriteBehindBuffer.flush();
+
+        assertEquals(125, dailyUsageRepository.findById("usage-id-16").orElseThrow().getUsedInMb());
+        assertEquals(125, dailyUsageService.getDailyUsageHistory("user-id-11", "2024600881").getFirst().getUsedInMb());
+
+        cycleRepository.deleteAll();
+    }
+
+    /**
+     * Test the history ETag of a line with unflushed increments.
+     * Expect no ETag until the increments are flushed, then a new ETag.
+     */
+    @Test
+    void testGetHistoryETag_WhenWriteBehindPending() {
+        dailyUsageProperties.getWriteBehind().setEnabled(true);
+
+        User user = new User("user-id-17", "2024600887", "Ada", "Lovelace", "ada@example.com", "password");
+        userRepository.save(user);
+
+        Date usageDate = new Date();
+        assertNotNull(dailyUsageService.addDailyUsage(new DailyUsage("usage-id-30", "2024600887", usageDate, 100, "user-id-17")));
+        assertEquals("\"1\"", dailyUsageService.getHistoryETag("user-id-17", "2024600887"));
+
+        assertTrue(dailyUsageService.queueIncrement(usageDate, "2024600887", "user-id-17", 10));
+        assertNull(dailyUsageService.getHistoryETag("user-id-17", "2024600887"));
+
+        usageWriteBehindBuffer.flush();
+        assertEquals("\"2\"", dailyUsageService.getHistoryETag("user-id-17", "2024600887"));
+    }
+
+    /**
+     * Test the cycle usage rollup across adding, incrementing, updating and deleting daily usages.
+     * Expect the total, day count and peak to follow every write, including a lowered peak.
+     */
+    @Test
+    void testUsageRollup_FollowsDailyUsageWrites() {
+        User user = new User("user-id-12", "2024600882", "Ivan", "Petrov", "ivan@example.com", "password");
+        userRepository.save(user);
+
+        Date day1 = new Date(1000000);
+        Date day2 = new Date(2000000);
+        saveCycle(new Cycle("cycle-id-3", "2024600882", day1, new Date(5000000), "user-id-12"));
+        cycleUsageRollupRepository.rebuild(List.of("cycle-id-3"));
+
+        dailyUsageService.addDailyUsage(new DailyUsage("usage-id-17", "2024600882", day1, 100, "user-id-12"));
+        dailyUsageService.incrementUsedInMb(day2, "2024600882", "user-id-12", 300);
+
+        CycleUsageRollup rollup = cycleUsageRollupRepository.findById("cycle-id-3").orElseThrow();
+        assertEquals(400, rollup.getTotalInMb());
+        assertEquals(2, rollup.getDays());
+        assertEquals(day2, rollup.getPeak().getUsageDate());
+
+        dailyUsageService.updateUsedInMb(day2, "2024600882", 50);
+
+        rollup = cycleUsageRollupRepository.findById("cycle-id-3").orElseThrow();
+        assertEquals(150, rollup.getTotalInMb());
+        assertEquals(day1, rollup.getPeak().getUsageDate());
+        assertEquals(100, rollup.getPeak().getUsedInMb());
+
+        dailyUsageService.deleteDailyUsage("usage-id-17");
+
+        rollup = cycleUsageRollupRepository.findById("cycle-id-3").orElseThrow();
+        assertEquals(50, rollup.getTotalInMb());
+        assertEquals(1, rollup.getDays());
+        assertEquals(day2, rollup.getPeak().getUsageDate());
+
+        cycleRepository.deleteAll();
+    }
+
+    /**
+     * Test the cycle usage rollup after flushing queued increments of an existing and a new day.
+     * Expect the flushed Mb in the total, the new day counted and the peak raised.
+     */
+    @Test
+    void testUsageRollup_FollowsWriteBehindFlush() {
+        dailyUsageProperties.getWriteBehind().setEnabled(true);
+
+        User user = new User("user-id-18", "2024600888", "Grace", "Hopper", "grace@example.com", "password");
+        userRepository.save(user);
+
+        Date day1 = new Date(1000000);
+        Date day2 = new Date(2000000);
+        saveCycle(new Cycle("cycle-id-4", "2024600888", day1, new Date(5000000), "user-id-18"));
+        cycleUsageRollupRepository.rebuild(List.of("cycle-id-4"));
+        dailyUsageService.addDailyUsage(new DailyUsage("usage-id-31", "2024600888", day1, 100, "user-id-18"));
+
+        assertTrue(dailyUsageService.queueIncrement(day1, "2024600888", "user-id-18", 20));
+        assertTrue(dailyUsageService.queueIncrement(day2, "2024600888", "user-id-18", 300));
+        usageWriteBehindBuffer.flush();
+
+        CycleUsageRollup rollup = cycleUsageRollupRepository.findById("cycle-id-4").orElseThrow();
+        assertEquals(420, rollup.getTotalInMb());
+        assertEquals(2, rollup.getDays());
+        assertEquals(day2, rollup.getPeak().getUsageDate());
+        assertEquals(300, rollup.getPeak().getUsedInMb());
+
+        cycleUsageRollupRepository.rebuild(List.of("cycle-id-4"));
+        assertEquals(rollup.getTotalInMb(), cycleUsageRollupRepository.findById("cycle-id-4").orElseThrow().getTotalInMb());
+
+        cycleRepository.deleteAll();
+    }
+
+    /**
+     * Saves a cycle directly and advances its current cycle, as CycleService.addCycle does.
+     *
+     * @param cycle Cycle
+     */
+    private void saveCycle(Cycle cycle) {
+        cycleRepository.save(cycle);
+        currentCycleRepository.advance(cycle);
+    }
+}
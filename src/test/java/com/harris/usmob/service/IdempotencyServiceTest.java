@@ -0,0 +1,206 @@
+package com.harris.usmob.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.harris.usmob.dto.CycleDTO;
+import com.harris.usmob.entity.IdempotencyRecord;
+import com.harris.usmob.repository.IdempotencyRecordRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.security.MessageDigest;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the IdempotencyService class.
+ */
+@DataMongoTest
+public class IdempotencyServiceTest {
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    private ObjectMapper objectMapper;
+
+    private IdempotencyService idempotencyService;
+
+    /**
+     * Set up the test environment.
+     */
+    @BeforeEach
+    void setUp() {
+        idempotencyRecordRepository.deleteAll();
+        objectMapper = new ObjectMapper();
+        idempotencyService = new IdempotencyService(idempotencyRecordRepository, objectMapper);
+    }
+
+    /**
+     * Tear down the test environment.
+     */
+    @AfterEach
+    void tearDown() {
+        idempotencyRecordRepository.deleteAll();
+    }
+
+    /**
+     * Test retrying a request with the same idempotency key.
+     * Expect the request to run once and the original response to be replayed.
+     */
+    @Test
+    void testExecuteReplaysResponse() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CycleDTO cycleDTO = new CycleDTO("cycleId", new Date(0), new Date(1000));
+
+        ResponseEntity<Object> first = idempotencyService.execute("cycle/add", "key-1", cycleDTO, () -> {
+            calls.incrementAndGet();
+            return new ResponseEntity<>(cycleDTO, HttpStatus.CREATED);
+        });
+        ResponseEntity<Object> second = idempotencyService.execute("cycle/add", "key-1", cycleDTO, () -> {
+            calls.incrementAndGet();
+            return new ResponseEntity<>("Error adding cycle", HttpStatus.CONFLICT);
+        });
+
+        assertEquals(1, calls.get());
+        assertEquals(HttpStatus.CREATED, first.getStatusCode());
+        assertEquals(HttpStatus.CREATED, second.getStatusCode());
+        assertEquals(objectMapper.writeValueAsString(cycleDTO), second.getBody());
+        assertEquals("true", second.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+    }
+
+    /**
+     * Test replaying a response after the in-memory cache is gone.
+     * Expect the response to be replayed from the stored record.
+     */
+    @Test
+    void testExecuteReplaysFromStore() {
+        idempotencyService.execute("daily-usage/add", "key-1", "body",
+                () -> new ResponseEntity<>("Error adding daily usage", HttpStatus.CONFLICT));
+
+        IdempotencyService restarted = new IdempotencyService(idempotencyRecordRepository, objectMapper);
+        ResponseEntity<Object> replayed = restarted.execute("daily-usage/add", "key-1", "body",
+                () -> fail("Request should not run again"));
+
+        assertEquals(HttpStatus.CONFLICT, replayed.getStatusCode());
+        assertEquals("Error adding daily usage", replayed.getBody());
+    }
+
+    /**
+     * Test using the same idempotency key on different endpoints.
+     * Expect each endpoint to run its own request.
+     */
+    @Test
+    void testExecuteScopesKeysByEndpoint() {
+        AtomicInteger calls = new AtomicInteger();
+
+        idempotencyService.execute("cycle/add", "key-1", "body", () -> {
+            calls.incrementAndGet();
+            return new ResponseEntity<>("Cycle", HttpStatus.CREATED);
+        });
+        idempotencyService.execute("daily-usage/add", "key-1", "body", () -> {
+            calls.incrementAndGet();
+            return new ResponseEntity<>("Daily usage", HttpStatus.CREATED);
+        });
+
+        assertEquals(2, calls.get());
+        assertEquals(2, idempotencyRecordRepository.count());
+    }
+
+    /**
+     * Test reusing an idempotency key with a different request body.
+     * Expect the request not to run and 422 to be returned.
+     */
+    @Test
+    void testExecuteRejectsDifferentBody() {
+        idempotencyService.execute("cycle/add", "key-1", "first",
+                () -> new ResponseEntity<>("Cycle", HttpStatus.CREATED));
+
+        ResponseEntity<Object> response = idempotencyService.execute("cycle/add", "key-1", "second",
+                () -> fail("Request should not run"));
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, response.getStatusCode());
+        assertEquals(IdempotencyService.MISMATCH, response.getBody());
+    }
+
+    /**
+     * Test retrying a request while the original is still running.
+     * Expect the retry not to run and 409 to be returned.
+     */
+    @Test
+    void testExecuteWhileInProgress() {
+        AtomicReference<ResponseEntity<Object>> concurrent = new AtomicReference<>();
+
+        ResponseEntity<Object> first = idempotencyService.execute("cycle/add", "key-1", "body", () -> {
+            concurrent.set(new IdempotencyService(idempotencyRecordRepository, objectMapper)
+                    .execute("cycle/add", "key-1", "body", () -> fail("Request should not run twice")));
+            return new ResponseEntity<>("Cycle", HttpStatus.CREATED);
+        });
+
+        assertEquals(HttpStatus.CREATED, first.getStatusCode());
+        assertEquals(HttpStatus.CONFLICT, concurrent.get().getStatusCode());
+        assertEquals(IdempotencyService.IN_PROGRESS, concurrent.get().getBody());
+    }
+
+    /**
+     * Test retrying a request whose original threw.
+     * Expect the key to be released and the retry to run.
+     */
+    @Test
+    void testExecuteWhenRequestThrows() {
+        assertThrows(IllegalStateException.class, () -> idempotencyService.execute("cycle/add", "key-1", "body", () -> {
+            throw new IllegalStateException("Mongo unavailable");
+        }));
+
+        ResponseEntity<Object> retried = idempotencyService.execute("cycle/add", "key-1", "body",
+                () -> new ResponseEntity<>("Cycle", HttpStatus.CREATED));
+
+        assertEquals(HttpStatus.CREATED, retried.getStatusCode());
+        assertNull(retried.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+    }
+
+    /**
+     * Test retrying a request whose original failed with an error rather than an exception.
+     * Expect the key to be released and the retry to run.
+     */
+    @Test
+    void testExecuteWhenRequestErrors() {
+        assertThrows(StackOverflowError.class, () -> idempotencyService.execute("cycle/add", "key-1", "body", () -> {
+            throw new StackOverflowError();
+        }));
+
+        ResponseEntity<Object> retried = idempotencyService.execute("cycle/add", "key-1", "body",
+                () -> new ResponseEntity<>("Cycle", HttpStatus.CREATED));
+
+        assertEquals(HttpStatus.CREATED, retried.getStatusCode());
+    }
+
+    /**
+     * Test retrying a request whose original instance stopped while holding the key, before and after its lease expired.
+     * Expect 409 while the lease holds, then the retry to take the key over and run.
+     */
+    @Test
+    void testExecuteTakesOverExpiredLease() throws Exception {
+        String fingerprint = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes("body")));
+        idempotencyRecordRepository.insert(new IdempotencyRecord("cycle/add:key-1", 0, null, false, fingerprint, true,
+                new Date(System.currentTimeMillis() + 60000), new Date()));
+        idempotencyRecordRepository.insert(new IdempotencyRecord("cycle/add:key-2", 0, null, false, fingerprint, true,
+                new Date(System.currentTimeMillis() - 1000), new Date()));
+
+        ResponseEntity<Object> held = idempotencyService.execute("cycle/add", "key-1", "body",
+                () -> fail("Request should not run while the lease holds"));
+        ResponseEntity<Object> takenOver = idempotencyService.execute("cycle/add", "key-2", "body",
+                () -> new ResponseEntity<>("Cycle", HttpStatus.CREATED));
+
+        assertEquals(HttpStatus.CONFLICT, held.getStatusCode());
+        assertEquals(HttpStatus.CREATED, takenOver.getStatusCode());
+        assertFalse(idempotencyRecordRepository.findById("cycle/add:key-2").orElseThrow().isPending());
+    }
+}
@@ -0,0 +1,70 @@
+package com.harris.usmob.service;
+
+import com.harris.usmob.dto.LineDTO;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the LineLocks class.
+ */
+public class LineLocksTest {
+
+    /**
+     * Test two threads updating a counter of the same line without synchronization, under the line lock.
+     * Expect no lost update.
+     */
+    @Test
+    void testWithLockSerializesLine() {
+        LineLocks lineLocks = new LineLocks();
+        int[] counter = new int[1];
+
+        Runnable increments = () -> IntStream.range(0, 10000).forEach(i -> lineLocks.withLock("user-id-1", "2024600871", () -> counter[0]++));
+        CompletableFuture.allOf(CompletableFuture.runAsync(increments), CompletableFuture.runAsync(increments)).join();
+
+        assertEquals(20000, counter[0]);
+    }
+
+    /**
+     * Test two threads locking the same many lines, listed in opposite orders.
+     * Expect both to finish without deadlocking.
+     */
+    @Test
+    void testWithLocksInAnyOrder() {
+        LineLocks lineLocks = new LineLocks();
+        List<LineDTO> lines = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            lines.add(new LineDTO("user-id-" + i, "20246008" + i));
+        }
+        List<LineDTO> reversed = new ArrayList<>(lines);
+        Collections.reverse(reversed);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> CompletableFuture.allOf(
+                CompletableFuture.runAsync(() -> IntStream.range(0, 1000).forEach(i -> lineLocks.withLocks(lines, () -> i))),
+                CompletableFuture.runAsync(() -> IntStream.range(0, 1000).forEach(i -> lineLocks.withLocks(reversed, () -> i)))).join());
+    }
+
+    /**
+     * Test an action failing while holding the locks of some lines.
+     * Expect the failure to propagate and another thread to lock the lines afterwards.
+     */
+    @Test
+    void testWithLocksReleasesOnFailure() {
+        LineLocks lineLocks = new LineLocks();
+        List<LineDTO> lines = List.of(new LineDTO("user-id-1", "2024600871"), new LineDTO("user-id-2", "2024600872"));
+
+        assertThrows(IllegalStateException.class, () -> lineLocks.withLocks(lines, () -> {
+            throw new IllegalStateException("Mongo unavailable");
+        }));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> assertTrue(CompletableFuture.supplyAsync(() -> lineLocks.withLocks(lines, () -> true)).join()));
+    }
+}
@@ -0,0 +1,289 @@
+package com.harris.usmob.service;
+
+import com.harris.usmob.config.DailyUsageProperties;
+import com.harris.usmob.dto.UsageEventDTO;
+import com.harris.usmob.dto.UsageEventResultDTO;
+import com.harris.usmob.entity.Cycle;
+import com.harris.usmob.entity.CycleUsageRollup;
+import com.harris.usmob.entity.DailyUsage;
+import com.harris.usmob.entity.UsageCarry;
+import com.harris.usmob.entity.User;
+import com.harris.usmob.repository.CycleRepository;
+import com.harris.usmob.repository.CycleUsageRollupRepository;
+import com.harris.usmob.repository.DailyUsageRepository;
+import com.harris.usmob.repository.LineVersionRepository;
+import com.harris.usmob.repository.ProcessedUsageEventRepository;
+import com.harris.usmob.repository.UsageCarryRepository;
+import com.harris.usmob.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the UsageEventRollupService class.
+ */
+@DataMongoTest
+public class UsageEventRollupServiceTest {
+
+    private static final long DAY = 86400000L;
+
+    private static final long MB = UsageEventRollupService.BYTES_PER_MB;
+
+    private static final long TODAY = Instant.now().truncatedTo(ChronoUnit.DAYS).toEpochMilli();
+
+    @Autowired
+    private DailyUsageRepository dailyUsageRepository;
+
+    @Autowired
+    private ProcessedUsageEventRepository processedUsageEventRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private LineVersionRepository lineVersionRepository;
+
+    @Autowired
+    private UsageCarryRepository usageCarryRepository;
+
+    @Autowired
+    private CycleRepository cycleRepository;
+
+    @Autowired
+    private CycleUsageRollupRepository cycleUsageRollupRepository;
+
+    private UsageEventRollupService usageEventRollupService;
+
+    /**
+     * Set up the test environment.
+     */
+    @BeforeEach
+    void setUp() {
+        userRepository.deleteAll();
+        dailyUsageRepository.deleteAll();
+        processedUsageEventRepository.deleteAll();
+        usageCarryRepository.deleteAll();
+        cycleRepository.deleteAll();
+        cycleUsageRollupRepository.deleteAll();
+        usageEventRollupService = newService(dailyUsageRepository);
+    }
+
+    /**
+     * Tear down the test environment.
+     */
+    @AfterEach
+    void tearDown() {
+        userRepository.deleteAll();
+        dailyUsageRepository.deleteAll();
+        processedUsageEventRepository.deleteAll();
+        usageCarryRepository.deleteAll();
+        cycleRepository.deleteAll();
+        cycleUsageRollupRepository.deleteAll();
+    }
+
+    /**
+     * Test rolling up events across two days.
+     * Expect one daily usage per day holding the summed Mb.
+     */
+    @Test
+    void testIngestEvents() {
+        userRepository.save(new User("user-id-1", "2024600871", "John", "Doe", "john@doe.com", "password"));
+
+        List<UsageEventDTO> events = List.of(
+                new UsageEventDTO("event-1", "2024600871", new Date(10 * DAY + 1000), 3 * MB),
+                new UsageEventDTO("event-2", "2024600871", new Date(10 * DAY + 2000), 2 * MB),
+                new UsageEventDTO("event-3", "2024600871", new Date(11 * DAY + 1000), 7 * MB));
+
+        UsageEventResultDTO result = usageEventRollupService.ingestEvents(events);
+
+        assertEquals(3, result.getAccepted());
+        assertEquals(0, result.getDuplicates());
+        assertEquals(0, result.getRejected());
+        assertEquals(5, dailyUsageRepository.findByUsageDateAndMdn(new Date(10 * DAY), "2024600871").getUsedInMb());
+        DailyUsage secondDay = dailyUsageRepository.findByUsageDateAndMdn(new Date(11 * DAY), "2024600871");
+        assertEquals(7, secondDay.getUsedInMb());
+        assertEquals("user-id-1", secondDay.getUserId());
+    }
+
+    /**
+     * Test ingesting a retried batch.
+     * Expect the retried events to be dropped as duplicates.
+     */
+    @Test
+    void testIngestEvents_WhenRetried() {
+        userRepository.save(new User("user-id-1", "2024600871", "John", "Doe", "john@doe.com", "password"));
+
+        List<UsageEventDTO> events = List.of(new UsageEventDTO("event-1", "2024600871", new Date(10 * DAY), 4 * MB));
+
+        usageEventRollupService.ingestEvents(events);
+        UsageEventResultDTO result = usageEventRollupService.ingestEvents(events);
+
+        assertEquals(0, result.getAccepted());
+        assertEquals(1, result.getDuplicates());
+        assertEquals(4, dailyUsageRepository.findByUsageDateAndMdn(new Date(10 * DAY), "2024600871").getUsedInMb());
+    }
+
+    /**
+     * Test ingesting events that are each below one Mb.
+     * Expect the remainders to be carried until they add up to a whole Mb.
+     */
+    @Test
+    void testIngestEvents_WhenBelowOneMb() {
+        userRepository.save(new User("user-id-1", "2024600871", "John", "Doe", "john@doe.com", "password"));
+
+        usageEventRollupService.ingestEvents(List.of(new UsageEventDTO("event-1", "2024600871", new Date(TODAY), MB / 2)));
+        assertNull(dailyUsageRepository.findByUsageDateAndMdn(new Date(TODAY), "2024600871"));
+
+        usageEventRollupService.ingestEvents(List.of(new UsageEventDTO("event-2", "2024600871", new Date(TODAY), MB / 2)));
+        assertEquals(1, dailyUsageRepository.findByUsageDateAndMdn(new Date(TODAY), "2024600871").getUsedInMb());
+    }
+
+    /**
+     * Test ingesting events for an unknown MDN.
+     * Expect the events to be rejected.
+     */
+    @Test
+    void testIngestEvents_WhenMdnUnknown() {
+        UsageEventResultDTO result = usageEventRollupService.ingestEvents(
+                List.of(new UsageEventDTO("event-1", "2024600899", new Date(), MB)));
+
+        assertEquals(0, result.getAccepted());
+        assertEquals(1, result.getRejected());
+        assertEquals(0, dailyUsageRepository.count());
+    }
+
+    /**
+     * Test restarting after carrying bytes below one Mb.
+     * Expect the new instance to carry on from the saved remainder.
+     */
+    @Test
+    void testIngestEvents_WhenRestarted() {
+        userRepository.save(new User("user-id-1", "2024600871", "John", "Doe", "john@doe.com", "password"));
+
+        usageEventRollupService.ingestEvents(List.of(new UsageEventDTO("event-1", "2024600871", new Date(TODAY), MB / 2)));
+        assertEquals(1, usageCarryRepository.count());
+
+        newService(dailyUsageRepository).ingestEvents(List.of(new UsageEventDTO("event-2", "2024600871", new Date(TODAY), MB / 2)));
+
+        assertEquals(1, dailyUsageRepository.findByUsageDateAndMdn(new Date(TODAY), "2024600871").getUsedInMb());
+        assertEquals(0, usageCarryRepository.count());
+    }
+
+    /**
+     * Test ingesting events when the daily usage write throws.
+     * Expect the events to not be marked processed, so a retry counts them.
+     */
+    @Test
+    void testIngestEvents_WhenWriteFails() {
+        userRepository.save(new User("user-id-1", "2024600871", "John", "Doe", "john@doe.com", "password"));
+        DailyUsageRepository failingRepository = Mockito.mock(DailyUsageRepository.class);
+        Mockito.when(failingRepository.bulkIncrementUsedInMb(ArgumentMatchers.anyList())).thenThrow(new IllegalStateException("Mongo unavailable"));
+
+        List<UsageEventDTO> events = List.of(new UsageEventDTO("event-1", "2024600871", new Date(10 * DAY), 4 * MB));
+
+        assertThrows(IllegalStateException.class, () -> newService(failingRepository).ingestEvents(events));
+        assertEquals(0, processedUsageEventRepository.count());
+
+        UsageEventResultDTO result = usageEventRollupService.ingestEvents(events);
+        assertEquals(1, result.getAccepted());
+        assertEquals(4, dailyUsageRepository.findByUsageDateAndMdn(new Date(10 * DAY), "2024600871").getUsedInMb());
+    }
+
+    /**
+     * Test ingesting events for a day whose daily usage belongs to the previous owner of the MDN.
+     * Expect the events to be rejected and left unmarked.
+     */
+    @Test
+    void testIngestEvents_WhenUsageOwnedByOtherUser() {
+        userRepository.save(new User("user-id-1", "2024600871", "John", "Doe", "john@doe.com", "password"));
+        dailyUsageRepository.save(new DailyUsage("usage-id-1", "2024600871", new Date(10 * DAY), 100, "user-id-2"));
+
+        UsageEventResultDTO result = usageEventRollupService.ingestEvents(
+                List.of(new UsageEventDTO("event-1", "2024600871", new Date(10 * DAY), 4 * MB)));
+
+        assertEquals(0, result.getAccepted());
+        assertEquals(1, result.getRejected());
+        assertEquals(0, processedUsageEventRepository.count());
+        assertEquals(100, dailyUsageRepository.findByUsageDateAndMdn(new Date(10 * DAY), "2024600871").getUsedInMb());
+    }
+
+    /**
+     * Test ingesting events after bytes were carried for a day that has closed, by this and another instance.
+     * Expect the closed carries to be settled without writing and the late event of the closed day to carry nothing.
+     */
+    @Test
+    void testIngestEvents_WhenDayClosed() {
+        userRepository.save(new User("user-id-1", "2024600871", "John", "Doe", "john@doe.com", "password"));
+        Date closedDay = new Date(TODAY - 10 * DAY);
+        usageCarryRepository.save(new UsageCarry(UsageCarry.idOf("gone", "2024600871", closedDay, "user-id-1"), "gone",
+                "2024600871", closedDay, "user-id-1", 3 * MB / 4));
+
+        usageEventRollupService.ingestEvents(List.of(
+                new UsageEventDTO("event-1", "2024600871", closedDay, MB / 2),
+                new UsageEventDTO("event-2", "2024600871", new Date(TODAY), MB / 2)));
+
+        assertNull(dailyUsageRepository.findByUsageDateAndMdn(closedDay, "2024600871"));
+        List<UsageCarry> carries = usageCarryRepository.findAll();
+        assertEquals(1, carries.size());
+        assertEquals(new Date(TODAY), carries.get(0).getUsageDate());
+    }
+
+    /**
+     * Test ingesting events whose processed marks fail to insert for another reason than a retry.
+     * Expect the events to be rejected rather than counted as duplicates, and no usage written.
+     */
+    @Test
+    void testIngestEvents_WhenMarkFails() {
+        userRepository.save(new User("user-id-1", "2024600871", "John", "Doe", "john@doe.com", "password"));
+        ProcessedUsageEventRepository failingRepository = Mockito.mock(ProcessedUsageEventRepository.class);
+        Mockito.when(failingRepository.insertUnordered(ArgumentMatchers.anyList())).thenReturn(Map.of(0, "Write concern error"));
+        UsageEventRollupService service = new UsageEventRollupService(dailyUsageRepository, failingRepository, userRepository,
+                lineVersionRepository, usageCarryRepository, cycleUsageRollupRepository, new DailyUsageProperties());
+
+        UsageEventResultDTO result = service.ingestEvents(List.of(new UsageEventDTO("event-1", "2024600871", new Date(TODAY), 4 * MB)));
+
+        assertEquals(0, result.getAccepted());
+        assertEquals(0, result.getDuplicates());
+        assertEquals(1, result.getRejected());
+        assertEquals(0, dailyUsageRepository.count());
+    }
+
+    /**
+     * Test rolling up events into a cycle with usage on one of the days.
+     * Expect the rolled up Mb in the cycle usage rollup, with the new day counted and the peak raised.
+     */
+    @Test
+    void testIngestEvents_UpdatesUsageRollup() {
+        userRepository.save(new User("user-id-1", "2024600871", "John", "Doe", "john@doe.com", "password"));
+        cycleRepository.save(new Cycle("cycle-id-1", "2024600871", new Date(0), new Date(30 * DAY), "user-id-1"));
+        dailyUsageRepository.save(new DailyUsage("usage-id-1", "2024600871", new Date(10 * DAY), 5, "user-id-1"));
+        cycleUsageRollupRepository.rebuild(List.of("cycle-id-1"));
+
+        usageEventRollupService.ingestEvents(List.of(
+                new UsageEventDTO("event-1", "2024600871", new Date(10 * DAY), 2 * MB),
+                new UsageEventDTO("event-2", "2024600871", new Date(11 * DAY), 9 * MB)));
+
+        CycleUsageRollup rollup = cycleUsageRollupRepository.findById("cycle-id-1").orElseThrow();
+        assertEquals(16, rollup.getTotalInMb());
+        assertEquals(2, rollup.getDays());
+        assertEquals(new Date(11 * DAY), rollup.getPeak().getUsageDate());
+        assertEquals(9, rollup.getPeak().getUsedInMb());
+    }
+
+    private UsageEventRollupService newService(DailyUsageRepository dailyUsageRepository) {
+        return new UsageEventRollupService(dailyUsageRepository, processedUsageEventRepository, userRepository, lineVersionRepository,
+                usageCarryRepository, cycleUsageRollupRepository, new DailyUsageProperties());
+    }
+}
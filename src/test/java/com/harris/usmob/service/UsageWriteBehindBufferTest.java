@@ -0,0 +1,192 @@
+package com.harris.usmob.service;
+
+import com.harris.usmob.config.DailyUsageProperties;
+import com.harris.usmob.entity.DailyUsage;
+import com.harris.usmob.entity.User;
+import com.harris.usmob.repository.CycleUsageRollupRepository;
+import com.harris.usmob.repository.DailyUsageRepository;
+import com.harris.usmob.repository.DailyUsageRepositoryCustom;
+import com.harris.usmob.repository.LineVersionRepository;
+import com.harris.usmob.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+
+/**
+ * Unit tests for the UsageWriteBehindBuffer class.
+ */
+public class UsageWriteBehindBufferTest {
+
+    private static final Date DAY = new Date(86400000L);
+
+    private DailyUsageRepository dailyUsageRepository;
+
+    private CycleUsageRollupRepository cycleUsageRollupRepository;
+
+    private UserRepository userRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private UsageWriteBehindBuffer usageWriteBehindBuffer;
+
+    /**
+     * Set up the test environment.
+     */
+    @BeforeEach
+    void setUp() {
+        dailyUsageRepository = Mockito.mock(DailyUsageRepository.class);
+        cycleUsageRollupRepository = Mockito.mock(CycleUsageRollupRepository.class);
+        userRepository = Mockito.mock(UserRepository.class);
+        Mockito.when(userRepository.findMdnByIdIn(anyCollection())).thenReturn(List.of(
+                new User("user-id-1", "2024600871", null, null, null, null),
+                new User("user-id-2", "2024600872", null, null, null, null)));
+        meterRegistry = new SimpleMeterRegistry();
+        usageWriteBehindBuffer = new UsageWriteBehindBuffer(dailyUsageRepository, Mockito.mock(LineVersionRepository.class),
+                cycleUsageRollupRepository, new UserMdnCache(userRepository, meterRegistry), new DailyUsageProperties(), meterRegistry);
+    }
+
+    /**
+     * Test reading pending increments while their bulk write runs, with more increments added meanwhile.
+     * Expect the drained and the newly added increments to be read together, and none after the write.
+     */
+    @Test
+    void testGetPendingDeltas_WhileFlushing() {
+        AtomicReference<Map<Date, Long>> duringWrite = new AtomicReference<>();
+        Mockito.when(dailyUsageRepository.bulkIncrementUsedInMb(anyList())).thenAnswer(invocation -> {
+            usageWriteBehindBuffer.add("2024600871", DAY, "user-id-1", 5);
+            duringWrite.set(usageWriteBehindBuffer.getPendingDeltas("user-id-1", "2024600871", DAY, DAY));
+            return new HashMap<>();
+        }).thenReturn(new HashMap<>());
+
+        usageWriteBehindBuffer.add("2024600871", DAY, "user-id-1", 10);
+        usageWriteBehindBuffer.flush();
+
+        assertEquals(Map.of(DAY, 15L), duringWrite.get());
+        assertEquals(Map.of(DAY, 5L), usageWriteBehindBuffer.getPendingDeltas("user-id-1", "2024600871", DAY, DAY));
+
+        usageWriteBehindBuffer.flush();
+        assertTrue(usageWriteBehindBuffer.getPendingDeltas("user-id-1", "2024600871", DAY, DAY).isEmpty());
+        assertFalse(usageWriteBehindBuffer.hasPending("user-id-1", "2024600871"));
+    }
+
+    /**
+     * Test a bulk write that fails, and one that rejects an increment owned by another user.
+     * Expect the failed increment to be pending again with its original age, and the rejected one dropped.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Test
+    void testFlush_WhenWriteFails() throws InterruptedException {
+        Mockito.when(dailyUsageRepository.bulkIncrementUsedInMb(anyList()))
+                .thenThrow(new IllegalStateException("Mongo unavailable"))
+                .thenReturn(new HashMap<>(Map.of(0, DailyUsageRepositoryCustom.OWNED_BY_OTHER_USER)));
+
+        usageWriteBehindBuffer.add("2024600871", DAY, "user-id-1", 10);
+        Thread.sleep(50);
+
+        assertThrows(IllegalStateException.class, usageWriteBehindBuffer::flush);
+        assertEquals(Map.of(DAY, 10L), usageWriteBehindBuffer.getPendingDeltas("user-id-1", "2024600871", DAY, DAY));
+        assertTrue(meterRegistry.get("usmob.daily_usage.write_behind.flush.lag").gauge().value() >= 50);
+
+        usageWriteBehindBuffer.flush();
+        assertFalse(usageWriteBehindBuffer.hasPending("user-id-1", "2024600871"));
+        assertEquals(0, meterRegistry.get("usmob.daily_usage.write_behind.flush.lag").gauge().value());
+    }
+
+    /**
+     * Test a bulk write that rejects one of two increments.
+     * Expect only the written increment to be applied to the cycle usage rollups.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFlush_AppliesWrittenIncrementsToRollups() {
+        Mockito.when(dailyUsageRepository.bulkIncrementUsedInMb(anyList()))
+                .thenAnswer(invocation -> {
+                    List<DailyUsage> increments = invocation.getArgument(0);
+                    int rejected = increments.getFirst().getMdn().equals("2024600872") ? 0 : 1;
+                    return new HashMap<>(Map.of(rejected, DailyUsageRepositoryCustom.OWNED_BY_OTHER_USER));
+                });
+
+        usageWriteBehindBuffer.add("2024600871", DAY, "user-id-1", 10);
+        usageWriteBehindBuffer.add("2024600872", DAY, "user-id-2", 20);
+        usageWriteBehindBuffer.flush();
+
+        ArgumentCaptor<List<DailyUsage>> applied = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(cycleUsageRollupRepository).applyIncrements(applied.capture());
+        assertEquals(1, applied.getValue().size());
+        assertEquals("2024600871", applied.getValue().getFirst().getMdn());
+        assertEquals(10, applied.getValue().getFirst().getUsedInMb());
+    }
+
+    /**
+     * Test flushing an increment queued for a user whose MDN moved to another user meanwhile.
+     * Expect the increment to be dropped without being written or queued again.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFlush_WhenMdnMoved() {
+        Mockito.when(userRepository.findMdnByIdIn(anyCollection()))
+                .thenReturn(List.of(new User("user-id-1", "2024600879", null, null, null, null)));
+        Mockito.when(dailyUsageRepository.bulkIncrementUsedInMb(anyList())).thenReturn(new HashMap<>());
+
+        usageWriteBehindBuffer.add("2024600871", DAY, "user-id-1", 10);
+        usageWriteBehindBuffer.flush();
+
+        ArgumentCaptor<List<DailyUsage>> written = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(dailyUsageRepository).bulkIncrementUsedInMb(written.capture());
+        assertTrue(written.getValue().isEmpty());
+        assertFalse(usageWriteBehindBuffer.hasPending("user-id-1", "2024600871"));
+    }
+
+    /**
+     * Test flushing increments of one day that add up past the int range.
+     * Expect the int range to be written first and the rest to stay pending for the next flush.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFlush_WhenSumExceedsIntRange() {
+        Mockito.when(dailyUsageRepository.bulkIncrementUsedInMb(anyList())).thenReturn(new HashMap<>());
+
+        usageWriteBehindBuffer.add("2024600871", DAY, "user-id-1", Integer.MAX_VALUE);
+        usageWriteBehindBuffer.add("2024600871", DAY, "user-id-1", 10);
+        usageWriteBehindBuffer.flush();
+
+        assertEquals(Map.of(DAY, 10L), usageWriteBehindBuffer.getPendingDeltas("user-id-1", "2024600871", DAY, DAY));
+
+        usageWriteBehindBuffer.flush();
+
+        ArgumentCaptor<List<DailyUsage>> written = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(dailyUsageRepository, Mockito.times(2)).bulkIncrementUsedInMb(written.capture());
+        assertEquals(Integer.MAX_VALUE, written.getAllValues().get(0).getFirst().getUsedInMb());
+        assertEquals(10, written.getAllValues().get(1).getFirst().getUsedInMb());
+        assertFalse(usageWriteBehindBuffer.hasPending("user-id-1", "2024600871"));
+    }
+
+    /**
+     * Test reading the increments of a line while other MDNs and other users of the MDN have increments too.
+     * Expect only the increments of the line.
+     */
+    @Test
+    void testGetPendingDeltas_OnlyLine() {
+        usageWriteBehindBuffer.add("2024600871", DAY, "user-id-1", 10);
+        usageWriteBehindBuffer.add("2024600871", new Date(2 * DAY.getTime()), "user-id-1", 20);
+        usageWriteBehindBuffer.add("2024600872", DAY, "user-id-2", 30);
+
+        assertEquals(Map.of(DAY, 10L, new Date(2 * DAY.getTime()), 20L),
+                usageWriteBehindBuffer.getPendingDeltas("user-id-1", "2024600871", DAY, new Date(2 * DAY.getTime())));
+        assertTrue(usageWriteBehindBuffer.getPendingDeltas("user-id-2", "2024600871", DAY, DAY).isEmpty());
+        assertTrue(usageWriteBehindBuffer.hasPending("user-id-2", "2024600872"));
+        assertFalse(usageWriteBehindBuffer.hasPending("user-id-1", "2024600872"));
+    }
+}
@@ -0,0 +1,140 @@
+package com.harris.usmob.service;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.harris.usmob.dto.UserDTO;
+import com.harris.usmob.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the UserEmailCache class.
+ */
+public class UserEmailCacheTest {
+
+    private UserRepository userRepository;
+
+    private UserEmailCache userEmailCache;
+
+    /**
+     * Set up the test environment.
+     */
+    @BeforeEach
+    void setUp() {
+        userRepository = Mockito.mock(UserRepository.class);
+        userEmailCache = new UserEmailCache(userRepository, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Test getting the same user with differently cased emails.
+     * Expect one lookup of the normalized email.
+     */
+    @Test
+    void testGetUserNormalizesEmail() {
+        UserDTO user = new UserDTO("user-id-1", "2024600871", "John", "Doe", "john@doe.com");
+        Mockito.when(userRepository.findByEmail("john@doe.com", UserDTO.class)).thenReturn(user);
+
+        assertEquals(Optional.of(user), userEmailCache.getUser("John@Doe.com"));
+        assertEquals(Optional.of(user), userEmailCache.getUser(" john@doe.com "));
+
+        Mockito.verify(userRepository, Mockito.times(1)).findByEmail("john@doe.com", UserDTO.class);
+    }
+
+    /**
+     * Test getting an email with no user twice, then invalidating it.
+     * Expect the miss to be cached and the email looked up again after the invalidation.
+     */
+    @Test
+    void testGetUserCachesMissUntilInvalidated() {
+        assertTrue(userEmailCache.getUser("jane@doe.com").isEmpty());
+        assertTrue(userEmailCache.getUser("jane@doe.com").isEmpty());
+        Mockito.verify(userRepository, Mockito.times(1)).findByEmail("jane@doe.com", UserDTO.class);
+
+        userEmailCache.invalidate("Jane@doe.com");
+        userEmailCache.getUser("jane@doe.com");
+
+        Mockito.verify(userRepository, Mockito.times(2)).findByEmail("jane@doe.com", UserDTO.class);
+    }
+
+    /**
+     * Test a change to a user cached under its old email, with the new email cached as missing.
+     * Expect both emails to be looked up again.
+     */
+    @Test
+    void testUserChanged() {
+        UserDTO user = new UserDTO("user-id-1", "2024600871", "John", "Doe", "john@doe.com");
+        Mockito.when(userRepository.findByEmail("john@doe.com", UserDTO.class)).thenReturn(user);
+
+        userEmailCache.getUser("john@doe.com");
+        userEmailCache.getUser("johnny@doe.com");
+        userEmailCache.userChanged("user-id-1", "Johnny@doe.com");
+        userEmailCache.getUser("john@doe.com");
+        userEmailCache.getUser("johnny@doe.com");
+
+        Mockito.verify(userRepository, Mockito.times(2)).findByEmail("john@doe.com", UserDTO.class);
+        Mockito.verify(userRepository, Mockito.times(2)).findByEmail("johnny@doe.com", UserDTO.class);
+    }
+
+    /**
+     * Test a change to another user than the one cached.
+     * Expect the cached user not to be looked up again.
+     */
+    @Test
+    void testUserChanged_OtherUser() {
+        UserDTO user = new UserDTO("user-id-1", "2024600871", "John", "Doe", "john@doe.com");
+        Mockito.when(userRepository.findByEmail("john@doe.com", UserDTO.class)).thenReturn(user);
+
+        userEmailCache.getUser("john@doe.com");
+        userEmailCache.userChanged("user-id-2", "jane@doe.com");
+        userEmailCache.getUser("john@doe.com");
+
+        Mockito.verify(userRepository, Mockito.times(1)).findByEmail("john@doe.com", UserDTO.class);
+    }
+
+    /**
+     * Test the removal of an email reported after the email was loaded again.
+     * Expect the email of the new value to be kept.
+     */
+    @Test
+    void testUserEmailKeysKeepReloadedEmail() {
+        UserEmailKeys userEmailKeys = new UserEmailKeys();
+        UserDTO user = new UserDTO("user-id-1", "2024600871", "John", "Doe", "john@doe.com");
+        Optional<UserDTO> removed = userEmailKeys.add("john@doe.com", Optional.of(user));
+        userEmailKeys.add("john@doe.com", Optional.of(user));
+
+        userEmailKeys.onRemoval("john@doe.com", removed, RemovalCause.EXPIRED);
+
+        assertEquals(Set.of("john@doe.com"), userEmailKeys.take("user-id-1"));
+        assertEquals(Set.of(), userEmailKeys.take("user-id-1"));
+    }
+
+    /**
+     * Test the expiry of found and missing users.
+     * Expect missing users to expire sooner than found users.
+     */
+    @Test
+    void testExpiry() {
+        Expiry<String, Optional<UserDTO>> expiry = UserEmailCache.<UserDTO>expiry();
+
+        assertEquals(UserEmailCache.TTL.toNanos(), expiry.expireAfterCreate("john@doe.com", Optional.of(new UserDTO(null, null, null, null, null)), 0));
+        assertEquals(UserEmailCache.MISSING_TTL.toNanos(), expiry.expireAfterCreate("jane@doe.com", Optional.empty(), 0));
+        assertTrue(UserEmailCache.MISSING_TTL.compareTo(UserEmailCache.TTL) < 0);
+    }
+
+    /**
+     * Test normalizing an email.
+     * Expect surrounding whitespace removed and lower case.
+     */
+    @Test
+    void testNormalize() {
+        assertEquals("john@doe.com", UserEmailCache.normalize("  John@DOE.com\t"));
+        assertNull(UserEmailCache.normalize(null));
+    }
+}
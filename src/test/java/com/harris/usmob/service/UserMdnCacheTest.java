@@ -0,0 +1,122 @@
+package com.harris.usmob.service;
+
+import com.harris.usmob.entity.User;
+import com.harris.usmob.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+
+/**
+ * Unit tests for the UserMdnCache class.
+ */
+public class UserMdnCacheTest {
+
+    private UserRepository userRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private UserMdnCache userMdnCache;
+
+    /**
+     * Set up the test environment.
+     */
+    @BeforeEach
+    void setUp() {
+        userRepository = Mockito.mock(UserRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        userMdnCache = new UserMdnCache(userRepository, meterRegistry);
+    }
+
+    /**
+     * Test getting the same user twice.
+     * Expect the user to be loaded once and the second get to count as a hit.
+     */
+    @Test
+    void testGetUserLoadsOnce() {
+        Mockito.when(userRepository.findMdnById("user-id-1")).thenReturn(Optional.of(user("user-id-1", "2024600871")));
+
+        assertEquals("2024600871", userMdnCache.getUser("user-id-1").getMdn());
+        assertEquals("2024600871", userMdnCache.getUser("user-id-1").getMdn());
+
+        Mockito.verify(userRepository, Mockito.times(1)).findMdnById("user-id-1");
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", UserMdnCache.NAME).tag("result", "hit").functionCounter().count());
+    }
+
+    /**
+     * Test getting a user that does not exist, then creating it.
+     * Expect null first and the created user next, missing users are not cached.
+     */
+    @Test
+    void testGetUserMissingIsNotCached() {
+        Mockito.when(userRepository.findMdnById("user-id-2"))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(user("user-id-2", "2024600872")));
+
+        assertNull(userMdnCache.getUser("user-id-2"));
+        assertEquals("2024600872", userMdnCache.getUser("user-id-2").getMdn());
+        assertNull(userMdnCache.getUser(null));
+    }
+
+    /**
+     * Test invalidating a user after its MDN changed.
+     * Expect the next get to load the new MDN.
+     */
+    @Test
+    void testInvalidate() {
+        Mockito.when(userRepository.findMdnById("user-id-3"))
+                .thenReturn(Optional.of(user("user-id-3", "2024600873")))
+                .thenReturn(Optional.of(user("user-id-3", "")));
+
+        assertEquals("2024600873", userMdnCache.getUser("user-id-3").getMdn());
+        assertEquals("2024600873", userMdnCache.getUser("user-id-3").getMdn());
+
+        userMdnCache.invalidate("user-id-3");
+
+        assertEquals("", userMdnCache.getUser("user-id-3").getMdn());
+    }
+
+    /**
+     * Test getting many users when one is already cached.
+     * Expect only the misses to be loaded, in one query, and missing users left out.
+     */
+    @Test
+    void testGetUsersLoadsMissesTogether() {
+        Mockito.when(userRepository.findMdnById("user-id-4")).thenReturn(Optional.of(user("user-id-4", "2024600874")));
+        Mockito.when(userRepository.findMdnByIdIn(anyCollection())).thenReturn(List.of(user("user-id-5", "2024600875")));
+        userMdnCache.getUser("user-id-4");
+
+        Map<String, User> users = userMdnCache.getUsers(Set.of("user-id-4", "user-id-5", "user-id-6"));
+
+        assertEquals(Set.of("user-id-4", "user-id-5"), users.keySet());
+        Mockito.verify(userRepository).findMdnByIdIn(Set.of("user-id-5", "user-id-6"));
+    }
+
+    /**
+     * Test loading a user for a write after it was cached, with its MDN moved meanwhile.
+     * Expect the load to read Mongo each time and return the moved MDN.
+     */
+    @Test
+    void testLoadUserReadsMongo() {
+        Mockito.when(userRepository.findMdnById("user-id-5"))
+                .thenReturn(Optional.of(user("user-id-5", "2024600871")))
+                .thenReturn(Optional.of(user("user-id-5", "2024600879")));
+
+        assertEquals("2024600871", userMdnCache.getUser("user-id-5").getMdn());
+        assertEquals("2024600879", userMdnCache.loadUser("user-id-5").getMdn());
+
+        Mockito.verify(userRepository, Mockito.times(2)).findMdnById("user-id-5");
+    }
+
+    private static User user(String id, String mdn) {
+        return new User(id, mdn, null, null, null, null);
+    }
+}
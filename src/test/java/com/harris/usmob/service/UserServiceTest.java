@@ -1,10 +1,15 @@
 package com.harris.usmob.service;
 
+import com.harris.usmob.dto.PageDTO;
 import com.harris.usmob.dto.UserDTO;
 import com.harris.usmob.entity.User;
+import com.harris.usmob.repository.CurrentCycleRepository;
 import com.harris.usmob.repository.CycleRepository;
+import com.harris.usmob.repository.CycleUsageRollupRepository;
 import com.harris.usmob.repository.DailyUsageRepository;
+import com.harris.usmob.repository.LineVersionRepository;
 import com.harris.usmob.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -25,6 +30,15 @@ public class UserServiceTest {
     @Autowired
     private CycleRepository cycleRepository;
 
+    @Autowired
+    private CurrentCycleRepository currentCycleRepository;
+
+    @Autowired
+    private CycleUsageRollupRepository cycleUsageRollupRepository;
+
+    @Autowired
+    private LineVersionRepository lineVersionRepository;
+
     @Autowired
     private DailyUsageRepository dailyUsageRepository;
 
@@ -41,7 +55,12 @@ public class UserServiceTest {
         userRepository.deleteAll();
         cycleRepository.deleteAll();
         dailyUsageRepository.deleteAll();
-        userService = new UserService(cycleRepository, dailyUsageRepository, userRepository);
+        currentCycleRepository.deleteAll();
+        cycleUsageRollupRepository.deleteAll();
+        UserMdnCache userMdnCache = new UserMdnCache(userRepository, new SimpleMeterRegistry());
+        CycleIntervalIndex cycleIntervalIndex = new CycleIntervalIndex(cycleRepository, new SimpleMeterRegistry());
+        UserEmailCache userEmailCache = new UserEmailCache(userRepository, new SimpleMeterRegistry());
+        userService = new UserService(cycleRepository, dailyUsageRepository, userRepository, currentCycleRepository, cycleUsageRollupRepository, userMdnCache, userEmailCache, cycleIntervalIndex, lineVersionRepository);
     }
 
     /**
@@ -52,6 +71,8 @@ public class UserServiceTest {
         userRepository.deleteAll();
         cycleRepository.deleteAll();
         dailyUsageRepository.deleteAll();
+        currentCycleRepository.deleteAll();
+        cycleUsageRollupRepository.deleteAll();
     }
 
     /**
@@ -116,10 +137,58 @@ public class UserServiceTest {
     void testGetAllUsers() {
         userRepository.save(new User("userId5", "2024600874", "Charlie", "Brown", "charlie@example.com", "password"));
 
-        List<UserDTO> allUsers = userService.getAllUsers();
+        PageDTO<UserDTO> allUsers = userService.getAllUsers(null, 100);
 
-        assertEquals(1, allUsers.size());
-        assertEquals("2024600874", allUsers.getFirst().getMdn());
+        assertEquals(1, allUsers.getItems().size());
+        assertEquals("2024600874", allUsers.getItems().getFirst().getMdn());
+        assertNull(allUsers.getNext());
+    }
+
+    /**
+     * Test paging through all users with the next cursor.
+     * Expect every user once, sorted by ID, and no cursor after the last page.
+     */
+    @Test
+    void testGetAllUsers_Paged() {
+        userRepository.save(new User("userId5", "2024600874", "Charlie", "Brown", "charlie@example.com", "password"));
+        userRepository.save(new User("userId6", "2024600875", "Alice", "Brown", "alice@example.com", "password"));
+        userRepository.save(new User("userId7", "2024600876", "Bob", "Brown", "bob@example.com", "password"));
+
+        PageDTO<UserDTO> firstPage = userService.getAllUsers(null, 2);
+
+        assertEquals(List.of("charlie@example.com", "alice@example.com"), firstPage.getItems().stream().map(UserDTO::getEmail).toList());
+        assertNotNull(firstPage.getNext());
+
+        PageDTO<UserDTO> lastPage = userService.getAllUsers(firstPage.getNext(), 2);
+
+        assertEquals(List.of("bob@example.com"), lastPage.getItems().stream().map(UserDTO::getEmail).toList());
+        assertNull(lastPage.getNext());
+    }
+
+    /**
+     * Test paging through all users while a user on the next page changes email.
+     * Expect the user to still be on the next page.
+     */
+    @Test
+    void testGetAllUsers_WhenEmailChanged() {
+        userRepository.save(new User("userId5", "2024600874", "Charlie", "Brown", "charlie@example.com", "password"));
+        userRepository.save(new User("userId6", "2024600875", "Alice", "Brown", "alice@example.com", "password"));
+        userRepository.save(new User("userId7", "2024600876", "Bob", "Brown", "bob@example.com", "password"));
+
+        PageDTO<UserDTO> firstPage = userService.getAllUsers(null, 2);
+        userRepository.save(new User("userId7", "2024600876", "Bob", "Brown", "aaron@example.com", "password"));
+        PageDTO<UserDTO> lastPage = userService.getAllUsers(firstPage.getNext(), 2);
+
+        assertEquals(List.of("userId7"), lastPage.getItems().stream().map(UserDTO::getId).toList());
+    }
+
+    /**
+     * Test getting all users with a cursor that was not returned by the service.
+     * Expect null to be returned.
+     */
+    @Test
+    void testGetAllUsers_WhenCursorInvalid() {
+        assertNull(userService.getAllUsers("not a cursor", 100));
     }
 
     /**
@@ -147,6 +216,37 @@ public class UserServiceTest {
         assertFalse(foundUser.isPresent());
     }
 
+    /**
+     * Test getting a user by email before and after creating it, with a differently cased email.
+     * Expect an empty optional first and the created user next, matched on the normalized email.
+     */
+    @Test
+    void testGetUserByEmail_AfterCreateUser() {
+        assertFalse(userService.getUserByEmail("grace@example.com").isPresent());
+
+        userService.createUser(new User("userId10", "2024600879", "Grace", "Hopper", " Grace@Example.com", "password"));
+
+        Optional<UserDTO> foundUser = userService.getUserByEmail("GRACE@example.com");
+        assertTrue(foundUser.isPresent());
+        assertEquals("grace@example.com", foundUser.get().getEmail());
+    }
+
+    /**
+     * Test getting and creating users with the email of a user stored before emails were normalized.
+     * Expect the stored user to be found, and a user with the email in another case not to be created.
+     */
+    @Test
+    void testGetUserByEmail_WhenStoredNotNormalized() {
+        userRepository.save(new User("userId11", "2024600880", "Alice", "Smith", "Alice@X.com", "password"));
+
+        Optional<UserDTO> foundUser = userService.getUserByEmail("alice@x.com");
+        assertTrue(foundUser.isPresent());
+        assertEquals("userId11", foundUser.get().getId());
+
+        assertNull(userService.createUser(new User("userId12", "2024600881", "Alice", "Jones", "alice@x.com", "password")));
+        assertEquals(1, userRepository.count());
+    }
+
     /**
      * Test transferring MDN from one user to another.
      * Expect the MDN to be transferred successfully.